@@ -1505,6 +1505,17 @@ INSERT INTO `pms_product_category_attribute_relation` VALUES (7, 28, 24);
 INSERT INTO `pms_product_category_attribute_relation` VALUES (9, 25, 24);
 INSERT INTO `pms_product_category_attribute_relation` VALUES (10, 25, 25);
 
+-- ----------------------------
+-- Table structure for pms_product_change_log
+-- ----------------------------
+DROP TABLE IF EXISTS `pms_product_change_log`;
+CREATE TABLE `pms_product_change_log`  (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `product_id` bigint(20) NULL DEFAULT NULL,
+  `create_time` datetime NULL DEFAULT NULL,
+  PRIMARY KEY (`id`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8 COLLATE = utf8_general_ci COMMENT = '商品变更记录，用于增量同步搜索索引' ROW_FORMAT = DYNAMIC;
+
 -- ----------------------------
 -- Table structure for pms_product_full_reduction
 -- ----------------------------
@@ -1633,6 +1644,22 @@ CREATE TABLE `pms_product_operate_log`  (
 -- Records of pms_product_operate_log
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for pms_product_sync_lease
+-- ----------------------------
+DROP TABLE IF EXISTS `pms_product_sync_lease`;
+CREATE TABLE `pms_product_sync_lease`  (
+  `name` varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci NOT NULL COMMENT '同步任务名称',
+  `owner` varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT NULL COMMENT '当前持有租约的实例',
+  `expire_time` datetime NULL DEFAULT NULL COMMENT '租约过期时间',
+  PRIMARY KEY (`name`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_general_ci COMMENT = '商品同步任务租约，多个实例中只有持有租约的实例执行同步' ROW_FORMAT = DYNAMIC;
+
+-- ----------------------------
+-- Records of pms_product_sync_lease
+-- ----------------------------
+INSERT INTO `pms_product_sync_lease` VALUES ('es_product', NULL, NULL);
+
 -- ----------------------------
 -- Table structure for pms_product_vertify_record
 -- ----------------------------
@@ -1772,6 +1799,20 @@ INSERT INTO `pms_sku_stock` VALUES (240, 45, '202211080045002', 2499.00, 250, NU
 INSERT INTO `pms_sku_stock` VALUES (241, 45, '202211080045003', 2299.00, 250, NULL, 'http://macro-oss.oss-cn-shenzhen.aliyuncs.com/mall/images/20221108/oppo_r8_02.jpg', NULL, NULL, 0, '[{\"key\":\"颜色\",\"value\":\"晴空蓝\"},{\"key\":\"容量\",\"value\":\"128G\"}]');
 INSERT INTO `pms_sku_stock` VALUES (242, 45, '202211080045004', 2499.00, 250, NULL, 'http://macro-oss.oss-cn-shenzhen.aliyuncs.com/mall/images/20221108/oppo_r8_02.jpg', NULL, NULL, 0, '[{\"key\":\"颜色\",\"value\":\"晴空蓝\"},{\"key\":\"容量\",\"value\":\"256G\"}]');
 
+-- ----------------------------
+-- Table structure for pms_sku_stock_flush_log
+-- ----------------------------
+DROP TABLE IF EXISTS `pms_sku_stock_flush_log`;
+CREATE TABLE `pms_sku_stock_flush_log`  (
+  `flush_id` varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci NOT NULL COMMENT '回写批次id',
+  `sku_id` bigint(20) NOT NULL,
+  `lock_delta` int(11) NULL DEFAULT NULL COMMENT '锁定库存变化量',
+  `attempt` varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT NULL COMMENT '写入该记录的回写标识',
+  `create_time` datetime NULL DEFAULT NULL,
+  PRIMARY KEY (`flush_id`, `sku_id`) USING BTREE,
+  INDEX `idx_create_time`(`create_time`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_general_ci COMMENT = 'sku锁定库存回写记录，同一批次重复回写时不再修改库存' ROW_FORMAT = DYNAMIC;
+
 -- ----------------------------
 -- Table structure for sms_coupon
 -- ----------------------------
@@ -0,0 +1,39 @@
+package com.macro.mall.component;
+
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 首页内容变更通知切面
+ * 首页广告、推荐品牌、新品、人气推荐、推荐专题及秒杀活动的增删改方法（返回int）执行后，通知前台重建首页内容快照
+ * Created by macro on 2026/10/18.
+ */
+@Aspect
+@Component
+public class HomeContentChangeAspect {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HomeContentChangeAspect.class);
+    @Autowired
+    private RedisService redisService;
+
+    @Pointcut("execution(public int com.macro.mall.service.impl.SmsHome*ServiceImpl.*(..))" +
+            "||execution(public int com.macro.mall.service.impl.SmsFlashPromotion*ServiceImpl.*(..))")
+    public void homeContentChange() {
+    }
+
+    @AfterReturning("homeContentChange()")
+    public void doAfterReturning() {
+        try {
+            redisService.publishAfterCommit(RedisChannelConstant.HOME_CONTENT_CHANGE, RedisChannelConstant.HOME_CONTENT_REBUILD);
+        } catch (Exception e) {
+            //通知失败时前台按定时任务重建
+            LOGGER.warn("发送首页内容变更通知失败", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.macro.mall.component;
+
+import cn.hutool.core.collection.CollUtil;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
+import com.macro.mall.dao.PmsProductChangeLogDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.stream.Collectors;
+
+/**
+ * 商品变更通知发送组件
+ * 在当前事务中写入商品变更记录，由搜索服务读取后增量同步索引；
+ * 同时通知前台清除商品详情缓存并刷新SKU库存计数器，存在事务时在事务提交后发送
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class ProductChangePublisher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductChangePublisher.class);
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private PmsProductChangeLogDao productChangeLogDao;
+
+    public void publish(Collection<Long> productIds) {
+        if (CollUtil.isEmpty(productIds)) {
+            return;
+        }
+        //变更记录与商品修改在同一事务中提交，保证搜索索引最终一致
+        productChangeLogDao.insertList(new LinkedHashSet<>(productIds));
+        String message = productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        try {
+            redisService.publishAfterCommit(RedisChannelConstant.PRODUCT_CHANGE, message);
+        } catch (Exception e) {
+            //通知失败时前台商品详情缓存按过期时间失效
+            LOGGER.warn("发送商品变更通知失败：{}", message, e);
+        }
+    }
+}
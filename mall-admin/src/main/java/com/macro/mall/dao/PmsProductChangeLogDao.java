@@ -0,0 +1,16 @@
+package com.macro.mall.dao;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+
+/**
+ * 自定义商品变更记录管理Dao
+ * Created by macro on 2026/10/18.
+ */
+public interface PmsProductChangeLogDao {
+    /**
+     * 批量创建
+     */
+    int insertList(@Param("productIds") Collection<Long> productIds);
+}
@@ -1,6 +1,7 @@
 package com.macro.mall.service;
 
 import com.macro.mall.model.PmsSkuStock;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -17,5 +18,6 @@ public interface PmsSkuStockService {
     /**
      * 批量更新商品库存信息
      */
+    @Transactional
     int update(Long pid, List<PmsSkuStock> skuStockList);
 }
@@ -3,6 +3,7 @@ package com.macro.mall.service;
 import com.macro.mall.model.UmsAdmin;
 import com.macro.mall.model.UmsResource;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -21,7 +22,22 @@ public interface UmsAdminCacheService {
     UmsAdmin getAdmin(Long adminId);
 
     /**
-     * 设置缓存后台用户信息
+     * 设置缓存后台用户信息，用于未命中后回填数据库中的用户信息
      */
     void setAdmin(UmsAdmin admin);
+
+    /**
+     * 获取缓存的角色资源列表
+     */
+    List<UmsResource> getRoleResourceList(Long roleId);
+
+    /**
+     * 设置缓存的角色资源列表，用于未命中后回填数据库中的资源列表
+     */
+    void setRoleResourceList(Long roleId, List<UmsResource> resourceList);
+
+    /**
+     * 删除角色资源列表缓存
+     */
+    void delRoleResourceList(Collection<Long> roleIds);
 }
@@ -1,5 +1,7 @@
 package com.macro.mall.service.impl;
 
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
 import com.macro.mall.mapper.OmsOrderSettingMapper;
 import com.macro.mall.model.OmsOrderSetting;
 import com.macro.mall.service.OmsOrderSettingService;
@@ -14,6 +16,8 @@ import org.springframework.stereotype.Service;
 public class OmsOrderSettingServiceImpl implements OmsOrderSettingService {
     @Autowired
     private OmsOrderSettingMapper orderSettingMapper;
+    @Autowired
+    private RedisService redisService;
 
     @Override
     public OmsOrderSetting getItem(Long id) {
@@ -23,6 +27,9 @@ public class OmsOrderSettingServiceImpl implements OmsOrderSettingService {
     @Override
     public int update(Long id, OmsOrderSetting orderSetting) {
         orderSetting.setId(id);
-        return orderSettingMapper.updateByPrimaryKey(orderSetting);
+        int count = orderSettingMapper.updateByPrimaryKey(orderSetting);
+        //通知前台刷新本地缓存的订单设置，在事务中修改时提交后再通知，避免前台重新加载到旧数据
+        redisService.publishAfterCommit(RedisChannelConstant.SETTING_CHANGE, RedisChannelConstant.SETTING_ORDER);
+        return count;
     }
 }
@@ -1,8 +1,11 @@
 package com.macro.mall.service.impl;
 
 import com.github.pagehelper.PageHelper;
+import com.macro.mall.common.cache.SnapshotHolder;
+import com.macro.mall.common.cache.TreeSnapshot;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
 import com.macro.mall.dao.PmsProductCategoryAttributeRelationDao;
-import com.macro.mall.dao.PmsProductCategoryDao;
 import com.macro.mall.dto.PmsProductCategoryParam;
 import com.macro.mall.dto.PmsProductCategoryWithChildrenItem;
 import com.macro.mall.mapper.PmsProductCategoryAttributeRelationMapper;
@@ -10,12 +13,17 @@ import com.macro.mall.mapper.PmsProductCategoryMapper;
 import com.macro.mall.mapper.PmsProductMapper;
 import com.macro.mall.model.*;
 import com.macro.mall.service.PmsProductCategoryService;
+import jakarta.annotation.PostConstruct;
 import org.apache.commons.collections.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,6 +32,7 @@ import java.util.List;
  */
 @Service
 public class PmsProductCategoryServiceImpl implements PmsProductCategoryService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PmsProductCategoryServiceImpl.class);
     @Autowired
     private PmsProductCategoryMapper productCategoryMapper;
     @Autowired
@@ -33,7 +42,19 @@ public class PmsProductCategoryServiceImpl implements PmsProductCategoryService
     @Autowired
     private PmsProductCategoryAttributeRelationMapper productCategoryAttributeRelationMapper;
     @Autowired
-    private PmsProductCategoryDao productCategoryDao;
+    private RedisService redisService;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    /**
+     * 一级分类及其子分类，构建完成后不再修改，收到商品分类变更通知时整体重建
+     */
+    private SnapshotHolder<List<PmsProductCategoryWithChildrenItem>> withChildrenHolder;
+
+    @PostConstruct
+    public void init() {
+        withChildrenHolder = new SnapshotHolder<>("商品分类树", this::loadWithChildren, redisMessageListenerContainer, RedisChannelConstant.CATEGORY_CHANGE);
+    }
+
     @Override
     public int create(PmsProductCategoryParam pmsProductCategoryParam) {
         PmsProductCategory productCategory = new PmsProductCategory();
@@ -47,6 +68,7 @@ public class PmsProductCategoryServiceImpl implements PmsProductCategoryService
         if(!CollectionUtils.isEmpty(productAttributeIdList)){
             insertRelationList(productCategory.getId(), productAttributeIdList);
         }
+        publishChange();
         return count;
     }
 
@@ -89,7 +111,9 @@ public class PmsProductCategoryServiceImpl implements PmsProductCategoryService
             relationExample.createCriteria().andProductCategoryIdEqualTo(id);
             productCategoryAttributeRelationMapper.deleteByExample(relationExample);
         }
-        return productCategoryMapper.updateByPrimaryKeySelective(productCategory);
+        int count = productCategoryMapper.updateByPrimaryKeySelective(productCategory);
+        publishChange();
+        return count;
     }
 
     @Override
@@ -103,7 +127,9 @@ public class PmsProductCategoryServiceImpl implements PmsProductCategoryService
 
     @Override
     public int delete(Long id) {
-        return productCategoryMapper.deleteByPrimaryKey(id);
+        int count = productCategoryMapper.deleteByPrimaryKey(id);
+        publishChange();
+        return count;
     }
 
     @Override
@@ -117,7 +143,9 @@ public class PmsProductCategoryServiceImpl implements PmsProductCategoryService
         productCategory.setNavStatus(navStatus);
         PmsProductCategoryExample example = new PmsProductCategoryExample();
         example.createCriteria().andIdIn(ids);
-        return productCategoryMapper.updateByExampleSelective(productCategory, example);
+        int count = productCategoryMapper.updateByExampleSelective(productCategory, example);
+        publishChange();
+        return count;
     }
 
     @Override
@@ -126,12 +154,44 @@ public class PmsProductCategoryServiceImpl implements PmsProductCategoryService
         productCategory.setShowStatus(showStatus);
         PmsProductCategoryExample example = new PmsProductCategoryExample();
         example.createCriteria().andIdIn(ids);
-        return productCategoryMapper.updateByExampleSelective(productCategory, example);
+        int count = productCategoryMapper.updateByExampleSelective(productCategory, example);
+        publishChange();
+        return count;
     }
 
     @Override
     public List<PmsProductCategoryWithChildrenItem> listWithChildren() {
-        return productCategoryDao.listWithChildren();
+        return withChildrenHolder.get();
+    }
+
+    /**
+     * 一次查询所有分类，按parentId建立索引后组装一级分类及其子分类
+     */
+    private List<PmsProductCategoryWithChildrenItem> loadWithChildren() {
+        List<PmsProductCategory> categoryList = productCategoryMapper.selectByExample(new PmsProductCategoryExample());
+        TreeSnapshot<PmsProductCategory> snapshot = new TreeSnapshot<>(categoryList,
+                PmsProductCategory::getId, PmsProductCategory::getParentId, 0L);
+        List<PmsProductCategoryWithChildrenItem> result = new ArrayList<>();
+        for (PmsProductCategory category : snapshot.getRoots()) {
+            PmsProductCategoryWithChildrenItem item = new PmsProductCategoryWithChildrenItem();
+            BeanUtils.copyProperties(category, item);
+            item.setChildren(snapshot.getChildren(category.getId()));
+            result.add(item);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * 通知所有节点重建商品分类树，存在事务时在事务提交后发送
+     */
+    private void publishChange() {
+        try {
+            redisService.publishAfterCommit(RedisChannelConstant.CATEGORY_CHANGE, "rebuild");
+        } catch (Exception e) {
+            //通知失败时本节点下次访问时重新加载
+            withChildrenHolder.clear();
+            LOGGER.warn("发送商品分类变更通知失败", e);
+        }
     }
 
     /**
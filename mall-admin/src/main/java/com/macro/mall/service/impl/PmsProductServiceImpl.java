@@ -3,6 +3,7 @@ package com.macro.mall.service.impl;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.github.pagehelper.PageHelper;
+import com.macro.mall.component.ProductChangePublisher;
 import com.macro.mall.dao.*;
 import com.macro.mall.dto.PmsProductParam;
 import com.macro.mall.dto.PmsProductQueryParam;
@@ -21,6 +22,7 @@ import org.springframework.util.StringUtils;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -68,6 +70,8 @@ public class PmsProductServiceImpl implements PmsProductService {
     private PmsProductVertifyRecordDao productVertifyRecordDao;
     @Autowired
     private SysRegionService regionService;
+    @Autowired
+    private ProductChangePublisher productChangePublisher;
 
     @Override
     public int create(PmsProductParam productParam) {
@@ -102,6 +106,8 @@ public class PmsProductServiceImpl implements PmsProductService {
         relateAndInsertList(subjectProductRelationDao, productParam.getSubjectProductRelationList(), productId);
         //关联优选
         relateAndInsertList(prefrenceAreaProductRelationDao, productParam.getPrefrenceAreaProductRelationList(), productId);
+        //通知前台清除商品详情缓存
+        productChangePublisher.publish(Collections.singletonList(productId));
         count = 1;
         return count;
     }
@@ -176,6 +182,8 @@ public class PmsProductServiceImpl implements PmsProductService {
         prefrenceAreaExample.createCriteria().andProductIdEqualTo(id);
         prefrenceAreaProductRelationMapper.deleteByExample(prefrenceAreaExample);
         relateAndInsertList(prefrenceAreaProductRelationDao, productParam.getPrefrenceAreaProductRelationList(), id);
+        //通知前台清除商品详情缓存
+        productChangePublisher.publish(Collections.singletonList(id));
         count = 1;
         return count;
     }
@@ -278,7 +286,9 @@ public class PmsProductServiceImpl implements PmsProductService {
         record.setPublishStatus(publishStatus);
         PmsProductExample example = new PmsProductExample();
         example.createCriteria().andIdIn(ids);
-        return productMapper.updateByExampleSelective(record, example);
+        int count = productMapper.updateByExampleSelective(record, example);
+        productChangePublisher.publish(ids);
+        return count;
     }
 
     @Override
@@ -287,7 +297,9 @@ public class PmsProductServiceImpl implements PmsProductService {
         record.setRecommandStatus(recommendStatus);
         PmsProductExample example = new PmsProductExample();
         example.createCriteria().andIdIn(ids);
-        return productMapper.updateByExampleSelective(record, example);
+        int count = productMapper.updateByExampleSelective(record, example);
+        productChangePublisher.publish(ids);
+        return count;
     }
 
     @Override
@@ -296,7 +308,9 @@ public class PmsProductServiceImpl implements PmsProductService {
         record.setNewStatus(newStatus);
         PmsProductExample example = new PmsProductExample();
         example.createCriteria().andIdIn(ids);
-        return productMapper.updateByExampleSelective(record, example);
+        int count = productMapper.updateByExampleSelective(record, example);
+        productChangePublisher.publish(ids);
+        return count;
     }
 
     @Override
@@ -305,7 +319,9 @@ public class PmsProductServiceImpl implements PmsProductService {
         record.setDeleteStatus(deleteStatus);
         PmsProductExample example = new PmsProductExample();
         example.createCriteria().andIdIn(ids);
-        return productMapper.updateByExampleSelective(record, example);
+        int count = productMapper.updateByExampleSelective(record, example);
+        productChangePublisher.publish(ids);
+        return count;
     }
 
     @Override
@@ -1,5 +1,6 @@
 package com.macro.mall.service.impl;
 
+import com.macro.mall.component.ProductChangePublisher;
 import com.macro.mall.dao.PmsSkuStockDao;
 import com.macro.mall.mapper.PmsSkuStockMapper;
 import com.macro.mall.model.PmsSkuStock;
@@ -9,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,6 +23,8 @@ public class PmsSkuStockServiceImpl implements PmsSkuStockService {
     private PmsSkuStockMapper skuStockMapper;
     @Autowired
     private PmsSkuStockDao skuStockDao;
+    @Autowired
+    private ProductChangePublisher productChangePublisher;
 
     @Override
     public List<PmsSkuStock> getList(Long pid, String keyword) {
@@ -34,6 +38,8 @@ public class PmsSkuStockServiceImpl implements PmsSkuStockService {
 
     @Override
     public int update(Long pid, List<PmsSkuStock> skuStockList) {
-        return skuStockDao.replaceList(skuStockList);
+        int count = skuStockDao.replaceList(skuStockList);
+        productChangePublisher.publish(Collections.singletonList(pid));
+        return count;
     }
 }
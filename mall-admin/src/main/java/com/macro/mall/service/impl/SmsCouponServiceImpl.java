@@ -1,6 +1,8 @@
 package com.macro.mall.service.impl;
 
 import com.github.pagehelper.PageHelper;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
 import com.macro.mall.dao.SmsCouponDao;
 import com.macro.mall.dao.SmsCouponProductCategoryRelationDao;
 import com.macro.mall.dao.SmsCouponProductRelationDao;
@@ -34,6 +36,8 @@ public class SmsCouponServiceImpl implements SmsCouponService {
     private SmsCouponProductCategoryRelationDao productCategoryRelationDao;
     @Autowired
     private SmsCouponDao couponDao;
+    @Autowired
+    private RedisService redisService;
     @Override
     public int create(SmsCouponParam couponParam) {
         couponParam.setCount(couponParam.getPublishCount());
@@ -55,6 +59,8 @@ public class SmsCouponServiceImpl implements SmsCouponService {
             }
             productCategoryRelationDao.insertList(couponParam.getProductCategoryRelationList());
         }
+        //通知前台刷新优惠券索引及商品详情缓存
+        redisService.publishAfterCommit(RedisChannelConstant.COUPON_CHANGE, couponParam.getId().toString());
         return count;
     }
 
@@ -66,6 +72,8 @@ public class SmsCouponServiceImpl implements SmsCouponService {
         deleteProductRelation(id);
         //删除商品分类关联
         deleteProductCategoryRelation(id);
+        //通知前台清除优惠券剩余数量计数器，刷新优惠券索引及商品详情缓存
+        redisService.publishAfterCommit(RedisChannelConstant.COUPON_CHANGE, id.toString());
         return count;
     }
 
@@ -101,6 +109,8 @@ public class SmsCouponServiceImpl implements SmsCouponService {
             deleteProductCategoryRelation(id);
             productCategoryRelationDao.insertList(couponParam.getProductCategoryRelationList());
         }
+        //通知前台按修改后的数量重新加载优惠券剩余数量计数器，刷新优惠券索引及商品详情缓存
+        redisService.publishAfterCommit(RedisChannelConstant.COUPON_CHANGE, id.toString());
         return count;
     }
 
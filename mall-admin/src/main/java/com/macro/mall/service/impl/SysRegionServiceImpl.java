@@ -1,22 +1,39 @@
 package com.macro.mall.service.impl;
 
 import com.macro.mall.common.api.ResultCode;
+import com.macro.mall.common.cache.RegionIndex;
+import com.macro.mall.common.cache.SnapshotHolder;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
 import com.macro.mall.mapper.SysRegionMapper;
 import com.macro.mall.model.SysRegion;
 import com.macro.mall.service.SysRegionService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Service
 public class SysRegionServiceImpl implements SysRegionService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SysRegionServiceImpl.class);
     @Autowired
     private SysRegionMapper regionMapper;
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private SnapshotHolder<RegionIndex<SysRegion>> regionIndexHolder;
+
+    @PostConstruct
+    public void init() {
+        regionIndexHolder = new SnapshotHolder<>("区域索引", this::loadIndex, redisMessageListenerContainer, RedisChannelConstant.REGION_CHANGE);
+    }
 
     @Override
     public int create(SysRegion region) {
@@ -77,206 +94,86 @@ public class SysRegionServiceImpl implements SysRegionService {
             region.setSort(0); // 默认排序值
         }
         
-        return regionMapper.insert(region);
+        int count = regionMapper.insert(region);
+        publishChange();
+        return count;
     }
 
     @Override
     public List<SysRegion> getRegionByCode(String regionCode) {
-        if (regionCode == null || regionCode.length() != 15) {
-            return new ArrayList<>();
-        }
-
-        List<SysRegion> result = new ArrayList<>();
-        Set<String> addedCodes = new HashSet<>();  // 用于跟踪已添加的编码
-        
-        // 计算实际查询的级别深度
-        List<Integer> validLevels = new ArrayList<>();  // 存储所有非000的级别
-        for (int i = 1; i <= 5; i++) {
-            String levelCode = regionCode.substring((i-1)*3, i*3);
-            if (!levelCode.equals("000")) {
-                validLevels.add(i);
-            }
-        }
-        
-        // 如果没有有效级别，返回空列表
-        if (validLevels.isEmpty()) {
-            return result;
-        }
-        
-        // 从第一级开始查询到最后一个有效级别
-        for (int i = 1; i <= validLevels.get(validLevels.size()-1); i++) {
-            // 截取到当前级别的编码，后面补0
-            String currentCode = regionCode.substring(0, i * 3) + "0".repeat(15 - i * 3);
-            
-            // 如果编码已经添加过，跳过
-            if (addedCodes.contains(currentCode)) {
-                continue;
-            }
-            
-            // 查询当前级别的区域
-            SysRegion region = regionMapper.selectByRegionCode(currentCode);
-            if (region != null) {
-                result.add(region);
-                addedCodes.add(currentCode);  // 记录已添加的编码
-            } else {
-                // 如果某一级找不到，就不再继续查找更低级别
-                break;
-            }
-        }
-        
-        return result;
+        return getIndex().listAncestors(regionCode);
     }
 
     @Override
     public String generateRegionCode(String parentCode, Integer regionLevel) {
         // 每个级别占3位，总长度15位
+        String prefix;
+        String maxCode;
         if (regionLevel == 1) {
+            prefix = "";
             // 获取当前最大的省级编码
-            String maxCode = regionMapper.selectMaxCodeByLevel(1);
-            if (maxCode == null) {
-                String code = "001000000000000";
-                // 检查编码是否已存在
-                while (regionMapper.selectByRegionCode(code) != null) {
-                    int nextCode = Integer.parseInt(code.substring(0, 3)) + 1;
-                    code = String.format("%03d000000000000", nextCode);
-                }
-                return code;
-            }
-            // 提取前3位，转为整数后加1
-            int nextCode = Integer.parseInt(maxCode.substring(0, 3)) + 1;
-            String code = String.format("%03d000000000000", nextCode);
-            // 检查编码是否已存在，如果存在则继续递增
-            while (regionMapper.selectByRegionCode(code) != null) {
-                nextCode++;
-                code = String.format("%03d000000000000", nextCode);
-            }
-            return code;
+            maxCode = regionMapper.selectMaxCodeByLevel(1);
         } else {
             if (parentCode == null) {
                 throw new IllegalArgumentException(ResultCode.REGION_PARENT_NOT_FOUND.getMessage());
             }
+            prefix = parentCode.substring(0, (regionLevel - 1) * 3);
             // 根据父级编码和当前级别获取最大编码
-            String maxCode = regionMapper.selectMaxCodeByParentAndLevel(parentCode, regionLevel);
-            if (maxCode == null) {
-                // 如果没有现有编码，返回父级编码+001+后续0
-                String code = parentCode.substring(0, (regionLevel-1)*3) + "001" + "0".repeat(15-regionLevel*3);
-                // 检查编码是否已存在
-                while (regionMapper.selectByRegionCode(code) != null) {
-                    int start = (regionLevel-1)*3;
-                    int nextCode = Integer.parseInt(code.substring(start, start+3)) + 1;
-                    code = parentCode.substring(0, start) + 
-                           String.format("%03d", nextCode) + 
-                           "0".repeat(15-regionLevel*3);
-                }
-                return code;
-            }
-            // 获取当前级别的3位编码
-            int start = (regionLevel-1)*3;
-            int nextCode = Integer.parseInt(maxCode.substring(start, start+3)) + 1;
-            // 组合新编码：父级编码前缀 + 当前级别新编码 + 后续0
-            String code = parentCode.substring(0, start) + 
-                         String.format("%03d", nextCode) + 
-                         "0".repeat(15-regionLevel*3);
-            // 检查编码是否已存在，如果存在则继续递增
-            while (regionMapper.selectByRegionCode(code) != null) {
-                nextCode++;
-                code = parentCode.substring(0, start) + 
-                       String.format("%03d", nextCode) + 
-                       "0".repeat(15-regionLevel*3);
-            }
-            return code;
-        }
+            maxCode = regionMapper.selectMaxCodeByParentAndLevel(parentCode, regionLevel);
+        }
+        // 没有现有编码时从001开始，否则在最大编码的基础上加1
+        int start = (regionLevel - 1) * 3;
+        int nextCode = maxCode == null ? 1 : Integer.parseInt(maxCode.substring(start, start + 3)) + 1;
+        String suffix = "0".repeat(15 - regionLevel * 3);
+        String code = prefix + String.format("%03d", nextCode) + suffix;
+        // 编码已存在时继续递增，先按区域索引跳过已占用的编码，再查询数据库确认
+        RegionIndex<SysRegion> index = getIndex();
+        while (index.getByCode(code) != null || regionMapper.selectByRegionCode(code) != null) {
+            nextCode++;
+            code = prefix + String.format("%03d", nextCode) + suffix;
+        }
+        return code;
     }
 
     @Override
     public String getRegionCodeByAddress(String address) {
-        if (address == null || address.isEmpty()) {
-            return null;
-        }
-        
-        // 分割地址
-        String[] parts = address.split("(?=[省市区县乡镇街道])|(?<=[省市区县乡镇街道])");
-        String result = null;
-        int maxLevel = 0;
-        
-        // 处理分割后的地址部分
-        StringBuilder fullName = new StringBuilder();  // 用于累积完整地址名
-        
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i].trim();
-            if (part.isEmpty() || part.matches("^(省|市|区|县|乡|镇|街道)$")) {
-                if (!fullName.isEmpty() && part.matches("^(省|市|区|县|乡|镇|街道)$")) {
-                    fullName.append(part);
-                    // 尝试查询累积的地址
-                    SysRegion region = regionMapper.selectByRegionName(fullName.toString());
-                    if (region != null && region.getRegionLevel() > maxLevel) {
-                        result = region.getRegionCode();
-                        maxLevel = region.getRegionLevel();
-                    }
-                    fullName.setLength(0);  // 清空，准备下一个地址部分
-                }
-                continue;
-            }
-            
-            fullName.append(part);
-        }
-        
-        // 处理最后一个地址部分（如果有）
-        if (fullName.length() > 0) {
-            SysRegion region = regionMapper.selectByRegionName(fullName.toString());
-            if (region != null && region.getRegionLevel() > maxLevel) {
-                result = region.getRegionCode();
-                maxLevel = region.getRegionLevel();
-            }
-        }
-        
-        return result;
+        SysRegion region = getIndex().resolveAddress(address);
+        return region == null ? null : region.getRegionCode();
     }
 
     @Override
     public List<SysRegion> listByLevel(Integer level) {
-        if (level == null || level < 1 || level > 5) {
+        if (level == null || level < 1 || level > RegionIndex.MAX_LEVEL) {
             return new ArrayList<>();
         }
-        return regionMapper.selectByRegionLevel(level);
+        return getIndex().listByLevel(level);
     }
 
     @Override
     public List<SysRegion> listNextLevel(String regionCode) {
-        if (regionCode == null || regionCode.length() != 15) {
+        if (regionCode == null || regionCode.length() != RegionIndex.CODE_LENGTH) {
             return new ArrayList<>();
         }
         
         // 获取当前区域信息
-        SysRegion currentRegion = regionMapper.selectByRegionCode(regionCode);
+        RegionIndex<SysRegion> index = getIndex();
+        SysRegion currentRegion = index.getByCode(regionCode);
         if (currentRegion == null) {
             return new ArrayList<>();
         }
         
-        // 计算下一级别
-        int nextLevel = currentRegion.getRegionLevel() + 1;
-        
         // 如果当前是区县级(3级)，则下一级可以是街道(5级)，跳过乡镇(4级)
         if (currentRegion.getRegionLevel() == 3) {
-            List<SysRegion> regions = regionMapper.selectByParentCode(regionCode);
-            // 按sort和id排序
-            regions.sort((a, b) -> {
-                if (a.getSort() == null || b.getSort() == null) {
-                    return a.getId().compareTo(b.getId());
-                }
-                int sortCompare = a.getSort().compareTo(b.getSort());
-                return sortCompare != 0 ? sortCompare : a.getId().compareTo(b.getId());
-            });
-            return regions;
+            return index.listChildren(regionCode);
         }
         
         // 如果已经是最后一级(5级)或者超出范围，返回空列表
-        if (nextLevel > 5) {
+        int nextLevel = currentRegion.getRegionLevel() + 1;
+        if (nextLevel > RegionIndex.MAX_LEVEL) {
             return new ArrayList<>();
         }
         
-        // 查询下一级区域列表
-        return regionMapper.selectByParentCodeAndLevel(regionCode, nextLevel);
+        return index.listChildren(regionCode, nextLevel);
     }
 
     @Override
@@ -303,7 +200,9 @@ public class SysRegionServiceImpl implements SysRegionService {
             }
         }
         
-        return regionMapper.updateById(updateRegion);
+        int count = regionMapper.updateById(updateRegion);
+        publishChange();
+        return count;
     }
 
     @Override
@@ -320,6 +219,29 @@ public class SysRegionServiceImpl implements SysRegionService {
             throw new IllegalArgumentException("存在下级区域，无法删除");
         }
         
-        return regionMapper.deleteById(id);
+        int count = regionMapper.deleteById(id);
+        publishChange();
+        return count;
+    }
+
+    private RegionIndex<SysRegion> getIndex() {
+        return regionIndexHolder.get();
+    }
+
+    private RegionIndex<SysRegion> loadIndex() {
+        return new RegionIndex<>(regionMapper.selectAll(), SysRegion::getRegionCode, SysRegion::getParentCode,
+                SysRegion::getRegionName, SysRegion::getRegionLevel, region -> Integer.valueOf(1).equals(region.getStatus()));
+    }
+
+    /**
+     * 通知所有节点（包括本节点）重建区域索引，存在事务时在事务提交后发送
+     */
+    private void publishChange() {
+        try {
+            redisService.publishAfterCommit(RedisChannelConstant.REGION_CHANGE, "rebuild");
+        } catch (Exception e) {
+            regionIndexHolder.clear();
+            LOGGER.warn("发送区域变更通知失败", e);
+        }
     }
-} 
\ No newline at end of file
+}
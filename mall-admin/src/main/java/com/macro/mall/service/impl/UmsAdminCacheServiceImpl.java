@@ -1,43 +1,96 @@
 package com.macro.mall.service.impl;
 
+import com.macro.mall.common.cache.TwoLevelCache;
 import com.macro.mall.common.service.RedisService;
 import com.macro.mall.model.UmsAdmin;
+import com.macro.mall.model.UmsResource;
 import com.macro.mall.service.UmsAdminCacheService;
-import com.macro.mall.service.UmsAdminService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * UmsAdminCacheService实现类
+ * 后台用户信息及角色资源列表使用本地缓存+Redis二级缓存，变更时通知所有节点清除本地缓存
  * Created by macro on 2020/3/13.
  */
 @Service
 public class UmsAdminCacheServiceImpl implements UmsAdminCacheService {
     @Autowired
     private RedisService redisService;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private MeterRegistry meterRegistry;
     @Value("${redis.database}")
     private String REDIS_DATABASE;
     @Value("${redis.expire.common}")
     private Long REDIS_EXPIRE;
     @Value("${redis.key.admin}")
     private String REDIS_KEY_ADMIN;
+    @Value("${redis.key.roleResource}")
+    private String REDIS_KEY_ROLE_RESOURCE;
+    @Value("${admin.cache.maximumSize:1000}")
+    private Long MAXIMUM_SIZE;
+    @Value("${admin.cache.expireAfterWrite:60}")
+    private Long EXPIRE_AFTER_WRITE;
+    private TwoLevelCache<UmsAdmin> adminCache;
+    private TwoLevelCache<List<UmsResource>> roleResourceCache;
+
+    @PostConstruct
+    public void init() {
+        adminCache = new TwoLevelCache<>("adminCache", REDIS_DATABASE + ":" + REDIS_KEY_ADMIN, REDIS_EXPIRE,
+                MAXIMUM_SIZE, EXPIRE_AFTER_WRITE, redisService, redisMessageListenerContainer, meterRegistry);
+        roleResourceCache = new TwoLevelCache<>("roleResourceCache", REDIS_DATABASE + ":" + REDIS_KEY_ROLE_RESOURCE, REDIS_EXPIRE,
+                MAXIMUM_SIZE, EXPIRE_AFTER_WRITE, redisService, redisMessageListenerContainer, meterRegistry);
+    }
 
     @Override
     public void delAdmin(Long adminId) {
-        String key = REDIS_DATABASE + ":" + REDIS_KEY_ADMIN + ":" + adminId;
-        redisService.del(key);
+        adminCache.evict(adminId);
     }
 
     @Override
     public UmsAdmin getAdmin(Long adminId) {
-        String key = REDIS_DATABASE + ":" + REDIS_KEY_ADMIN + ":" + adminId;
-        return (UmsAdmin) redisService.get(key);
+        return adminCache.get(adminId);
     }
 
     @Override
     public void setAdmin(UmsAdmin admin) {
-        String key = REDIS_DATABASE + ":" + REDIS_KEY_ADMIN + ":" + admin.getId();
-        redisService.set(key, admin, REDIS_EXPIRE);
+        adminCache.fill(admin.getId(), admin);
+    }
+
+    @Override
+    public List<UmsResource> getRoleResourceList(Long roleId) {
+        return roleResourceCache.get(roleId);
+    }
+
+    @Override
+    public void setRoleResourceList(Long roleId, List<UmsResource> resourceList) {
+        roleResourceCache.fill(roleId, resourceList);
+    }
+
+    @Override
+    public void delRoleResourceList(Collection<Long> roleIds) {
+        roleIds.forEach(roleResourceCache::evict);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            //事务提交前其他请求可能重新缓存了旧的资源列表，提交后再删除一次
+            List<Long> roleIdList = new ArrayList<>(roleIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    roleIdList.forEach(roleResourceCache::evict);
+                }
+            });
+        }
     }
 }
@@ -14,6 +14,7 @@ import com.macro.mall.common.constant.AuthConstant;
 import com.macro.mall.common.dto.UserDto;
 import com.macro.mall.common.exception.Asserts;
 import com.macro.mall.dao.UmsAdminRoleRelationDao;
+import com.macro.mall.dao.UmsRoleDao;
 import com.macro.mall.dto.UmsAdminParam;
 import com.macro.mall.dto.UpdateAdminPasswordParam;
 import com.macro.mall.mapper.UmsAdminLoginLogMapper;
@@ -30,6 +31,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
@@ -43,6 +45,10 @@ import java.util.stream.Collectors;
 @Service
 public class UmsAdminServiceImpl implements UmsAdminService {
     private static final Logger LOGGER = LoggerFactory.getLogger(UmsAdminServiceImpl.class);
+    /**
+     * 请求内缓存当前后台用户id的属性名
+     */
+    private static final String CURRENT_ADMIN_ID = UmsAdminServiceImpl.class.getName() + ".currentAdminId";
     @Autowired
     private UmsAdminMapper adminMapper;
     @Autowired
@@ -53,6 +59,8 @@ public class UmsAdminServiceImpl implements UmsAdminService {
     private UmsAdminLoginLogMapper loginLogMapper;
     @Autowired
     private UmsAdminCacheService adminCacheService;
+    @Autowired
+    private UmsRoleDao roleDao;
 
     @Override
     public UmsAdmin getAdminByUsername(String username) {
@@ -215,7 +223,24 @@ public class UmsAdminServiceImpl implements UmsAdminService {
 
     @Override
     public List<UmsResource> getResourceList(Long adminId) {
-        return adminRoleRelationDao.getResourceList(adminId);
+        //按角色获取资源列表，角色资源列表缓存后只在角色分配资源或资源变更时重新查询
+        Map<Long, UmsResource> resourceMap = new LinkedHashMap<>();
+        for (UmsRole role : adminRoleRelationDao.getRoleList(adminId)) {
+            if (role == null || role.getId() == null) {
+                continue;
+            }
+            List<UmsResource> roleResourceList = adminCacheService.getRoleResourceList(role.getId());
+            if (roleResourceList == null) {
+                roleResourceList = roleDao.getResourceListByRoleId(role.getId()).stream()
+                        .filter(resource -> resource != null && resource.getId() != null)
+                        .collect(Collectors.toList());
+                adminCacheService.setRoleResourceList(role.getId(), roleResourceList);
+            }
+            for (UmsResource resource : roleResourceList) {
+                resourceMap.putIfAbsent(resource.getId(), resource);
+            }
+        }
+        return new ArrayList<>(resourceMap.values());
     }
 
     @Override
@@ -243,14 +268,32 @@ public class UmsAdminServiceImpl implements UmsAdminService {
 
     @Override
     public UmsAdmin getCurrentAdmin() {
-        UserDto userDto = (UserDto) StpUtil.getSession().get(AuthConstant.STP_ADMIN_INFO);
-        UmsAdmin admin = adminCacheService.getAdmin(userDto.getId());
+        Long adminId = getCurrentAdminId();
+        UmsAdmin admin = adminCacheService.getAdmin(adminId);
         if (admin == null) {
-            admin = adminMapper.selectByPrimaryKey(userDto.getId());
+            admin = adminMapper.selectByPrimaryKey(adminId);
             adminCacheService.setAdmin(admin);
         }
         return admin;
     }
+
+    /**
+     * 从登录会话中获取当前后台用户id，同一请求内只读取一次会话
+     */
+    private Long getCurrentAdminId() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            Long adminId = (Long) requestAttributes.getAttribute(CURRENT_ADMIN_ID, RequestAttributes.SCOPE_REQUEST);
+            if (adminId != null) {
+                return adminId;
+            }
+        }
+        UserDto userDto = (UserDto) StpUtil.getSession().get(AuthConstant.STP_ADMIN_INFO);
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(CURRENT_ADMIN_ID, userDto.getId(), RequestAttributes.SCOPE_REQUEST);
+        }
+        return userDto.getId();
+    }
     @Override
     public void logout() {
         //先清空缓存
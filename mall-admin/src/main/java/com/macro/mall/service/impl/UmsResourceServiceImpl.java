@@ -5,7 +5,9 @@ import com.github.pagehelper.PageHelper;
 import com.macro.mall.common.constant.AuthConstant;
 import com.macro.mall.common.service.RedisService;
 import com.macro.mall.mapper.UmsResourceMapper;
+import com.macro.mall.mapper.UmsRoleResourceRelationMapper;
 import com.macro.mall.model.*;
+import com.macro.mall.service.UmsAdminCacheService;
 import com.macro.mall.service.UmsResourceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,6 +25,10 @@ public class UmsResourceServiceImpl implements UmsResourceService {
     private UmsResourceMapper resourceMapper;
     @Autowired
     private RedisService redisService;
+    @Autowired
+    private UmsRoleResourceRelationMapper roleResourceRelationMapper;
+    @Autowired
+    private UmsAdminCacheService adminCacheService;
     @Value("${spring.application.name}")
     private String applicationName;
     @Override
@@ -37,6 +43,7 @@ public class UmsResourceServiceImpl implements UmsResourceService {
     public int update(Long id, UmsResource umsResource) {
         umsResource.setId(id);
         int count = resourceMapper.updateByPrimaryKeySelective(umsResource);
+        delRoleResourceCache(id);
         initPathResourceMap();
         return count;
     }
@@ -49,10 +56,25 @@ public class UmsResourceServiceImpl implements UmsResourceService {
     @Override
     public int delete(Long id) {
         int count = resourceMapper.deleteByPrimaryKey(id);
+        delRoleResourceCache(id);
         initPathResourceMap();
         return count;
     }
 
+    /**
+     * 删除拥有该资源的角色的资源列表缓存
+     */
+    private void delRoleResourceCache(Long resourceId) {
+        UmsRoleResourceRelationExample example = new UmsRoleResourceRelationExample();
+        example.createCriteria().andResourceIdEqualTo(resourceId);
+        List<UmsRoleResourceRelation> relationList = roleResourceRelationMapper.selectByExample(example);
+        Set<Long> roleIds = new HashSet<>();
+        for (UmsRoleResourceRelation relation : relationList) {
+            roleIds.add(relation.getRoleId());
+        }
+        adminCacheService.delRoleResourceList(roleIds);
+    }
+
     @Override
     public List<UmsResource> list(Long categoryId, String nameKeyword, String urlKeyword, Integer pageSize, Integer pageNum) {
         PageHelper.startPage(pageNum,pageSize);
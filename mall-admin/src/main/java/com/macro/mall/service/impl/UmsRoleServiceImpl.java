@@ -6,12 +6,14 @@ import com.macro.mall.mapper.UmsRoleMapper;
 import com.macro.mall.mapper.UmsRoleMenuRelationMapper;
 import com.macro.mall.mapper.UmsRoleResourceRelationMapper;
 import com.macro.mall.model.*;
+import com.macro.mall.service.UmsAdminCacheService;
 import com.macro.mall.service.UmsResourceService;
 import com.macro.mall.service.UmsRoleService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -31,6 +33,8 @@ public class UmsRoleServiceImpl implements UmsRoleService {
     private UmsRoleDao roleDao;
     @Autowired
     private UmsResourceService resourceService;
+    @Autowired
+    private UmsAdminCacheService adminCacheService;
     @Override
     public int create(UmsRole role) {
         role.setCreateTime(new Date());
@@ -50,6 +54,7 @@ public class UmsRoleServiceImpl implements UmsRoleService {
         UmsRoleExample example = new UmsRoleExample();
         example.createCriteria().andIdIn(ids);
         int count = roleMapper.deleteByExample(example);
+        adminCacheService.delRoleResourceList(ids);
         resourceService.initPathResourceMap();
         return count;
     }
@@ -113,6 +118,7 @@ public class UmsRoleServiceImpl implements UmsRoleService {
             relation.setResourceId(resourceId);
             roleResourceRelationMapper.insert(relation);
         }
+        adminCacheService.delRoleResourceList(Collections.singletonList(roleId));
         resourceService.initPathResourceMap();
         return resourceIds.size();
     }
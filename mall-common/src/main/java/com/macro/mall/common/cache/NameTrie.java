@@ -0,0 +1,88 @@
+package com.macro.mall.common.cache;
+
+import java.util.*;
+
+/**
+ * 名称前缀树，用于在文本中按最长匹配查找已知名称
+ * 构建完成后不再修改，可以被多个线程同时读取
+ * Created by macro on 2026/10/18.
+ */
+public class NameTrie<T> {
+    private final Node<T> root = new Node<>();
+
+    /**
+     * 添加名称，同名的多个值按添加顺序保存
+     */
+    public void put(String name, T value) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        Node<T> node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.children.computeIfAbsent(name.charAt(i), key -> new Node<>());
+        }
+        node.values.add(value);
+    }
+
+    /**
+     * 获取与名称完全相同的值，不存在时返回空列表
+     */
+    public List<T> get(String name) {
+        Node<T> node = root;
+        for (int i = 0; i < name.length() && node != null; i++) {
+            node = node.children.get(name.charAt(i));
+        }
+        return node == null ? Collections.emptyList() : Collections.unmodifiableList(node.values);
+    }
+
+    /**
+     * 从文本的指定位置开始查找最长的已知名称
+     * @return 未找到时返回null
+     */
+    public Match<T> matchLongest(String text, int start) {
+        Node<T> node = root;
+        Match<T> match = null;
+        for (int i = start; i < text.length(); i++) {
+            node = node.children.get(text.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (!node.values.isEmpty()) {
+                match = new Match<>(i + 1 - start, Collections.unmodifiableList(node.values));
+            }
+        }
+        return match;
+    }
+
+    private static class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<>(4);
+        private final List<T> values = new ArrayList<>(1);
+    }
+
+    /**
+     * 匹配结果
+     */
+    public static class Match<T> {
+        private final int length;
+        private final List<T> values;
+
+        Match(int length, List<T> values) {
+            this.length = length;
+            this.values = values;
+        }
+
+        /**
+         * 匹配到的名称长度
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * 该名称对应的所有值
+         */
+        public List<T> getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.macro.mall.common.cache;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 区域索引，包含编码->区域、父级编码->下级区域、级别->区域及区域名称前缀树
+ * 构建完成后不再修改，区域变更时整体替换
+ * Created by macro on 2026/10/18.
+ */
+public class RegionIndex<R> {
+    /**
+     * 区域编码长度，每级占3位，共5级
+     */
+    public static final int CODE_LENGTH = 15;
+    public static final int MAX_LEVEL = 5;
+    private static final int SEGMENT_LENGTH = 3;
+    private static final String EMPTY_SEGMENT = "000";
+    /**
+     * 解析地址前去掉的空白及分隔符
+     */
+    private static final Pattern ADDRESS_IGNORED = Pattern.compile("[\\s,，、]+");
+    private final Function<R, String> codeGetter;
+    private final Function<R, Integer> levelGetter;
+    private final Map<String, R> codeMap;
+    private final Map<String, List<R>> enabledChildrenMap;
+    private final Map<Integer, List<R>> levelMap;
+    private final NameTrie<R> nameTrie = new NameTrie<>();
+
+    /**
+     * @param regionList   所有区域，需已按展示顺序排列，下级区域及同级区域保持该顺序
+     * @param codeGetter   获取区域编码
+     * @param parentGetter 获取父级区域编码
+     * @param nameGetter   获取区域名称
+     * @param levelGetter  获取区域级别
+     * @param enabled      区域是否启用
+     */
+    public RegionIndex(List<R> regionList, Function<R, String> codeGetter, Function<R, String> parentGetter,
+                       Function<R, String> nameGetter, Function<R, Integer> levelGetter, Predicate<R> enabled) {
+        this.codeGetter = codeGetter;
+        this.levelGetter = levelGetter;
+        Map<String, R> codeMap = new HashMap<>(regionList.size() * 2);
+        for (R region : regionList) {
+            codeMap.put(codeGetter.apply(region), region);
+            nameTrie.put(nameGetter.apply(region), region);
+        }
+        this.codeMap = Collections.unmodifiableMap(codeMap);
+        this.enabledChildrenMap = regionList.stream()
+                .filter(region -> parentGetter.apply(region) != null && enabled.test(region))
+                .collect(Collectors.groupingBy(parentGetter,
+                        Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+        this.levelMap = regionList.stream()
+                .filter(region -> levelGetter.apply(region) != null)
+                .collect(Collectors.groupingBy(levelGetter,
+                        Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+    }
+
+    /**
+     * 根据区域编码获取区域，不存在时返回null
+     */
+    public R getByCode(String regionCode) {
+        return codeMap.get(regionCode);
+    }
+
+    /**
+     * 获取区域编码对应的各级区域，从省级开始，某一级不存在时只返回其上级
+     */
+    public List<R> listAncestors(String regionCode) {
+        List<R> result = new ArrayList<>();
+        if (regionCode == null || regionCode.length() != CODE_LENGTH) {
+            return result;
+        }
+        //最后一个非000的级别
+        int deepestLevel = 0;
+        for (int i = 1; i <= MAX_LEVEL; i++) {
+            if (!EMPTY_SEGMENT.equals(getSegment(regionCode, i))) {
+                deepestLevel = i;
+            }
+        }
+        for (int i = 1; i <= deepestLevel; i++) {
+            String currentCode = regionCode.substring(0, i * SEGMENT_LENGTH) + "0".repeat(CODE_LENGTH - i * SEGMENT_LENGTH);
+            R region = codeMap.get(currentCode);
+            if (region == null) {
+                break;
+            }
+            //跨级的区域各级编码相同，只添加一次
+            if (result.isEmpty() || result.get(result.size() - 1) != region) {
+                result.add(region);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取指定级别的所有区域
+     */
+    public List<R> listByLevel(Integer level) {
+        return levelMap.getOrDefault(level, Collections.emptyList());
+    }
+
+    /**
+     * 获取启用的直接下级区域
+     */
+    public List<R> listChildren(String parentCode) {
+        return enabledChildrenMap.getOrDefault(parentCode, Collections.emptyList());
+    }
+
+    /**
+     * 获取启用的指定级别的直接下级区域
+     */
+    public List<R> listChildren(String parentCode, Integer level) {
+        return listChildren(parentCode).stream()
+                .filter(region -> level.equals(levelGetter.apply(region)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 根据区域名称获取区域，不存在时返回null
+     */
+    public R getByName(String regionName) {
+        List<R> regionList = nameTrie.get(regionName);
+        return regionList.isEmpty() ? null : regionList.get(0);
+    }
+
+    /**
+     * 在地址中按最长匹配查找区域名称，返回级别最低的区域；
+     * 已匹配到区域后只接受其下级区域，其他省市的同名区域会被跳过
+     * @return 未匹配到任何区域时返回null
+     */
+    public R resolveAddress(String address) {
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+        String text = ADDRESS_IGNORED.matcher(address).replaceAll("");
+        R result = null;
+        int i = 0;
+        while (i < text.length()) {
+            NameTrie.Match<R> match = nameTrie.matchLongest(text, i);
+            if (match == null) {
+                i++;
+                continue;
+            }
+            R candidate = selectCandidate(match.getValues(), result);
+            if (candidate != null && (result == null || levelGetter.apply(candidate) > levelGetter.apply(result))) {
+                result = candidate;
+            }
+            i += match.getLength();
+        }
+        return result;
+    }
+
+    public int size() {
+        return codeMap.size();
+    }
+
+    /**
+     * 选择已匹配区域的下级区域，没有已匹配区域时选择第一个
+     * @return 同名区域都不在已匹配区域之下时返回null
+     */
+    private R selectCandidate(List<R> regionList, R parent) {
+        if (parent == null) {
+            return regionList.get(0);
+        }
+        String prefix = codeGetter.apply(parent).substring(0, levelGetter.apply(parent) * SEGMENT_LENGTH);
+        for (R region : regionList) {
+            if (codeGetter.apply(region).startsWith(prefix)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    private static String getSegment(String regionCode, int level) {
+        return regionCode.substring((level - 1) * SEGMENT_LENGTH, level * SEGMENT_LENGTH);
+    }
+}
@@ -0,0 +1,80 @@
+package com.macro.mall.common.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.function.Supplier;
+
+/**
+ * 本地不可变快照的持有者
+ * 首次访问时加载，收到变更通知或定时任务调用refresh时整体替换；
+ * 收到通知后重建失败时丢弃旧快照，由下次访问重新加载
+ * Created by macro on 2026/10/18.
+ */
+public class SnapshotHolder<T> implements MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotHolder.class);
+    private final String name;
+    private final Supplier<T> loader;
+    private volatile T snapshot;
+
+    /**
+     * @param name     快照名称，用于日志
+     * @param loader   从数据库构建快照
+     * @param channels 触发重建的Redis频道
+     */
+    public SnapshotHolder(String name, Supplier<T> loader, RedisMessageListenerContainer listenerContainer, String... channels) {
+        this.name = name;
+        this.loader = loader;
+        for (String channel : channels) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        }
+    }
+
+    /**
+     * 获取当前快照，尚未加载时同步加载，并发的首次访问只加载一次
+     */
+    public T get() {
+        T current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = refresh();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 重新加载并替换快照，失败时保留旧快照并抛出异常
+     */
+    public T refresh() {
+        T current = loader.get();
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     * 丢弃当前快照，下次访问时重新加载
+     */
+    public void clear() {
+        snapshot = null;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            refresh();
+            LOGGER.debug("收到变更通知，已重建{}", name);
+        } catch (Exception e) {
+            //数据已变更，不能继续使用旧快照
+            snapshot = null;
+            LOGGER.error("重建{}失败", name, e);
+        }
+    }
+}
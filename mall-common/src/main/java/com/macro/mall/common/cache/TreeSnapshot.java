@@ -0,0 +1,59 @@
+package com.macro.mall.common.cache;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 树形数据的不可变快照
+ * 一次遍历建立id->节点及parentId->子节点索引，构建完成后不再修改，数据变更时整体替换
+ * Created by macro on 2026/10/18.
+ */
+public class TreeSnapshot<T> {
+    private final Long rootParentId;
+    private final Map<Long, T> nodeMap;
+    private final Map<Long, List<T>> childrenMap;
+
+    /**
+     * @param items          所有节点，子节点保持传入顺序
+     * @param idGetter       获取节点id
+     * @param parentIdGetter 获取父节点id
+     * @param rootParentId   一级节点的父节点id
+     */
+    public TreeSnapshot(Collection<T> items, Function<T, Long> idGetter, Function<T, Long> parentIdGetter, Long rootParentId) {
+        this.rootParentId = rootParentId;
+        Map<Long, T> nodeMap = new HashMap<>(items.size() * 2);
+        Map<Long, List<T>> childrenMap = new HashMap<>();
+        for (T item : items) {
+            nodeMap.put(idGetter.apply(item), item);
+            childrenMap.computeIfAbsent(parentIdGetter.apply(item), key -> new ArrayList<>()).add(item);
+        }
+        childrenMap.replaceAll((key, children) -> Collections.unmodifiableList(children));
+        this.nodeMap = Collections.unmodifiableMap(nodeMap);
+        this.childrenMap = Collections.unmodifiableMap(childrenMap);
+    }
+
+    /**
+     * 获取一级节点
+     */
+    public List<T> getRoots() {
+        return getChildren(rootParentId);
+    }
+
+    /**
+     * 获取指定节点的直接子节点，不存在时返回空列表
+     */
+    public List<T> getChildren(Long parentId) {
+        return childrenMap.getOrDefault(parentId, Collections.emptyList());
+    }
+
+    /**
+     * 获取指定节点，不存在时返回null
+     */
+    public T get(Long id) {
+        return nodeMap.get(id);
+    }
+
+    public int size() {
+        return nodeMap.size();
+    }
+}
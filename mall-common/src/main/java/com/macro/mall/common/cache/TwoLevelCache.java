@@ -0,0 +1,228 @@
+package com.macro.mall.common.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二级缓存：本地Caffeine缓存为一级，Redis为二级
+ * 每次写入或删除都会生成新的版本号并通过Redis发布订阅通知所有节点，
+ * 各节点丢弃版本号更旧的本地缓存，并且不会把失效之前从Redis读到的旧值放入本地缓存；
+ * 未命中后从数据库读取的值通过fill回填，沿用未命中时的版本号且不通知其他节点
+ * Created by macro on 2026/10/18.
+ */
+public class TwoLevelCache<V> implements MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwoLevelCache.class);
+    private final String name;
+    private final String keyPrefix;
+    private final long expireSeconds;
+    private final RedisService redisService;
+    private final Cache<String, CacheEntry> localCache;
+    /**
+     * 最近收到的失效版本号，保留时长与本地缓存相同
+     */
+    private final Cache<String, Long> invalidatedVersions;
+    /**
+     * 未命中时的版本号，按缓存key及线程区分，回填时版本号已变化说明加载期间缓存被删除
+     * 同一节点多个线程同时未命中时各自使用自己读到的版本号，后未命中的线程不会掩盖先前线程加载期间发生的删除
+     */
+    private final Cache<String, Long> missVersions;
+    private final Counter remoteHitCounter;
+    private final Counter remoteMissCounter;
+
+    /**
+     * @param name               缓存名称，用于区分失效通知及监控指标
+     * @param keyPrefix          Redis中的key前缀，完整key为"前缀:缓存key"
+     * @param expireSeconds      Redis中的过期时间（秒）
+     * @param localMaximumSize   本地缓存数量上限
+     * @param localExpireSeconds 本地缓存过期时间（秒）
+     */
+    public TwoLevelCache(String name, String keyPrefix, long expireSeconds, long localMaximumSize, long localExpireSeconds,
+                         RedisService redisService, RedisMessageListenerContainer listenerContainer, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.keyPrefix = keyPrefix;
+        this.expireSeconds = expireSeconds;
+        this.redisService = redisService;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.invalidatedVersions = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        this.missVersions = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        //本地缓存命中率通过cache.gets等指标暴露，Redis的命中情况单独计数
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, name);
+        this.remoteHitCounter = meterRegistry.counter("mall.cache.remote", "cache", name, "result", "hit");
+        this.remoteMissCounter = meterRegistry.counter("mall.cache.remote", "cache", name, "result", "miss");
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisChannelConstant.CACHE_INVALIDATE));
+    }
+
+    /**
+     * 获取缓存，本地缓存未命中时从Redis获取
+     * @return 缓存不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        String id = key.toString();
+        CacheEntry entry = localCache.getIfPresent(id);
+        if (entry != null) {
+            return (V) entry.getValue();
+        }
+        Object cached = redisService.get(getRedisKey(id));
+        if (!(cached instanceof CacheEntry)) {
+            remoteMissCounter.increment();
+            missVersions.put(getMissKey(id), currentVersion(id));
+            return null;
+        }
+        remoteHitCounter.increment();
+        entry = (CacheEntry) cached;
+        Long invalidatedVersion = invalidatedVersions.getIfPresent(id);
+        if (invalidatedVersion == null || entry.getVersion() >= invalidatedVersion) {
+            localCache.put(id, entry);
+        }
+        return (V) entry.getValue();
+    }
+
+    /**
+     * 设置缓存并通知其他节点丢弃旧的本地缓存
+     */
+    public void put(Object key, V value) {
+        String id = key.toString();
+        CacheEntry entry = new CacheEntry(nextVersion(id), value);
+        redisService.set(getRedisKey(id), entry, expireSeconds);
+        localCache.put(id, entry);
+        publish(id, entry.getVersion());
+    }
+
+    /**
+     * 未命中后回填从数据库读取的值，不生成新版本号也不通知其他节点
+     * 从未命中到回填期间缓存被删除时放弃回填，版本号比较与写入Redis在同一个脚本中完成，避免删除恰好发生在两者之间时写入加载到的旧值
+     */
+    public void fill(Object key, V value) {
+        String id = key.toString();
+        Long missVersion = missVersions.asMap().remove(getMissKey(id));
+        long version = missVersion != null ? missVersion : currentVersion(id);
+        CacheEntry entry = new CacheEntry(version, value);
+        if (!redisService.setIfVersion(getRedisKey(id), entry, expireSeconds, getVersionKey(id), version)) {
+            return;
+        }
+        Long invalidatedVersion = invalidatedVersions.getIfPresent(id);
+        if (invalidatedVersion == null || version >= invalidatedVersion) {
+            localCache.put(id, entry);
+        }
+    }
+
+    /**
+     * 删除缓存并通知所有节点删除本地缓存
+     */
+    public void evict(Object key) {
+        String id = key.toString();
+        long version = nextVersion(id);
+        redisService.del(getRedisKey(id));
+        invalidateLocal(id, version);
+        publish(id, version);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 3);
+        if (parts.length != 3 || !name.equals(parts[0])) {
+            return;
+        }
+        try {
+            invalidateLocal(parts[2], Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("忽略格式错误的缓存失效通知：{}", parts[1]);
+        }
+    }
+
+    /**
+     * 删除版本号小于指定版本的本地缓存，并记录失效版本号
+     */
+    private void invalidateLocal(String id, long version) {
+        invalidatedVersions.asMap().merge(id, version, Math::max);
+        localCache.asMap().computeIfPresent(id, (k, entry) -> entry.getVersion() < version ? null : entry);
+    }
+
+    /**
+     * 版本号计数器比缓存多保留一个过期周期，避免缓存仍存在时版本号被重置
+     */
+    private long nextVersion(String id) {
+        String versionKey = getVersionKey(id);
+        Long version = redisService.incr(versionKey, 1);
+        redisService.expire(versionKey, expireSeconds * 2);
+        return version;
+    }
+
+    private long currentVersion(String id) {
+        Object version = redisService.get(getVersionKey(id));
+        return version == null ? 0L : Long.parseLong(version.toString());
+    }
+
+    private void publish(String id, long version) {
+        redisService.publish(RedisChannelConstant.CACHE_INVALIDATE, name + ":" + version + ":" + id);
+    }
+
+    private String getRedisKey(String id) {
+        return keyPrefix + ":" + id;
+    }
+
+    private String getMissKey(String id) {
+        return id + ":" + Thread.currentThread().getId();
+    }
+
+    private String getVersionKey(String id) {
+        return getRedisKey(id) + ":version";
+    }
+
+    /**
+     * 带版本号的缓存值
+     */
+    public static class CacheEntry {
+        private long version;
+        private Object value;
+
+        public CacheEntry() {
+        }
+
+        public CacheEntry(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public void setVersion(long version) {
+            this.version = version;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public void setValue(Object value) {
+            this.value = value;
+        }
+    }
+}
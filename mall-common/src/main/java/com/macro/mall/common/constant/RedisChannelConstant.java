@@ -0,0 +1,58 @@
+package com.macro.mall.common.constant;
+
+/**
+ * Redis发布订阅频道常量定义
+ * Created by macro on 2026/10/18.
+ */
+public interface RedisChannelConstant {
+
+    /**
+     * 订单设置、积分使用设置变更频道，消息内容为变更的设置名称
+     */
+    String SETTING_CHANGE = "mall:channel:settingChange";
+
+    /**
+     * 订单设置
+     */
+    String SETTING_ORDER = "orderSetting";
+
+    /**
+     * 积分使用设置
+     */
+    String SETTING_INTEGRATION_CONSUME = "integrationConsumeSetting";
+
+    /**
+     * 优惠券变更频道，消息内容为变更的优惠券id
+     */
+    String COUPON_CHANGE = "mall:channel:couponChange";
+
+    /**
+     * 商品变更频道，消息内容为以逗号分隔的商品id
+     */
+    String PRODUCT_CHANGE = "mall:channel:productChange";
+
+    /**
+     * 商品分类变更频道，收到消息后重建商品分类树
+     */
+    String CATEGORY_CHANGE = "mall:channel:categoryChange";
+
+    /**
+     * 区域变更频道，收到消息后重建区域索引
+     */
+    String REGION_CHANGE = "mall:channel:regionChange";
+
+    /**
+     * 二级缓存失效频道，消息内容为"缓存名称:版本号:缓存key"
+     */
+    String CACHE_INVALIDATE = "mall:channel:cacheInvalidate";
+
+    /**
+     * 首页内容变更频道，后台修改首页内容时发送重建消息，前台重建完成后发送新快照的ETag
+     */
+    String HOME_CONTENT_CHANGE = "mall:channel:homeContentChange";
+
+    /**
+     * 首页内容重建消息
+     */
+    String HOME_CONTENT_REBUILD = "rebuild";
+}
@@ -179,4 +179,22 @@ public interface RedisService {
      * 从List结构中移除属性
      */
     Long lRemove(String key, long count, Object value);
-}
\ No newline at end of file
+
+    /**
+     * 版本号与指定版本相同时设置属性，比较与写入在同一个脚本中完成
+     * @param versionKey 版本号计数器的key，不存在时视为0
+     * @return 是否设置成功
+     */
+    boolean setIfVersion(String key, Object value, long time, String versionKey, long version);
+
+    /**
+     * 向指定频道发布消息，消息内容按UTF-8字符串原样发送
+     */
+    void publish(String channel, String message);
+
+    /**
+     * 当前存在事务时在事务提交后发布消息，否则立即发布
+     * 事务提交后发布失败时只记录日志，不影响已提交的事务
+     */
+    void publishAfterCommit(String channel, String message);
+}
@@ -1,10 +1,18 @@
 package com.macro.mall.common.service.impl;
 
 import com.macro.mall.common.service.RedisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,6 +23,14 @@ import java.util.concurrent.TimeUnit;
  * Created by macro on 2020/3/3.
  */
 public class RedisServiceImpl implements RedisService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisServiceImpl.class);
+    /**
+     * 版本号未变化时设置属性：KEYS[1]为属性key，KEYS[2]为版本号key；ARGV[1]为属性值，ARGV[2]为版本号，ARGV[3]为过期时间（秒）
+     */
+    private static final DefaultRedisScript<Long> SET_IF_VERSION_SCRIPT = new DefaultRedisScript<>(
+            "if tonumber(redis.call('GET', KEYS[2]) or '0') ~= tonumber(ARGV[2]) then return 0 end\n" +
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3])\n" +
+            "return 1", Long.class);
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
@@ -195,4 +211,37 @@ public class RedisServiceImpl implements RedisService {
     public Long lRemove(String key, long count, Object value) {
         return redisTemplate.opsForList().remove(key, count, value);
     }
+
+    @Override
+    public boolean setIfVersion(String key, Object value, long time, String versionKey, long version) {
+        //参数与set相同经过值序列化器，写入的内容与set一致
+        Long result = redisTemplate.execute(SET_IF_VERSION_SCRIPT, Arrays.asList(key, versionKey), value, version, time);
+        return result != null && result == 1;
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        //不经过值序列化器，避免订阅方收到带引号的JSON字符串
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(
+                channel.getBytes(StandardCharsets.UTF_8), message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void publishAfterCommit(String channel, String message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            //事务提交前订阅方可能读到旧数据，回滚时也不应通知
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        publish(channel, message);
+                    } catch (Exception e) {
+                        LOGGER.warn("事务提交后发布消息失败，channel：{}，message：{}", channel, message, e);
+                    }
+                }
+            });
+        } else {
+            publish(channel, message);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package com.macro.mall.common.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 名称前缀树单元测试
+ * Created by macro on 2026/10/18.
+ */
+public class NameTrieTests {
+
+    @Test
+    public void testGetExactName() {
+        NameTrie<Integer> trie = new NameTrie<>();
+        trie.put("广州市", 1);
+        trie.put("鼓楼区", 2);
+        trie.put("鼓楼区", 3);
+        trie.put("", 4);
+        trie.put(null, 5);
+        assertEquals(Collections.singletonList(1), trie.get("广州市"));
+        //同名的值按添加顺序返回
+        assertEquals(Arrays.asList(2, 3), trie.get("鼓楼区"));
+        //名称前缀及不存在的名称不返回值
+        assertTrue(trie.get("广州").isEmpty());
+        assertTrue(trie.get("广州市天河区").isEmpty());
+    }
+
+    @Test
+    public void testMatchLongest() {
+        NameTrie<String> trie = new NameTrie<>();
+        trie.put("广州", "short");
+        trie.put("广州市", "long");
+        trie.put("天河区", "district");
+        NameTrie.Match<String> match = trie.matchLongest("广州市天河区", 0);
+        assertEquals(3, match.getLength());
+        assertEquals(Collections.singletonList("long"), match.getValues());
+        //较长的名称不完整时退回到较短的名称
+        match = trie.matchLongest("广州天河区", 0);
+        assertEquals(2, match.getLength());
+        assertEquals(Collections.singletonList("short"), match.getValues());
+        match = trie.matchLongest("广州市天河区", 3);
+        assertEquals(3, match.getLength());
+        assertEquals(Collections.singletonList("district"), match.getValues());
+        assertNull(trie.matchLongest("广州市天河区", 1));
+        assertNull(trie.matchLongest("广", 0));
+    }
+}
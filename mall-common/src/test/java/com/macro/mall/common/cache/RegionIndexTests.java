@@ -0,0 +1,119 @@
+package com.macro.mall.common.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 区域索引单元测试
+ * Created by macro on 2026/10/18.
+ */
+public class RegionIndexTests {
+    private RegionIndex<Region> regionIndex;
+
+    @BeforeEach
+    public void setUp() {
+        List<Region> regionList = Arrays.asList(
+                new Region("032000000000000", null, "江苏省", 1, true),
+                new Region("032001000000000", "032000000000000", "南京市", 2, true),
+                new Region("032001002000000", "032001000000000", "鼓楼区", 3, true),
+                new Region("035000000000000", null, "福建省", 1, true),
+                new Region("035001000000000", "035000000000000", "福州市", 2, true),
+                new Region("035001001000000", "035001000000000", "鼓楼区", 3, true),
+                new Region("044000000000000", null, "广东省", 1, true),
+                new Region("044001000000000", "044000000000000", "广州市", 2, true),
+                new Region("044001001000000", "044001000000000", "天河区", 3, true),
+                new Region("044001002000000", "044001000000000", "越秀区", 3, false));
+        regionIndex = new RegionIndex<>(regionList, Region::getCode, Region::getParentCode, Region::getName,
+                Region::getLevel, Region::getEnabled);
+    }
+
+    @Test
+    public void testResolveAddress() {
+        assertEquals("044001001000000", regionIndex.resolveAddress("广东省广州市天河区天河路385号").getCode());
+        //忽略地址中的空白及分隔符
+        assertEquals("044001001000000", regionIndex.resolveAddress("广东省 广州市，天河区").getCode());
+        assertEquals("044001000000000", regionIndex.resolveAddress("广州市某某路1号").getCode());
+        assertNull(regionIndex.resolveAddress("某某路1号"));
+        assertNull(regionIndex.resolveAddress(""));
+        assertNull(regionIndex.resolveAddress(null));
+    }
+
+    @Test
+    public void testResolveAddressAcrossProvinces() {
+        //同名区域按已匹配的上级区域选择，不会选到其他省的鼓楼区
+        assertEquals("035001001000000", regionIndex.resolveAddress("福建省福州市鼓楼区五四路").getCode());
+        assertEquals("032001002000000", regionIndex.resolveAddress("江苏省鼓楼区中山路").getCode());
+        //其他省的市不会替换已匹配的省
+        assertEquals("035000000000000", regionIndex.resolveAddress("福建省南京市").getCode());
+        assertEquals("044001000000000", regionIndex.resolveAddress("广东省广州市鼓楼区").getCode());
+        //没有上级区域时选择第一个同名区域
+        assertEquals("032001002000000", regionIndex.resolveAddress("鼓楼区").getCode());
+    }
+
+    @Test
+    public void testListAncestors() {
+        assertEquals(Arrays.asList("广东省", "广州市", "天河区"), names(regionIndex.listAncestors("044001001000000")));
+        assertEquals(Arrays.asList("广东省", "广州市"), names(regionIndex.listAncestors("044001000000000")));
+        //某一级不存在时只返回其上级
+        assertEquals(Arrays.asList("广东省", "广州市"), names(regionIndex.listAncestors("044001009000000")));
+        assertTrue(regionIndex.listAncestors("044").isEmpty());
+        assertTrue(regionIndex.listAncestors(null).isEmpty());
+    }
+
+    @Test
+    public void testListChildrenSkipsDisabled() {
+        assertEquals(Arrays.asList("天河区"), names(regionIndex.listChildren("044001000000000")));
+        assertEquals(Arrays.asList("天河区"), names(regionIndex.listChildren("044001000000000", 3)));
+        assertTrue(regionIndex.listChildren("044001000000000", 2).isEmpty());
+        assertEquals(Arrays.asList("江苏省", "福建省", "广东省"), names(regionIndex.listByLevel(1)));
+        assertEquals("越秀区", regionIndex.getByCode("044001002000000").getName());
+        assertEquals("032001002000000", regionIndex.getByName("鼓楼区").getCode());
+        assertEquals(10, regionIndex.size());
+    }
+
+    private List<String> names(List<Region> regionList) {
+        return regionList.stream().map(Region::getName).collect(Collectors.toList());
+    }
+
+    private static class Region {
+        private final String code;
+        private final String parentCode;
+        private final String name;
+        private final Integer level;
+        private final boolean enabled;
+
+        Region(String code, String parentCode, String name, Integer level, boolean enabled) {
+            this.code = code;
+            this.parentCode = parentCode;
+            this.name = name;
+            this.level = level;
+            this.enabled = enabled;
+        }
+
+        String getCode() {
+            return code;
+        }
+
+        String getParentCode() {
+            return parentCode;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Integer getLevel() {
+            return level;
+        }
+
+        boolean getEnabled() {
+            return enabled;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.macro.mall.common.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 树形快照单元测试
+ * Created by macro on 2026/10/18.
+ */
+public class TreeSnapshotTests {
+    private List<Long[]> items;
+    private TreeSnapshot<Long[]> snapshot;
+
+    @BeforeEach
+    public void setUp() {
+        //每个节点为{id, parentId}，子节点先于父节点出现也能正确建立索引
+        items = new ArrayList<>(Arrays.asList(
+                new Long[]{11L, 1L},
+                new Long[]{1L, 0L},
+                new Long[]{2L, 0L},
+                new Long[]{13L, 1L},
+                new Long[]{12L, 1L},
+                new Long[]{21L, 2L},
+                new Long[]{99L, 50L}));
+        snapshot = new TreeSnapshot<>(items, item -> item[0], item -> item[1], 0L);
+    }
+
+    @Test
+    public void testRootsAndChildrenKeepInputOrder() {
+        assertEquals(Arrays.asList(1L, 2L), ids(snapshot.getRoots()));
+        assertEquals(Arrays.asList(11L, 13L, 12L), ids(snapshot.getChildren(1L)));
+        assertEquals(Arrays.asList(21L), ids(snapshot.getChildren(2L)));
+        assertTrue(snapshot.getChildren(11L).isEmpty());
+        //父节点不存在的节点不会出现在一级节点中
+        assertFalse(ids(snapshot.getRoots()).contains(99L));
+        assertEquals(Arrays.asList(99L), ids(snapshot.getChildren(50L)));
+    }
+
+    @Test
+    public void testGetAndSize() {
+        assertEquals(2L, snapshot.get(21L)[1]);
+        assertNull(snapshot.get(100L));
+        assertEquals(7, snapshot.size());
+    }
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        items.add(new Long[]{3L, 0L});
+        assertEquals(Arrays.asList(1L, 2L), ids(snapshot.getRoots()));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getRoots().add(new Long[]{4L, 0L}));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getChildren(100L).add(new Long[]{4L, 100L}));
+    }
+
+    private List<Long> ids(List<Long[]> nodeList) {
+        return nodeList.stream().map(item -> item[0]).collect(Collectors.toList());
+    }
+}
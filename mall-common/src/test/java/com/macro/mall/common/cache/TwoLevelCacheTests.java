@@ -0,0 +1,178 @@
+package com.macro.mall.common.cache;
+
+import com.macro.mall.common.service.RedisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 二级缓存版本号顺序单元测试，两个缓存实例模拟两个节点，共用内存中的Redis数据，失效通知手动投递
+ * Created by macro on 2026/10/18.
+ */
+public class TwoLevelCacheTests {
+    private static final String NAME = "member";
+    private Map<String, Object> redisData;
+    private List<String> messages;
+    private RedisService redisService;
+    private TwoLevelCache<String> nodeA;
+    private TwoLevelCache<String> nodeB;
+
+    @BeforeEach
+    public void setUp() {
+        redisData = new HashMap<>();
+        messages = new ArrayList<>();
+        redisService = mock(RedisService.class);
+        when(redisService.get(anyString())).thenAnswer(invocation -> redisData.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redisData.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(redisService).set(anyString(), any(), anyLong());
+        when(redisService.del(anyString())).thenAnswer(invocation -> redisData.remove(invocation.<String>getArgument(0)) != null);
+        when(redisService.incr(anyString(), anyLong())).thenAnswer(invocation ->
+                (Long) redisData.merge(invocation.getArgument(0), invocation.getArgument(1), (a, b) -> (Long) a + (Long) b));
+        when(redisService.setIfVersion(anyString(), any(), anyLong(), anyString(), anyLong())).thenAnswer(this::setIfVersion);
+        doAnswer(invocation -> messages.add(invocation.getArgument(1)))
+                .when(redisService).publish(anyString(), anyString());
+        nodeA = newNode();
+        nodeB = newNode();
+    }
+
+    @Test
+    public void testPutInvalidatesOtherNode() {
+        nodeA.put(1L, "v1");
+        assertEquals("v1", nodeB.get(1L));
+        nodeA.put(1L, "v2");
+        //收到通知前读到本地旧值，收到后从Redis读取新值
+        assertEquals("v1", nodeB.get(1L));
+        deliverAll(nodeB);
+        assertEquals("v2", nodeB.get(1L));
+    }
+
+    @Test
+    public void testStaleRemoteValueNotCachedAfterInvalidation() {
+        nodeA.put(1L, "v1");
+        Object staleEntry = redisData.get("member:1");
+        nodeA.put(1L, "v2");
+        deliverAll(nodeB);
+        //失效通知先于Redis写入可见，读到的旧值只返回不放入本地缓存
+        redisData.put("member:1", staleEntry);
+        assertEquals("v1", nodeB.get(1L));
+        redisData.put("member:1", new TwoLevelCache.CacheEntry(2, "v2"));
+        assertEquals("v2", nodeB.get(1L));
+    }
+
+    @Test
+    public void testOlderInvalidationDoesNotDropNewerEntry() {
+        nodeA.put(1L, "v1");
+        nodeA.put(1L, "v2");
+        assertEquals("v2", nodeB.get(1L));
+        //延迟到达的旧版本通知不删除较新的本地缓存
+        deliver(nodeB, messages.get(0));
+        redisData.remove("member:1");
+        assertEquals("v2", nodeB.get(1L));
+        nodeA.evict(1L);
+        deliver(nodeB, messages.get(2));
+        assertNull(nodeB.get(1L));
+    }
+
+    @Test
+    public void testEvictRemovesLocalEntries() {
+        nodeA.put(1L, "v1");
+        assertEquals("v1", nodeB.get(1L));
+        nodeA.evict(1L);
+        assertNull(nodeA.get(1L));
+        deliverAll(nodeB);
+        assertNull(nodeB.get(1L));
+    }
+
+    @Test
+    public void testFillKeepsVersionAndDoesNotPublish() {
+        nodeA.put(1L, "v1");
+        nodeA.evict(1L);
+        messages.clear();
+        assertNull(nodeB.get(1L));
+        nodeB.fill(1L, "v1-db");
+        assertTrue(messages.isEmpty());
+        assertEquals(2L, ((TwoLevelCache.CacheEntry) redisData.get("member:1")).getVersion());
+        assertEquals("v1-db", nodeA.get(1L));
+    }
+
+    @Test
+    public void testFillSkippedWhenEvictedDuringLoad() {
+        assertNull(nodeB.get(1L));
+        //从数据库加载期间其他节点修改并删除了缓存
+        nodeA.evict(1L);
+        nodeB.fill(1L, "stale");
+        assertNull(redisData.get("member:1"));
+        assertNull(nodeB.get(1L));
+    }
+
+    @Test
+    public void testFillSkippedWhenEvictedBeforeWrite() {
+        assertNull(nodeB.get(1L));
+        //删除发生在回填读取版本号之后、写入Redis之前，版本号比较与写入在同一个脚本中完成
+        when(redisService.setIfVersion(anyString(), any(), anyLong(), anyString(), anyLong())).thenAnswer(invocation -> {
+            nodeA.evict(1L);
+            return setIfVersion(invocation);
+        });
+        nodeB.fill(1L, "stale");
+        verify(redisService, never()).set(eq("member:1"), any(), anyLong());
+        assertNull(redisData.get("member:1"));
+        assertNull(nodeB.get(1L));
+    }
+
+    @Test
+    public void testConcurrentMissDoesNotMaskEviction() throws Exception {
+        ExecutorService loader1 = Executors.newSingleThreadExecutor();
+        ExecutorService loader2 = Executors.newSingleThreadExecutor();
+        try {
+            //同一节点两个线程先后未命中，删除发生在两次未命中之间
+            assertNull(loader1.submit(() -> nodeB.get(1L)).get());
+            nodeA.evict(1L);
+            assertNull(loader2.submit(() -> nodeB.get(1L)).get());
+            //先未命中的线程加载到的是删除前的旧值，不能借用后一个线程的版本号回填
+            loader1.submit(() -> nodeB.fill(1L, "stale")).get();
+            assertNull(redisData.get("member:1"));
+            loader2.submit(() -> nodeB.fill(1L, "v2")).get();
+            assertEquals("v2", nodeA.get(1L));
+        } finally {
+            loader1.shutdown();
+            loader2.shutdown();
+        }
+    }
+
+    private boolean setIfVersion(InvocationOnMock invocation) {
+        Object version = redisData.get(invocation.<String>getArgument(3));
+        if ((version == null ? 0L : (Long) version) != invocation.<Long>getArgument(4)) {
+            return false;
+        }
+        redisData.put(invocation.getArgument(0), invocation.getArgument(1));
+        return true;
+    }
+
+    private TwoLevelCache<String> newNode() {
+        return new TwoLevelCache<>(NAME, NAME, 3600, 100, 3600, redisService,
+                mock(RedisMessageListenerContainer.class), new SimpleMeterRegistry());
+    }
+
+    private void deliverAll(TwoLevelCache<String> node) {
+        messages.forEach(message -> deliver(node, message));
+    }
+
+    private void deliver(TwoLevelCache<String> node, String message) {
+        node.onMessage(new DefaultMessage("channel".getBytes(StandardCharsets.UTF_8),
+                message.getBytes(StandardCharsets.UTF_8)), null);
+    }
+}
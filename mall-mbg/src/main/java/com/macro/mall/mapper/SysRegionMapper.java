@@ -48,6 +48,11 @@ public interface SysRegionMapper {
      */
     List<SysRegion> selectByParentCodeAndLevel(@Param("parentCode") String parentCode, @Param("level") Integer level);
 
+    /**
+     * 查询所有区域信息，按sort、id升序
+     */
+    List<SysRegion> selectAll();
+
     /**
      * 根据ID查询区域
      */
@@ -0,0 +1,80 @@
+package com.macro.mall.portal.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * 聚合接口并发查询组件
+ * 同一接口中互不依赖的查询提交到查询线程池并发执行，每个接口同时在线程池中执行的查询数量有上限，
+ * 超过上限的查询直接在调用线程执行，避免单个接口占满线程池
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class AsyncQueryComposer {
+    @Autowired
+    private ThreadPoolTaskExecutor queryExecutor;
+    @Value("${query.endpointConcurrency:32}")
+    private Integer ENDPOINT_CONCURRENCY;
+    private final Map<String, Semaphore> permitMap = new ConcurrentHashMap<>();
+
+    /**
+     * 提交查询
+     * @param endpoint 接口名称，用于区分并发上限
+     */
+    public <T> CompletableFuture<T> supply(String endpoint, Supplier<T> query) {
+        Semaphore permits = permitMap.computeIfAbsent(endpoint, key -> new Semaphore(ENDPOINT_CONCURRENCY));
+        if (!permits.tryAcquire()) {
+            return call(query);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return query.get();
+                } finally {
+                    permits.release();
+                }
+            }, queryExecutor);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 满足条件时提交查询，否则直接返回null
+     */
+    public <T> CompletableFuture<T> supplyIf(boolean condition, String endpoint, Supplier<T> query) {
+        return condition ? supply(endpoint, query) : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 等待查询结果，查询抛出的业务异常原样抛出
+     */
+    public <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> query) {
+        try {
+            return CompletableFuture.completedFuture(query.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.model.OmsCartItem;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 购物车存储
+ * 通过cart.store.type选择实现：db->直接读写oms_cart_item；redis->Redis存储并异步回写oms_cart_item
+ * Created by macro on 2026/10/18.
+ */
+public interface CartStore {
+
+    /**
+     * 添加商品到购物车，相同商品和规格合并数量
+     * @param cartItem 已设置会员信息的购物车商品
+     * @return 影响的记录数
+     */
+    int add(OmsCartItem cartItem);
+
+    /**
+     * 获取会员购物车中的全部商品
+     */
+    List<OmsCartItem> list(Long memberId);
+
+    /**
+     * 获取会员购物车中指定id的商品
+     */
+    List<OmsCartItem> list(Long memberId, Collection<Long> ids);
+
+    /**
+     * 修改购物车商品数量
+     */
+    int updateQuantity(Long memberId, Long id, Integer quantity);
+
+    /**
+     * 删除购物车中的商品
+     */
+    int delete(Long memberId, Collection<Long> ids);
+
+    /**
+     * 清空购物车
+     */
+    int clear(Long memberId);
+}
@@ -0,0 +1,59 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.portal.service.SmsCouponIssueService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 优惠券领取历史及领取数量回写MySQL的定时器
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class CouponIssueFlushTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CouponIssueFlushTask.class);
+    @Autowired
+    private SmsCouponIssueService couponIssueService;
+
+    /**
+     * 启动时重放上次中断的领取历史写入
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOnStartup() {
+        flushHistory();
+    }
+
+    /**
+     * 定时将Redis队列中的领取历史批量写入sms_coupon_history
+     */
+    @Scheduled(fixedDelayString = "${coupon.issue.historyFlushInterval:1000}")
+    public void flushHistory() {
+        try {
+            int count = couponIssueService.flushHistory();
+            if (count > 0) {
+                LOGGER.debug("写入优惠券领取历史，数量：{}", count);
+            }
+        } catch (Exception e) {
+            LOGGER.error("写入优惠券领取历史失败", e);
+        }
+    }
+
+    /**
+     * 定时将累计的领取数量回写到sms_coupon.count、receive_count
+     */
+    @Scheduled(fixedDelayString = "${coupon.issue.countFlushInterval:5000}")
+    public void flushReceiveCount() {
+        try {
+            int count = couponIssueService.flushReceiveCount();
+            if (count > 0) {
+                LOGGER.debug("回写优惠券领取数量，优惠券数量：{}", count);
+            }
+        } catch (Exception e) {
+            LOGGER.error("回写优惠券领取数量失败", e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.macro.mall.portal.component;
+
+import cn.hutool.core.collection.CollUtil;
+import com.macro.mall.mapper.OmsCartItemMapper;
+import com.macro.mall.model.OmsCartItem;
+import com.macro.mall.model.OmsCartItemExample;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 直接读写oms_cart_item的购物车存储
+ * Created by macro on 2026/10/18.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cart.store", name = "type", havingValue = "db", matchIfMissing = true)
+public class DbCartStore implements CartStore {
+    @Autowired
+    private OmsCartItemMapper cartItemMapper;
+
+    @Override
+    public int add(OmsCartItem cartItem) {
+        int count;
+        OmsCartItem existCartItem = getCartItem(cartItem);
+        if (existCartItem == null) {
+            cartItem.setCreateDate(new Date());
+            count = cartItemMapper.insert(cartItem);
+        } else {
+            existCartItem.setModifyDate(new Date());
+            existCartItem.setQuantity(existCartItem.getQuantity() + cartItem.getQuantity());
+            count = cartItemMapper.updateByPrimaryKey(existCartItem);
+        }
+        return count;
+    }
+
+    /**
+     * 根据会员id,商品id和规格获取购物车中商品
+     */
+    private OmsCartItem getCartItem(OmsCartItem cartItem) {
+        OmsCartItemExample example = new OmsCartItemExample();
+        OmsCartItemExample.Criteria criteria = example.createCriteria().andMemberIdEqualTo(cartItem.getMemberId())
+                .andProductIdEqualTo(cartItem.getProductId()).andDeleteStatusEqualTo(0);
+        if (cartItem.getProductSkuId() != null) {
+            criteria.andProductSkuIdEqualTo(cartItem.getProductSkuId());
+        }
+        List<OmsCartItem> cartItemList = cartItemMapper.selectByExample(example);
+        if (CollUtil.isNotEmpty(cartItemList)) {
+            return cartItemList.get(0);
+        }
+        return null;
+    }
+
+    @Override
+    public List<OmsCartItem> list(Long memberId) {
+        OmsCartItemExample example = new OmsCartItemExample();
+        example.createCriteria().andDeleteStatusEqualTo(0).andMemberIdEqualTo(memberId);
+        return cartItemMapper.selectByExample(example);
+    }
+
+    @Override
+    public List<OmsCartItem> list(Long memberId, Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return new ArrayList<>();
+        }
+        OmsCartItemExample example = new OmsCartItemExample();
+        example.createCriteria().andDeleteStatusEqualTo(0).andMemberIdEqualTo(memberId)
+                .andIdIn(new ArrayList<>(ids));
+        return cartItemMapper.selectByExample(example);
+    }
+
+    @Override
+    public int updateQuantity(Long memberId, Long id, Integer quantity) {
+        OmsCartItem cartItem = new OmsCartItem();
+        cartItem.setQuantity(quantity);
+        cartItem.setModifyDate(new Date());
+        OmsCartItemExample example = new OmsCartItemExample();
+        example.createCriteria().andDeleteStatusEqualTo(0)
+                .andIdEqualTo(id).andMemberIdEqualTo(memberId);
+        return cartItemMapper.updateByExampleSelective(cartItem, example);
+    }
+
+    @Override
+    public int delete(Long memberId, Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return 0;
+        }
+        OmsCartItem record = new OmsCartItem();
+        record.setDeleteStatus(1);
+        record.setModifyDate(new Date());
+        OmsCartItemExample example = new OmsCartItemExample();
+        example.createCriteria().andIdIn(new ArrayList<>(ids)).andMemberIdEqualTo(memberId);
+        return cartItemMapper.updateByExampleSelective(record, example);
+    }
+
+    @Override
+    public int clear(Long memberId) {
+        OmsCartItem record = new OmsCartItem();
+        record.setDeleteStatus(1);
+        record.setModifyDate(new Date());
+        OmsCartItemExample example = new OmsCartItemExample();
+        example.createCriteria().andMemberIdEqualTo(memberId);
+        return cartItemMapper.updateByExampleSelective(record, example);
+    }
+}
@@ -0,0 +1,51 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.portal.service.FlashPromotionOrderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀场次库存预热及超时下单请求清理的定时器
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class FlashPromotionPreloadTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlashPromotionPreloadTask.class);
+    @Autowired
+    private FlashPromotionOrderService flashPromotionOrderService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadOnStartup() {
+        preload();
+    }
+
+    /**
+     * 定时扫描即将开始的秒杀场次，将活动库存及限购数量加载到Redis
+     */
+    @Scheduled(fixedDelayString = "${flashPromotion.preloadInterval:60000}")
+    public void preload() {
+        try {
+            int count = flashPromotionOrderService.preload();
+            LOGGER.debug("预热秒杀商品库存，商品数量：{}", count);
+        } catch (Exception e) {
+            LOGGER.error("预热秒杀商品库存失败", e);
+        }
+    }
+
+    /**
+     * 定时清理节点宕机等原因丢失的下单请求
+     */
+    @Scheduled(fixedDelayString = "${flashPromotion.sweepInterval:60000}")
+    public void sweepPendingTickets() {
+        try {
+            flashPromotionOrderService.sweepPendingTickets();
+        } catch (Exception e) {
+            LOGGER.error("清理超时秒杀下单请求失败", e);
+        }
+    }
+}
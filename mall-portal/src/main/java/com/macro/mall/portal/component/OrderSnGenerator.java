@@ -0,0 +1,49 @@
+package com.macro.mall.portal.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * 订单编号生成器
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class OrderSnGenerator {
+    /**
+     * 按日期生成的计数key保留2天，避免跨天时仍在使用的号段key提前过期
+     */
+    private static final long KEY_EXPIRE_SECONDS = 2 * 24 * 60 * 60;
+    @Autowired
+    private SegmentIdGenerator segmentIdGenerator;
+    @Value("${redis.key.orderId}")
+    private String REDIS_KEY_ORDER_ID;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+
+    /**
+     * 生成18位订单编号:8位日期+2位平台号码+2位支付方式+6位以上自增id
+     * 自增id由号段生成器分配，Redis不可用时生成失败
+     * @param sourceType 订单来源：0->PC订单；1->app订单
+     * @param payType 支付方式：0->未支付；1->支付宝；2->微信
+     */
+    public String generate(Integer sourceType, Integer payType) {
+        StringBuilder sb = new StringBuilder();
+        String date = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        String key = REDIS_DATABASE + ":" + REDIS_KEY_ORDER_ID + date;
+        long increment = segmentIdGenerator.nextId(key, KEY_EXPIRE_SECONDS);
+        sb.append(date);
+        sb.append(String.format("%02d", sourceType));
+        sb.append(String.format("%02d", payType));
+        String incrementStr = String.valueOf(increment);
+        if (incrementStr.length() <= 6) {
+            sb.append(String.format("%06d", increment));
+        } else {
+            sb.append(incrementStr);
+        }
+        return sb.toString();
+    }
+}
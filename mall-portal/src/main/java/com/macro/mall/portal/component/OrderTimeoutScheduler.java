@@ -0,0 +1,16 @@
+package com.macro.mall.portal.component;
+
+/**
+ * 订单超时取消调度器
+ * 通过order.timeout.scheduler选择实现：rabbit->RabbitMQ延迟队列；wheel->本地分层时间轮+Redis有序集合
+ * Created by macro on 2026/10/18.
+ */
+public interface OrderTimeoutScheduler {
+
+    /**
+     * 在指定延迟后取消未支付的订单
+     * @param orderId     订单id
+     * @param delayMillis 延迟时间（毫秒）
+     */
+    void schedule(Long orderId, long delayMillis);
+}
@@ -0,0 +1,21 @@
+package com.macro.mall.portal.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 基于RabbitMQ延迟队列的订单超时取消调度器
+ * Created by macro on 2026/10/18.
+ */
+@Component
+@ConditionalOnProperty(prefix = "order.timeout", name = "scheduler", havingValue = "rabbit", matchIfMissing = true)
+public class RabbitOrderTimeoutScheduler implements OrderTimeoutScheduler {
+    @Autowired
+    private CancelOrderSender cancelOrderSender;
+
+    @Override
+    public void schedule(Long orderId, long delayMillis) {
+        cancelOrderSender.sendMessage(orderId, delayMillis);
+    }
+}
@@ -0,0 +1,337 @@
+package com.macro.mall.portal.component;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONUtil;
+import com.macro.mall.mapper.OmsCartItemMapper;
+import com.macro.mall.model.OmsCartItem;
+import com.macro.mall.model.OmsCartItemExample;
+import com.macro.mall.portal.dao.PortalCartItemDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis Hash的购物车存储
+ * 每个会员的购物车存放在Redis中，增删改只修改Redis并记录脏数据，由定时任务批量回写oms_cart_item
+ * Created by macro on 2026/10/18.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cart.store", name = "type", havingValue = "redis")
+public class RedisCartStore implements CartStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisCartStore.class);
+    private static final String DELETE_SUFFIX = ":d";
+    /**
+     * 从MySQL加载购物车：KEYS为加载标记、商品索引、数量、商品信息；ARGV[1]为过期时间，之后每4个参数为id、索引、数量、商品信息
+     * 加载标记已存在时不覆盖，避免并发加载覆盖刚写入的数据
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end\n" +
+            "for i = 2, #ARGV, 4 do\n" +
+            "  redis.call('HSET', KEYS[2], ARGV[i + 1], ARGV[i])\n" +
+            "  redis.call('HSET', KEYS[3], ARGV[i], ARGV[i + 2])\n" +
+            "  redis.call('HSET', KEYS[4], ARGV[i], ARGV[i + 3])\n" +
+            "end\n" +
+            "redis.call('SET', KEYS[1], '1')\n" +
+            "for i = 1, 4 do redis.call('EXPIRE', KEYS[i], ARGV[1]) end\n" +
+            "return 1", Long.class);
+    /**
+     * 添加商品：KEYS为商品索引、数量、商品信息、加载标记、id序列、脏数据集合；ARGV为索引、数量、商品信息、会员id、过期时间
+     * 相同商品和规格已存在时累加数量，返回购物车商品id，id序列未初始化时返回-1
+     */
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[5]) == 0 then return -1 end\n" +
+            "local id = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "if id then\n" +
+            "  redis.call('HINCRBY', KEYS[2], id, ARGV[2])\n" +
+            "else\n" +
+            "  id = tostring(redis.call('INCR', KEYS[5]))\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[1], id)\n" +
+            "  redis.call('HSET', KEYS[2], id, ARGV[2])\n" +
+            "  redis.call('HSET', KEYS[3], id, ARGV[3])\n" +
+            "end\n" +
+            "redis.call('SADD', KEYS[6], ARGV[4] .. ':' .. id)\n" +
+            "for i = 1, 4 do redis.call('EXPIRE', KEYS[i], ARGV[5]) end\n" +
+            "return tonumber(id)", Long.class);
+    /**
+     * 修改数量：KEYS为商品信息、数量、脏数据集合；ARGV为id、数量、脏数据标识
+     */
+    private static final DefaultRedisScript<Long> UPDATE_QUANTITY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return 0 end\n" +
+            "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])\n" +
+            "redis.call('SADD', KEYS[3], ARGV[3])\n" +
+            "return 1", Long.class);
+    /**
+     * 删除商品：KEYS为商品索引、数量、商品信息、脏数据集合；ARGV[1]为会员id，之后每2个参数为id、索引
+     */
+    private static final DefaultRedisScript<Long> DELETE_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0\n" +
+            "for i = 2, #ARGV, 2 do\n" +
+            "  if redis.call('HDEL', KEYS[3], ARGV[i]) == 1 then\n" +
+            "    n = n + 1\n" +
+            "    redis.call('HDEL', KEYS[2], ARGV[i])\n" +
+            "    if redis.call('HGET', KEYS[1], ARGV[i + 1]) == ARGV[i] then\n" +
+            "      redis.call('HDEL', KEYS[1], ARGV[i + 1])\n" +
+            "    end\n" +
+            "    redis.call('SADD', KEYS[4], ARGV[1] .. ':' .. ARGV[i] .. '" + DELETE_SUFFIX + "')\n" +
+            "  end\n" +
+            "end\n" +
+            "return n", Long.class);
+    /**
+     * 只释放自己持有的回写锁
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0", Long.class);
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OmsCartItemMapper cartItemMapper;
+    @Autowired
+    private PortalCartItemDao portalCartItemDao;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.cart}")
+    private String REDIS_KEY_CART;
+    @Value("${cart.store.expire:604800}")
+    private Long EXPIRE;
+    @Value("${cart.store.flushBatchSize:500}")
+    private Integer FLUSH_BATCH_SIZE;
+
+    @Override
+    public int add(OmsCartItem cartItem) {
+        Long memberId = cartItem.getMemberId();
+        ensureLoaded(memberId);
+        cartItem.setCreateDate(new Date());
+        List<String> keys = Arrays.asList(getIndexKey(memberId), getQuantityKey(memberId), getItemKey(memberId),
+                getLoadedKey(memberId), getIdKey(), getDirtyKey());
+        Object[] args = {getIndexField(cartItem), cartItem.getQuantity().toString(), JSONUtil.toJsonStr(cartItem),
+                memberId.toString(), EXPIRE.toString()};
+        Long id = stringRedisTemplate.execute(ADD_SCRIPT, keys, args);
+        if (id != null && id < 0) {
+            //id序列未初始化时从MySQL当前最大id开始分配，保证回写时不与已有记录冲突
+            Long maxId = portalCartItemDao.getMaxId();
+            stringRedisTemplate.opsForValue().setIfAbsent(getIdKey(), String.valueOf(maxId == null ? 0 : maxId));
+            id = stringRedisTemplate.execute(ADD_SCRIPT, keys, args);
+        }
+        if (id == null || id < 0) {
+            return 0;
+        }
+        cartItem.setId(id);
+        return 1;
+    }
+
+    @Override
+    public List<OmsCartItem> list(Long memberId) {
+        ensureLoaded(memberId);
+        Map<Object, Object> itemMap = stringRedisTemplate.opsForHash().entries(getItemKey(memberId));
+        if (CollUtil.isEmpty(itemMap)) {
+            return new ArrayList<>();
+        }
+        Map<Object, Object> quantityMap = stringRedisTemplate.opsForHash().entries(getQuantityKey(memberId));
+        List<OmsCartItem> cartItemList = new ArrayList<>(itemMap.size());
+        for (Map.Entry<Object, Object> entry : itemMap.entrySet()) {
+            cartItemList.add(toCartItem((String) entry.getKey(), (String) entry.getValue(), (String) quantityMap.get(entry.getKey())));
+        }
+        cartItemList.sort(Comparator.comparing(OmsCartItem::getId));
+        return cartItemList;
+    }
+
+    @Override
+    public List<OmsCartItem> list(Long memberId, Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return new ArrayList<>();
+        }
+        ensureLoaded(memberId);
+        List<Object> fields = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            fields.add(id.toString());
+        }
+        List<Object> items = stringRedisTemplate.opsForHash().multiGet(getItemKey(memberId), fields);
+        List<Object> quantities = stringRedisTemplate.opsForHash().multiGet(getQuantityKey(memberId), fields);
+        List<OmsCartItem> cartItemList = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (items.get(i) != null) {
+                cartItemList.add(toCartItem((String) fields.get(i), (String) items.get(i), (String) quantities.get(i)));
+            }
+        }
+        return cartItemList;
+    }
+
+    @Override
+    public int updateQuantity(Long memberId, Long id, Integer quantity) {
+        ensureLoaded(memberId);
+        List<String> keys = Arrays.asList(getItemKey(memberId), getQuantityKey(memberId), getDirtyKey());
+        Long count = stringRedisTemplate.execute(UPDATE_QUANTITY_SCRIPT, keys,
+                id.toString(), quantity.toString(), memberId + ":" + id);
+        return count == null ? 0 : count.intValue();
+    }
+
+    @Override
+    public int delete(Long memberId, Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return 0;
+        }
+        List<OmsCartItem> cartItemList = list(memberId, ids);
+        if (CollUtil.isEmpty(cartItemList)) {
+            return 0;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(memberId.toString());
+        for (OmsCartItem cartItem : cartItemList) {
+            args.add(cartItem.getId().toString());
+            args.add(getIndexField(cartItem));
+        }
+        List<String> keys = Arrays.asList(getIndexKey(memberId), getQuantityKey(memberId), getItemKey(memberId), getDirtyKey());
+        Long count = stringRedisTemplate.execute(DELETE_SCRIPT, keys, args.toArray());
+        return count == null ? 0 : count.intValue();
+    }
+
+    @Override
+    public int clear(Long memberId) {
+        List<OmsCartItem> cartItemList = list(memberId);
+        List<Long> ids = new ArrayList<>(cartItemList.size());
+        for (OmsCartItem cartItem : cartItemList) {
+            ids.add(cartItem.getId());
+        }
+        return delete(memberId, ids);
+    }
+
+    /**
+     * 定时将脏数据批量回写oms_cart_item，同一时间只有一个节点回写
+     */
+    @Scheduled(fixedDelayString = "${cart.store.flushInterval:1000}")
+    public void flush() {
+        String lockKey = getDirtyKey() + ":lock";
+        String token = IdUtil.fastSimpleUUID();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, 60, TimeUnit.SECONDS))) {
+            return;
+        }
+        try {
+            int count;
+            do {
+                count = flushBatch();
+            } while (count >= FLUSH_BATCH_SIZE);
+        } catch (Exception e) {
+            LOGGER.error("回写购物车数据失败", e);
+        } finally {
+            //回写超过锁的超时时间时锁可能已被其他节点获取，不能直接删除
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        }
+    }
+
+    /**
+     * 取出一批脏数据回写MySQL，失败时放回脏数据集合
+     * @return 取出的脏数据数量
+     */
+    private int flushBatch() {
+        List<String> entries = stringRedisTemplate.opsForSet().pop(getDirtyKey(), FLUSH_BATCH_SIZE);
+        if (CollUtil.isEmpty(entries)) {
+            return 0;
+        }
+        Map<Long, List<Long>> upsertMap = new HashMap<>();
+        List<Long> deleteIds = new ArrayList<>();
+        for (String entry : entries) {
+            String[] parts = entry.split(":");
+            if (entry.endsWith(DELETE_SUFFIX)) {
+                deleteIds.add(Long.valueOf(parts[1]));
+            } else {
+                upsertMap.computeIfAbsent(Long.valueOf(parts[0]), k -> new ArrayList<>()).add(Long.valueOf(parts[1]));
+            }
+        }
+        try {
+            List<OmsCartItem> upsertList = new ArrayList<>();
+            Date now = new Date();
+            for (Map.Entry<Long, List<Long>> entry : upsertMap.entrySet()) {
+                //已被删除的商品不再回写，由删除标识处理
+                for (OmsCartItem cartItem : list(entry.getKey(), entry.getValue())) {
+                    cartItem.setMemberId(entry.getKey());
+                    cartItem.setModifyDate(now);
+                    cartItem.setDeleteStatus(0);
+                    upsertList.add(cartItem);
+                }
+            }
+            if (CollUtil.isNotEmpty(upsertList)) {
+                portalCartItemDao.upsertList(upsertList);
+            }
+            if (CollUtil.isNotEmpty(deleteIds)) {
+                portalCartItemDao.deleteList(deleteIds);
+            }
+        } catch (RuntimeException e) {
+            stringRedisTemplate.opsForSet().add(getDirtyKey(), entries.toArray(new String[0]));
+            throw e;
+        }
+        return entries.size();
+    }
+
+    /**
+     * 会员购物车不在Redis中时从MySQL加载
+     */
+    private void ensureLoaded(Long memberId) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(getLoadedKey(memberId)))) {
+            return;
+        }
+        OmsCartItemExample example = new OmsCartItemExample();
+        example.createCriteria().andDeleteStatusEqualTo(0).andMemberIdEqualTo(memberId);
+        List<OmsCartItem> cartItemList = cartItemMapper.selectByExample(example);
+        List<String> args = new ArrayList<>();
+        args.add(EXPIRE.toString());
+        for (OmsCartItem cartItem : cartItemList) {
+            args.add(cartItem.getId().toString());
+            args.add(getIndexField(cartItem));
+            args.add(String.valueOf(cartItem.getQuantity() == null ? 0 : cartItem.getQuantity()));
+            args.add(JSONUtil.toJsonStr(cartItem));
+        }
+        List<String> keys = Arrays.asList(getLoadedKey(memberId), getIndexKey(memberId), getQuantityKey(memberId), getItemKey(memberId));
+        stringRedisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+    }
+
+    private OmsCartItem toCartItem(String id, String json, String quantity) {
+        OmsCartItem cartItem = JSONUtil.toBean(json, OmsCartItem.class);
+        cartItem.setId(Long.valueOf(id));
+        cartItem.setQuantity(quantity == null ? 0 : Integer.valueOf(quantity));
+        return cartItem;
+    }
+
+    /**
+     * 相同商品和规格的购物车商品合并为一条
+     */
+    private String getIndexField(OmsCartItem cartItem) {
+        return cartItem.getProductId() + ":" + (cartItem.getProductSkuId() == null ? "" : cartItem.getProductSkuId());
+    }
+
+    private String getItemKey(Long memberId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_CART + ":" + memberId;
+    }
+
+    private String getQuantityKey(Long memberId) {
+        return getItemKey(memberId) + ":qty";
+    }
+
+    private String getIndexKey(Long memberId) {
+        return getItemKey(memberId) + ":index";
+    }
+
+    private String getLoadedKey(Long memberId) {
+        return getItemKey(memberId) + ":loaded";
+    }
+
+    private String getIdKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_CART + ":id";
+    }
+
+    private String getDirtyKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_CART + ":dirty";
+    }
+}
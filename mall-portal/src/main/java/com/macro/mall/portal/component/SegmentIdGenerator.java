@@ -0,0 +1,114 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.common.exception.Asserts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 号段ID生成器
+ * 每个节点通过Redis INCRBY一次租用一段连续的id，在本地内存中分配，号段用完时再租用下一段；
+ * id会拼入订单编号、优惠码等定长编码，Redis不可用时不降级为其他算法，直接失败
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class SegmentIdGenerator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentIdGenerator.class);
+    /**
+     * 本地最多缓存的号段数量，按日期生成的key过期后不再使用，超出时清空
+     */
+    private static final int MAX_SEGMENT_COUNT = 256;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Value("${idGenerator.step:1000}")
+    private Long STEP;
+    @Value("${idGenerator.retryInterval:5000}")
+    private Long RETRY_INTERVAL;
+    private final Map<String, Segment> segmentMap = new ConcurrentHashMap<>();
+    /**
+     * Redis不可用时，在该时间之前直接失败，避免每次都等待Redis超时
+     */
+    private volatile long redisRetryTime;
+
+    /**
+     * 获取下一个id
+     * @param key           Redis中号段计数的key，不同业务或日期使用不同的key
+     * @param expireSeconds key的过期时间（秒），小于等于0时不过期
+     */
+    public long nextId(String key, long expireSeconds) {
+        Segment segment = segmentMap.get(key);
+        if (segment != null) {
+            long id = segment.next();
+            if (id > 0) {
+                return id;
+            }
+        }
+        synchronized (this) {
+            segment = segmentMap.get(key);
+            if (segment != null) {
+                long id = segment.next();
+                if (id > 0) {
+                    return id;
+                }
+            }
+            if (System.currentTimeMillis() < redisRetryTime) {
+                Asserts.fail("系统繁忙，请稍后重试");
+            }
+            try {
+                segment = lease(key, expireSeconds);
+            } catch (Exception e) {
+                redisRetryTime = System.currentTimeMillis() + RETRY_INTERVAL;
+                LOGGER.error("从Redis租用号段失败，key：{}", key, e);
+                Asserts.fail("系统繁忙，请稍后重试");
+            }
+            if (segmentMap.size() >= MAX_SEGMENT_COUNT) {
+                segmentMap.clear();
+            }
+            segmentMap.put(key, segment);
+            return segment.next();
+        }
+    }
+
+    /**
+     * 从Redis租用一个号段，兼容原来每次加1的计数器，新号段从当前计数之后开始
+     */
+    private Segment lease(String key, long expireSeconds) {
+        Long max = stringRedisTemplate.opsForValue().increment(key, STEP);
+        if (max == null) {
+            throw new IllegalStateException("租用号段返回为空");
+        }
+        if (expireSeconds > 0 && max <= STEP) {
+            stringRedisTemplate.expire(key, expireSeconds, TimeUnit.SECONDS);
+        }
+        return new Segment(max - STEP + 1, max);
+    }
+
+    /**
+     * 号段，在[start,max]范围内分配id
+     */
+    private static class Segment {
+        private final AtomicLong current;
+        private final long max;
+
+        Segment(long start, long max) {
+            this.current = new AtomicLong(start);
+            this.max = max;
+        }
+
+        /**
+         * @return 号段用完时返回-1
+         */
+        long next() {
+            long id = current.getAndIncrement();
+            return id <= max ? id : -1;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.model.OmsOrderItem;
+import com.macro.mall.portal.dao.PortalSkuStockDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * SKU库存批量更新组件
+ * 先按SKU合并数量并按id排序，再以固定SQL逐个执行，返回每个SKU实际修改的行数
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class SkuStockBatchUpdater {
+    @Autowired
+    private PortalSkuStockDao skuStockDao;
+    @Value("${stock.batch.chunkSize:100}")
+    private Integer CHUNK_SIZE;
+
+    /**
+     * 按SKU合并下单商品数量
+     */
+    public static Map<Long, Integer> mergeQuantity(List<OmsOrderItem> orderItemList) {
+        Map<Long, Integer> skuQuantityMap = new TreeMap<>();
+        for (OmsOrderItem orderItem : orderItemList) {
+            if (orderItem.getProductSkuId() != null && orderItem.getProductQuantity() != null) {
+                skuQuantityMap.merge(orderItem.getProductSkuId(), orderItem.getProductQuantity(), Integer::sum);
+            }
+        }
+        return skuQuantityMap;
+    }
+
+    /**
+     * 支付成功后扣减真实库存并释放锁定库存
+     * @param skuQuantityMap skuId->数量
+     * @return skuId->修改行数，为0表示真实库存不足（超卖）或SKU不存在
+     */
+    @Transactional
+    public Map<Long, Integer> deductStock(Map<Long, Integer> skuQuantityMap) {
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        if (skuQuantityMap == null || skuQuantityMap.isEmpty()) {
+            return result;
+        }
+        //按skuId顺序加锁，避免并发扣减时死锁
+        for (Long skuId : new TreeSet<>(skuQuantityMap.keySet())) {
+            result.put(skuId, skuStockDao.deductStock(skuId, skuQuantityMap.get(skuId)));
+        }
+        return result;
+    }
+
+    /**
+     * 按变化量调整锁定库存，变化量与回写批次id在同一事务中记录，同一批次重复回写或多个节点同时回写时只生效一次
+     * @param flushId 回写批次id
+     * @param deltaMap skuId->锁定库存变化量
+     * @return 修改的SKU数量，已回写过的SKU不计入
+     */
+    @Transactional
+    public int updateLockStock(String flushId, Map<Long, Integer> deltaMap) {
+        if (deltaMap == null || deltaMap.isEmpty()) {
+            return 0;
+        }
+        String attempt = UUID.randomUUID().toString();
+        //按skuId顺序记录，其他节点正在回写同一批次时等待其提交后忽略已记录的SKU
+        List<Long> skuIds = new ArrayList<>(new TreeSet<>(deltaMap.keySet()));
+        for (int i = 0; i < skuIds.size(); i += CHUNK_SIZE) {
+            Map<Long, Integer> chunk = new LinkedHashMap<>();
+            for (Long skuId : skuIds.subList(i, Math.min(i + CHUNK_SIZE, skuIds.size()))) {
+                chunk.put(skuId, deltaMap.get(skuId));
+            }
+            skuStockDao.insertFlushLog(flushId, attempt, chunk);
+        }
+        return skuStockDao.updateLockStockByFlushLog(flushId, attempt);
+    }
+
+    /**
+     * 删除指定时间之前的锁定库存回写记录
+     */
+    public int deleteFlushLogBefore(Date time) {
+        return skuStockDao.deleteFlushLogBefore(time);
+    }
+}
@@ -0,0 +1,57 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.portal.service.OmsSkuStockReservationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * SKU预占库存回写MySQL的定时器
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class SkuStockReconcileTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SkuStockReconcileTask.class);
+    @Autowired
+    private OmsSkuStockReservationService stockReservationService;
+
+    /**
+     * 启动时若Redis中没有库存计数器则从MySQL重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        stockReservationService.rebuild(false);
+    }
+
+    /**
+     * 定时将Redis中累计的预占变化量批量回写到pms_sku_stock.lock_stock
+     */
+    @Scheduled(fixedDelayString = "${stock.reservation.flushInterval:2000}")
+    public void flushLockStock() {
+        try {
+            int count = stockReservationService.flushLockStock();
+            if (count > 0) {
+                LOGGER.debug("回写SKU锁定库存，SKU数量：{}", count);
+            }
+        } catch (Exception e) {
+            LOGGER.error("回写SKU锁定库存失败", e);
+        }
+    }
+
+    /**
+     * 定时清理过期的锁定库存回写记录
+     */
+    @Scheduled(cron = "${stock.reservation.flushLogCleanCron:0 30 3 * * ?}")
+    public void cleanFlushLog() {
+        try {
+            int count = stockReservationService.cleanFlushLog();
+            LOGGER.info("清理SKU锁定库存回写记录，数量：{}", count);
+        } catch (Exception e) {
+            LOGGER.error("清理SKU锁定库存回写记录失败", e);
+        }
+    }
+}
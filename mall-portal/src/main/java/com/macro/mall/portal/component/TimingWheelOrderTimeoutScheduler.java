@@ -0,0 +1,184 @@
+package com.macro.mall.portal.component;
+
+import cn.hutool.core.collection.CollUtil;
+import com.macro.mall.portal.service.OmsPortalOrderService;
+import com.macro.mall.portal.util.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于分层时间轮的订单超时取消调度器
+ * 到期时间持久化在Redis有序集合中，本地时间轮负责准时触发；
+ * 各节点通过ZREM认领到期订单，保证同一订单只被取消一次，重启后从有序集合恢复
+ * Created by macro on 2026/10/18.
+ */
+@Component
+@ConditionalOnProperty(prefix = "order.timeout", name = "scheduler", havingValue = "wheel")
+public class TimingWheelOrderTimeoutScheduler implements OrderTimeoutScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheelOrderTimeoutScheduler.class);
+    /**
+     * 认领到期订单：从有序集合中删除成功的订单id由当前节点取消
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local claimed = {}\n" +
+            "for i = 1, #ARGV do\n" +
+            "  if redis.call('ZREM', KEYS[1], ARGV[i]) == 1 then\n" +
+            "    claimed[#claimed + 1] = ARGV[i]\n" +
+            "  end\n" +
+            "end\n" +
+            "return claimed", List.class);
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    /**
+     * 订单Service依赖本调度器发送超时任务，延迟注入避免循环依赖
+     */
+    @Lazy
+    @Autowired
+    private OmsPortalOrderService portalOrderService;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.orderTimeout}")
+    private String REDIS_KEY_ORDER_TIMEOUT;
+    @Value("${order.timeout.tickMs:1000}")
+    private Long TICK_MS;
+    @Value("${order.timeout.wheelSize:60}")
+    private Integer WHEEL_SIZE;
+    @Value("${order.timeout.batchSize:200}")
+    private Integer BATCH_SIZE;
+    @Value("${order.timeout.sweepDelay:5000}")
+    private Long SWEEP_DELAY;
+    private TimingWheel<Long> timingWheel;
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public void start() {
+        timingWheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, System.currentTimeMillis());
+        ticker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("order-timeout-wheel-"));
+        ticker.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdown();
+    }
+
+    @Override
+    public void schedule(Long orderId, long delayMillis) {
+        long expiration = System.currentTimeMillis() + delayMillis;
+        stringRedisTemplate.opsForZSet().add(getKey(), orderId.toString(), expiration);
+        //已到期的订单由下次扫描处理
+        timingWheel.add(expiration, orderId);
+    }
+
+    /**
+     * 启动时将有序集合中未到期的订单恢复到本地时间轮
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        int count = 0;
+        long offset = 0;
+        while (true) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(getKey(), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, offset, BATCH_SIZE);
+            if (CollUtil.isEmpty(tuples)) {
+                break;
+            }
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                if (tuple.getValue() != null && tuple.getScore() != null
+                        && timingWheel.add(tuple.getScore().longValue(), Long.valueOf(tuple.getValue()))) {
+                    count++;
+                }
+            }
+            offset += tuples.size();
+        }
+        LOGGER.info("从Redis恢复待超时取消订单，数量：{}", count);
+    }
+
+    /**
+     * 定时扫描有序集合中已到期但未被取消的订单，处理其他节点宕机或重启期间到期的订单
+     */
+    @Scheduled(fixedDelayString = "${order.timeout.sweepInterval:60000}")
+    public void sweep() {
+        try {
+            while (true) {
+                long maxScore = System.currentTimeMillis() - SWEEP_DELAY;
+                Set<String> values = stringRedisTemplate.opsForZSet().rangeByScore(getKey(), 0, maxScore, 0, BATCH_SIZE);
+                if (CollUtil.isEmpty(values)) {
+                    break;
+                }
+                List<Long> orderIds = new ArrayList<>(values.size());
+                for (String value : values) {
+                    orderIds.add(Long.valueOf(value));
+                }
+                claimAndCancel(orderIds);
+            }
+        } catch (Exception e) {
+            LOGGER.error("扫描超时订单失败", e);
+        }
+    }
+
+    private void tick() {
+        try {
+            List<Long> expired = new ArrayList<>();
+            timingWheel.advance(System.currentTimeMillis(), expired::add);
+            for (int i = 0; i < expired.size(); i += BATCH_SIZE) {
+                claimAndCancel(expired.subList(i, Math.min(i + BATCH_SIZE, expired.size())));
+            }
+        } catch (Exception e) {
+            LOGGER.error("处理时间轮到期订单失败", e);
+        }
+    }
+
+    /**
+     * 认领到期订单并批量取消，取消失败时放回有序集合等待下次扫描
+     */
+    @SuppressWarnings("unchecked")
+    private void claimAndCancel(List<Long> orderIds) {
+        Object[] args = new Object[orderIds.size()];
+        for (int i = 0; i < orderIds.size(); i++) {
+            args[i] = orderIds.get(i).toString();
+        }
+        List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(getKey()), args);
+        if (CollUtil.isEmpty(claimed)) {
+            return;
+        }
+        List<Long> claimedIds = new ArrayList<>(claimed.size());
+        for (String value : claimed) {
+            claimedIds.add(Long.valueOf(value));
+        }
+        try {
+            int count = portalOrderService.cancelOrderList(claimedIds);
+            LOGGER.info("取消超时订单，到期数量：{}，取消数量：{}", claimedIds.size(), count);
+        } catch (RuntimeException e) {
+            long now = System.currentTimeMillis();
+            for (String value : claimed) {
+                stringRedisTemplate.opsForZSet().add(getKey(), value, now);
+            }
+            throw e;
+        }
+    }
+
+    private String getKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_ORDER_TIMEOUT;
+    }
+}
@@ -0,0 +1,58 @@
+package com.macro.mall.portal.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池相关配置
+ * Created by macro on 2026/10/18.
+ */
+@Configuration
+public class ExecutorConfig {
+    @Value("${order.readExecutor.corePoolSize:16}")
+    private Integer CORE_POOL_SIZE;
+    @Value("${order.readExecutor.maxPoolSize:64}")
+    private Integer MAX_POOL_SIZE;
+    @Value("${order.readExecutor.queueCapacity:1000}")
+    private Integer QUEUE_CAPACITY;
+    @Value("${query.executor.corePoolSize:32}")
+    private Integer QUERY_CORE_POOL_SIZE;
+    @Value("${query.executor.maxPoolSize:128}")
+    private Integer QUERY_MAX_POOL_SIZE;
+    @Value("${query.executor.queueCapacity:2000}")
+    private Integer QUERY_QUEUE_CAPACITY;
+
+    /**
+     * 下单时并发查询购物车、收货地址、优惠券及设置的线程池，队列满时由调用线程执行
+     */
+    @Bean
+    public ThreadPoolTaskExecutor orderReadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(CORE_POOL_SIZE);
+        executor.setMaxPoolSize(MAX_POOL_SIZE);
+        executor.setQueueCapacity(QUEUE_CAPACITY);
+        executor.setThreadNamePrefix("order-read-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * 首页内容、商品详情等聚合接口并发查询的线程池，队列满时由调用线程执行
+     */
+    @Bean
+    public ThreadPoolTaskExecutor queryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(QUERY_CORE_POOL_SIZE);
+        executor.setMaxPoolSize(QUERY_MAX_POOL_SIZE);
+        executor.setQueueCapacity(QUERY_QUEUE_CAPACITY);
+        executor.setThreadNamePrefix("query-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+}
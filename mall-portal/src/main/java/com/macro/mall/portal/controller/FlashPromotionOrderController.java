@@ -0,0 +1,42 @@
+package com.macro.mall.portal.controller;
+
+import com.macro.mall.common.api.CommonResult;
+import com.macro.mall.portal.domain.FlashPromotionOrderParam;
+import com.macro.mall.portal.domain.FlashPromotionOrderResult;
+import com.macro.mall.portal.service.FlashPromotionOrderService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 秒杀下单Controller
+ * Created by macro on 2026/10/18.
+ */
+@Controller
+@Tag(name = "FlashPromotionOrderController", description = "秒杀下单")
+@RequestMapping("/flashOrder")
+public class FlashPromotionOrderController {
+    @Autowired
+    private FlashPromotionOrderService flashPromotionOrderService;
+
+    @Operation(summary = "秒杀下单，返回排队凭证")
+    @RequestMapping(value = "/submit", method = RequestMethod.POST)
+    @ResponseBody
+    public CommonResult<String> submit(@RequestBody FlashPromotionOrderParam param) {
+        String ticketId = flashPromotionOrderService.submit(param);
+        return CommonResult.success(ticketId, "排队中");
+    }
+
+    @Operation(summary = "根据排队凭证查询下单结果")
+    @RequestMapping(value = "/result/{ticketId}", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<FlashPromotionOrderResult> result(@PathVariable String ticketId) {
+        FlashPromotionOrderResult result = flashPromotionOrderService.getResult(ticketId);
+        if (result == null) {
+            return CommonResult.failed("排队凭证不存在或已过期");
+        }
+        return CommonResult.success(result);
+    }
+}
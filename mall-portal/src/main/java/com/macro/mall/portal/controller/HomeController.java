@@ -4,14 +4,18 @@ import com.macro.mall.common.api.CommonResult;
 import com.macro.mall.model.CmsSubject;
 import com.macro.mall.model.PmsProduct;
 import com.macro.mall.model.PmsProductCategory;
-import com.macro.mall.portal.domain.HomeContentResult;
+import com.macro.mall.portal.domain.HomeContentSnapshot;
+import com.macro.mall.portal.service.HomeContentSnapshotService;
 import com.macro.mall.portal.service.HomeService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -25,13 +29,18 @@ import java.util.List;
 public class HomeController {
     @Autowired
     private HomeService homeService;
+    @Autowired
+    private HomeContentSnapshotService homeContentSnapshotService;
 
-    @Operation(summary = "首页内容页信息展示")
+    @Operation(summary = "首页内容页信息展示", description = "返回预先生成的首页内容快照，支持If-None-Match协商缓存")
     @RequestMapping(value = "/content", method = RequestMethod.GET)
     @ResponseBody
-    public CommonResult<HomeContentResult> content() {
-        HomeContentResult contentResult = homeService.content();
-        return CommonResult.success(contentResult);
+    public ResponseEntity<byte[]> content(WebRequest webRequest) {
+        HomeContentSnapshot snapshot = homeContentSnapshotService.getSnapshot();
+        if (webRequest.checkNotModified(snapshot.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(snapshot.getContent());
     }
 
     @Operation(summary = "分页获取推荐商品")
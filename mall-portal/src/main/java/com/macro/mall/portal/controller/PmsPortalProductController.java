@@ -53,6 +53,17 @@ public class PmsPortalProductController {
         return CommonResult.success(list);
     }
 
+    @Operation(summary = "以树形结构获取指定商品分类及其子分类")
+    @RequestMapping(value = "/categoryTree/{id}", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<PmsProductCategoryNode> categoryTree(@PathVariable Long id) {
+        PmsProductCategoryNode node = portalProductService.categoryTree(id);
+        if (node == null) {
+            return CommonResult.failed("商品分类不存在");
+        }
+        return CommonResult.success(node);
+    }
+
     @Operation(summary = "获取前台商品详情")
     @RequestMapping(value = "/detail/{id}", method = RequestMethod.GET)
     @ResponseBody
@@ -0,0 +1,27 @@
+package com.macro.mall.portal.dao;
+
+import com.macro.mall.model.OmsCartItem;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 购物车自定义Dao
+ * Created by macro on 2026/10/18.
+ */
+public interface PortalCartItemDao {
+    /**
+     * 获取购物车最大id
+     */
+    Long getMaxId();
+
+    /**
+     * 按id批量插入或更新购物车商品
+     */
+    int upsertList(@Param("list") List<OmsCartItem> list);
+
+    /**
+     * 按id批量逻辑删除购物车商品
+     */
+    int deleteList(@Param("ids") List<Long> ids);
+}
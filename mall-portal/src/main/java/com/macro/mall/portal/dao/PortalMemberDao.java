@@ -0,0 +1,22 @@
+package com.macro.mall.portal.dao;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
+
+/**
+ * 会员自定义Dao
+ * Created by macro on 2026/10/18.
+ */
+public interface PortalMemberDao {
+    /**
+     * 按变化量修改会员积分，修改后积分不能小于0
+     */
+    int updateIntegration(@Param("id") Long id, @Param("delta") Integer delta);
+
+    /**
+     * 按会员批量增加积分
+     * @param deltaMap 会员id->增加的积分
+     */
+    int addIntegration(@Param("deltaMap") Map<Long, Integer> deltaMap);
+}
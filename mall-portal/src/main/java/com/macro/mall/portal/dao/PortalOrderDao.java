@@ -1,6 +1,6 @@
 package com.macro.mall.portal.dao;
 
-import com.macro.mall.model.OmsOrderItem;
+import com.macro.mall.model.OmsOrder;
 import com.macro.mall.portal.domain.OmsOrderDetail;
 import org.apache.ibatis.annotations.Param;
 
@@ -17,15 +17,17 @@ public interface PortalOrderDao {
     OmsOrderDetail getDetail(@Param("orderId") Long orderId);
 
     /**
-     * 修改 pms_sku_stock表的锁定库存及真实库存
+     * 按id顺序分页获取超时未支付的订单id
+     * @param minute 超时时间（分）
+     * @param lastId 上一页最后一个订单id
+     * @param limit  每页数量
      */
-    int updateSkuStock(@Param("itemList") List<OmsOrderItem> orderItemList);
+    List<Long> getTimeOutOrderIds(@Param("minute") Integer minute, @Param("lastId") Long lastId, @Param("limit") Integer limit);
 
     /**
-     * 获取超时订单
-     * @param minute 超时时间（分）
+     * 锁定并获取指定id中未支付的订单
      */
-    List<OmsOrderDetail> getTimeOutOrders(@Param("minute") Integer minute);
+    List<OmsOrder> lockUnpaidOrderList(@Param("ids") List<Long> ids);
 
     /**
      * 批量修改订单状态
@@ -33,8 +35,8 @@ public interface PortalOrderDao {
     int updateOrderStatus(@Param("ids") List<Long> ids,@Param("status") Integer status);
 
     /**
-     * 解除取消订单的库存锁定
+     * 批量插入订单并回填订单id
      */
-    int releaseSkuStockLock(@Param("itemList") List<OmsOrderItem> orderItemList);
+    int insertList(@Param("list") List<OmsOrder> orderList);
 
 }
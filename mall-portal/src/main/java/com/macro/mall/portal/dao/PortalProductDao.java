@@ -1,6 +1,5 @@
 package com.macro.mall.portal.dao;
 
-import com.macro.mall.model.SmsCoupon;
 import com.macro.mall.portal.domain.CartProduct;
 import com.macro.mall.portal.domain.PromotionProduct;
 import org.apache.ibatis.annotations.Param;
@@ -13,6 +12,5 @@ import java.util.List;
  */
 public interface PortalProductDao {
     CartProduct getCartProduct(@Param("id") Long id);
-    List<PromotionProduct> getPromotionProductList(@Param("ids") List<Long> ids);
-    List<SmsCoupon> getAvailableCouponList(@Param("productId") Long productId,@Param("productCategoryId")Long productCategoryId);
+    List<PromotionProduct> getPromotionProductBaseList(@Param("ids") List<Long> ids);
 }
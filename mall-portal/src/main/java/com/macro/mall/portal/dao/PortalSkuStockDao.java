@@ -0,0 +1,37 @@
+package com.macro.mall.portal.dao;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 前台SKU库存自定义Dao
+ * Created by macro on 2026/10/18.
+ */
+public interface PortalSkuStockDao {
+
+    /**
+     * 扣减真实库存并释放锁定库存，真实库存不足时不修改
+     * @return 修改的行数，为0表示真实库存不足（超卖）或SKU不存在
+     */
+    int deductStock(@Param("skuId") Long skuId, @Param("quantity") Integer quantity);
+
+    /**
+     * 记录一次回写中各SKU的锁定库存变化量，同一回写批次中已记录的SKU忽略
+     * @param flushId 回写批次id
+     * @param attempt 本次写入的标识，用于区分本次新记录的SKU
+     * @param deltaMap skuId->锁定库存变化量
+     */
+    int insertFlushLog(@Param("flushId") String flushId, @Param("attempt") String attempt, @Param("deltaMap") Map<Long, Integer> deltaMap);
+
+    /**
+     * 将本次新记录的变化量累加到锁定库存
+     */
+    int updateLockStockByFlushLog(@Param("flushId") String flushId, @Param("attempt") String attempt);
+
+    /**
+     * 删除指定时间之前的回写记录
+     */
+    int deleteFlushLogBefore(@Param("time") Date time);
+}
@@ -1,16 +1,42 @@
 package com.macro.mall.portal.dao;
 
 import com.macro.mall.model.SmsCoupon;
-import com.macro.mall.portal.domain.SmsCouponHistoryDetail;
+import com.macro.mall.model.SmsCouponHistory;
 import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 会员优惠券领取历史自定义Dao
  * Created by macro on 2018/8/29.
  */
 public interface SmsCouponHistoryDao {
-    List<SmsCouponHistoryDetail> getDetailList(@Param("memberId") Long memberId);
     List<SmsCoupon> getCouponList(@Param("memberId") Long memberId, @Param("useStatus")Integer useStatus);
+
+    /**
+     * 获取指定订单中已关联优惠券使用记录的订单id
+     */
+    List<Long> getUsedOrderIds(@Param("orderIds") List<Long> orderIds);
+
+    /**
+     * 将指定订单使用的优惠券恢复为未使用
+     */
+    int resetByOrderIds(@Param("orderIds") List<Long> orderIds);
+
+    /**
+     * 批量插入优惠券领取历史
+     */
+    int insertList(@Param("list") List<SmsCouponHistory> couponHistoryList);
+
+    /**
+     * 获取已写入的优惠券码，用于重放中断的批量插入时跳过已写入的领取历史
+     */
+    List<String> getExistCouponCodes(@Param("couponCodes") List<String> couponCodes);
+
+    /**
+     * 按变化量批量修改优惠券剩余数量及领取数量
+     * @param deltaMap 优惠券id->领取数量
+     */
+    int updateReceiveCount(@Param("deltaMap") Map<Long, Integer> deltaMap);
 }
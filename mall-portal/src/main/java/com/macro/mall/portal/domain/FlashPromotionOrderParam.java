@@ -0,0 +1,24 @@
+package com.macro.mall.portal.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 秒杀下单时传入的参数
+ * Created by macro on 2026/10/18.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class FlashPromotionOrderParam {
+    @Schema(title = "秒杀商品关系ID")
+    private Long flashPromotionRelationId;
+    @Schema(title = "商品SKU ID")
+    private Long productSkuId;
+    @Schema(title = "购买数量")
+    private Integer quantity;
+    @Schema(title = "收货地址ID")
+    private Long memberReceiveAddressId;
+    @Schema(title = "支付方式")
+    private Integer payType;
+}
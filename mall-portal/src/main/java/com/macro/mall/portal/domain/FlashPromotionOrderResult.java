@@ -0,0 +1,24 @@
+package com.macro.mall.portal.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 秒杀下单排队结果
+ * Created by macro on 2026/10/18.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class FlashPromotionOrderResult {
+    @Schema(title = "排队凭证")
+    private String ticketId;
+    @Schema(title = "下单状态：0->排队中；1->下单成功；2->下单失败")
+    private Integer status;
+    @Schema(title = "订单ID")
+    private Long orderId;
+    @Schema(title = "订单编号")
+    private String orderSn;
+    @Schema(title = "提示信息")
+    private String message;
+}
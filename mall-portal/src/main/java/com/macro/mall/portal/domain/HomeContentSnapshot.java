@@ -0,0 +1,23 @@
+package com.macro.mall.portal.domain;
+
+/**
+ * 首页内容快照，保存序列化后的接口返回结果及其ETag
+ * Created by macro on 2026/10/18.
+ */
+public class HomeContentSnapshot {
+    private final byte[] content;
+    private final String etag;
+
+    public HomeContentSnapshot(byte[] content, String etag) {
+        this.content = content;
+        this.etag = etag;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+}
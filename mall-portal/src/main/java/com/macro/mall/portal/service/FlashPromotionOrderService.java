@@ -0,0 +1,39 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.portal.domain.FlashPromotionOrderParam;
+import com.macro.mall.portal.domain.FlashPromotionOrderResult;
+
+/**
+ * 秒杀下单Service
+ * Created by macro on 2026/10/18.
+ */
+public interface FlashPromotionOrderService {
+
+    /**
+     * 将即将开始及正在进行的秒杀场次库存预热到Redis
+     * @return 预热的秒杀商品数量
+     */
+    int preload();
+
+    /**
+     * 秒杀下单：校验限购并扣减名额后进入下单队列
+     * @return 排队凭证
+     */
+    String submit(FlashPromotionOrderParam param);
+
+    /**
+     * 根据排队凭证获取下单结果
+     */
+    FlashPromotionOrderResult getResult(String ticketId);
+
+    /**
+     * 秒杀订单取消时返还活动名额
+     */
+    void releaseQuota(Long orderId);
+
+    /**
+     * 清理超时仍未处理的下单请求：订单已写入的补登超时取消及下单结果，未写入的返还库存和名额
+     * @return 清理的请求数量
+     */
+    int sweepPendingTickets();
+}
@@ -0,0 +1,20 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.portal.domain.HomeContentSnapshot;
+
+/**
+ * 首页内容快照Service
+ * 后台定时及首页内容变更时重建快照，快照以序列化后的JSON保存在本地内存和Redis中
+ * Created by macro on 2026/10/18.
+ */
+public interface HomeContentSnapshotService {
+    /**
+     * 获取当前快照，本地没有快照时从Redis加载或立即构建
+     */
+    HomeContentSnapshot getSnapshot();
+
+    /**
+     * 重建快照，其他节点正在重建时从Redis加载最新快照
+     */
+    void refresh();
+}
@@ -21,8 +21,8 @@ public interface OmsPortalOrderService {
 
     /**
      * 根据提交信息生成订单
+     * 数据并发读取后在一个事务中写入，事务由实现类控制，延迟取消消息在事务提交后发送
      */
-    @Transactional
     Map<String, Object> generateOrder(OrderParam orderParam);
 
     /**
@@ -32,9 +32,8 @@ public interface OmsPortalOrderService {
     Integer paySuccess(Long orderId, Integer payType);
 
     /**
-     * 自动取消超时订单
+     * 自动取消超时订单，按订单id分批处理，每批一个事务
      */
-    @Transactional
     Integer cancelTimeOutOrder();
 
     /**
@@ -43,6 +42,12 @@ public interface OmsPortalOrderService {
     @Transactional
     void cancelOrder(Long orderId);
 
+    /**
+     * 批量取消未支付的订单，按订单id分批处理，每批一个事务
+     * @return 取消的订单数量
+     */
+    int cancelOrderList(List<Long> orderIds);
+
     /**
      * 发送延迟消息取消订单
      */
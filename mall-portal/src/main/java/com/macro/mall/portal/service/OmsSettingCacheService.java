@@ -0,0 +1,26 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.model.OmsOrderSetting;
+import com.macro.mall.model.UmsIntegrationConsumeSetting;
+
+/**
+ * 订单设置及积分使用设置本地缓存Service
+ * 设置以快照形式缓存在本地，后台修改设置时通过Redis频道通知刷新，同时定时刷新兜底
+ * Created by macro on 2026/10/18.
+ */
+public interface OmsSettingCacheService {
+    /**
+     * 获取订单设置
+     */
+    OmsOrderSetting getOrderSetting();
+
+    /**
+     * 获取积分使用设置
+     */
+    UmsIntegrationConsumeSetting getIntegrationConsumeSetting();
+
+    /**
+     * 从数据库重新加载设置
+     */
+    void refresh();
+}
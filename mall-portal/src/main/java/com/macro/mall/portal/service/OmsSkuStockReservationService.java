@@ -0,0 +1,49 @@
+package com.macro.mall.portal.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SKU库存预占Service
+ * 可用库存计数器存放于Redis，通过原子脚本整单预占/释放，定时回写pms_sku_stock.lock_stock
+ * Created by macro on 2026/10/18.
+ */
+public interface OmsSkuStockReservationService {
+
+    /**
+     * 整单预占库存，任意一个SKU库存不足则全部不预占
+     * @param skuQuantityMap skuId->预占数量
+     * @return 是否预占成功
+     */
+    boolean reserve(Map<Long, Integer> skuQuantityMap);
+
+    /**
+     * 释放预占的库存
+     * @param skuQuantityMap skuId->释放数量
+     */
+    void release(Map<Long, Integer> skuQuantityMap);
+
+    /**
+     * 将累计的预占变化量批量回写到pms_sku_stock.lock_stock
+     * @return 回写的SKU数量
+     */
+    int flushLockStock();
+
+    /**
+     * 删除过期的锁定库存回写记录
+     * @return 删除的记录数量
+     */
+    int cleanFlushLog();
+
+    /**
+     * 从MySQL重建全部SKU的可用库存计数器
+     * @param force 是否忽略已初始化标记强制重建
+     * @return 重建的SKU数量
+     */
+    int rebuild(boolean force);
+
+    /**
+     * 从MySQL刷新指定SKU的可用库存计数器
+     */
+    void refresh(List<Long> skuIds);
+}
@@ -22,6 +22,11 @@ public interface PmsPortalProductService {
      */
     List<PmsProductCategoryNode> categoryTreeList();
 
+    /**
+     * 以树形结构获取指定商品分类及其子分类
+     */
+    PmsProductCategoryNode categoryTree(Long id);
+
     /**
      * 获取前台商品详情
      */
@@ -0,0 +1,34 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.model.PmsProductCategory;
+import com.macro.mall.portal.domain.PmsProductCategoryNode;
+
+import java.util.List;
+
+/**
+ * 商品分类树Service
+ * 在本地内存中维护商品分类树的不可变快照，定时或收到商品分类变更通知时整体重建
+ * Created by macro on 2026/10/18.
+ */
+public interface PmsProductCategoryTreeService {
+
+    /**
+     * 获取完整的商品分类树
+     */
+    List<PmsProductCategoryNode> getTree();
+
+    /**
+     * 获取以指定分类为根的子树，分类不存在时返回null
+     */
+    PmsProductCategoryNode getSubtree(Long id);
+
+    /**
+     * 获取指定分类下显示的直接子分类，按排序字段降序
+     */
+    List<PmsProductCategory> listShowChildren(Long parentId);
+
+    /**
+     * 从数据库重建商品分类树
+     */
+    void refresh();
+}
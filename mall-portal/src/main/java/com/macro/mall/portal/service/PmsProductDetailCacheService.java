@@ -0,0 +1,29 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.portal.domain.PmsPortalProductDetail;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * 商品详情缓存Service
+ * 商品详情序列化后缓存在本地，收到商品或优惠券变更通知时失效
+ * Created by macro on 2026/10/18.
+ */
+public interface PmsProductDetailCacheService {
+
+    /**
+     * 获取商品详情，缓存不存在时使用loader加载，同一商品同时只会加载一次
+     */
+    PmsPortalProductDetail get(Long productId, Function<Long, PmsPortalProductDetail> loader);
+
+    /**
+     * 清除指定商品的详情缓存
+     */
+    void evict(Collection<Long> productIds);
+
+    /**
+     * 清除所有商品的详情缓存
+     */
+    void clear();
+}
@@ -0,0 +1,29 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.model.SmsCoupon;
+import com.macro.mall.portal.domain.SmsCouponHistoryDetail;
+
+import java.util.List;
+
+/**
+ * 优惠券适用范围索引Service
+ * 在本地内存中维护未结束的优惠券及其关联的商品、商品分类，定时或收到优惠券变更通知时整体刷新
+ * Created by macro on 2026/10/18.
+ */
+public interface SmsCouponIndexService {
+
+    /**
+     * 获取会员未使用的优惠券详情，优惠券及关联关系从索引中获取
+     */
+    List<SmsCouponHistoryDetail> listUnusedDetail(Long memberId);
+
+    /**
+     * 获取当前可用于指定商品的优惠券：全场通用、指定分类或指定商品
+     */
+    List<SmsCoupon> listByProduct(Long productId, Long productCategoryId);
+
+    /**
+     * 从数据库重建索引
+     */
+    void refresh();
+}
@@ -0,0 +1,37 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.model.SmsCoupon;
+import com.macro.mall.model.SmsCouponHistory;
+
+/**
+ * 优惠券发放Service
+ * 剩余数量及会员已领取数量存放于Redis，领取时原子校验并扣减；
+ * 领取历史先进入Redis队列再批量写入MySQL，sms_coupon的数量定时按变化量回写
+ * Created by macro on 2026/10/18.
+ */
+public interface SmsCouponIssueService {
+
+    /**
+     * 领取优惠券，数量不足或超过每人限领数量时抛出异常
+     * @param coupon        优惠券
+     * @param couponHistory 领取历史，领取成功后异步写入数据库
+     */
+    void claim(SmsCoupon coupon, SmsCouponHistory couponHistory);
+
+    /**
+     * 将队列中的领取历史批量写入数据库，上次写入中断遗留的领取历史先去重后重放
+     * @return 写入的领取历史数量
+     */
+    int flushHistory();
+
+    /**
+     * 将累计的领取数量批量回写到sms_coupon
+     * @return 回写的优惠券数量
+     */
+    int flushReceiveCount();
+
+    /**
+     * 清除优惠券剩余数量计数器，下次领取时从数据库重新加载
+     */
+    void evict(Long couponId);
+}
@@ -0,0 +1,22 @@
+package com.macro.mall.portal.service;
+
+import com.macro.mall.common.cache.RegionIndex;
+import com.macro.mall.model.SysRegion;
+
+/**
+ * 区域索引Service
+ * 在本地内存中维护整张区域表的索引，定时或收到区域变更通知时整体重建
+ * Created by macro on 2026/10/18.
+ */
+public interface SysRegionIndexService {
+
+    /**
+     * 获取当前的区域索引
+     */
+    RegionIndex<SysRegion> getIndex();
+
+    /**
+     * 从数据库重建区域索引
+     */
+    void refresh();
+}
@@ -18,7 +18,7 @@ public interface UmsMemberCacheService {
     UmsMember getMember(Long memberId);
 
     /**
-     * 设置会员用户缓存
+     * 设置会员用户缓存，用于未命中后回填数据库中的会员信息
      */
     void setMember(UmsMember member);
 
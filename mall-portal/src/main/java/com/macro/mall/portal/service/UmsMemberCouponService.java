@@ -29,6 +29,11 @@ public interface UmsMemberCouponService {
      */
     List<SmsCouponHistoryDetail> listCart(List<CartPromotionItem> cartItemList, Integer type);
 
+    /**
+     * 根据已查询的会员优惠券和购物车信息筛选可用或不可用的优惠券
+     */
+    List<SmsCouponHistoryDetail> listCart(List<SmsCouponHistoryDetail> couponHistoryDetailList, List<CartPromotionItem> cartItemList, Integer type);
+
     /**
      * 获取当前商品相关优惠券
      */
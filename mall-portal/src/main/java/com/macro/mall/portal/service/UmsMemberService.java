@@ -4,6 +4,8 @@ import cn.dev33.satoken.stp.SaTokenInfo;
 import com.macro.mall.model.UmsMember;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Map;
+
 /**
  * 会员管理Service
  * Created by macro on 2018/8/3.
@@ -46,6 +48,18 @@ public interface UmsMemberService {
      */
     void updateIntegration(Long id,Integer integration);
 
+    /**
+     * 按变化量修改会员积分，扣减后积分不足时不修改
+     * @return 是否修改成功
+     */
+    boolean changeIntegration(Long id, Integer delta);
+
+    /**
+     * 按会员批量增加积分
+     * @param deltaMap 会员id->增加的积分
+     */
+    void addIntegration(Map<Long, Integer> deltaMap);
+
     /**
      * 登录后获取token
      */
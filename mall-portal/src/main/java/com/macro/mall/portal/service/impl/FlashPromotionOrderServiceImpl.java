@@ -0,0 +1,641 @@
+package com.macro.mall.portal.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.IdUtil;
+import com.macro.mall.common.exception.Asserts;
+import com.macro.mall.common.service.RedisService;
+import com.macro.mall.mapper.*;
+import com.macro.mall.model.*;
+import com.macro.mall.portal.component.OrderSnGenerator;
+import com.macro.mall.portal.component.OrderTimeoutScheduler;
+import com.macro.mall.portal.dao.PortalOrderDao;
+import com.macro.mall.portal.dao.PortalOrderItemDao;
+import com.macro.mall.portal.domain.FlashPromotionOrderParam;
+import com.macro.mall.portal.domain.FlashPromotionOrderResult;
+import com.macro.mall.portal.service.FlashPromotionOrderService;
+import com.macro.mall.portal.service.OmsSettingCacheService;
+import com.macro.mall.portal.service.OmsSkuStockReservationService;
+import com.macro.mall.portal.service.UmsMemberReceiveAddressService;
+import com.macro.mall.portal.service.UmsMemberService;
+import com.macro.mall.portal.util.DateUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀下单Service实现类
+ * 名额校验在Redis中完成，通过校验的请求进入内存队列，由固定数量的工作线程批量写入订单；
+ * 请求同时登记在Redis的待处理有序集合中，节点宕机丢失的请求超时后由清理任务按订单是否已写入补全或返还库存
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class FlashPromotionOrderServiceImpl implements FlashPromotionOrderService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlashPromotionOrderServiceImpl.class);
+    /**
+     * 名额校验：KEYS[1]为活动库存，KEYS[2]为会员已购数量hash；ARGV为会员id、购买数量、每人限购数量、过期秒数
+     * 返回1表示成功，0表示已抢完，-1表示未预热，-2表示超出限购
+     */
+    private static final DefaultRedisScript<Long> ADMIT_SCRIPT = new DefaultRedisScript<>(
+            "local stock = redis.call('GET', KEYS[1])\n" +
+            "if not stock then return -1 end\n" +
+            "local bought = tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0')\n" +
+            "if bought + tonumber(ARGV[2]) > tonumber(ARGV[3]) then return -2 end\n" +
+            "if tonumber(stock) < tonumber(ARGV[2]) then return 0 end\n" +
+            "redis.call('DECRBY', KEYS[1], ARGV[2])\n" +
+            "redis.call('HINCRBY', KEYS[2], ARGV[1], ARGV[2])\n" +
+            "redis.call('EXPIRE', KEYS[2], ARGV[4])\n" +
+            "return 1", Long.class);
+    /**
+     * 返还名额：参数同名额校验
+     */
+    private static final DefaultRedisScript<Long> RETURN_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "  redis.call('INCRBY', KEYS[1], ARGV[2])\n" +
+            "end\n" +
+            "local bought = redis.call('HINCRBY', KEYS[2], ARGV[1], 0 - tonumber(ARGV[2]))\n" +
+            "if bought <= 0 then redis.call('HDEL', KEYS[2], ARGV[1]) end\n" +
+            "return 1", Long.class);
+    /**
+     * 开始写入订单前延长待处理请求的处理期限，请求已被清理任务取走时返回0：KEYS[1]为待处理有序集合；ARGV[1]为请求，ARGV[2]为新的期限
+     */
+    private static final DefaultRedisScript<Long> EXTEND_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('ZSCORE', KEYS[1], ARGV[1]) then return 0 end\n" +
+            "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])\n" +
+            "return 1", Long.class);
+    /**
+     * 活动库存在Redis中的保留时长
+     */
+    private static final Duration STOCK_EXPIRE = Duration.ofDays(2);
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private UmsMemberService memberService;
+    @Autowired
+    private UmsMemberReceiveAddressService memberReceiveAddressService;
+    @Autowired
+    private OmsSkuStockReservationService stockReservationService;
+    @Autowired
+    private SmsFlashPromotionMapper flashPromotionMapper;
+    @Autowired
+    private SmsFlashPromotionSessionMapper promotionSessionMapper;
+    @Autowired
+    private SmsFlashPromotionProductRelationMapper relationMapper;
+    @Autowired
+    private PmsProductMapper productMapper;
+    @Autowired
+    private PmsSkuStockMapper skuStockMapper;
+    @Autowired
+    private OmsSettingCacheService settingCacheService;
+    @Autowired
+    private OmsOrderMapper orderMapper;
+    @Autowired
+    private PortalOrderDao portalOrderDao;
+    @Autowired
+    private PortalOrderItemDao orderItemDao;
+    @Autowired
+    private OrderSnGenerator orderSnGenerator;
+    @Autowired
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.flashPromotion}")
+    private String REDIS_KEY_FLASH_PROMOTION;
+    @Value("${flashPromotion.preloadAhead:10}")
+    private Integer PRELOAD_AHEAD;
+    @Value("${flashPromotion.queueCapacity:10000}")
+    private Integer QUEUE_CAPACITY;
+    @Value("${flashPromotion.workerCount:4}")
+    private Integer WORKER_COUNT;
+    @Value("${flashPromotion.batchSize:50}")
+    private Integer BATCH_SIZE;
+    @Value("${flashPromotion.ticketExpire:1800}")
+    private Long TICKET_EXPIRE;
+    @Value("${flashPromotion.ticketTimeout:300}")
+    private Long TICKET_TIMEOUT;
+    /**
+     * 当前可下单的秒杀商品，预热时整体替换
+     */
+    private volatile Map<Long, FlashRelationSnapshot> relationMap = Collections.emptyMap();
+    private BlockingQueue<FlashOrderTicket> ticketQueue;
+    private ExecutorService workerPool;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        ticketQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        workerPool = Executors.newFixedThreadPool(WORKER_COUNT, new CustomizableThreadFactory("flash-order-"));
+        for (int i = 0; i < WORKER_COUNT; i++) {
+            workerPool.execute(this::work);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        //停止接收新请求，工作线程处理完队列中剩余的请求后退出
+        running = false;
+        workerPool.shutdown();
+        if (!workerPool.awaitTermination(30, TimeUnit.SECONDS)) {
+            LOGGER.warn("秒杀下单队列未处理完毕，剩余数量：{}", ticketQueue.size());
+        }
+    }
+
+    @Override
+    public int preload() {
+        Date now = new Date();
+        Date currDate = DateUtil.getDate(now);
+        SmsFlashPromotionExample promotionExample = new SmsFlashPromotionExample();
+        promotionExample.createCriteria()
+                .andStatusEqualTo(1)
+                .andStartDateLessThanOrEqualTo(currDate)
+                .andEndDateGreaterThanOrEqualTo(currDate);
+        List<SmsFlashPromotion> promotionList = flashPromotionMapper.selectByExample(promotionExample);
+        //正在进行及在预热时间内即将开始的场次
+        Date currTime = DateUtil.getTime(now);
+        Date aheadTime = new Date(currTime.getTime() + PRELOAD_AHEAD * 60 * 1000L);
+        SmsFlashPromotionSessionExample sessionExample = new SmsFlashPromotionSessionExample();
+        sessionExample.createCriteria()
+                .andStatusEqualTo(1)
+                .andStartTimeLessThanOrEqualTo(aheadTime)
+                .andEndTimeGreaterThanOrEqualTo(currTime);
+        List<SmsFlashPromotionSession> sessionList = promotionSessionMapper.selectByExample(sessionExample);
+        if (CollUtil.isEmpty(promotionList) || CollUtil.isEmpty(sessionList)) {
+            relationMap = Collections.emptyMap();
+            return 0;
+        }
+        Map<Long, SmsFlashPromotionSession> sessionMap = sessionList.stream()
+                .collect(Collectors.toMap(SmsFlashPromotionSession::getId, Function.identity()));
+        SmsFlashPromotionProductRelationExample relationExample = new SmsFlashPromotionProductRelationExample();
+        relationExample.createCriteria()
+                .andFlashPromotionIdIn(promotionList.stream().map(SmsFlashPromotion::getId).collect(Collectors.toList()))
+                .andFlashPromotionSessionIdIn(new ArrayList<>(sessionMap.keySet()));
+        List<SmsFlashPromotionProductRelation> relationList = relationMapper.selectByExample(relationExample);
+        if (CollUtil.isEmpty(relationList)) {
+            relationMap = Collections.emptyMap();
+            return 0;
+        }
+        List<Long> productIds = relationList.stream().map(SmsFlashPromotionProductRelation::getProductId).distinct().collect(Collectors.toList());
+        PmsProductExample productExample = new PmsProductExample();
+        productExample.createCriteria().andIdIn(productIds).andDeleteStatusEqualTo(0).andPublishStatusEqualTo(1);
+        Map<Long, PmsProduct> productMap = productMapper.selectByExample(productExample).stream()
+                .collect(Collectors.toMap(PmsProduct::getId, Function.identity()));
+        PmsSkuStockExample skuStockExample = new PmsSkuStockExample();
+        skuStockExample.createCriteria().andProductIdIn(productIds);
+        Map<Long, List<PmsSkuStock>> skuStockMap = skuStockMapper.selectByExample(skuStockExample).stream()
+                .collect(Collectors.groupingBy(PmsSkuStock::getProductId));
+        String dateKey = new SimpleDateFormat("yyyyMMdd").format(now);
+        Map<Long, FlashRelationSnapshot> newRelationMap = new HashMap<>();
+        for (SmsFlashPromotionProductRelation relation : relationList) {
+            PmsProduct product = productMap.get(relation.getProductId());
+            if (product == null) {
+                continue;
+            }
+            FlashRelationSnapshot snapshot = new FlashRelationSnapshot();
+            snapshot.relation = relation;
+            snapshot.session = sessionMap.get(relation.getFlashPromotionSessionId());
+            snapshot.product = product;
+            snapshot.skuStockMap = skuStockMap.getOrDefault(product.getId(), Collections.emptyList()).stream()
+                    .collect(Collectors.toMap(PmsSkuStock::getId, Function.identity()));
+            newRelationMap.put(relation.getId(), snapshot);
+            //每个场次每天的活动库存只初始化一次，已存在时保留当前剩余名额
+            int count = relation.getFlashPromotionCount() == null ? 0 : relation.getFlashPromotionCount();
+            stringRedisTemplate.opsForValue().setIfAbsent(getStockKey(dateKey, relation.getId()), String.valueOf(count), STOCK_EXPIRE);
+        }
+        relationMap = newRelationMap;
+        return newRelationMap.size();
+    }
+
+    @Override
+    public String submit(FlashPromotionOrderParam param) {
+        if (!running) {
+            Asserts.fail("系统繁忙，请稍后再试");
+        }
+        if (param.getQuantity() == null || param.getQuantity() <= 0) {
+            Asserts.fail("购买数量不正确");
+        }
+        if (param.getMemberReceiveAddressId() == null) {
+            Asserts.fail("请选择收货地址！");
+        }
+        FlashRelationSnapshot snapshot = relationMap.get(param.getFlashPromotionRelationId());
+        if (snapshot == null) {
+            Asserts.fail("该商品不在秒杀活动中");
+        }
+        Date now = new Date();
+        Date currTime = DateUtil.getTime(now);
+        if (currTime.before(snapshot.session.getStartTime()) || currTime.after(snapshot.session.getEndTime())) {
+            Asserts.fail("秒杀活动未开始或已结束");
+        }
+        PmsSkuStock skuStock = snapshot.skuStockMap.get(param.getProductSkuId());
+        if (skuStock == null) {
+            Asserts.fail("商品规格不存在");
+        }
+        UmsMember member = memberService.getCurrentMember();
+        UmsMemberReceiveAddress address = memberReceiveAddressService.getItem(param.getMemberReceiveAddressId());
+        if (address == null) {
+            Asserts.fail("请选择收货地址！");
+        }
+        FlashOrderTicket ticket = new FlashOrderTicket();
+        ticket.ticketId = IdUtil.fastSimpleUUID();
+        ticket.dateKey = new SimpleDateFormat("yyyyMMdd").format(now);
+        ticket.snapshot = snapshot;
+        ticket.skuStock = skuStock;
+        ticket.member = member;
+        ticket.address = address;
+        ticket.quantity = param.getQuantity();
+        ticket.payType = param.getPayType() == null ? 0 : param.getPayType();
+        //提前生成订单编号（订单来源为app），清理任务据此判断订单是否已写入
+        ticket.orderSn = orderSnGenerator.generate(1, ticket.payType);
+        //校验限购并扣减活动名额
+        int limit = snapshot.relation.getFlashPromotionLimit() == null ? Integer.MAX_VALUE : snapshot.relation.getFlashPromotionLimit();
+        Long result = stringRedisTemplate.execute(ADMIT_SCRIPT, getQuotaKeys(ticket.dateKey, snapshot.relation.getId()),
+                member.getId().toString(), ticket.quantity.toString(), String.valueOf(limit), String.valueOf(STOCK_EXPIRE.getSeconds()));
+        if (result == null || result == -1) {
+            Asserts.fail("秒杀活动未开始或已结束");
+        } else if (result == -2) {
+            Asserts.fail("超出每人限购数量");
+        } else if (result == 0) {
+            Asserts.fail("商品已抢完");
+        }
+        //预占SKU库存
+        Map<Long, Integer> skuQuantityMap = Collections.singletonMap(skuStock.getId(), ticket.quantity);
+        if (!stockReservationService.reserve(skuQuantityMap)) {
+            returnQuota(ticket.dateKey, snapshot.relation.getId(), member.getId(), ticket.quantity);
+            Asserts.fail("库存不足，无法下单");
+        }
+        setResult(ticket, 0, null, "排队中");
+        //格式：排队凭证:日期:秒杀商品关系id:会员id:skuId:数量:订单编号
+        ticket.pending = ticket.ticketId + ":" + ticket.dateKey + ":" + snapshot.relation.getId() + ":" + member.getId()
+                + ":" + skuStock.getId() + ":" + ticket.quantity + ":" + ticket.orderSn;
+        stringRedisTemplate.opsForZSet().add(getPendingKey(), ticket.pending, System.currentTimeMillis() + TICKET_TIMEOUT * 1000);
+        if (!ticketQueue.offer(ticket)) {
+            stringRedisTemplate.opsForZSet().remove(getPendingKey(), ticket.pending);
+            stockReservationService.release(skuQuantityMap);
+            returnQuota(ticket.dateKey, snapshot.relation.getId(), member.getId(), ticket.quantity);
+            redisService.del(getTicketKey(ticket.ticketId));
+            Asserts.fail("排队人数过多，请稍后再试");
+        }
+        return ticket.ticketId;
+    }
+
+    @Override
+    public FlashPromotionOrderResult getResult(String ticketId) {
+        return (FlashPromotionOrderResult) redisService.get(getTicketKey(ticketId));
+    }
+
+    @Override
+    public void releaseQuota(Long orderId) {
+        String key = getOrderKey(orderId);
+        String quota = (String) redisService.get(key);
+        if (quota == null) {
+            return;
+        }
+        redisService.del(key);
+        //格式：日期:秒杀商品关系id:会员id:数量
+        String[] parts = quota.split(":");
+        returnQuota(parts[0], Long.valueOf(parts[1]), Long.valueOf(parts[2]), Integer.valueOf(parts[3]));
+    }
+
+    @Override
+    public int sweepPendingTickets() {
+        Set<String> expiredSet = stringRedisTemplate.opsForZSet().rangeByScore(getPendingKey(), 0, System.currentTimeMillis(), 0, BATCH_SIZE);
+        if (CollUtil.isEmpty(expiredSet)) {
+            return 0;
+        }
+        OmsOrderSetting orderSetting = settingCacheService.getOrderSetting();
+        int count = 0;
+        for (String pending : expiredSet) {
+            //多个节点同时清理时只有一个节点能取走请求
+            Long removed = stringRedisTemplate.opsForZSet().remove(getPendingKey(), pending);
+            if (removed == null || removed == 0) {
+                continue;
+            }
+            String[] parts = pending.split(":");
+            String ticketId = parts[0];
+            String dateKey = parts[1];
+            Long relationId = Long.valueOf(parts[2]);
+            Long memberId = Long.valueOf(parts[3]);
+            Long skuId = Long.valueOf(parts[4]);
+            Integer quantity = Integer.valueOf(parts[5]);
+            OmsOrderExample example = new OmsOrderExample();
+            example.createCriteria().andOrderSnEqualTo(parts[6]);
+            List<OmsOrder> orderList = orderMapper.selectByExample(example);
+            if (CollUtil.isNotEmpty(orderList)) {
+                //订单已写入但节点在登记超时取消前宕机
+                completeOrder(ticketId, dateKey + ":" + relationId + ":" + memberId + ":" + quantity, orderList.get(0), orderSetting);
+            } else {
+                failTicket(ticketId, dateKey, relationId, memberId, skuId, quantity);
+            }
+            count++;
+        }
+        if (count > 0) {
+            LOGGER.warn("清理超时未处理的秒杀下单请求，数量：{}", count);
+        }
+        return count;
+    }
+
+    /**
+     * 工作线程：从队列中批量取出请求写入订单
+     */
+    private void work() {
+        List<FlashOrderTicket> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !ticketQueue.isEmpty()) {
+            try {
+                FlashOrderTicket first = ticketQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                ticketQueue.drainTo(batch, BATCH_SIZE - 1);
+                createOrders(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("秒杀订单写入失败", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void createOrders(List<FlashOrderTicket> batch) {
+        OmsOrderSetting orderSetting;
+        try {
+            orderSetting = settingCacheService.getOrderSetting();
+        } catch (RuntimeException e) {
+            LOGGER.error("获取订单设置失败，本批秒杀订单全部失败", e);
+            batch.forEach(this::onFailure);
+            return;
+        }
+        List<FlashOrderTicket> builtList = new ArrayList<>(batch.size());
+        long deadline = System.currentTimeMillis() + TICKET_TIMEOUT * 1000;
+        for (FlashOrderTicket ticket : batch) {
+            //排队过久的请求已被清理任务返还库存，不再写入订单
+            Long extended = stringRedisTemplate.execute(EXTEND_SCRIPT, Collections.singletonList(getPendingKey()),
+                    ticket.pending, String.valueOf(deadline));
+            if (extended == null || extended == 0) {
+                LOGGER.warn("秒杀下单请求已超时被清理，ticketId：{}", ticket.ticketId);
+                continue;
+            }
+            try {
+                buildOrder(ticket, orderSetting);
+                builtList.add(ticket);
+            } catch (RuntimeException e) {
+                LOGGER.error("秒杀订单生成失败，ticketId：{}", ticket.ticketId, e);
+                onFailure(ticket);
+            }
+        }
+        if (builtList.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertOrders(builtList));
+        } catch (RuntimeException e) {
+            //整批写入失败时逐个重试，避免个别请求影响整批
+            LOGGER.warn("秒杀订单批量写入失败，改为逐个写入：{}", e.getMessage());
+            for (FlashOrderTicket ticket : builtList) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insertOrders(Collections.singletonList(ticket)));
+                } catch (RuntimeException ex) {
+                    LOGGER.error("秒杀订单写入失败，ticketId：{}", ticket.ticketId, ex);
+                    onFailure(ticket);
+                    continue;
+                }
+                onSuccess(ticket, orderSetting);
+            }
+            return;
+        }
+        for (FlashOrderTicket ticket : builtList) {
+            onSuccess(ticket, orderSetting);
+        }
+    }
+
+    private void insertOrders(List<FlashOrderTicket> ticketList) {
+        List<OmsOrder> orderList = ticketList.stream().map(ticket -> ticket.order).collect(Collectors.toList());
+        portalOrderDao.insertList(orderList);
+        List<OmsOrderItem> orderItemList = new ArrayList<>();
+        for (FlashOrderTicket ticket : ticketList) {
+            ticket.orderItem.setOrderId(ticket.order.getId());
+            ticket.orderItem.setOrderSn(ticket.order.getOrderSn());
+            orderItemList.add(ticket.orderItem);
+        }
+        orderItemDao.insertList(orderItemList);
+    }
+
+    private void onSuccess(FlashOrderTicket ticket, OmsOrderSetting orderSetting) {
+        if (!ack(ticket)) {
+            return;
+        }
+        String quota = ticket.dateKey + ":" + ticket.snapshot.relation.getId() + ":" + ticket.member.getId() + ":" + ticket.quantity;
+        completeOrder(ticket.ticketId, quota, ticket.order, orderSetting);
+    }
+
+    private void onFailure(FlashOrderTicket ticket) {
+        if (!ack(ticket)) {
+            return;
+        }
+        failTicket(ticket.ticketId, ticket.dateKey, ticket.snapshot.relation.getId(), ticket.member.getId(),
+                ticket.skuStock.getId(), ticket.quantity);
+    }
+
+    /**
+     * 从待处理有序集合中移除请求，请求已被清理任务取走时返回false，由清理任务完成后续处理
+     */
+    private boolean ack(FlashOrderTicket ticket) {
+        try {
+            Long removed = stringRedisTemplate.opsForZSet().remove(getPendingKey(), ticket.pending);
+            return removed != null && removed > 0;
+        } catch (RuntimeException e) {
+            //请求仍在待处理有序集合中，超时后由清理任务按订单是否已写入处理
+            LOGGER.error("移除待处理秒杀下单请求失败，ticketId：{}", ticket.ticketId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 订单已提交，此处的失败不能再返还库存，只记录日志
+     */
+    private void completeOrder(String ticketId, String quota, OmsOrder order, OmsOrderSetting orderSetting) {
+        Long orderId = order.getId();
+        long overtime = orderSetting == null || orderSetting.getFlashOrderOvertime() == null ? 30 : orderSetting.getFlashOrderOvertime();
+        //先登记超时取消，保证未支付订单最终会释放库存
+        try {
+            orderTimeoutScheduler.schedule(orderId, overtime * 60 * 1000L);
+        } catch (RuntimeException e) {
+            LOGGER.error("秒杀订单登记超时取消失败，orderId：{}", orderId, e);
+        }
+        try {
+            //记录订单占用的活动名额，订单取消时返还
+            redisService.set(getOrderKey(orderId), quota, overtime * 60 + STOCK_EXPIRE.getSeconds());
+            setResult(ticketId, 1, order, "下单成功");
+        } catch (RuntimeException e) {
+            LOGGER.error("秒杀订单已生成但记录下单结果失败，orderId：{}，ticketId：{}", orderId, ticketId, e);
+        }
+    }
+
+    private void failTicket(String ticketId, String dateKey, Long relationId, Long memberId, Long skuId, Integer quantity) {
+        try {
+            stockReservationService.release(Collections.singletonMap(skuId, quantity));
+            returnQuota(dateKey, relationId, memberId, quantity);
+            setResult(ticketId, 2, null, "下单失败，请重试");
+        } catch (RuntimeException e) {
+            LOGGER.error("秒杀订单失败后返还库存失败，ticketId：{}", ticketId, e);
+        }
+    }
+
+    /**
+     * 根据排队请求生成订单及下单商品
+     */
+    private void buildOrder(FlashOrderTicket ticket, OmsOrderSetting orderSetting) {
+        PmsProduct product = ticket.snapshot.product;
+        PmsSkuStock skuStock = ticket.skuStock;
+        BigDecimal flashPrice = ticket.snapshot.relation.getFlashPromotionPrice();
+        BigDecimal originalPrice = skuStock.getPrice() == null ? flashPrice : skuStock.getPrice();
+        BigDecimal reduceAmount = originalPrice.subtract(flashPrice).max(BigDecimal.ZERO);
+        BigDecimal quantity = new BigDecimal(ticket.quantity);
+        OmsOrderItem orderItem = new OmsOrderItem();
+        orderItem.setProductId(product.getId());
+        orderItem.setProductName(product.getName());
+        orderItem.setProductPic(skuStock.getPic() != null ? skuStock.getPic() : product.getPic());
+        orderItem.setProductAttr(skuStock.getSpData());
+        orderItem.setProductBrand(product.getBrandName());
+        orderItem.setProductSn(product.getProductSn());
+        orderItem.setProductPrice(originalPrice);
+        orderItem.setProductQuantity(ticket.quantity);
+        orderItem.setProductSkuId(skuStock.getId());
+        orderItem.setProductSkuCode(skuStock.getSkuCode());
+        orderItem.setProductCategoryId(product.getProductCategoryId());
+        orderItem.setPromotionAmount(reduceAmount);
+        orderItem.setPromotionName("秒杀特价");
+        orderItem.setCouponAmount(new BigDecimal(0));
+        orderItem.setIntegrationAmount(new BigDecimal(0));
+        orderItem.setRealAmount(flashPrice);
+        orderItem.setGiftIntegration(product.getGiftPoint());
+        orderItem.setGiftGrowth(product.getGiftGrowth());
+        OmsOrder order = new OmsOrder();
+        order.setMemberId(ticket.member.getId());
+        order.setMemberUsername(ticket.member.getUsername());
+        order.setCreateTime(new Date());
+        order.setTotalAmount(originalPrice.multiply(quantity));
+        order.setPromotionAmount(reduceAmount.multiply(quantity));
+        order.setPromotionInfo("秒杀特价");
+        order.setFreightAmount(new BigDecimal(0));
+        order.setCouponAmount(new BigDecimal(0));
+        order.setIntegrationAmount(new BigDecimal(0));
+        order.setDiscountAmount(new BigDecimal(0));
+        order.setPayAmount(flashPrice.multiply(quantity));
+        order.setPayType(ticket.payType);
+        order.setSourceType(1);
+        order.setStatus(0);
+        //订单类型：0->正常订单；1->秒杀订单
+        order.setOrderType(1);
+        order.setReceiverName(ticket.address.getName());
+        order.setReceiverPhone(ticket.address.getPhoneNumber());
+        order.setReceiverPostCode(ticket.address.getPostCode());
+        order.setReceiverProvince(ticket.address.getProvince());
+        order.setReceiverCity(ticket.address.getCity());
+        order.setReceiverRegion(ticket.address.getRegion());
+        order.setReceiverDetailAddress(ticket.address.getDetailAddress());
+        order.setConfirmStatus(0);
+        order.setDeleteStatus(0);
+        order.setIntegration(product.getGiftPoint() == null ? 0 : product.getGiftPoint() * ticket.quantity);
+        order.setGrowth(product.getGiftGrowth() == null ? 0 : product.getGiftGrowth() * ticket.quantity);
+        if (orderSetting != null) {
+            order.setAutoConfirmDay(orderSetting.getConfirmOvertime());
+        }
+        order.setOrderSn(ticket.orderSn);
+        ticket.order = order;
+        ticket.orderItem = orderItem;
+    }
+
+    private void returnQuota(String dateKey, Long relationId, Long memberId, Integer quantity) {
+        stringRedisTemplate.execute(RETURN_SCRIPT, getQuotaKeys(dateKey, relationId), memberId.toString(), quantity.toString());
+    }
+
+    private void setResult(FlashOrderTicket ticket, Integer status, OmsOrder order, String message) {
+        setResult(ticket.ticketId, status, order, message);
+    }
+
+    private void setResult(String ticketId, Integer status, OmsOrder order, String message) {
+        FlashPromotionOrderResult result = new FlashPromotionOrderResult();
+        result.setTicketId(ticketId);
+        result.setStatus(status);
+        result.setMessage(message);
+        if (order != null) {
+            result.setOrderId(order.getId());
+            result.setOrderSn(order.getOrderSn());
+        }
+        redisService.set(getTicketKey(ticketId), result, TICKET_EXPIRE);
+    }
+
+    private List<String> getQuotaKeys(String dateKey, Long relationId) {
+        return Arrays.asList(getStockKey(dateKey, relationId),
+                REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":" + dateKey + ":bought:" + relationId);
+    }
+
+    private String getStockKey(String dateKey, Long relationId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":" + dateKey + ":stock:" + relationId;
+    }
+
+    private String getTicketKey(String ticketId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":ticket:" + ticketId;
+    }
+
+    private String getOrderKey(Long orderId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":order:" + orderId;
+    }
+
+    private String getPendingKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":pending";
+    }
+
+    /**
+     * 预热后的秒杀商品信息
+     */
+    private static class FlashRelationSnapshot {
+        private SmsFlashPromotionProductRelation relation;
+        private SmsFlashPromotionSession session;
+        private PmsProduct product;
+        private Map<Long, PmsSkuStock> skuStockMap;
+    }
+
+    /**
+     * 通过名额校验等待写入的秒杀下单请求
+     */
+    private static class FlashOrderTicket {
+        private String ticketId;
+        private String dateKey;
+        private FlashRelationSnapshot snapshot;
+        private PmsSkuStock skuStock;
+        private UmsMember member;
+        private UmsMemberReceiveAddress address;
+        private Integer quantity;
+        private Integer payType;
+        private String orderSn;
+        /**
+         * 登记在待处理有序集合中的请求内容
+         */
+        private String pending;
+        private OmsOrder order;
+        private OmsOrderItem orderItem;
+    }
+}
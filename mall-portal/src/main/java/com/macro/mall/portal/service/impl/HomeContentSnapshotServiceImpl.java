@@ -0,0 +1,163 @@
+package com.macro.mall.portal.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.macro.mall.common.api.CommonResult;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
+import com.macro.mall.portal.domain.HomeContentResult;
+import com.macro.mall.portal.domain.HomeContentSnapshot;
+import com.macro.mall.portal.service.HomeContentSnapshotService;
+import com.macro.mall.portal.service.HomeService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 首页内容快照Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class HomeContentSnapshotServiceImpl implements HomeContentSnapshotService, MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HomeContentSnapshotServiceImpl.class);
+    /**
+     * 只释放自己持有的重建锁
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0", Long.class);
+    @Autowired
+    private HomeService homeService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.homeContent}")
+    private String REDIS_KEY_HOME_CONTENT;
+    @Value("${home.content.lockTime:30}")
+    private Long LOCK_TIME;
+    private final AtomicReference<HomeContentSnapshot> snapshot = new AtomicReference<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisChannelConstant.HOME_CONTENT_CHANGE));
+    }
+
+    @Override
+    public HomeContentSnapshot getSnapshot() {
+        HomeContentSnapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot.get();
+            if (current == null) {
+                current = loadFromRedis();
+            }
+            if (current == null) {
+                current = build();
+                store(current);
+            }
+            return current;
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${home.content.refreshInterval:30000}")
+    public void refresh() {
+        String lockKey = getKey() + ":lock";
+        String token = IdUtil.fastSimpleUUID();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_TIME, TimeUnit.SECONDS))) {
+            //其他节点正在重建，重建完成后会收到通知
+            loadFromRedis();
+            return;
+        }
+        try {
+            HomeContentSnapshot current = snapshot.get();
+            HomeContentSnapshot rebuilt = build();
+            if (current == null || !current.getEtag().equals(rebuilt.getEtag())) {
+                store(rebuilt);
+                redisService.publish(RedisChannelConstant.HOME_CONTENT_CHANGE, rebuilt.getEtag());
+            }
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (RedisChannelConstant.HOME_CONTENT_REBUILD.equals(body)) {
+                refresh();
+                return;
+            }
+            HomeContentSnapshot current = snapshot.get();
+            if (current == null || !current.getEtag().equals(body)) {
+                loadFromRedis();
+            }
+        } catch (Exception e) {
+            LOGGER.error("处理首页内容变更通知失败", e);
+        }
+    }
+
+    /**
+     * 查询首页内容并序列化为接口返回结果
+     */
+    private HomeContentSnapshot build() {
+        HomeContentResult contentResult = homeService.content();
+        try {
+            return createSnapshot(objectMapper.writeValueAsBytes(CommonResult.success(contentResult)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化首页内容失败", e);
+        }
+    }
+
+    private void store(HomeContentSnapshot rebuilt) {
+        stringRedisTemplate.opsForValue().set(getKey(), new String(rebuilt.getContent(), StandardCharsets.UTF_8));
+        snapshot.set(rebuilt);
+    }
+
+    private HomeContentSnapshot loadFromRedis() {
+        String content = stringRedisTemplate.opsForValue().get(getKey());
+        if (content == null) {
+            return null;
+        }
+        HomeContentSnapshot loaded = createSnapshot(content.getBytes(StandardCharsets.UTF_8));
+        snapshot.set(loaded);
+        return loaded;
+    }
+
+    private HomeContentSnapshot createSnapshot(byte[] content) {
+        return new HomeContentSnapshot(content, "\"" + DigestUtils.md5DigestAsHex(content) + "\"");
+    }
+
+    private String getKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_HOME_CONTENT;
+    }
+}
@@ -3,11 +3,13 @@ package com.macro.mall.portal.service.impl;
 import com.github.pagehelper.PageHelper;
 import com.macro.mall.mapper.*;
 import com.macro.mall.model.*;
+import com.macro.mall.portal.component.AsyncQueryComposer;
 import com.macro.mall.portal.dao.HomeDao;
 import com.macro.mall.portal.domain.FlashPromotionProduct;
 import com.macro.mall.portal.domain.HomeContentResult;
 import com.macro.mall.portal.domain.HomeFlashPromotion;
 import com.macro.mall.portal.service.HomeService;
+import com.macro.mall.portal.service.PmsProductCategoryTreeService;
 import com.macro.mall.portal.util.DateUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -15,6 +17,7 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 首页内容管理Service实现类
@@ -22,6 +25,7 @@ import java.util.List;
  */
 @Service
 public class HomeServiceImpl implements HomeService {
+    private static final String ENDPOINT = "homeContent";
     @Autowired
     private SmsHomeAdvertiseMapper advertiseMapper;
     @Autowired
@@ -33,25 +37,34 @@ public class HomeServiceImpl implements HomeService {
     @Autowired
     private PmsProductMapper productMapper;
     @Autowired
-    private PmsProductCategoryMapper productCategoryMapper;
+    private PmsProductCategoryTreeService productCategoryTreeService;
     @Autowired
     private CmsSubjectMapper subjectMapper;
+    @Autowired
+    private AsyncQueryComposer asyncQueryComposer;
 
     @Override
     public HomeContentResult content() {
+        //各模块互不依赖，并发查询
+        CompletableFuture<List<SmsHomeAdvertise>> advertiseFuture = asyncQueryComposer.supply(ENDPOINT, this::getHomeAdvertiseList);
+        CompletableFuture<List<PmsBrand>> brandFuture = asyncQueryComposer.supply(ENDPOINT, () -> homeDao.getRecommendBrandList(0, 6));
+        CompletableFuture<HomeFlashPromotion> flashPromotionFuture = asyncQueryComposer.supply(ENDPOINT, this::getHomeFlashPromotion);
+        CompletableFuture<List<PmsProduct>> newProductFuture = asyncQueryComposer.supply(ENDPOINT, () -> homeDao.getNewProductList(0, 4));
+        CompletableFuture<List<PmsProduct>> hotProductFuture = asyncQueryComposer.supply(ENDPOINT, () -> homeDao.getHotProductList(0, 4));
+        CompletableFuture<List<CmsSubject>> subjectFuture = asyncQueryComposer.supply(ENDPOINT, () -> homeDao.getRecommendSubjectList(0, 4));
         HomeContentResult result = new HomeContentResult();
         //获取首页广告
-        result.setAdvertiseList(getHomeAdvertiseList());
+        result.setAdvertiseList(asyncQueryComposer.join(advertiseFuture));
         //获取推荐品牌
-        result.setBrandList(homeDao.getRecommendBrandList(0,6));
+        result.setBrandList(asyncQueryComposer.join(brandFuture));
         //获取秒杀信息
-        result.setHomeFlashPromotion(getHomeFlashPromotion());
+        result.setHomeFlashPromotion(asyncQueryComposer.join(flashPromotionFuture));
         //获取新品推荐
-        result.setNewProductList(homeDao.getNewProductList(0,4));
+        result.setNewProductList(asyncQueryComposer.join(newProductFuture));
         //获取人气推荐
-        result.setHotProductList(homeDao.getHotProductList(0,4));
+        result.setHotProductList(asyncQueryComposer.join(hotProductFuture));
         //获取推荐专题
-        result.setSubjectList(homeDao.getRecommendSubjectList(0,4));
+        result.setSubjectList(asyncQueryComposer.join(subjectFuture));
         return result;
     }
 
@@ -68,12 +81,7 @@ public class HomeServiceImpl implements HomeService {
 
     @Override
     public List<PmsProductCategory> getProductCateList(Long parentId) {
-        PmsProductCategoryExample example = new PmsProductCategoryExample();
-        example.createCriteria()
-                .andShowStatusEqualTo(1)
-                .andParentIdEqualTo(parentId);
-        example.setOrderByClause("sort desc");
-        return productCategoryMapper.selectByExample(example);
+        return productCategoryTreeService.listShowChildren(parentId);
     }
 
     @Override
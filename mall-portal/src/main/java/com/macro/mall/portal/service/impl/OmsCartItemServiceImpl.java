@@ -1,10 +1,9 @@
 package com.macro.mall.portal.service.impl;
 
 import cn.hutool.core.collection.CollUtil;
-import com.macro.mall.mapper.OmsCartItemMapper;
 import com.macro.mall.model.OmsCartItem;
-import com.macro.mall.model.OmsCartItemExample;
 import com.macro.mall.model.UmsMember;
+import com.macro.mall.portal.component.CartStore;
 import com.macro.mall.portal.dao.PortalProductDao;
 import com.macro.mall.portal.domain.CartProduct;
 import com.macro.mall.portal.domain.CartPromotionItem;
@@ -16,9 +15,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 购物车管理Service实现类
@@ -27,7 +26,7 @@ import java.util.stream.Collectors;
 @Service
 public class OmsCartItemServiceImpl implements OmsCartItemService {
     @Autowired
-    private OmsCartItemMapper cartItemMapper;
+    private CartStore cartStore;
     @Autowired
     private PortalProductDao productDao;
     @Autowired
@@ -37,52 +36,25 @@ public class OmsCartItemServiceImpl implements OmsCartItemService {
 
     @Override
     public int add(OmsCartItem cartItem) {
-        int count;
         UmsMember currentMember =memberService.getCurrentMember();
         cartItem.setMemberId(currentMember.getId());
         cartItem.setMemberNickname(currentMember.getNickname());
         cartItem.setDeleteStatus(0);
-        OmsCartItem existCartItem = getCartItem(cartItem);
-        if (existCartItem == null) {
-            cartItem.setCreateDate(new Date());
-            count = cartItemMapper.insert(cartItem);
-        } else {
-            cartItem.setModifyDate(new Date());
-            existCartItem.setQuantity(existCartItem.getQuantity() + cartItem.getQuantity());
-            count = cartItemMapper.updateByPrimaryKey(existCartItem);
-        }
-        return count;
-    }
-
-    /**
-     * 根据会员id,商品id和规格获取购物车中商品
-     */
-    private OmsCartItem getCartItem(OmsCartItem cartItem) {
-        OmsCartItemExample example = new OmsCartItemExample();
-        OmsCartItemExample.Criteria criteria = example.createCriteria().andMemberIdEqualTo(cartItem.getMemberId())
-                .andProductIdEqualTo(cartItem.getProductId()).andDeleteStatusEqualTo(0);
-        if (cartItem.getProductSkuId()!=null) {
-            criteria.andProductSkuIdEqualTo(cartItem.getProductSkuId());
-        }
-        List<OmsCartItem> cartItemList = cartItemMapper.selectByExample(example);
-        if (!CollectionUtils.isEmpty(cartItemList)) {
-            return cartItemList.get(0);
-        }
-        return null;
+        return cartStore.add(cartItem);
     }
 
     @Override
     public List<OmsCartItem> list(Long memberId) {
-        OmsCartItemExample example = new OmsCartItemExample();
-        example.createCriteria().andDeleteStatusEqualTo(0).andMemberIdEqualTo(memberId);
-        return cartItemMapper.selectByExample(example);
+        return cartStore.list(memberId);
     }
 
     @Override
     public List<CartPromotionItem> listPromotion(Long memberId, List<Long> cartIds) {
-        List<OmsCartItem> cartItemList = list(memberId);
+        List<OmsCartItem> cartItemList;
         if(CollUtil.isNotEmpty(cartIds)){
-            cartItemList = cartItemList.stream().filter(item->cartIds.contains(item.getId())).collect(Collectors.toList());
+            cartItemList = cartStore.list(memberId, new LinkedHashSet<>(cartIds));
+        }else{
+            cartItemList = list(memberId);
         }
         List<CartPromotionItem> cartPromotionItemList = new ArrayList<>();
         if(!CollectionUtils.isEmpty(cartItemList)){
@@ -93,21 +65,12 @@ public class OmsCartItemServiceImpl implements OmsCartItemService {
 
     @Override
     public int updateQuantity(Long id, Long memberId, Integer quantity) {
-        OmsCartItem cartItem = new OmsCartItem();
-        cartItem.setQuantity(quantity);
-        OmsCartItemExample example = new OmsCartItemExample();
-        example.createCriteria().andDeleteStatusEqualTo(0)
-                .andIdEqualTo(id).andMemberIdEqualTo(memberId);
-        return cartItemMapper.updateByExampleSelective(cartItem, example);
+        return cartStore.updateQuantity(memberId, id, quantity);
     }
 
     @Override
     public int delete(Long memberId, List<Long> ids) {
-        OmsCartItem record = new OmsCartItem();
-        record.setDeleteStatus(1);
-        OmsCartItemExample example = new OmsCartItemExample();
-        example.createCriteria().andIdIn(ids).andMemberIdEqualTo(memberId);
-        return cartItemMapper.updateByExampleSelective(record, example);
+        return cartStore.delete(memberId, ids);
     }
 
     @Override
@@ -118,11 +81,8 @@ public class OmsCartItemServiceImpl implements OmsCartItemService {
     @Override
     public int updateAttr(OmsCartItem cartItem) {
         //删除原购物车信息
-        OmsCartItem updateCart = new OmsCartItem();
-        updateCart.setId(cartItem.getId());
-        updateCart.setModifyDate(new Date());
-        updateCart.setDeleteStatus(1);
-        cartItemMapper.updateByPrimaryKeySelective(updateCart);
+        UmsMember currentMember = memberService.getCurrentMember();
+        cartStore.delete(currentMember.getId(), Collections.singletonList(cartItem.getId()));
         cartItem.setId(null);
         add(cartItem);
         return 1;
@@ -130,10 +90,6 @@ public class OmsCartItemServiceImpl implements OmsCartItemService {
 
     @Override
     public int clear(Long memberId) {
-        OmsCartItem record = new OmsCartItem();
-        record.setDeleteStatus(1);
-        OmsCartItemExample example = new OmsCartItemExample();
-        example.createCriteria().andMemberIdEqualTo(memberId);
-        return cartItemMapper.updateByExampleSelective(record,example);
+        return cartStore.clear(memberId);
     }
 }
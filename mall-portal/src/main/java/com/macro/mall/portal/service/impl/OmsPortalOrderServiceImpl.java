@@ -5,24 +5,35 @@ import cn.hutool.core.collection.CollUtil;
 import com.github.pagehelper.PageHelper;
 import com.macro.mall.common.api.CommonPage;
 import com.macro.mall.common.exception.Asserts;
-import com.macro.mall.common.service.RedisService;
 import com.macro.mall.mapper.*;
 import com.macro.mall.model.*;
-import com.macro.mall.portal.component.CancelOrderSender;
+import com.macro.mall.portal.component.OrderSnGenerator;
+import com.macro.mall.portal.component.OrderTimeoutScheduler;
+import com.macro.mall.portal.component.SkuStockBatchUpdater;
 import com.macro.mall.portal.dao.PortalOrderDao;
 import com.macro.mall.portal.dao.PortalOrderItemDao;
 import com.macro.mall.portal.dao.SmsCouponHistoryDao;
 import com.macro.mall.portal.domain.*;
 import com.macro.mall.portal.service.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StopWatch;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +42,11 @@ import java.util.stream.Collectors;
  */
 @Service
 public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OmsPortalOrderServiceImpl.class);
+    /**
+     * 每个事务中批量取消的订单数量
+     */
+    private static final int CANCEL_BATCH_SIZE = 200;
     @Autowired
     private UmsMemberService memberService;
     @Autowired
@@ -40,9 +56,11 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
     @Autowired
     private UmsMemberCouponService memberCouponService;
     @Autowired
-    private UmsIntegrationConsumeSettingMapper integrationConsumeSettingMapper;
+    private SmsCouponIndexService couponIndexService;
     @Autowired
-    private PmsSkuStockMapper skuStockMapper;
+    private OmsSettingCacheService settingCacheService;
+    @Autowired
+    private OmsSkuStockReservationService stockReservationService;
     @Autowired
     private SmsCouponHistoryDao couponHistoryDao;
     @Autowired
@@ -52,19 +70,25 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
     @Autowired
     private SmsCouponHistoryMapper couponHistoryMapper;
     @Autowired
-    private RedisService redisService;
-    @Value("${redis.key.orderId}")
-    private String REDIS_KEY_ORDER_ID;
-    @Value("${redis.database}")
-    private String REDIS_DATABASE;
+    private OrderSnGenerator orderSnGenerator;
     @Autowired
     private PortalOrderDao portalOrderDao;
     @Autowired
-    private OmsOrderSettingMapper orderSettingMapper;
-    @Autowired
     private OmsOrderItemMapper orderItemMapper;
     @Autowired
-    private CancelOrderSender cancelOrderSender;
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    @Autowired
+    private SkuStockBatchUpdater skuStockBatchUpdater;
+    @Autowired
+    private FlashPromotionOrderService flashPromotionOrderService;
+    @Autowired
+    private UmsMemberReceiveAddressMapper addressMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private ThreadPoolTaskExecutor orderReadExecutor;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @Override
     public ConfirmOrderResult generateConfirmOrder(List<Long> cartIds) {
@@ -82,7 +106,7 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         //获取用户积分
         result.setMemberIntegration(currentMember.getIntegration());
         //获取积分使用规则
-        UmsIntegrationConsumeSetting integrationConsumeSetting = integrationConsumeSettingMapper.selectByPrimaryKey(1L);
+        UmsIntegrationConsumeSetting integrationConsumeSetting = settingCacheService.getIntegrationConsumeSetting();
         result.setIntegrationConsumeSetting(integrationConsumeSetting);
         //计算总金额、活动优惠、应付金额
         ConfirmOrderResult.CalcAmount calcAmount = calcCartAmount(cartPromotionItemList);
@@ -92,14 +116,48 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
 
     @Override
     public Map<String, Object> generateOrder(OrderParam orderParam) {
-        List<OmsOrderItem> orderItemList = new ArrayList<>();
         //校验收货地址
         if(orderParam.getMemberReceiveAddressId()==null){
             Asserts.fail("请选择收货地址！");
         }
-        //获取购物车及优惠信息
+        StopWatch stopWatch = new StopWatch("generateOrder");
+        try {
+            return generateOrder(orderParam, stopWatch);
+        } finally {
+            recordStageTime(stopWatch);
+        }
+    }
+
+    /**
+     * 下单流程：并发读取下单所需数据，计算金额后在一个事务中写入，事务提交后发送延迟取消消息
+     */
+    private Map<String, Object> generateOrder(OrderParam orderParam, StopWatch stopWatch) {
+        //读取阶段：会员信息依赖当前登录会话需在请求线程获取，其余数据并发查询
+        stopWatch.start("read");
         UmsMember currentMember = memberService.getCurrentMember();
-        List<CartPromotionItem> cartPromotionItemList = cartItemService.listPromotion(currentMember.getId(), orderParam.getCartIds());
+        Long memberId = currentMember.getId();
+        boolean hasCoupon = orderParam.getCouponId() != null;
+        boolean useIntegration = orderParam.getUseIntegration() != null && !orderParam.getUseIntegration().equals(0);
+        CompletableFuture<List<CartPromotionItem>> cartFuture = CompletableFuture.supplyAsync(
+                () -> cartItemService.listPromotion(memberId, orderParam.getCartIds()), orderReadExecutor);
+        CompletableFuture<UmsMemberReceiveAddress> addressFuture = CompletableFuture.supplyAsync(
+                () -> getReceiveAddress(memberId, orderParam.getMemberReceiveAddressId()), orderReadExecutor);
+        CompletableFuture<List<SmsCouponHistoryDetail>> couponFuture = hasCoupon
+                ? CompletableFuture.supplyAsync(() -> couponIndexService.listUnusedDetail(memberId), orderReadExecutor)
+                : CompletableFuture.completedFuture(Collections.emptyList());
+        List<CartPromotionItem> cartPromotionItemList = join(cartFuture);
+        UmsMemberReceiveAddress address = join(addressFuture);
+        List<SmsCouponHistoryDetail> couponHistoryDetailList = join(couponFuture);
+        //订单设置及积分使用设置从本地缓存获取
+        UmsIntegrationConsumeSetting integrationConsumeSetting = settingCacheService.getIntegrationConsumeSetting();
+        OmsOrderSetting orderSetting = settingCacheService.getOrderSetting();
+        stopWatch.stop();
+        //计算阶段：生成下单商品并分摊优惠
+        stopWatch.start("calc");
+        if (address == null) {
+            Asserts.fail("收货地址不存在");
+        }
+        List<OmsOrderItem> orderItemList = new ArrayList<>();
         for (CartPromotionItem cartPromotionItem : cartPromotionItemList) {
             //生成下单商品信息
             OmsOrderItem orderItem = new OmsOrderItem();
@@ -120,19 +178,16 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
             orderItem.setGiftGrowth(cartPromotionItem.getGrowth());
             orderItemList.add(orderItem);
         }
-        //判断购物车中商品是否都有库存
-        if (!hasStock(cartPromotionItemList)) {
-            Asserts.fail("库存不足，无法下单");
-        }
         //判断使用使用了优惠券
-        if (orderParam.getCouponId() == null) {
+        SmsCouponHistoryDetail couponHistoryDetail = null;
+        if (!hasCoupon) {
             //不用优惠券
             for (OmsOrderItem orderItem : orderItemList) {
                 orderItem.setCouponAmount(new BigDecimal(0));
             }
         } else {
             //使用优惠券
-            SmsCouponHistoryDetail couponHistoryDetail = getUseCoupon(cartPromotionItemList, orderParam.getCouponId());
+            couponHistoryDetail = getUseCoupon(couponHistoryDetailList, cartPromotionItemList, orderParam.getCouponId());
             if (couponHistoryDetail == null) {
                 Asserts.fail("该优惠券不可用");
             }
@@ -140,7 +195,7 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
             handleCouponAmount(orderItemList, couponHistoryDetail);
         }
         //判断是否使用积分
-        if (orderParam.getUseIntegration() == null||orderParam.getUseIntegration().equals(0)) {
+        if (!useIntegration) {
             //不使用积分
             for (OmsOrderItem orderItem : orderItemList) {
                 orderItem.setIntegrationAmount(new BigDecimal(0));
@@ -148,7 +203,7 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         } else {
             //使用积分
             BigDecimal totalAmount = calcTotalAmount(orderItemList);
-            BigDecimal integrationAmount = getUseIntegrationAmount(orderParam.getUseIntegration(), totalAmount, currentMember, orderParam.getCouponId() != null);
+            BigDecimal integrationAmount = getUseIntegrationAmount(orderParam.getUseIntegration(), totalAmount, currentMember, hasCoupon, integrationConsumeSetting);
             if (integrationAmount.compareTo(new BigDecimal(0)) == 0) {
                 Asserts.fail("积分不可用");
             } else {
@@ -161,8 +216,6 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         }
         //计算order_item的实付金额
         handleRealAmount(orderItemList);
-        //进行库存锁定
-        lockStock(cartPromotionItemList);
         //根据商品合计、运费、活动优惠、优惠券、积分计算应付金额
         OmsOrder order = new OmsOrder();
         order.setDiscountAmount(new BigDecimal(0));
@@ -170,7 +223,7 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         order.setFreightAmount(new BigDecimal(0));
         order.setPromotionAmount(calcPromotionAmount(orderItemList));
         order.setPromotionInfo(getOrderPromotionInfo(orderItemList));
-        if (orderParam.getCouponId() == null) {
+        if (!hasCoupon) {
             order.setCouponAmount(new BigDecimal(0));
         } else {
             order.setCouponId(orderParam.getCouponId());
@@ -185,7 +238,7 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         }
         order.setPayAmount(calcPayAmount(order));
         //转化为订单信息并插入数据库
-        order.setMemberId(currentMember.getId());
+        order.setMemberId(memberId);
         order.setCreateTime(new Date());
         order.setMemberUsername(currentMember.getUsername());
         //支付方式：0->未支付；1->支付宝；2->微信
@@ -197,7 +250,6 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         //订单类型：0->正常订单；1->秒杀订单
         order.setOrderType(0);
         //收货人信息：姓名、电话、邮编、地址
-        UmsMemberReceiveAddress address = memberReceiveAddressService.getItem(orderParam.getMemberReceiveAddressId());
         order.setReceiverName(address.getName());
         order.setReceiverPhone(address.getPhoneNumber());
         order.setReceiverPostCode(address.getPostCode());
@@ -212,43 +264,117 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         order.setIntegration(calcGifIntegration(orderItemList));
         //计算赠送成长值
         order.setGrowth(calcGiftGrowth(orderItemList));
-        //生成订单号
-        order.setOrderSn(generateOrderSn(order));
         //设置自动收货天数
-        List<OmsOrderSetting> orderSettings = orderSettingMapper.selectByExample(new OmsOrderSettingExample());
-        if(CollUtil.isNotEmpty(orderSettings)){
-            order.setAutoConfirmDay(orderSettings.get(0).getConfirmOvertime());
-        }
-        // TODO: 2018/9/3 bill_*,delivery_*
-        //插入order表和order_item表
-        orderMapper.insert(order);
-        for (OmsOrderItem orderItem : orderItemList) {
-            orderItem.setOrderId(order.getId());
-            orderItem.setOrderSn(order.getOrderSn());
-        }
-        orderItemDao.insertList(orderItemList);
-        //如使用优惠券更新优惠券使用状态
-        if (orderParam.getCouponId() != null) {
-            updateCouponStatus(orderParam.getCouponId(), currentMember.getId(), 1);
+        if (orderSetting != null) {
+            order.setAutoConfirmDay(orderSetting.getConfirmOvertime());
         }
-        //如使用积分需要扣除积分
         if (orderParam.getUseIntegration() != null) {
             order.setUseIntegration(orderParam.getUseIntegration());
-            if(currentMember.getIntegration()==null){
-                currentMember.setIntegration(0);
-            }
-            memberService.updateIntegration(currentMember.getId(), currentMember.getIntegration() - orderParam.getUseIntegration());
         }
-        //删除购物车中的下单商品
-        deleteCartItemList(cartPromotionItemList, currentMember);
-        //发送延迟消息取消订单
-        sendDelayMessageCancelOrder(order.getId());
+        //生成订单号
+        order.setOrderSn(orderSnGenerator.generate(order.getSourceType(), order.getPayType()));
+        stopWatch.stop();
+        //写入阶段：库存预占、订单、优惠券、积分及购物车在同一事务中完成
+        stopWatch.start("write");
+        SmsCouponHistoryDetail useCouponHistory = couponHistoryDetail;
+        transactionTemplate.executeWithoutResult(status -> {
+            //进行库存锁定
+            lockStock(orderItemList);
+            // TODO: 2018/9/3 bill_*,delivery_*
+            //插入order表和order_item表
+            orderMapper.insert(order);
+            for (OmsOrderItem orderItem : orderItemList) {
+                orderItem.setOrderId(order.getId());
+                orderItem.setOrderSn(order.getOrderSn());
+            }
+            orderItemDao.insertList(orderItemList);
+            //如使用优惠券更新优惠券使用状态
+            if (useCouponHistory != null) {
+                useCoupon(useCouponHistory.getId(), order);
+            }
+            //如使用积分需要扣除积分
+            if (useIntegration && !memberService.changeIntegration(memberId, -orderParam.getUseIntegration())) {
+                Asserts.fail("积分不足");
+            }
+            //删除购物车中的下单商品
+            deleteCartItemList(cartPromotionItemList, currentMember);
+            //事务提交后发送延迟消息取消订单
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    sendDelayMessageCancelOrder(order.getId(), orderSetting);
+                }
+            });
+        });
+        stopWatch.stop();
         Map<String, Object> result = new HashMap<>();
         result.put("order", order);
         result.put("orderItemList", orderItemList);
         return result;
     }
 
+    /**
+     * 记录下单各阶段耗时
+     */
+    private void recordStageTime(StopWatch stopWatch) {
+        if (stopWatch.isRunning()) {
+            stopWatch.stop();
+        }
+        for (StopWatch.TaskInfo taskInfo : stopWatch.getTaskInfo()) {
+            Timer.builder("mall.order.generate")
+                    .description("下单各阶段耗时")
+                    .tag("stage", taskInfo.getTaskName())
+                    .register(meterRegistry)
+                    .record(taskInfo.getTimeNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(stopWatch.prettyPrint(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * 获取并发查询结果，查询中抛出的异常原样抛出
+     */
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 获取会员的收货地址
+     */
+    private UmsMemberReceiveAddress getReceiveAddress(Long memberId, Long addressId) {
+        UmsMemberReceiveAddressExample example = new UmsMemberReceiveAddressExample();
+        example.createCriteria().andMemberIdEqualTo(memberId).andIdEqualTo(addressId);
+        List<UmsMemberReceiveAddress> addressList = addressMapper.selectByExample(example);
+        if (CollUtil.isNotEmpty(addressList)) {
+            return addressList.get(0);
+        }
+        return null;
+    }
+
+    /**
+     * 将领取的优惠券标记为已使用并关联订单，已被使用时下单失败
+     */
+    private void useCoupon(Long couponHistoryId, OmsOrder order) {
+        SmsCouponHistory record = new SmsCouponHistory();
+        record.setUseStatus(1);
+        record.setUseTime(new Date());
+        record.setOrderId(order.getId());
+        record.setOrderSn(order.getOrderSn());
+        SmsCouponHistoryExample example = new SmsCouponHistoryExample();
+        example.createCriteria().andIdEqualTo(couponHistoryId).andUseStatusEqualTo(0);
+        if (couponHistoryMapper.updateByExampleSelective(record, example) == 0) {
+            Asserts.fail("该优惠券不可用");
+        }
+    }
+
     @Override
     public Integer paySuccess(Long orderId, Integer payType) {
         //修改订单支付状态
@@ -260,66 +386,115 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         orderMapper.updateByPrimaryKeySelective(order);
         //恢复所有下单商品的锁定库存，扣减真实库存
         OmsOrderDetail orderDetail = portalOrderDao.getDetail(orderId);
-        int count = portalOrderDao.updateSkuStock(orderDetail.getOrderItemList());
+        Map<Long, Integer> countMap = skuStockBatchUpdater.deductStock(getSkuQuantityMap(orderDetail.getOrderItemList()));
+        int count = 0;
+        for (Map.Entry<Long, Integer> entry : countMap.entrySet()) {
+            if (entry.getValue() > 0) {
+                count += entry.getValue();
+            } else {
+                LOGGER.warn("支付成功扣减库存失败，可能超卖，orderId：{}，skuId：{}", orderId, entry.getKey());
+            }
+        }
         return count;
     }
 
     @Override
     public Integer cancelTimeOutOrder() {
-        Integer count=0;
-        OmsOrderSetting orderSetting = orderSettingMapper.selectByPrimaryKey(1L);
-        //查询超时、未支付的订单及订单详情
-        List<OmsOrderDetail> timeOutOrders = portalOrderDao.getTimeOutOrders(orderSetting.getNormalOrderOvertime());
-        if (CollectionUtils.isEmpty(timeOutOrders)) {
-            return count;
-        }
-        //修改订单状态为交易取消
-        List<Long> ids = new ArrayList<>();
-        for (OmsOrderDetail timeOutOrder : timeOutOrders) {
-            ids.add(timeOutOrder.getId());
-        }
-        portalOrderDao.updateOrderStatus(ids, 4);
-        for (OmsOrderDetail timeOutOrder : timeOutOrders) {
-            //解除订单商品库存锁定
-            portalOrderDao.releaseSkuStockLock(timeOutOrder.getOrderItemList());
-            //修改优惠券使用状态
-            updateCouponStatus(timeOutOrder.getCouponId(), timeOutOrder.getMemberId(), 0);
-            //返还使用积分
-            if (timeOutOrder.getUseIntegration() != null) {
-                UmsMember member = memberService.getById(timeOutOrder.getMemberId());
-                memberService.updateIntegration(timeOutOrder.getMemberId(), member.getIntegration() + timeOutOrder.getUseIntegration());
+        int count = 0;
+        OmsOrderSetting orderSetting = settingCacheService.getOrderSetting();
+        //按订单id分页查询超时、未支付的订单，每页在一个事务中批量取消
+        long lastId = 0L;
+        while (true) {
+            List<Long> orderIds = portalOrderDao.getTimeOutOrderIds(orderSetting.getNormalOrderOvertime(), lastId, CANCEL_BATCH_SIZE);
+            if (CollectionUtils.isEmpty(orderIds)) {
+                break;
             }
+            Integer cancelCount = transactionTemplate.execute(status -> cancelUnpaidOrders(orderIds));
+            count += cancelCount == null ? 0 : cancelCount;
+            lastId = orderIds.get(orderIds.size() - 1);
         }
-        return timeOutOrders.size();
+        return count;
     }
 
     @Override
     public void cancelOrder(Long orderId) {
-        //查询未付款的取消订单
-        OmsOrderExample example = new OmsOrderExample();
-        example.createCriteria().andIdEqualTo(orderId).andStatusEqualTo(0).andDeleteStatusEqualTo(0);
-        List<OmsOrder> cancelOrderList = orderMapper.selectByExample(example);
+        cancelUnpaidOrders(Collections.singletonList(orderId));
+    }
+
+    @Override
+    public int cancelOrderList(List<Long> orderIds) {
+        if (CollUtil.isEmpty(orderIds)) {
+            return 0;
+        }
+        int count = 0;
+        //每批一个事务，避免大量订单在一个事务中长时间持有行锁
+        for (int i = 0; i < orderIds.size(); i += CANCEL_BATCH_SIZE) {
+            List<Long> batch = orderIds.subList(i, Math.min(i + CANCEL_BATCH_SIZE, orderIds.size()));
+            Integer cancelCount = transactionTemplate.execute(status -> cancelUnpaidOrders(batch));
+            count += cancelCount == null ? 0 : cancelCount;
+        }
+        return count;
+    }
+
+    /**
+     * 批量取消未支付的订单，需在事务中调用
+     * 订单状态、优惠券、积分各用一条语句批量修改，库存按SKU合并后在事务提交后释放
+     * @return 取消的订单数量
+     */
+    private int cancelUnpaidOrders(List<Long> orderIds) {
+        //锁定未付款的订单，避免与支付回调并发修改
+        List<OmsOrder> cancelOrderList = portalOrderDao.lockUnpaidOrderList(orderIds);
         if (CollectionUtils.isEmpty(cancelOrderList)) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(cancelOrderList.size());
+        List<Long> couponOrderIds = new ArrayList<>();
+        List<Long> flashOrderIds = new ArrayList<>();
+        Map<Long, Integer> integrationMap = new HashMap<>();
+        for (OmsOrder cancelOrder : cancelOrderList) {
+            ids.add(cancelOrder.getId());
+            if (cancelOrder.getCouponId() != null) {
+                couponOrderIds.add(cancelOrder.getId());
+            }
+            if (Integer.valueOf(1).equals(cancelOrder.getOrderType())) {
+                flashOrderIds.add(cancelOrder.getId());
+            }
+            if (cancelOrder.getUseIntegration() != null && cancelOrder.getUseIntegration() > 0) {
+                integrationMap.merge(cancelOrder.getMemberId(), cancelOrder.getUseIntegration(), Integer::sum);
+            }
+        }
+        //修改订单状态为取消
+        portalOrderDao.updateOrderStatus(ids, 4);
+        //合并所有订单商品后解除库存锁定
+        OmsOrderItemExample orderItemExample = new OmsOrderItemExample();
+        orderItemExample.createCriteria().andOrderIdIn(ids);
+        List<OmsOrderItem> orderItemList = orderItemMapper.selectByExample(orderItemExample);
+        releaseStockAfterCommit(getSkuQuantityMap(orderItemList));
+        //修改优惠券使用状态
+        resetCouponStatus(cancelOrderList, couponOrderIds);
+        //返还使用积分
+        memberService.addIntegration(integrationMap);
+        //返还秒杀活动名额
+        if (!flashOrderIds.isEmpty()) {
+            runAfterCommit(() -> flashOrderIds.forEach(flashPromotionOrderService::releaseQuota));
+        }
+        return cancelOrderList.size();
+    }
+
+    /**
+     * 按订单批量恢复优惠券为未使用，未关联订单的历史数据按会员和优惠券逐个恢复
+     */
+    private void resetCouponStatus(List<OmsOrder> cancelOrderList, List<Long> couponOrderIds) {
+        if (couponOrderIds.isEmpty()) {
             return;
         }
-        OmsOrder cancelOrder = cancelOrderList.get(0);
-        if (cancelOrder != null) {
-            //修改订单状态为取消
-            cancelOrder.setStatus(4);
-            orderMapper.updateByPrimaryKeySelective(cancelOrder);
-            OmsOrderItemExample orderItemExample = new OmsOrderItemExample();
-            orderItemExample.createCriteria().andOrderIdEqualTo(orderId);
-            List<OmsOrderItem> orderItemList = orderItemMapper.selectByExample(orderItemExample);
-            //解除订单商品库存锁定
-            if (!CollectionUtils.isEmpty(orderItemList)) {
-                portalOrderDao.releaseSkuStockLock(orderItemList);
-            }
-            //修改优惠券使用状态
-            updateCouponStatus(cancelOrder.getCouponId(), cancelOrder.getMemberId(), 0);
-            //返还使用积分
-            if (cancelOrder.getUseIntegration() != null) {
-                UmsMember member = memberService.getById(cancelOrder.getMemberId());
-                memberService.updateIntegration(cancelOrder.getMemberId(), member.getIntegration() + cancelOrder.getUseIntegration());
+        Set<Long> linkedOrderIds = new HashSet<>(couponHistoryDao.getUsedOrderIds(couponOrderIds));
+        if (!linkedOrderIds.isEmpty()) {
+            couponHistoryDao.resetByOrderIds(new ArrayList<>(linkedOrderIds));
+        }
+        for (OmsOrder cancelOrder : cancelOrderList) {
+            if (cancelOrder.getCouponId() != null && !linkedOrderIds.contains(cancelOrder.getId())) {
+                updateCouponStatus(cancelOrder.getCouponId(), cancelOrder.getMemberId(), 0);
             }
         }
     }
@@ -327,10 +502,17 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
     @Override
     public void sendDelayMessageCancelOrder(Long orderId) {
         //获取订单超时时间
-        OmsOrderSetting orderSetting = orderSettingMapper.selectByPrimaryKey(1L);
-        long delayTimes = orderSetting.getNormalOrderOvertime() * 60 * 1000;
+        OmsOrderSetting orderSetting = settingCacheService.getOrderSetting();
+        sendDelayMessageCancelOrder(orderId, orderSetting);
+    }
+
+    /**
+     * 根据已查询的订单设置发送延迟消息
+     */
+    private void sendDelayMessageCancelOrder(Long orderId, OmsOrderSetting orderSetting) {
+        long delayTimes = orderSetting.getNormalOrderOvertime() * 60 * 1000L;
         //发送延迟消息
-        cancelOrderSender.sendMessage(orderId, delayTimes);
+        orderTimeoutScheduler.schedule(orderId, delayTimes);
     }
 
     @Override
@@ -433,26 +615,6 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
         }
     }
 
-    /**
-     * 生成18位订单编号:8位日期+2位平台号码+2位支付方式+6位以上自增id
-     */
-    private String generateOrderSn(OmsOrder order) {
-        StringBuilder sb = new StringBuilder();
-        String date = new SimpleDateFormat("yyyyMMdd").format(new Date());
-        String key = REDIS_DATABASE+":"+ REDIS_KEY_ORDER_ID + date;
-        Long increment = redisService.incr(key, 1);
-        sb.append(date);
-        sb.append(String.format("%02d", order.getSourceType()));
-        sb.append(String.format("%02d", order.getPayType()));
-        String incrementStr = increment.toString();
-        if (incrementStr.length() <= 6) {
-            sb.append(String.format("%06d", increment));
-        } else {
-            sb.append(incrementStr);
-        }
-        return sb.toString();
-    }
-
     /**
      * 删除下单商品的购物车信息
      */
@@ -594,16 +756,16 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
      * @param totalAmount    订单总金额
      * @param currentMember  使用的用户
      * @param hasCoupon      是否已经使用优惠券
+     * @param integrationConsumeSetting 积分使用规则
      */
-    private BigDecimal getUseIntegrationAmount(Integer useIntegration, BigDecimal totalAmount, UmsMember currentMember, boolean hasCoupon) {
+    private BigDecimal getUseIntegrationAmount(Integer useIntegration, BigDecimal totalAmount, UmsMember currentMember, boolean hasCoupon, UmsIntegrationConsumeSetting integrationConsumeSetting) {
         BigDecimal zeroAmount = new BigDecimal(0);
         //判断用户是否有这么多积分
-        if (useIntegration.compareTo(currentMember.getIntegration()) > 0) {
+        if (currentMember.getIntegration() == null || useIntegration.compareTo(currentMember.getIntegration()) > 0) {
             return zeroAmount;
         }
         //根据积分使用规则判断是否可用
         //是否可与优惠券共用
-        UmsIntegrationConsumeSetting integrationConsumeSetting = integrationConsumeSettingMapper.selectByPrimaryKey(1L);
         if (hasCoupon && integrationConsumeSetting.getCouponStatus().equals(0)) {
             //不可与优惠券共用
             return zeroAmount;
@@ -697,11 +859,12 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
     /**
      * 获取该用户可以使用的优惠券
      *
+     * @param allCouponHistoryDetailList 会员未使用的优惠券
      * @param cartPromotionItemList 购物车优惠列表
      * @param couponId              使用优惠券id
      */
-    private SmsCouponHistoryDetail getUseCoupon(List<CartPromotionItem> cartPromotionItemList, Long couponId) {
-        List<SmsCouponHistoryDetail> couponHistoryDetailList = memberCouponService.listCart(cartPromotionItemList, 1);
+    private SmsCouponHistoryDetail getUseCoupon(List<SmsCouponHistoryDetail> allCouponHistoryDetailList, List<CartPromotionItem> cartPromotionItemList, Long couponId) {
+        List<SmsCouponHistoryDetail> couponHistoryDetailList = memberCouponService.listCart(allCouponHistoryDetailList, cartPromotionItemList, 1);
         for (SmsCouponHistoryDetail couponHistoryDetail : couponHistoryDetailList) {
             if (couponHistoryDetail.getCoupon().getId().equals(couponId)) {
                 return couponHistoryDetail;
@@ -722,29 +885,56 @@ public class OmsPortalOrderServiceImpl implements OmsPortalOrderService {
     }
 
     /**
-     * 锁定下单商品的所有库存
+     * 锁定下单商品的所有库存，整单预占失败则无法下单；事务未提交时释放已预占的库存
      */
-    private void lockStock(List<CartPromotionItem> cartPromotionItemList) {
-        for (CartPromotionItem cartPromotionItem : cartPromotionItemList) {
-            PmsSkuStock skuStock = skuStockMapper.selectByPrimaryKey(cartPromotionItem.getProductSkuId());
-            skuStock.setLockStock(skuStock.getLockStock() + cartPromotionItem.getQuantity());
-            skuStockMapper.updateByPrimaryKeySelective(skuStock);
+    private void lockStock(List<OmsOrderItem> orderItemList) {
+        Map<Long, Integer> skuQuantityMap = getSkuQuantityMap(orderItemList);
+        if (!stockReservationService.reserve(skuQuantityMap)) {
+            Asserts.fail("库存不足，无法下单");
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        stockReservationService.release(skuQuantityMap);
+                    }
+                }
+            });
         }
     }
 
     /**
-     * 判断下单商品是否都有库存
+     * 事务提交后释放预占的库存，避免事务回滚时库存已被释放
      */
-    private boolean hasStock(List<CartPromotionItem> cartPromotionItemList) {
-        for (CartPromotionItem cartPromotionItem : cartPromotionItemList) {
-            if (cartPromotionItem.getRealStock()==null //判断真实库存是否为空
-                    ||cartPromotionItem.getRealStock() <= 0 //判断真实库存是否小于0
-                    || cartPromotionItem.getRealStock() < cartPromotionItem.getQuantity()) //判断真实库存是否小于下单的数量
-            {
-                return false;
-            }
+    private void releaseStockAfterCommit(Map<Long, Integer> skuQuantityMap) {
+        if (skuQuantityMap.isEmpty()) {
+            return;
+        }
+        runAfterCommit(() -> stockReservationService.release(skuQuantityMap));
+    }
+
+    /**
+     * 在当前事务提交后执行，没有事务时立即执行
+     */
+    private void runAfterCommit(Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
         }
-        return true;
+    }
+
+    /**
+     * 按SKU合并下单商品数量
+     */
+    private Map<Long, Integer> getSkuQuantityMap(List<OmsOrderItem> orderItemList) {
+        return SkuStockBatchUpdater.mergeQuantity(orderItemList);
     }
 
     /**
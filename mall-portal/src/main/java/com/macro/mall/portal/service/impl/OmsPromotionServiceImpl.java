@@ -1,21 +1,27 @@
 package com.macro.mall.portal.service.impl;
 
-import com.macro.mall.model.OmsCartItem;
-import com.macro.mall.model.PmsProductFullReduction;
-import com.macro.mall.model.PmsProductLadder;
-import com.macro.mall.model.PmsSkuStock;
+import cn.hutool.core.collection.CollUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.macro.mall.mapper.PmsProductFullReductionMapper;
+import com.macro.mall.mapper.PmsProductLadderMapper;
+import com.macro.mall.mapper.PmsSkuStockMapper;
+import com.macro.mall.model.*;
 import com.macro.mall.portal.dao.PortalProductDao;
 import com.macro.mall.portal.domain.CartPromotionItem;
 import com.macro.mall.portal.domain.PromotionProduct;
 import com.macro.mall.portal.service.OmsPromotionService;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Created by macro on 2018/8/27.
@@ -25,28 +31,51 @@ import java.util.*;
 public class OmsPromotionServiceImpl implements OmsPromotionService {
     @Autowired
     private PortalProductDao portalProductDao;
+    @Autowired
+    private PmsSkuStockMapper skuStockMapper;
+    @Autowired
+    private PmsProductLadderMapper productLadderMapper;
+    @Autowired
+    private PmsProductFullReductionMapper productFullReductionMapper;
+    @Value("${promotion.cache.expire:30}")
+    private Long CACHE_EXPIRE;
+    @Value("${promotion.cache.maxSize:10000}")
+    private Integer CACHE_MAX_SIZE;
+    /**
+     * 商品促销规则本地缓存：productId->促销规则，SKU价格及库存不缓存
+     */
+    private Cache<Long, PromotionProduct> promotionCache;
+
+    @PostConstruct
+    public void init() {
+        promotionCache = Caffeine.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(CACHE_EXPIRE, TimeUnit.SECONDS)
+                .build();
+    }
 
     @Override
     public List<CartPromotionItem> calcCartPromotion(List<OmsCartItem> cartItemList) {
         //1.先根据productId对CartItem进行分组，以spu为单位进行计算优惠
         Map<Long, List<OmsCartItem>> productCartMap = groupCartItemBySpu(cartItemList);
-        //2.查询所有商品的优惠相关信息
-        List<PromotionProduct> promotionProductList = getPromotionProductList(cartItemList);
+        //2.查询所有商品的优惠相关信息，并建立商品及sku索引
+        Map<Long, PromotionProduct> promotionProductMap = getPromotionProductMap(productCartMap.keySet());
+        Map<Long, PmsSkuStock> skuStockMap = getSkuStockMap(cartItemList);
         //3.根据商品促销类型计算商品促销优惠价格
-        List<CartPromotionItem> cartPromotionItemList = new ArrayList<>();
+        List<CartPromotionItem> cartPromotionItemList = new ArrayList<>(cartItemList.size());
         for (Map.Entry<Long, List<OmsCartItem>> entry : productCartMap.entrySet()) {
             Long productId = entry.getKey();
-            PromotionProduct promotionProduct = getPromotionProductById(productId, promotionProductList);
+            PromotionProduct promotionProduct = promotionProductMap.get(productId);
             List<OmsCartItem> itemList = entry.getValue();
-            Integer promotionType = promotionProduct.getPromotionType();
-            if (promotionType == 1) {
+            Integer promotionType = promotionProduct == null ? null : promotionProduct.getPromotionType();
+            if (Integer.valueOf(1).equals(promotionType)) {
                 //单品促销
                 for (OmsCartItem item : itemList) {
                     CartPromotionItem cartPromotionItem = new CartPromotionItem();
                     BeanUtils.copyProperties(item,cartPromotionItem);
                     cartPromotionItem.setPromotionMessage("单品促销");
                     //商品原价-促销价
-                    PmsSkuStock skuStock = getOriginalPrice(promotionProduct, item.getProductSkuId());
+                    PmsSkuStock skuStock = skuStockMap.get(item.getProductSkuId());
                     BigDecimal originalPrice = skuStock.getPrice();
                     //单品促销使用原价
                     cartPromotionItem.setPrice(originalPrice);
@@ -56,18 +85,18 @@ public class OmsPromotionServiceImpl implements OmsPromotionService {
                     cartPromotionItem.setGrowth(promotionProduct.getGiftGrowth());
                     cartPromotionItemList.add(cartPromotionItem);
                 }
-            } else if (promotionType == 3) {
+            } else if (Integer.valueOf(3).equals(promotionType)) {
                 //打折优惠
                 int count = getCartItemCount(itemList);
                 PmsProductLadder ladder = getProductLadder(count, promotionProduct.getProductLadderList());
                 if(ladder!=null){
+                    String message = getLadderPromotionMessage(ladder);
                     for (OmsCartItem item : itemList) {
                         CartPromotionItem cartPromotionItem = new CartPromotionItem();
                         BeanUtils.copyProperties(item,cartPromotionItem);
-                        String message = getLadderPromotionMessage(ladder);
                         cartPromotionItem.setPromotionMessage(message);
                         //商品原价-折扣*商品原价
-                        PmsSkuStock skuStock = getOriginalPrice(promotionProduct,item.getProductSkuId());
+                        PmsSkuStock skuStock = skuStockMap.get(item.getProductSkuId());
                         BigDecimal originalPrice = skuStock.getPrice();
                         BigDecimal reduceAmount = originalPrice.subtract(ladder.getDiscount().multiply(originalPrice));
                         cartPromotionItem.setReduceAmount(reduceAmount);
@@ -77,20 +106,20 @@ public class OmsPromotionServiceImpl implements OmsPromotionService {
                         cartPromotionItemList.add(cartPromotionItem);
                     }
                 }else{
-                    handleNoReduce(cartPromotionItemList,itemList,promotionProduct);
+                    handleNoReduce(cartPromotionItemList,itemList,promotionProduct,skuStockMap);
                 }
-            } else if (promotionType == 4) {
+            } else if (Integer.valueOf(4).equals(promotionType)) {
                 //满减
-                BigDecimal totalAmount= getCartItemAmount(itemList,promotionProductList);
+                BigDecimal totalAmount= getCartItemAmount(itemList,skuStockMap);
                 PmsProductFullReduction fullReduction = getProductFullReduction(totalAmount,promotionProduct.getProductFullReductionList());
                 if(fullReduction!=null){
+                    String message = getFullReductionPromotionMessage(fullReduction);
                     for (OmsCartItem item : itemList) {
                         CartPromotionItem cartPromotionItem = new CartPromotionItem();
                         BeanUtils.copyProperties(item,cartPromotionItem);
-                        String message = getFullReductionPromotionMessage(fullReduction);
                         cartPromotionItem.setPromotionMessage(message);
                         //(商品原价/总价)*满减金额
-                        PmsSkuStock skuStock= getOriginalPrice(promotionProduct, item.getProductSkuId());
+                        PmsSkuStock skuStock= skuStockMap.get(item.getProductSkuId());
                         BigDecimal originalPrice = skuStock.getPrice();
                         BigDecimal reduceAmount = originalPrice.divide(totalAmount,RoundingMode.HALF_EVEN).multiply(fullReduction.getReducePrice());
                         cartPromotionItem.setReduceAmount(reduceAmount);
@@ -100,25 +129,64 @@ public class OmsPromotionServiceImpl implements OmsPromotionService {
                         cartPromotionItemList.add(cartPromotionItem);
                     }
                 }else{
-                    handleNoReduce(cartPromotionItemList,itemList,promotionProduct);
+                    handleNoReduce(cartPromotionItemList,itemList,promotionProduct,skuStockMap);
                 }
             } else {
                 //无优惠
-                handleNoReduce(cartPromotionItemList, itemList,promotionProduct);
+                handleNoReduce(cartPromotionItemList, itemList,promotionProduct,skuStockMap);
             }
         }
         return cartPromotionItemList;
     }
 
     /**
-     * 查询所有商品的优惠相关信息
+     * 获取商品的促销规则：优先使用本地缓存，未命中的商品分别批量查询商品、打折及满减信息
+     */
+    private Map<Long, PromotionProduct> getPromotionProductMap(Collection<Long> productIds) {
+        Map<Long, PromotionProduct> promotionProductMap = new HashMap<>(promotionCache.getAllPresent(productIds));
+        List<Long> missIds = productIds.stream().filter(productId -> !promotionProductMap.containsKey(productId))
+                .collect(Collectors.toList());
+        if (missIds.isEmpty()) {
+            return promotionProductMap;
+        }
+        List<PromotionProduct> productList = portalProductDao.getPromotionProductBaseList(missIds);
+        PmsProductLadderExample ladderExample = new PmsProductLadderExample();
+        ladderExample.createCriteria().andProductIdIn(missIds);
+        Map<Long, List<PmsProductLadder>> ladderMap = productLadderMapper.selectByExample(ladderExample).stream()
+                .collect(Collectors.groupingBy(PmsProductLadder::getProductId));
+        PmsProductFullReductionExample fullReductionExample = new PmsProductFullReductionExample();
+        fullReductionExample.createCriteria().andProductIdIn(missIds);
+        Map<Long, List<PmsProductFullReduction>> fullReductionMap = productFullReductionMapper.selectByExample(fullReductionExample).stream()
+                .collect(Collectors.groupingBy(PmsProductFullReduction::getProductId));
+        for (PromotionProduct promotionProduct : productList) {
+            //缓存的规则会被多个请求共享，排序后不再修改
+            List<PmsProductLadder> ladderList = new ArrayList<>(ladderMap.getOrDefault(promotionProduct.getId(), Collections.emptyList()));
+            //按数量从大到小排序
+            ladderList.sort(Comparator.comparing(PmsProductLadder::getCount).reversed());
+            promotionProduct.setProductLadderList(Collections.unmodifiableList(ladderList));
+            List<PmsProductFullReduction> fullReductionList = new ArrayList<>(fullReductionMap.getOrDefault(promotionProduct.getId(), Collections.emptyList()));
+            //按条件从高到低排序
+            fullReductionList.sort(Comparator.comparing(PmsProductFullReduction::getFullPrice).reversed());
+            promotionProduct.setProductFullReductionList(Collections.unmodifiableList(fullReductionList));
+            promotionProductMap.put(promotionProduct.getId(), promotionProduct);
+            promotionCache.put(promotionProduct.getId(), promotionProduct);
+        }
+        return promotionProductMap;
+    }
+
+    /**
+     * 批量查询购物车中的sku，建立skuId索引
      */
-    private List<PromotionProduct> getPromotionProductList(List<OmsCartItem> cartItemList) {
-        List<Long> productIdList = new ArrayList<>();
-        for(OmsCartItem cartItem:cartItemList){
-            productIdList.add(cartItem.getProductId());
+    private Map<Long, PmsSkuStock> getSkuStockMap(List<OmsCartItem> cartItemList) {
+        List<Long> skuIds = cartItemList.stream().map(OmsCartItem::getProductSkuId)
+                .filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (CollUtil.isEmpty(skuIds)) {
+            return Collections.emptyMap();
         }
-        return portalProductDao.getPromotionProductList(productIdList);
+        PmsSkuStockExample example = new PmsSkuStockExample();
+        example.createCriteria().andIdIn(skuIds);
+        return skuStockMapper.selectByExample(example).stream()
+                .collect(Collectors.toMap(PmsSkuStock::getId, skuStock -> skuStock));
     }
 
     /**
@@ -157,30 +225,28 @@ public class OmsPromotionServiceImpl implements OmsPromotionService {
     /**
      * 对没满足优惠条件的商品进行处理
      */
-    private void handleNoReduce(List<CartPromotionItem> cartPromotionItemList, List<OmsCartItem> itemList,PromotionProduct promotionProduct) {
+    private void handleNoReduce(List<CartPromotionItem> cartPromotionItemList, List<OmsCartItem> itemList,PromotionProduct promotionProduct,Map<Long, PmsSkuStock> skuStockMap) {
         for (OmsCartItem item : itemList) {
             CartPromotionItem cartPromotionItem = new CartPromotionItem();
             BeanUtils.copyProperties(item,cartPromotionItem);
             cartPromotionItem.setPromotionMessage("无优惠");
             cartPromotionItem.setReduceAmount(new BigDecimal(0));
-            PmsSkuStock skuStock = getOriginalPrice(promotionProduct,item.getProductSkuId());
+            PmsSkuStock skuStock = skuStockMap.get(item.getProductSkuId());
             if(skuStock!=null){
                 cartPromotionItem.setRealStock(skuStock.getStock()-skuStock.getLockStock());
             }
-            cartPromotionItem.setIntegration(promotionProduct.getGiftPoint());
-            cartPromotionItem.setGrowth(promotionProduct.getGiftGrowth());
+            if(promotionProduct!=null){
+                cartPromotionItem.setIntegration(promotionProduct.getGiftPoint());
+                cartPromotionItem.setGrowth(promotionProduct.getGiftGrowth());
+            }
             cartPromotionItemList.add(cartPromotionItem);
         }
     }
 
+    /**
+     * 获取满足条件的满减优惠策略，满减列表已按条件从高到低排序
+     */
     private PmsProductFullReduction getProductFullReduction(BigDecimal totalAmount,List<PmsProductFullReduction> fullReductionList) {
-        //按条件从高到低排序
-        fullReductionList.sort(new Comparator<PmsProductFullReduction>() {
-            @Override
-            public int compare(PmsProductFullReduction o1, PmsProductFullReduction o2) {
-                return o2.getFullPrice().subtract(o1.getFullPrice()).intValue();
-            }
-        });
         for(PmsProductFullReduction fullReduction:fullReductionList){
             if(totalAmount.subtract(fullReduction.getFullPrice()).intValue()>=0){
                 return fullReduction;
@@ -205,16 +271,9 @@ public class OmsPromotionServiceImpl implements OmsPromotionService {
     }
 
     /**
-     * 根据购买商品数量获取满足条件的打折优惠策略
+     * 根据购买商品数量获取满足条件的打折优惠策略，打折列表已按数量从大到小排序
      */
     private PmsProductLadder getProductLadder(int count, List<PmsProductLadder> productLadderList) {
-        //按数量从大到小排序
-        productLadderList.sort(new Comparator<PmsProductLadder>() {
-            @Override
-            public int compare(PmsProductLadder o1, PmsProductLadder o2) {
-                return o2.getCount() - o1.getCount();
-            }
-        });
         for (PmsProductLadder productLadder : productLadderList) {
             if (count >= productLadder.getCount()) {
                 return productLadder;
@@ -237,38 +296,13 @@ public class OmsPromotionServiceImpl implements OmsPromotionService {
     /**
      * 获取购物车中指定商品的总价
      */
-    private BigDecimal getCartItemAmount(List<OmsCartItem> itemList, List<PromotionProduct> promotionProductList) {
+    private BigDecimal getCartItemAmount(List<OmsCartItem> itemList, Map<Long, PmsSkuStock> skuStockMap) {
         BigDecimal amount = new BigDecimal(0);
         for (OmsCartItem item : itemList) {
             //计算出商品原价
-            PromotionProduct promotionProduct = getPromotionProductById(item.getProductId(), promotionProductList);
-            PmsSkuStock skuStock = getOriginalPrice(promotionProduct,item.getProductSkuId());
+            PmsSkuStock skuStock = skuStockMap.get(item.getProductSkuId());
             amount = amount.add(skuStock.getPrice().multiply(new BigDecimal(item.getQuantity())));
         }
         return amount;
     }
-
-    /**
-     * 获取商品的原价
-     */
-    private PmsSkuStock getOriginalPrice(PromotionProduct promotionProduct, Long productSkuId) {
-        for (PmsSkuStock skuStock : promotionProduct.getSkuStockList()) {
-            if (productSkuId.equals(skuStock.getId())) {
-                return skuStock;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * 根据商品id获取商品的促销信息
-     */
-    private PromotionProduct getPromotionProductById(Long productId, List<PromotionProduct> promotionProductList) {
-        for (PromotionProduct promotionProduct : promotionProductList) {
-            if (productId.equals(promotionProduct.getId())) {
-                return promotionProduct;
-            }
-        }
-        return null;
-    }
 }
@@ -0,0 +1,74 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.common.cache.SnapshotHolder;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.mapper.OmsOrderSettingMapper;
+import com.macro.mall.mapper.UmsIntegrationConsumeSettingMapper;
+import com.macro.mall.model.OmsOrderSetting;
+import com.macro.mall.model.UmsIntegrationConsumeSetting;
+import com.macro.mall.portal.service.OmsSettingCacheService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 订单设置及积分使用设置本地缓存Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class OmsSettingCacheServiceImpl implements OmsSettingCacheService {
+    private static final Long SETTING_ID = 1L;
+    @Autowired
+    private OmsOrderSettingMapper orderSettingMapper;
+    @Autowired
+    private UmsIntegrationConsumeSettingMapper integrationConsumeSettingMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private SnapshotHolder<SettingSnapshot> snapshotHolder;
+
+    @PostConstruct
+    public void init() {
+        snapshotHolder = new SnapshotHolder<>("本地设置缓存", this::load, redisMessageListenerContainer, RedisChannelConstant.SETTING_CHANGE);
+    }
+
+    @Override
+    public OmsOrderSetting getOrderSetting() {
+        return getSnapshot().orderSetting;
+    }
+
+    @Override
+    public UmsIntegrationConsumeSetting getIntegrationConsumeSetting() {
+        return getSnapshot().integrationConsumeSetting;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${setting.cache.refreshInterval:300000}")
+    public void refresh() {
+        snapshotHolder.refresh();
+    }
+
+    private SettingSnapshot getSnapshot() {
+        return snapshotHolder.get();
+    }
+
+    private SettingSnapshot load() {
+        OmsOrderSetting orderSetting = orderSettingMapper.selectByPrimaryKey(SETTING_ID);
+        UmsIntegrationConsumeSetting integrationConsumeSetting = integrationConsumeSettingMapper.selectByPrimaryKey(SETTING_ID);
+        return new SettingSnapshot(orderSetting, integrationConsumeSetting);
+    }
+
+    /**
+     * 设置快照，两个设置一起替换保证读取到的是同一时刻的数据
+     */
+    private static class SettingSnapshot {
+        private final OmsOrderSetting orderSetting;
+        private final UmsIntegrationConsumeSetting integrationConsumeSetting;
+
+        SettingSnapshot(OmsOrderSetting orderSetting, UmsIntegrationConsumeSetting integrationConsumeSetting) {
+            this.orderSetting = orderSetting;
+            this.integrationConsumeSetting = integrationConsumeSetting;
+        }
+    }
+}
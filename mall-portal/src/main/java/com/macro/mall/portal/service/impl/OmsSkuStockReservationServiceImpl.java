@@ -0,0 +1,396 @@
+package com.macro.mall.portal.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.github.pagehelper.PageHelper;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.mapper.PmsSkuStockMapper;
+import com.macro.mall.model.PmsSkuStock;
+import com.macro.mall.model.PmsSkuStockExample;
+import com.macro.mall.portal.component.SkuStockBatchUpdater;
+import com.macro.mall.portal.service.OmsSkuStockReservationService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * SKU库存预占Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class OmsSkuStockReservationServiceImpl implements OmsSkuStockReservationService, MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OmsSkuStockReservationServiceImpl.class);
+    private static final int LOAD_MAX_ATTEMPTS = 3;
+    /**
+     * 整单预占：KEYS[1]为预占变化量hash，KEYS[2..n+1]为SKU可用库存；ARGV[1..n]为数量，ARGV[n+1..2n]为skuId
+     * 返回0表示成功，正数i表示第i个SKU库存不足，负数-i表示第i个SKU计数器不存在
+     */
+    private static final DefaultRedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "local n = #KEYS - 1\n" +
+            "for i = 1, n do\n" +
+            "  local stock = redis.call('GET', KEYS[i + 1])\n" +
+            "  if not stock then return -i end\n" +
+            "  if tonumber(stock) < tonumber(ARGV[i]) then return i end\n" +
+            "end\n" +
+            "for i = 1, n do\n" +
+            "  redis.call('DECRBY', KEYS[i + 1], ARGV[i])\n" +
+            "  redis.call('HINCRBY', KEYS[1], ARGV[n + i], ARGV[i])\n" +
+            "end\n" +
+            "return 0", Long.class);
+    /**
+     * 整单释放：参数同预占，计数器不存在时只记录变化量，重建时会扣除
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local n = #KEYS - 1\n" +
+            "for i = 1, n do\n" +
+            "  if redis.call('EXISTS', KEYS[i + 1]) == 1 then\n" +
+            "    redis.call('INCRBY', KEYS[i + 1], ARGV[i])\n" +
+            "  end\n" +
+            "  redis.call('HINCRBY', KEYS[1], ARGV[n + i], 0 - tonumber(ARGV[i]))\n" +
+            "end\n" +
+            "return n", Long.class);
+    /**
+     * 重建计数器：可用库存=MySQL可用库存-尚未回写的预占变化量（含回写中的部分）
+     * KEYS[1]为预占变化量hash，KEYS[2]为回写中的变化量hash，KEYS[3]为回写版本号，KEYS[4..n+3]为SKU可用库存；
+     * ARGV[1..n]为MySQL可用库存，ARGV[n+1..2n]为skuId，ARGV[2n+1]为1时只在计数器不存在时设置，ARGV[2n+2]为查询MySQL前读取的回写版本号
+     * 查询MySQL后又有变化量回写完成时返回-1，调用方需重新查询
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "local n = (#ARGV - 2) / 2\n" +
+            "if (redis.call('GET', KEYS[3]) or '0') ~= ARGV[2 * n + 2] then return -1 end\n" +
+            "for i = 1, n do\n" +
+            "  local pending = tonumber(redis.call('HGET', KEYS[1], ARGV[n + i]) or '0')\n" +
+            "    + tonumber(redis.call('HGET', KEYS[2], ARGV[n + i]) or '0')\n" +
+            "  local available = tonumber(ARGV[i]) - pending\n" +
+            "  if ARGV[2 * n + 1] == '1' then\n" +
+            "    redis.call('SETNX', KEYS[i + 3], available)\n" +
+            "  else\n" +
+            "    redis.call('SET', KEYS[i + 3], available)\n" +
+            "  end\n" +
+            "end\n" +
+            "return n", Long.class);
+    /**
+     * 开始回写：KEYS[1]为预占变化量hash，KEYS[2]为回写中的变化量hash，KEYS[3]为回写锁，KEYS[4]为回写批次id；
+     * ARGV[1]为锁超时时间（秒），ARGV[2]为锁持有者，ARGV[3]为新的回写批次id
+     * 获取锁后将变化量整体移入回写中hash并生成批次id，返回批次id及变化量；上次回写中断遗留的变化量沿用原批次id重新返回
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('SET', KEYS[3], ARGV[2], 'NX', 'EX', ARGV[1]) then return {} end\n" +
+            "if redis.call('EXISTS', KEYS[2]) == 0 then\n" +
+            "  if redis.call('EXISTS', KEYS[1]) == 0 then\n" +
+            "    redis.call('DEL', KEYS[3])\n" +
+            "    return {}\n" +
+            "  end\n" +
+            "  redis.call('RENAME', KEYS[1], KEYS[2])\n" +
+            "  redis.call('SET', KEYS[4], ARGV[3])\n" +
+            "else\n" +
+            "  redis.call('SET', KEYS[4], ARGV[3], 'NX')\n" +
+            "end\n" +
+            "local entries = redis.call('HGETALL', KEYS[2])\n" +
+            "table.insert(entries, 1, redis.call('GET', KEYS[4]))\n" +
+            "return entries", List.class);
+    /**
+     * 一批变化量写入MySQL后从回写中hash删除并递增回写版本号：KEYS[1]为回写中的变化量hash，KEYS[2]为回写版本号，KEYS[3]为回写批次id；
+     * ARGV[1]为回写批次id，ARGV[2..n]为skuId
+     * 回写锁超时后其他节点已完成该批次并开始新批次时不再删除，避免删掉新批次中尚未回写的变化量
+     */
+    private static final DefaultRedisScript<Long> COMMIT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[3]) == ARGV[1] then\n" +
+            "  redis.call('HDEL', KEYS[1], unpack(ARGV, 2))\n" +
+            "  if redis.call('EXISTS', KEYS[1]) == 0 then redis.call('DEL', KEYS[3]) end\n" +
+            "end\n" +
+            "return redis.call('INCR', KEYS[2])", Long.class);
+    /**
+     * 释放回写锁：KEYS[1]为回写锁，ARGV[1]为锁持有者
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0", Long.class);
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private PmsSkuStockMapper skuStockMapper;
+    @Autowired
+    private SkuStockBatchUpdater skuStockBatchUpdater;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.skuStock}")
+    private String REDIS_KEY_SKU_STOCK;
+    @Value("${stock.reservation.batchSize:500}")
+    private Integer BATCH_SIZE;
+    @Value("${stock.reservation.flushLockSeconds:60}")
+    private Long FLUSH_LOCK_SECONDS;
+    @Value("${stock.reservation.flushLogKeepDays:7}")
+    private Integer FLUSH_LOG_KEEP_DAYS;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisChannelConstant.PRODUCT_CHANGE));
+    }
+
+    @Override
+    public boolean reserve(Map<Long, Integer> skuQuantityMap) {
+        if (CollUtil.isEmpty(skuQuantityMap)) {
+            return true;
+        }
+        List<Long> skuIds = new ArrayList<>(skuQuantityMap.keySet());
+        Long result = executeScript(RESERVE_SCRIPT, skuIds, skuQuantityMap);
+        if (result != null && result < 0) {
+            //计数器缺失（新增SKU或Redis数据丢失），从MySQL补齐后重试一次
+            reload(() -> listSkuStock(skuIds), true);
+            result = executeScript(RESERVE_SCRIPT, skuIds, skuQuantityMap);
+        }
+        return result != null && result == 0;
+    }
+
+    @Override
+    public void release(Map<Long, Integer> skuQuantityMap) {
+        if (CollUtil.isEmpty(skuQuantityMap)) {
+            return;
+        }
+        executeScript(RELEASE_SCRIPT, new ArrayList<>(skuQuantityMap.keySet()), skuQuantityMap);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int flushLockStock() {
+        String lockKey = getFlushLockKey();
+        String owner = UUID.randomUUID().toString();
+        List<String> entries = stringRedisTemplate.execute(DRAIN_SCRIPT,
+                Arrays.asList(getDeltaKey(), getFlushingKey(), lockKey, getFlushIdKey()),
+                FLUSH_LOCK_SECONDS.toString(), owner, UUID.randomUUID().toString());
+        if (CollUtil.isEmpty(entries)) {
+            return 0;
+        }
+        try {
+            String flushId = entries.get(0);
+            Map<Long, Integer> deltaMap = new LinkedHashMap<>();
+            List<String> zeroIds = new ArrayList<>();
+            for (int i = 1; i + 1 < entries.size(); i += 2) {
+                int delta = Integer.parseInt(entries.get(i + 1));
+                if (delta != 0) {
+                    deltaMap.put(Long.valueOf(entries.get(i)), delta);
+                } else {
+                    zeroIds.add(entries.get(i));
+                }
+            }
+            //回写失败时未完成的变化量保留在回写中hash，下次沿用同一批次id重新回写，已写入MySQL的SKU不会重复修改
+            Map<Long, Integer> batch = new LinkedHashMap<>();
+            for (Map.Entry<Long, Integer> entry : deltaMap.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() >= BATCH_SIZE) {
+                    commitBatch(flushId, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                commitBatch(flushId, batch);
+            }
+            if (!zeroIds.isEmpty()) {
+                commit(flushId, zeroIds);
+            }
+            return deltaMap.size();
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), owner);
+        }
+    }
+
+    @Override
+    public int cleanFlushLog() {
+        Date time = new Date(System.currentTimeMillis() - FLUSH_LOG_KEEP_DAYS * 24 * 3600 * 1000L);
+        return skuStockBatchUpdater.deleteFlushLogBefore(time);
+    }
+
+    @Override
+    public int rebuild(boolean force) {
+        String readyKey = REDIS_DATABASE + ":" + REDIS_KEY_SKU_STOCK + ":ready";
+        if (!force && !Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(readyKey, "1"))) {
+            //计数器已由其他节点初始化
+            return 0;
+        }
+        int count = 0;
+        long lastId = 0L;
+        while (true) {
+            String epoch = getEpoch();
+            PmsSkuStockExample example = new PmsSkuStockExample();
+            example.createCriteria().andIdGreaterThan(lastId);
+            example.setOrderByClause("id asc");
+            PageHelper.startPage(1, BATCH_SIZE, false);
+            List<PmsSkuStock> skuStockList = skuStockMapper.selectByExample(example);
+            if (CollUtil.isEmpty(skuStockList)) {
+                break;
+            }
+            if (!loadCounters(skuStockList, epoch, false)) {
+                //查询期间有变化量回写到MySQL，重新查询本批
+                continue;
+            }
+            count += skuStockList.size();
+            lastId = skuStockList.get(skuStockList.size() - 1).getId();
+        }
+        LOGGER.info("从MySQL重建SKU可用库存计数器，数量：{}", count);
+        return count;
+    }
+
+    @Override
+    public void refresh(List<Long> skuIds) {
+        if (CollUtil.isEmpty(skuIds)) {
+            return;
+        }
+        reload(() -> listSkuStock(skuIds), false);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        //后台修改商品或SKU库存后按MySQL中的库存刷新计数器，刷新与回写版本号校验同一个脚本内完成，不会覆盖回写中的预占
+        try {
+            List<Long> productIds = new ArrayList<>();
+            for (String id : new String(message.getBody(), StandardCharsets.UTF_8).split(",")) {
+                productIds.add(Long.valueOf(id.trim()));
+            }
+            PmsSkuStockExample example = new PmsSkuStockExample();
+            example.createCriteria().andProductIdIn(productIds);
+            List<PmsSkuStock> skuStockList = new ArrayList<>();
+            boolean loaded = reload(() -> {
+                skuStockList.clear();
+                skuStockList.addAll(skuStockMapper.selectByExample(example));
+                return skuStockList;
+            }, false);
+            if (!loaded && !skuStockList.isEmpty()) {
+                //多次刷新都与回写冲突时删除计数器，下次预占时再从MySQL补齐
+                List<String> keys = new ArrayList<>();
+                skuStockList.forEach(skuStock -> keys.add(getStockKey(skuStock.getId())));
+                stringRedisTemplate.delete(keys);
+            }
+        } catch (Exception e) {
+            LOGGER.error("刷新商品SKU库存计数器失败", e);
+        }
+    }
+
+    private List<PmsSkuStock> listSkuStock(List<Long> skuIds) {
+        PmsSkuStockExample example = new PmsSkuStockExample();
+        example.createCriteria().andIdIn(skuIds);
+        return skuStockMapper.selectByExample(example);
+    }
+
+    /**
+     * 查询MySQL并写入Redis计数器，查询期间有变化量回写完成时重新查询
+     * @return 是否写入成功
+     */
+    private boolean reload(Supplier<List<PmsSkuStock>> loader, boolean onlyIfAbsent) {
+        for (int i = 0; i < LOAD_MAX_ATTEMPTS; i++) {
+            String epoch = getEpoch();
+            if (loadCounters(loader.get(), epoch, onlyIfAbsent)) {
+                return true;
+            }
+        }
+        LOGGER.warn("SKU库存计数器刷新时回写频繁，放弃本次刷新");
+        return false;
+    }
+
+    /**
+     * 将MySQL中的可用库存写入Redis计数器
+     * @param epoch 查询MySQL前读取的回写版本号
+     * @return 查询后没有变化量回写完成时返回true
+     */
+    private boolean loadCounters(List<PmsSkuStock> skuStockList, String epoch, boolean onlyIfAbsent) {
+        if (CollUtil.isEmpty(skuStockList)) {
+            return true;
+        }
+        List<String> keys = new ArrayList<>();
+        List<String> availableArgs = new ArrayList<>();
+        List<String> skuIdArgs = new ArrayList<>();
+        keys.add(getDeltaKey());
+        keys.add(getFlushingKey());
+        keys.add(getEpochKey());
+        for (PmsSkuStock skuStock : skuStockList) {
+            int stock = skuStock.getStock() == null ? 0 : skuStock.getStock();
+            int lockStock = skuStock.getLockStock() == null ? 0 : skuStock.getLockStock();
+            keys.add(getStockKey(skuStock.getId()));
+            availableArgs.add(String.valueOf(stock - lockStock));
+            skuIdArgs.add(skuStock.getId().toString());
+        }
+        List<String> args = new ArrayList<>(availableArgs);
+        args.addAll(skuIdArgs);
+        args.add(onlyIfAbsent ? "1" : "0");
+        args.add(epoch);
+        Long result = stringRedisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+        return result != null && result >= 0;
+    }
+
+    /**
+     * 将一批变化量写入MySQL，写入成功后再从回写中hash删除
+     */
+    private void commitBatch(String flushId, Map<Long, Integer> batch) {
+        skuStockBatchUpdater.updateLockStock(flushId, batch);
+        List<String> skuIds = new ArrayList<>();
+        batch.keySet().forEach(skuId -> skuIds.add(skuId.toString()));
+        commit(flushId, skuIds);
+    }
+
+    private void commit(String flushId, List<String> skuIds) {
+        List<String> args = new ArrayList<>();
+        args.add(flushId);
+        args.addAll(skuIds);
+        stringRedisTemplate.execute(COMMIT_SCRIPT, Arrays.asList(getFlushingKey(), getEpochKey(), getFlushIdKey()), args.toArray());
+    }
+
+    private String getEpoch() {
+        String epoch = stringRedisTemplate.opsForValue().get(getEpochKey());
+        return epoch == null ? "0" : epoch;
+    }
+
+    private Long executeScript(DefaultRedisScript<Long> script, List<Long> skuIds, Map<Long, Integer> skuQuantityMap) {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        keys.add(getDeltaKey());
+        for (Long skuId : skuIds) {
+            keys.add(getStockKey(skuId));
+            args.add(skuQuantityMap.get(skuId).toString());
+        }
+        for (Long skuId : skuIds) {
+            args.add(skuId.toString());
+        }
+        return stringRedisTemplate.execute(script, keys, args.toArray());
+    }
+
+    private String getStockKey(Long skuId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_SKU_STOCK + ":" + skuId;
+    }
+
+    private String getDeltaKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_SKU_STOCK + ":lockDelta";
+    }
+
+    private String getFlushingKey() {
+        return getDeltaKey() + ":flushing";
+    }
+
+    private String getEpochKey() {
+        return getDeltaKey() + ":epoch";
+    }
+
+    private String getFlushLockKey() {
+        return getDeltaKey() + ":flushLock";
+    }
+
+    private String getFlushIdKey() {
+        return getDeltaKey() + ":flushId";
+    }
+}
@@ -3,18 +3,23 @@ package com.macro.mall.portal.service.impl;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.github.pagehelper.PageHelper;
+import com.macro.mall.common.exception.Asserts;
 import com.macro.mall.mapper.*;
 import com.macro.mall.model.*;
 import com.macro.mall.dto.PmsProductQueryParam;
-import com.macro.mall.portal.dao.PortalProductDao;
+import com.macro.mall.portal.component.AsyncQueryComposer;
 import com.macro.mall.portal.domain.PmsPortalProductDetail;
 import com.macro.mall.portal.domain.PmsProductCategoryNode;
 import com.macro.mall.portal.service.PmsPortalProductService;
-import org.springframework.beans.BeanUtils;
+import com.macro.mall.portal.service.PmsProductCategoryTreeService;
+import com.macro.mall.portal.service.PmsProductDetailCacheService;
+import com.macro.mall.portal.service.SmsCouponIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -23,11 +28,10 @@ import java.util.stream.Collectors;
  */
 @Service
 public class PmsPortalProductServiceImpl implements PmsPortalProductService {
+    private static final String DETAIL_ENDPOINT = "productDetail";
     @Autowired
     private PmsProductMapper productMapper;
     @Autowired
-    private PmsProductCategoryMapper productCategoryMapper;
-    @Autowired
     private PmsBrandMapper brandMapper;
     @Autowired
     private PmsProductAttributeMapper productAttributeMapper;
@@ -40,7 +44,13 @@ public class PmsPortalProductServiceImpl implements PmsPortalProductService {
     @Autowired
     private PmsProductFullReductionMapper productFullReductionMapper;
     @Autowired
-    private PortalProductDao portalProductDao;
+    private SmsCouponIndexService couponIndexService;
+    @Autowired
+    private AsyncQueryComposer asyncQueryComposer;
+    @Autowired
+    private PmsProductDetailCacheService productDetailCacheService;
+    @Autowired
+    private PmsProductCategoryTreeService productCategoryTreeService;
 
     @Override
     public List<PmsProduct> search(String keyword, Long brandId, Long productCategoryId, Integer pageNum, Integer pageSize, Integer sort) {
@@ -72,58 +82,76 @@ public class PmsPortalProductServiceImpl implements PmsPortalProductService {
 
     @Override
     public List<PmsProductCategoryNode> categoryTreeList() {
-        PmsProductCategoryExample example = new PmsProductCategoryExample();
-        List<PmsProductCategory> allList = productCategoryMapper.selectByExample(example);
-        List<PmsProductCategoryNode> result = allList.stream()
-                .filter(item -> item.getParentId().equals(0L))
-                .map(item -> covert(item, allList)).collect(Collectors.toList());
-        return result;
+        return productCategoryTreeService.getTree();
+    }
+
+    @Override
+    public PmsProductCategoryNode categoryTree(Long id) {
+        return productCategoryTreeService.getSubtree(id);
     }
 
     @Override
     public PmsPortalProductDetail detail(Long id) {
+        PmsPortalProductDetail result = productDetailCacheService.get(id, this::loadDetail);
+        //SKU库存变化频繁且没有变更通知，不放入缓存，每次实时查询
+        PmsSkuStockExample skuExample = new PmsSkuStockExample();
+        skuExample.createCriteria().andProductIdEqualTo(id);
+        result.setSkuStockList(skuStockMapper.selectByExample(skuExample));
+        return result;
+    }
+
+    /**
+     * 从数据库查询商品详情，不包含SKU库存
+     */
+    private PmsPortalProductDetail loadDetail(Long id) {
         PmsPortalProductDetail result = new PmsPortalProductDetail();
-        //获取商品信息
+        //获取商品信息，其余查询都依赖商品信息
         PmsProduct product = productMapper.selectByPrimaryKey(id);
+        if (product == null) {
+            Asserts.fail("商品不存在");
+        }
         result.setProduct(product);
         //获取品牌信息
-        PmsBrand brand = brandMapper.selectByPrimaryKey(product.getBrandId());
-        result.setBrand(brand);
+        CompletableFuture<PmsBrand> brandFuture = asyncQueryComposer.supply(DETAIL_ENDPOINT,
+                () -> brandMapper.selectByPrimaryKey(product.getBrandId()));
         //获取商品属性信息
-        PmsProductAttributeExample attributeExample = new PmsProductAttributeExample();
-        attributeExample.createCriteria().andProductAttributeCategoryIdEqualTo(product.getProductAttributeCategoryId());
-        List<PmsProductAttribute> productAttributeList = productAttributeMapper.selectByExample(attributeExample);
-        result.setProductAttributeList(productAttributeList);
-        //获取商品属性值信息
-        if(CollUtil.isNotEmpty(productAttributeList)){
-            List<Long> attributeIds = productAttributeList.stream().map(PmsProductAttribute::getId).collect(Collectors.toList());
+        CompletableFuture<List<PmsProductAttribute>> attributeFuture = asyncQueryComposer.supply(DETAIL_ENDPOINT, () -> {
+            PmsProductAttributeExample attributeExample = new PmsProductAttributeExample();
+            attributeExample.createCriteria().andProductAttributeCategoryIdEqualTo(product.getProductAttributeCategoryId());
+            return productAttributeMapper.selectByExample(attributeExample);
+        });
+        //获取商品属性值信息，与属性信息同时查询，查询完成后只保留当前属性分类下的属性值
+        CompletableFuture<List<PmsProductAttributeValue>> attributeValueFuture = asyncQueryComposer.supply(DETAIL_ENDPOINT, () -> {
             PmsProductAttributeValueExample attributeValueExample = new PmsProductAttributeValueExample();
-            attributeValueExample.createCriteria().andProductIdEqualTo(product.getId())
-                    .andProductAttributeIdIn(attributeIds);
-            List<PmsProductAttributeValue> productAttributeValueList = productAttributeValueMapper.selectByExample(attributeValueExample);
-            result.setProductAttributeValueList(productAttributeValueList);
-        }
-        //获取商品SKU库存信息
-        PmsSkuStockExample skuExample = new PmsSkuStockExample();
-        skuExample.createCriteria().andProductIdEqualTo(product.getId());
-        List<PmsSkuStock> skuStockList = skuStockMapper.selectByExample(skuExample);
-        result.setSkuStockList(skuStockList);
+            attributeValueExample.createCriteria().andProductIdEqualTo(product.getId());
+            return productAttributeValueMapper.selectByExample(attributeValueExample);
+        });
         //商品阶梯价格设置
-        if(product.getPromotionType()==3){
+        CompletableFuture<List<PmsProductLadder>> ladderFuture = asyncQueryComposer.supplyIf(product.getPromotionType() == 3, DETAIL_ENDPOINT, () -> {
             PmsProductLadderExample ladderExample = new PmsProductLadderExample();
             ladderExample.createCriteria().andProductIdEqualTo(product.getId());
-            List<PmsProductLadder> productLadderList = productLadderMapper.selectByExample(ladderExample);
-            result.setProductLadderList(productLadderList);
-        }
+            return productLadderMapper.selectByExample(ladderExample);
+        });
         //商品满减价格设置
-        if(product.getPromotionType()==4){
+        CompletableFuture<List<PmsProductFullReduction>> fullReductionFuture = asyncQueryComposer.supplyIf(product.getPromotionType() == 4, DETAIL_ENDPOINT, () -> {
             PmsProductFullReductionExample fullReductionExample = new PmsProductFullReductionExample();
             fullReductionExample.createCriteria().andProductIdEqualTo(product.getId());
-            List<PmsProductFullReduction> productFullReductionList = productFullReductionMapper.selectByExample(fullReductionExample);
-            result.setProductFullReductionList(productFullReductionList);
+            return productFullReductionMapper.selectByExample(fullReductionExample);
+        });
+        result.setBrand(asyncQueryComposer.join(brandFuture));
+        List<PmsProductAttribute> productAttributeList = asyncQueryComposer.join(attributeFuture);
+        List<PmsProductAttributeValue> productAttributeValueList = asyncQueryComposer.join(attributeValueFuture);
+        result.setProductAttributeList(productAttributeList);
+        if (CollUtil.isNotEmpty(productAttributeList)) {
+            Set<Long> attributeIds = productAttributeList.stream().map(PmsProductAttribute::getId).collect(Collectors.toSet());
+            result.setProductAttributeValueList(productAttributeValueList.stream()
+                    .filter(item -> attributeIds.contains(item.getProductAttributeId()))
+                    .collect(Collectors.toList()));
         }
-        //商品可用优惠券
-        result.setCouponList(portalProductDao.getAvailableCouponList(product.getId(),product.getProductCategoryId()));
+        result.setProductLadderList(asyncQueryComposer.join(ladderFuture));
+        result.setProductFullReductionList(asyncQueryComposer.join(fullReductionFuture));
+        //商品可用优惠券从优惠券索引中获取
+        result.setCouponList(couponIndexService.listByProduct(product.getId(), product.getProductCategoryId()));
         return result;
     }
 
@@ -160,17 +188,4 @@ public class PmsPortalProductServiceImpl implements PmsPortalProductService {
         }
         return productMapper.selectByExample(example);
     }
-
-    /**
-     * 初始对象转化为节点对象
-     */
-    private PmsProductCategoryNode covert(PmsProductCategory item, List<PmsProductCategory> allList) {
-        PmsProductCategoryNode node = new PmsProductCategoryNode();
-        BeanUtils.copyProperties(item, node);
-        List<PmsProductCategoryNode> children = allList.stream()
-                .filter(subItem -> subItem.getParentId().equals(item.getId()))
-                .map(subItem -> covert(subItem, allList)).collect(Collectors.toList());
-        node.setChildren(children);
-        return node;
-    }
 }
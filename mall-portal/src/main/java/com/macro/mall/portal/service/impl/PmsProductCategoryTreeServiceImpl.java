@@ -0,0 +1,103 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.common.cache.SnapshotHolder;
+import com.macro.mall.common.cache.TreeSnapshot;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.mapper.PmsProductCategoryMapper;
+import com.macro.mall.model.PmsProductCategory;
+import com.macro.mall.model.PmsProductCategoryExample;
+import com.macro.mall.portal.domain.PmsProductCategoryNode;
+import com.macro.mall.portal.service.PmsProductCategoryTreeService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 商品分类树Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class PmsProductCategoryTreeServiceImpl implements PmsProductCategoryTreeService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PmsProductCategoryTreeServiceImpl.class);
+    @Autowired
+    private PmsProductCategoryMapper productCategoryMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private SnapshotHolder<CategoryTree> categoryTreeHolder;
+
+    @PostConstruct
+    public void init() {
+        categoryTreeHolder = new SnapshotHolder<>("商品分类树", this::load, redisMessageListenerContainer, RedisChannelConstant.CATEGORY_CHANGE);
+    }
+
+    @Override
+    public List<PmsProductCategoryNode> getTree() {
+        return getCategoryTree().nodeSnapshot.getRoots();
+    }
+
+    @Override
+    public PmsProductCategoryNode getSubtree(Long id) {
+        return getCategoryTree().nodeSnapshot.get(id);
+    }
+
+    @Override
+    public List<PmsProductCategory> listShowChildren(Long parentId) {
+        return getCategoryTree().showChildrenMap.getOrDefault(parentId, Collections.emptyList());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${product.category.refreshInterval:300000}")
+    public void refresh() {
+        categoryTreeHolder.refresh();
+    }
+
+    private CategoryTree getCategoryTree() {
+        return categoryTreeHolder.get();
+    }
+
+    /**
+     * 一次查询所有分类，按parentId建立索引后为每个节点挂上子节点
+     */
+    private CategoryTree load() {
+        List<PmsProductCategory> categoryList = productCategoryMapper.selectByExample(new PmsProductCategoryExample());
+        List<PmsProductCategoryNode> nodeList = new ArrayList<>(categoryList.size());
+        for (PmsProductCategory category : categoryList) {
+            PmsProductCategoryNode node = new PmsProductCategoryNode();
+            BeanUtils.copyProperties(category, node);
+            nodeList.add(node);
+        }
+        TreeSnapshot<PmsProductCategoryNode> nodeSnapshot = new TreeSnapshot<>(nodeList,
+                PmsProductCategory::getId, PmsProductCategory::getParentId, 0L);
+        for (PmsProductCategoryNode node : nodeList) {
+            node.setChildren(nodeSnapshot.getChildren(node.getId()));
+        }
+        Map<Long, List<PmsProductCategory>> showChildrenMap = categoryList.stream()
+                .filter(category -> Integer.valueOf(1).equals(category.getShowStatus()))
+                .sorted(Comparator.comparing(PmsProductCategory::getSort, Comparator.nullsLast(Comparator.reverseOrder())))
+                .collect(Collectors.groupingBy(PmsProductCategory::getParentId,
+                        Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+        LOGGER.debug("重建商品分类树，分类数量：{}", nodeSnapshot.size());
+        return new CategoryTree(nodeSnapshot, showChildrenMap);
+    }
+
+    /**
+     * 商品分类树，构建完成后不再修改，重建时整体替换
+     */
+    private static class CategoryTree {
+        private final TreeSnapshot<PmsProductCategoryNode> nodeSnapshot;
+        private final Map<Long, List<PmsProductCategory>> showChildrenMap;
+
+        CategoryTree(TreeSnapshot<PmsProductCategoryNode> nodeSnapshot, Map<Long, List<PmsProductCategory>> showChildrenMap) {
+            this.nodeSnapshot = nodeSnapshot;
+            this.showChildrenMap = showChildrenMap;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.macro.mall.portal.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.portal.domain.PmsPortalProductDetail;
+import com.macro.mall.portal.service.PmsProductDetailCacheService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 商品详情缓存Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class PmsProductDetailCacheServiceImpl implements PmsProductDetailCacheService, MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PmsProductDetailCacheServiceImpl.class);
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${product.detail.cache.maximumSize:10000}")
+    private Long MAXIMUM_SIZE;
+    @Value("${product.detail.cache.expireAfterWrite:300}")
+    private Long EXPIRE_AFTER_WRITE;
+    private Cache<Long, byte[]> detailCache;
+    /**
+     * 正在加载的商品详情，同一商品的并发请求等待同一次加载
+     */
+    private final Map<Long, CompletableFuture<byte[]>> loadingMap = new ConcurrentHashMap<>();
+    /**
+     * 每次失效时递增，加载期间发生过失效的结果不放入缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        detailCache = Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, detailCache, "productDetailCache");
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisChannelConstant.PRODUCT_CHANGE));
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisChannelConstant.COUPON_CHANGE));
+    }
+
+    @Override
+    public PmsPortalProductDetail get(Long productId, Function<Long, PmsPortalProductDetail> loader) {
+        byte[] content = detailCache.getIfPresent(productId);
+        if (content == null) {
+            content = load(productId, loader);
+        }
+        //每次返回新反序列化的对象，调用方修改不会影响缓存
+        try {
+            return objectMapper.readValue(content, PmsPortalProductDetail.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("反序列化商品详情失败", e);
+        }
+    }
+
+    @Override
+    public void evict(Collection<Long> productIds) {
+        generation.incrementAndGet();
+        for (Long productId : productIds) {
+            loadingMap.remove(productId);
+            detailCache.invalidate(productId);
+        }
+    }
+
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        loadingMap.clear();
+        detailCache.invalidateAll();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (RedisChannelConstant.COUPON_CHANGE.equals(channel)) {
+            //优惠券可能关联任意商品或分类，清除所有商品详情
+            clear();
+            return;
+        }
+        try {
+            List<Long> productIds = new ArrayList<>();
+            for (String id : new String(message.getBody(), StandardCharsets.UTF_8).split(",")) {
+                productIds.add(Long.valueOf(id.trim()));
+            }
+            evict(productIds);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("商品变更通知格式错误，清除所有商品详情缓存", e);
+            clear();
+        }
+    }
+
+    /**
+     * 加载并序列化商品详情，已有相同商品正在加载时等待其结果
+     */
+    private byte[] load(Long productId, Function<Long, PmsPortalProductDetail> loader) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> loading = loadingMap.putIfAbsent(productId, future);
+        if (loading != null) {
+            try {
+                return loading.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            long currentGeneration = generation.get();
+            byte[] content = objectMapper.writeValueAsBytes(loader.apply(productId));
+            detailCache.put(productId, content);
+            if (generation.get() != currentGeneration) {
+                detailCache.invalidate(productId);
+            }
+            future.complete(content);
+            return content;
+        } catch (IOException e) {
+            IllegalStateException exception = new IllegalStateException("序列化商品详情失败", e);
+            future.completeExceptionally(exception);
+            throw exception;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(productId, future);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.macro.mall.portal.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.macro.mall.common.cache.SnapshotHolder;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.mapper.SmsCouponHistoryMapper;
+import com.macro.mall.mapper.SmsCouponMapper;
+import com.macro.mall.mapper.SmsCouponProductCategoryRelationMapper;
+import com.macro.mall.mapper.SmsCouponProductRelationMapper;
+import com.macro.mall.model.*;
+import com.macro.mall.portal.domain.SmsCouponHistoryDetail;
+import com.macro.mall.portal.service.SmsCouponIndexService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 优惠券适用范围索引Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class SmsCouponIndexServiceImpl implements SmsCouponIndexService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmsCouponIndexServiceImpl.class);
+    @Autowired
+    private SmsCouponMapper couponMapper;
+    @Autowired
+    private SmsCouponHistoryMapper couponHistoryMapper;
+    @Autowired
+    private SmsCouponProductRelationMapper couponProductRelationMapper;
+    @Autowired
+    private SmsCouponProductCategoryRelationMapper couponProductCategoryRelationMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private SnapshotHolder<CouponIndex> couponIndexHolder;
+
+    @PostConstruct
+    public void init() {
+        couponIndexHolder = new SnapshotHolder<>("优惠券索引", this::load, redisMessageListenerContainer, RedisChannelConstant.COUPON_CHANGE);
+    }
+
+    @Override
+    public List<SmsCouponHistoryDetail> listUnusedDetail(Long memberId) {
+        SmsCouponHistoryExample example = new SmsCouponHistoryExample();
+        example.createCriteria().andMemberIdEqualTo(memberId).andUseStatusEqualTo(0);
+        List<SmsCouponHistory> couponHistoryList = couponHistoryMapper.selectByExample(example);
+        if (CollUtil.isEmpty(couponHistoryList)) {
+            return new ArrayList<>();
+        }
+        CouponIndex index = getIndex();
+        //已结束或刚创建尚未进入索引的优惠券从数据库补充
+        Set<Long> missingIds = new HashSet<>();
+        for (SmsCouponHistory couponHistory : couponHistoryList) {
+            if (!index.entryMap.containsKey(couponHistory.getCouponId())) {
+                missingIds.add(couponHistory.getCouponId());
+            }
+        }
+        Map<Long, CouponEntry> missingMap = Collections.emptyMap();
+        if (!missingIds.isEmpty()) {
+            SmsCouponExample couponExample = new SmsCouponExample();
+            couponExample.createCriteria().andIdIn(new ArrayList<>(missingIds));
+            missingMap = buildEntries(couponMapper.selectByExample(couponExample));
+        }
+        List<SmsCouponHistoryDetail> result = new ArrayList<>(couponHistoryList.size());
+        for (SmsCouponHistory couponHistory : couponHistoryList) {
+            CouponEntry entry = index.entryMap.get(couponHistory.getCouponId());
+            if (entry == null) {
+                entry = missingMap.get(couponHistory.getCouponId());
+            }
+            if (entry == null) {
+                //优惠券已被删除
+                continue;
+            }
+            SmsCouponHistoryDetail detail = new SmsCouponHistoryDetail();
+            BeanUtils.copyProperties(couponHistory, detail);
+            detail.setCoupon(entry.coupon);
+            detail.setProductRelationList(entry.productRelationList);
+            detail.setCategoryRelationList(entry.categoryRelationList);
+            result.add(detail);
+        }
+        return result;
+    }
+
+    @Override
+    public List<SmsCoupon> listByProduct(Long productId, Long productCategoryId) {
+        CouponIndex index = getIndex();
+        Set<Long> couponIds = new LinkedHashSet<>(index.generalCouponIds);
+        couponIds.addAll(index.productCouponMap.getOrDefault(productId, Collections.emptySet()));
+        if (productCategoryId != null) {
+            couponIds.addAll(index.categoryCouponMap.getOrDefault(productCategoryId, Collections.emptySet()));
+        }
+        Date now = new Date();
+        List<SmsCoupon> result = new ArrayList<>();
+        for (Long couponId : couponIds) {
+            SmsCoupon coupon = index.entryMap.get(couponId).coupon;
+            if (coupon.getStartTime() != null && coupon.getStartTime().before(now)
+                    && coupon.getEndTime() != null && coupon.getEndTime().after(now)) {
+                result.add(coupon);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${coupon.index.refreshInterval:60000}")
+    public void refresh() {
+        couponIndexHolder.refresh();
+    }
+
+    private CouponIndex getIndex() {
+        return couponIndexHolder.get();
+    }
+
+    /**
+     * 加载所有未结束的优惠券并建立商品、商品分类到优惠券的索引
+     */
+    private CouponIndex load() {
+        SmsCouponExample example = new SmsCouponExample();
+        example.createCriteria().andEndTimeGreaterThan(new Date());
+        Map<Long, CouponEntry> entryMap = buildEntries(couponMapper.selectByExample(example));
+        List<Long> generalCouponIds = new ArrayList<>();
+        Map<Long, Set<Long>> productCouponMap = new HashMap<>();
+        Map<Long, Set<Long>> categoryCouponMap = new HashMap<>();
+        for (CouponEntry entry : entryMap.values()) {
+            Integer useType = entry.coupon.getUseType();
+            Long couponId = entry.coupon.getId();
+            if (Integer.valueOf(0).equals(useType)) {
+                generalCouponIds.add(couponId);
+            } else if (Integer.valueOf(1).equals(useType)) {
+                for (SmsCouponProductCategoryRelation relation : entry.categoryRelationList) {
+                    categoryCouponMap.computeIfAbsent(relation.getProductCategoryId(), key -> new HashSet<>()).add(couponId);
+                }
+            } else if (Integer.valueOf(2).equals(useType)) {
+                for (SmsCouponProductRelation relation : entry.productRelationList) {
+                    productCouponMap.computeIfAbsent(relation.getProductId(), key -> new HashSet<>()).add(couponId);
+                }
+            }
+        }
+        LOGGER.debug("刷新优惠券索引，优惠券数量：{}", entryMap.size());
+        return new CouponIndex(entryMap, generalCouponIds, productCouponMap, categoryCouponMap);
+    }
+
+    /**
+     * 查询优惠券关联的商品及商品分类，关联关系按商品id、商品分类id去重
+     */
+    private Map<Long, CouponEntry> buildEntries(List<SmsCoupon> couponList) {
+        Map<Long, CouponEntry> entryMap = new HashMap<>();
+        if (CollUtil.isEmpty(couponList)) {
+            return entryMap;
+        }
+        for (SmsCoupon coupon : couponList) {
+            entryMap.put(coupon.getId(), new CouponEntry(coupon));
+        }
+        List<Long> couponIds = new ArrayList<>(entryMap.keySet());
+        SmsCouponProductRelationExample productRelationExample = new SmsCouponProductRelationExample();
+        productRelationExample.createCriteria().andCouponIdIn(couponIds);
+        Set<String> added = new HashSet<>();
+        for (SmsCouponProductRelation relation : couponProductRelationMapper.selectByExample(productRelationExample)) {
+            if (added.add(relation.getCouponId() + ":" + relation.getProductId())) {
+                entryMap.get(relation.getCouponId()).productRelationList.add(relation);
+            }
+        }
+        SmsCouponProductCategoryRelationExample categoryRelationExample = new SmsCouponProductCategoryRelationExample();
+        categoryRelationExample.createCriteria().andCouponIdIn(couponIds);
+        added.clear();
+        for (SmsCouponProductCategoryRelation relation : couponProductCategoryRelationMapper.selectByExample(categoryRelationExample)) {
+            if (added.add(relation.getCouponId() + ":" + relation.getProductCategoryId())) {
+                entryMap.get(relation.getCouponId()).categoryRelationList.add(relation);
+            }
+        }
+        return entryMap;
+    }
+
+    /**
+     * 优惠券索引，构建完成后不再修改，刷新时整体替换
+     */
+    private static class CouponIndex {
+        private final Map<Long, CouponEntry> entryMap;
+        private final List<Long> generalCouponIds;
+        private final Map<Long, Set<Long>> productCouponMap;
+        private final Map<Long, Set<Long>> categoryCouponMap;
+
+        CouponIndex(Map<Long, CouponEntry> entryMap, List<Long> generalCouponIds,
+                    Map<Long, Set<Long>> productCouponMap, Map<Long, Set<Long>> categoryCouponMap) {
+            this.entryMap = entryMap;
+            this.generalCouponIds = generalCouponIds;
+            this.productCouponMap = productCouponMap;
+            this.categoryCouponMap = categoryCouponMap;
+        }
+    }
+
+    private static class CouponEntry {
+        private final SmsCoupon coupon;
+        private final List<SmsCouponProductRelation> productRelationList = new ArrayList<>();
+        private final List<SmsCouponProductCategoryRelation> categoryRelationList = new ArrayList<>();
+
+        CouponEntry(SmsCoupon coupon) {
+            this.coupon = coupon;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.macro.mall.portal.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.json.JSONUtil;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.exception.Asserts;
+import com.macro.mall.mapper.SmsCouponHistoryMapper;
+import com.macro.mall.mapper.SmsCouponMapper;
+import com.macro.mall.model.SmsCoupon;
+import com.macro.mall.model.SmsCouponHistory;
+import com.macro.mall.model.SmsCouponHistoryExample;
+import com.macro.mall.portal.dao.SmsCouponHistoryDao;
+import com.macro.mall.portal.service.SmsCouponIssueService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 优惠券发放Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class SmsCouponIssueServiceImpl implements SmsCouponIssueService, MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmsCouponIssueServiceImpl.class);
+    private static final int LOAD_MAX_ATTEMPTS = 3;
+    /**
+     * 领取：KEYS[1]为剩余数量，KEYS[2]为会员已领取数量hash，KEYS[3]为领取历史队列，KEYS[4]为领取数量变化量hash；
+     * ARGV[1]为会员id，ARGV[2]为每人限领数量，ARGV[3]为领取历史，ARGV[4]为优惠券id。
+     * 返回0表示成功，1表示已领完，2表示超过限领数量，-1表示剩余数量计数器不存在，-2表示会员已领取数量不存在
+     */
+    private static final DefaultRedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local stock = redis.call('GET', KEYS[1])\n" +
+            "if not stock then return -1 end\n" +
+            "local claimed = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+            "if not claimed then return -2 end\n" +
+            "if tonumber(stock) <= 0 then return 1 end\n" +
+            "if tonumber(claimed) >= tonumber(ARGV[2]) then return 2 end\n" +
+            "redis.call('DECR', KEYS[1])\n" +
+            "redis.call('HINCRBY', KEYS[2], ARGV[1], 1)\n" +
+            "redis.call('RPUSH', KEYS[3], ARGV[3])\n" +
+            "redis.call('HINCRBY', KEYS[4], ARGV[4], 1)\n" +
+            "return 0", Long.class);
+    /**
+     * 加载剩余数量：剩余数量=MySQL剩余数量-尚未回写的领取数量
+     * KEYS[1]为剩余数量，KEYS[2]为领取数量变化量hash，KEYS[3]为回写中的变化量hash，KEYS[4]为回写版本号；
+     * ARGV[1]为MySQL剩余数量，ARGV[2]为优惠券id，ARGV[3]为过期时间戳（秒），0表示不过期，ARGV[4]为查询MySQL前读取的回写版本号。
+     * 该优惠券的变化量正在回写或查询MySQL后有回写完成时返回-1，此时无法确定MySQL中的数量是否已包含这部分领取
+     */
+    private static final DefaultRedisScript<Long> LOAD_STOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end\n" +
+            "if redis.call('HEXISTS', KEYS[3], ARGV[2]) == 1 then return -1 end\n" +
+            "if (redis.call('GET', KEYS[4]) or '0') ~= ARGV[4] then return -1 end\n" +
+            "local pending = tonumber(redis.call('HGET', KEYS[2], ARGV[2]) or '0')\n" +
+            "redis.call('SET', KEYS[1], tonumber(ARGV[1]) - pending)\n" +
+            "if ARGV[3] ~= '0' then redis.call('EXPIREAT', KEYS[1], ARGV[3]) end\n" +
+            "return 1", Long.class);
+    /**
+     * 加载会员已领取数量，已存在时不覆盖
+     */
+    private static final DefaultRedisScript<Long> LOAD_MEMBER_SCRIPT = new DefaultRedisScript<>(
+            "local result = redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "if ARGV[3] ~= '0' and redis.call('TTL', KEYS[1]) == -1 then redis.call('EXPIREAT', KEYS[1], ARGV[3]) end\n" +
+            "return result", Long.class);
+    /**
+     * 从队列头部将一批领取历史移入处理中列表并返回：KEYS[1]为领取历史队列，KEYS[2]为处理中列表；ARGV[1]为批量大小
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> MOVE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, tonumber(ARGV[1]) do\n" +
+            "  if not redis.call('LMOVE', KEYS[1], KEYS[2], 'LEFT', 'RIGHT') then break end\n" +
+            "end\n" +
+            "return redis.call('LRANGE', KEYS[2], 0, -1)", List.class);
+    /**
+     * 开始回写：KEYS[1]为领取数量变化量hash，KEYS[2]为回写中的变化量hash，KEYS[3]为回写锁；ARGV[1]为锁超时时间（秒），ARGV[2]为锁持有者
+     * 获取锁后将变化量整体移入回写中hash再返回，上次回写中断遗留的变化量会被重新返回
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('SET', KEYS[3], ARGV[2], 'NX', 'EX', ARGV[1]) then return {} end\n" +
+            "if redis.call('EXISTS', KEYS[2]) == 0 then\n" +
+            "  if redis.call('EXISTS', KEYS[1]) == 0 then\n" +
+            "    redis.call('DEL', KEYS[3])\n" +
+            "    return {}\n" +
+            "  end\n" +
+            "  redis.call('RENAME', KEYS[1], KEYS[2])\n" +
+            "end\n" +
+            "return redis.call('HGETALL', KEYS[2])", List.class);
+    /**
+     * 变化量写入MySQL后删除回写中的变化量并递增回写版本号：KEYS[1]为回写中的变化量hash，KEYS[2]为回写版本号
+     */
+    private static final DefaultRedisScript<Long> COMMIT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1])\n" +
+            "return redis.call('INCR', KEYS[2])", Long.class);
+    /**
+     * 回写失败时将回写中的变化量合并回领取数量变化量hash：KEYS[1]为领取数量变化量hash，KEYS[2]为回写中的变化量hash
+     */
+    private static final DefaultRedisScript<Long> ROLLBACK_SCRIPT = new DefaultRedisScript<>(
+            "local entries = redis.call('HGETALL', KEYS[2])\n" +
+            "for i = 1, #entries, 2 do\n" +
+            "  redis.call('HINCRBY', KEYS[1], entries[i], entries[i + 1])\n" +
+            "end\n" +
+            "redis.call('DEL', KEYS[2])\n" +
+            "return #entries / 2", Long.class);
+    /**
+     * 释放回写锁：KEYS[1]为回写锁，ARGV[1]为锁持有者
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0", Long.class);
+    /**
+     * 计数器在优惠券结束后保留的时长（秒）
+     */
+    private static final long EXPIRE_AFTER_END = 24 * 60 * 60;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SmsCouponMapper couponMapper;
+    @Autowired
+    private SmsCouponHistoryMapper couponHistoryMapper;
+    @Autowired
+    private SmsCouponHistoryDao couponHistoryDao;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.coupon}")
+    private String REDIS_KEY_COUPON;
+    @Value("${coupon.issue.batchSize:500}")
+    private Integer BATCH_SIZE;
+    @Value("${coupon.issue.flushLockSeconds:60}")
+    private Long FLUSH_LOCK_SECONDS;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisChannelConstant.COUPON_CHANGE));
+    }
+
+    @Override
+    public void claim(SmsCoupon coupon, SmsCouponHistory couponHistory) {
+        Long memberId = couponHistory.getMemberId();
+        int perLimit = coupon.getPerLimit() == null ? 1 : coupon.getPerLimit();
+        List<String> keys = Arrays.asList(getStockKey(coupon.getId()), getMemberKey(coupon.getId()), getQueueKey(), getDeltaKey());
+        Object[] args = {memberId.toString(), String.valueOf(perLimit), JSONUtil.toJsonStr(couponHistory), coupon.getId().toString()};
+        Long result = stringRedisTemplate.execute(CLAIM_SCRIPT, keys, args);
+        //剩余数量和会员已领取数量可能都需要加载，剩余数量与回写冲突时重新加载
+        for (int i = 0; i < LOAD_MAX_ATTEMPTS && result != null && result < 0; i++) {
+            if (result == -1) {
+                loadStock(coupon);
+            } else {
+                loadMemberCount(coupon, memberId);
+            }
+            result = stringRedisTemplate.execute(CLAIM_SCRIPT, keys, args);
+        }
+        if (result == null || result < 0) {
+            Asserts.fail("领取优惠券失败，请稍后重试");
+        }
+        if (result == 1) {
+            Asserts.fail("优惠券已经领完了");
+        }
+        if (result == 2) {
+            Asserts.fail("您已经领取过该优惠券");
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int flushHistory() {
+        String lockKey = getQueueKey() + ":flushLock";
+        String owner = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, owner, FLUSH_LOCK_SECONDS, TimeUnit.SECONDS))) {
+            return 0;
+        }
+        try {
+            int count = 0;
+            //处理中列表不为空说明上次写入中断，其中的记录可能已经写入，先去重后重放
+            List<String> leftover = stringRedisTemplate.opsForList().range(getProcessingKey(), 0, -1);
+            if (CollUtil.isNotEmpty(leftover)) {
+                count += insertHistory(leftover, true);
+            }
+            while (true) {
+                List<String> items = stringRedisTemplate.execute(MOVE_SCRIPT,
+                        Arrays.asList(getQueueKey(), getProcessingKey()), BATCH_SIZE.toString());
+                if (CollUtil.isEmpty(items)) {
+                    break;
+                }
+                count += insertHistory(items, false);
+                if (items.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+            return count;
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), owner);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int flushReceiveCount() {
+        String lockKey = getFlushLockKey();
+        String owner = UUID.randomUUID().toString();
+        List<String> entries = stringRedisTemplate.execute(DRAIN_SCRIPT,
+                Arrays.asList(getDeltaKey(), getFlushingKey(), lockKey), FLUSH_LOCK_SECONDS.toString(), owner);
+        if (CollUtil.isEmpty(entries)) {
+            return 0;
+        }
+        try {
+            Map<Long, Integer> deltaMap = new TreeMap<>();
+            for (int i = 0; i + 1 < entries.size(); i += 2) {
+                int delta = Integer.parseInt(entries.get(i + 1));
+                if (delta != 0) {
+                    deltaMap.put(Long.valueOf(entries.get(i)), delta);
+                }
+            }
+            try {
+                if (!deltaMap.isEmpty()) {
+                    couponHistoryDao.updateReceiveCount(deltaMap);
+                }
+                //MySQL提交后才删除回写中的变化量，期间加载剩余数量会被拒绝
+                stringRedisTemplate.execute(COMMIT_SCRIPT, Arrays.asList(getFlushingKey(), getEpochKey()));
+            } catch (RuntimeException e) {
+                //回写失败时将变化量放回领取数量变化量hash，等待下次回写
+                stringRedisTemplate.execute(ROLLBACK_SCRIPT, Arrays.asList(getDeltaKey(), getFlushingKey()));
+                throw e;
+            }
+            return deltaMap.size();
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), owner);
+        }
+    }
+
+    @Override
+    public void evict(Long couponId) {
+        stringRedisTemplate.delete(getStockKey(couponId));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            evict(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            LOGGER.error("处理优惠券变更通知失败", e);
+        }
+    }
+
+    /**
+     * 从MySQL重新查询剩余数量后写入Redis，调用方传入的优惠券可能是回写前读取的
+     */
+    private void loadStock(SmsCoupon coupon) {
+        String epoch = stringRedisTemplate.opsForValue().get(getEpochKey());
+        SmsCoupon latest = couponMapper.selectByPrimaryKey(coupon.getId());
+        if (latest == null) {
+            Asserts.fail("优惠券不存在");
+        }
+        int count = latest.getCount() == null ? 0 : latest.getCount();
+        List<String> keys = Arrays.asList(getStockKey(coupon.getId()), getDeltaKey(), getFlushingKey(), getEpochKey());
+        Long result = stringRedisTemplate.execute(LOAD_STOCK_SCRIPT, keys, String.valueOf(count), coupon.getId().toString(),
+                getExpireAt(latest), epoch == null ? "0" : epoch);
+        if (result != null && result < 0) {
+            LOGGER.info("优惠券领取数量正在回写，稍后重新加载剩余数量，couponId：{}", coupon.getId());
+        }
+    }
+
+    /**
+     * 写入处理中列表的领取历史，写入成功后再删除处理中列表，写入失败时保留等待重放
+     * @param replay 是否为重放，重放时跳过已写入的优惠券码
+     */
+    private int insertHistory(List<String> items, boolean replay) {
+        List<SmsCouponHistory> couponHistoryList = new ArrayList<>(items.size());
+        for (String item : items) {
+            couponHistoryList.add(JSONUtil.toBean(item, SmsCouponHistory.class));
+        }
+        if (replay) {
+            List<String> couponCodes = new ArrayList<>();
+            for (SmsCouponHistory couponHistory : couponHistoryList) {
+                if (couponHistory.getCouponCode() != null) {
+                    couponCodes.add(couponHistory.getCouponCode());
+                }
+            }
+            if (!couponCodes.isEmpty()) {
+                Set<String> existCodes = new HashSet<>(couponHistoryDao.getExistCouponCodes(couponCodes));
+                couponHistoryList.removeIf(couponHistory -> existCodes.contains(couponHistory.getCouponCode()));
+            }
+        }
+        if (!couponHistoryList.isEmpty()) {
+            couponHistoryDao.insertList(couponHistoryList);
+        }
+        stringRedisTemplate.delete(getProcessingKey());
+        return couponHistoryList.size();
+    }
+
+    private void loadMemberCount(SmsCoupon coupon, Long memberId) {
+        SmsCouponHistoryExample example = new SmsCouponHistoryExample();
+        example.createCriteria().andCouponIdEqualTo(coupon.getId()).andMemberIdEqualTo(memberId);
+        long count = couponHistoryMapper.countByExample(example);
+        stringRedisTemplate.execute(LOAD_MEMBER_SCRIPT, Collections.singletonList(getMemberKey(coupon.getId())),
+                memberId.toString(), String.valueOf(count), getExpireAt(coupon));
+    }
+
+    /**
+     * 计数器过期时间戳（秒），优惠券没有结束时间时不过期
+     */
+    private String getExpireAt(SmsCoupon coupon) {
+        if (coupon.getEndTime() == null) {
+            return "0";
+        }
+        long endTime = Math.max(coupon.getEndTime().getTime(), System.currentTimeMillis());
+        return String.valueOf(endTime / 1000 + EXPIRE_AFTER_END);
+    }
+
+    private String getStockKey(Long couponId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_COUPON + ":" + couponId + ":stock";
+    }
+
+    private String getMemberKey(Long couponId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_COUPON + ":" + couponId + ":member";
+    }
+
+    private String getQueueKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_COUPON + ":historyQueue";
+    }
+
+    private String getProcessingKey() {
+        return getQueueKey() + ":processing";
+    }
+
+    private String getDeltaKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_COUPON + ":receiveDelta";
+    }
+
+    private String getFlushingKey() {
+        return getDeltaKey() + ":flushing";
+    }
+
+    private String getEpochKey() {
+        return getDeltaKey() + ":epoch";
+    }
+
+    private String getFlushLockKey() {
+        return getDeltaKey() + ":flushLock";
+    }
+}
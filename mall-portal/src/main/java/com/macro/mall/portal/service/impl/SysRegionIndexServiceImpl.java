@@ -0,0 +1,52 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.cache.RegionIndex;
+import com.macro.mall.common.cache.SnapshotHolder;
+import com.macro.mall.mapper.SysRegionMapper;
+import com.macro.mall.model.SysRegion;
+import com.macro.mall.portal.service.SysRegionIndexService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 区域索引Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class SysRegionIndexServiceImpl implements SysRegionIndexService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SysRegionIndexServiceImpl.class);
+    @Autowired
+    private SysRegionMapper regionMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private SnapshotHolder<RegionIndex<SysRegion>> regionIndexHolder;
+
+    @PostConstruct
+    public void init() {
+        regionIndexHolder = new SnapshotHolder<>("区域索引", this::load, redisMessageListenerContainer, RedisChannelConstant.REGION_CHANGE);
+    }
+
+    @Override
+    public RegionIndex<SysRegion> getIndex() {
+        return regionIndexHolder.get();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${region.index.refreshInterval:600000}")
+    public void refresh() {
+        regionIndexHolder.refresh();
+    }
+
+    private RegionIndex<SysRegion> load() {
+        RegionIndex<SysRegion> current = new RegionIndex<>(regionMapper.selectAll(), SysRegion::getRegionCode, SysRegion::getParentCode,
+                SysRegion::getRegionName, SysRegion::getRegionLevel, region -> Integer.valueOf(1).equals(region.getStatus()));
+        LOGGER.debug("重建区域索引，区域数量：{}", current.size());
+        return current;
+    }
+}
@@ -1,22 +1,42 @@
 package com.macro.mall.portal.service.impl;
 
 import com.macro.mall.common.annotation.CacheException;
+import com.macro.mall.common.cache.TwoLevelCache;
 import com.macro.mall.common.service.RedisService;
-import com.macro.mall.mapper.UmsMemberMapper;
 import com.macro.mall.model.UmsMember;
 import com.macro.mall.portal.service.UmsMemberCacheService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 /**
  * UmsMemberCacheService实现类
+ * 会员信息依次从请求内缓存、本地缓存、Redis中获取，
+ * 会员信息变更时通过Redis发布订阅通知所有节点清除本地缓存
  * Created by macro on 2020/3/14.
  */
 @Service
 public class UmsMemberCacheServiceImpl implements UmsMemberCacheService {
+    /**
+     * 请求内缓存会员信息的属性名前缀
+     */
+    private static final String REQUEST_ATTRIBUTE_PREFIX = UmsMemberCacheServiceImpl.class.getName() + ".member:";
     @Autowired
     private RedisService redisService;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${member.cache.maximumSize:10000}")
+    private Long MAXIMUM_SIZE;
+    @Value("${member.cache.expireAfterWrite:30}")
+    private Long EXPIRE_AFTER_WRITE;
     @Value("${redis.database}")
     private String REDIS_DATABASE;
     @Value("${redis.expire.common}")
@@ -27,23 +47,50 @@ public class UmsMemberCacheServiceImpl implements UmsMemberCacheService {
     private String REDIS_KEY_MEMBER;
     @Value("${redis.key.authCode}")
     private String REDIS_KEY_AUTH_CODE;
+    private TwoLevelCache<UmsMember> memberCache;
+    private Counter requestHitCounter;
+
+    @PostConstruct
+    public void init() {
+        memberCache = new TwoLevelCache<>("memberCache", REDIS_DATABASE + ":" + REDIS_KEY_MEMBER, REDIS_EXPIRE,
+                MAXIMUM_SIZE, EXPIRE_AFTER_WRITE, redisService, redisMessageListenerContainer, meterRegistry);
+        requestHitCounter = meterRegistry.counter("mall.member.cache", "level", "request", "result", "hit");
+    }
 
     @Override
     public void delMember(Long memberId) {
-        String key = REDIS_DATABASE + ":" + REDIS_KEY_MEMBER + ":" + memberId;
-        redisService.del(key);
+        memberCache.evict(memberId);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.removeAttribute(REQUEST_ATTRIBUTE_PREFIX + memberId, RequestAttributes.SCOPE_REQUEST);
+        }
     }
 
     @Override
     public UmsMember getMember(Long memberId) {
-        String key = REDIS_DATABASE + ":" + REDIS_KEY_MEMBER + ":" + memberId;
-        return (UmsMember) redisService.get(key);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        String attributeName = REQUEST_ATTRIBUTE_PREFIX + memberId;
+        if (requestAttributes != null) {
+            UmsMember member = (UmsMember) requestAttributes.getAttribute(attributeName, RequestAttributes.SCOPE_REQUEST);
+            if (member != null) {
+                requestHitCounter.increment();
+                return member;
+            }
+        }
+        UmsMember member = memberCache.get(memberId);
+        if (member != null && requestAttributes != null) {
+            requestAttributes.setAttribute(attributeName, member, RequestAttributes.SCOPE_REQUEST);
+        }
+        return member;
     }
 
     @Override
     public void setMember(UmsMember member) {
-        String key = REDIS_DATABASE + ":" + REDIS_KEY_MEMBER + ":" + member.getId();
-        redisService.set(key, member, REDIS_EXPIRE);
+        memberCache.fill(member.getId(), member);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(REQUEST_ATTRIBUTE_PREFIX + member.getId(), member, RequestAttributes.SCOPE_REQUEST);
+        }
     }
 
     @CacheException
@@ -1,23 +1,23 @@
 package com.macro.mall.portal.service.impl;
 
-import cn.hutool.core.collection.CollUtil;
 import com.macro.mall.common.exception.Asserts;
 import com.macro.mall.mapper.*;
 import com.macro.mall.model.*;
+import com.macro.mall.portal.component.SegmentIdGenerator;
 import com.macro.mall.portal.dao.SmsCouponHistoryDao;
 import com.macro.mall.portal.domain.CartPromotionItem;
 import com.macro.mall.portal.domain.SmsCouponHistoryDetail;
+import com.macro.mall.portal.service.SmsCouponIndexService;
+import com.macro.mall.portal.service.SmsCouponIssueService;
 import com.macro.mall.portal.service.UmsMemberCouponService;
 import com.macro.mall.portal.service.UmsMemberService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.security.SecureRandom;
+import java.util.*;
 
 /**
  * 会员优惠券管理Service实现类
@@ -25,6 +25,7 @@ import java.util.stream.Collectors;
  */
 @Service
 public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
+    private static final SecureRandom RANDOM = new SecureRandom();
     @Autowired
     private UmsMemberService memberService;
     @Autowired
@@ -34,11 +35,17 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
     @Autowired
     private SmsCouponHistoryDao couponHistoryDao;
     @Autowired
-    private SmsCouponProductRelationMapper couponProductRelationMapper;
+    private PmsProductMapper productMapper;
     @Autowired
-    private SmsCouponProductCategoryRelationMapper couponProductCategoryRelationMapper;
+    private SegmentIdGenerator segmentIdGenerator;
     @Autowired
-    private PmsProductMapper productMapper;
+    private SmsCouponIssueService couponIssueService;
+    @Autowired
+    private SmsCouponIndexService couponIndexService;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.couponCode}")
+    private String REDIS_KEY_COUPON_CODE;
     @Override
     public void add(Long couponId) {
         UmsMember currentMember = memberService.getCurrentMember();
@@ -54,13 +61,6 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
         if(now.before(coupon.getEnableTime())){
             Asserts.fail("优惠券还没到领取时间");
         }
-        //判断用户领取的优惠券数量是否超过限制
-        SmsCouponHistoryExample couponHistoryExample = new SmsCouponHistoryExample();
-        couponHistoryExample.createCriteria().andCouponIdEqualTo(couponId).andMemberIdEqualTo(currentMember.getId());
-        long count = couponHistoryMapper.countByExample(couponHistoryExample);
-        if(count>=coupon.getPerLimit()){
-            Asserts.fail("您已经领取过该优惠券");
-        }
         //生成领取优惠券历史
         SmsCouponHistory couponHistory = new SmsCouponHistory();
         couponHistory.setCouponId(couponId);
@@ -72,24 +72,19 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
         couponHistory.setGetType(1);
         //未使用
         couponHistory.setUseStatus(0);
-        couponHistoryMapper.insert(couponHistory);
-        //修改优惠券表的数量、领取数量
-        coupon.setCount(coupon.getCount()-1);
-        coupon.setReceiveCount(coupon.getReceiveCount()==null?1:coupon.getReceiveCount()+1);
-        couponMapper.updateByPrimaryKey(coupon);
+        //在Redis中原子校验并扣减剩余数量及每人限领数量，领取历史和优惠券数量异步写入数据库
+        couponIssueService.claim(coupon, couponHistory);
     }
 
     /**
-     * 16位优惠码生成：时间戳后8位+4位随机数+用户id后4位
+     * 16位优惠码生成：8位以上全局自增id+4位随机数+用户id后4位
+     * 自增id保证不重复，随机数使优惠码无法按顺序推算
      */
     private String generateCouponCode(Long memberId) {
         StringBuilder sb = new StringBuilder();
-        Long currentTimeMillis = System.currentTimeMillis();
-        String timeMillisStr = currentTimeMillis.toString();
-        sb.append(timeMillisStr.substring(timeMillisStr.length() - 8));
-        for (int i = 0; i < 4; i++) {
-            sb.append(new Random().nextInt(10));
-        }
+        long id = segmentIdGenerator.nextId(REDIS_DATABASE + ":" + REDIS_KEY_COUPON_CODE, 0);
+        sb.append(String.format("%08d", id));
+        sb.append(String.format("%04d", RANDOM.nextInt(10000)));
         String memberIdStr = memberId.toString();
         if (memberIdStr.length() <= 4) {
             sb.append(String.format("%04d", memberId));
@@ -114,21 +109,38 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
     @Override
     public List<SmsCouponHistoryDetail> listCart(List<CartPromotionItem> cartItemList, Integer type) {
         UmsMember currentMember = memberService.getCurrentMember();
+        //获取该用户所有未使用的优惠券
+        List<SmsCouponHistoryDetail> allList = couponIndexService.listUnusedDetail(currentMember.getId());
+        return listCart(allList, cartItemList, type);
+    }
+
+    @Override
+    public List<SmsCouponHistoryDetail> listCart(List<SmsCouponHistoryDetail> allList, List<CartPromotionItem> cartItemList, Integer type) {
         Date now = new Date();
-        //获取该用户所有优惠券
-        List<SmsCouponHistoryDetail> allList = couponHistoryDao.getDetailList(currentMember.getId());
+        //按商品、商品分类汇总购物车商品的总价，每张优惠券只需累加其关联商品或分类的金额
+        BigDecimal totalAmount = new BigDecimal("0");
+        Map<Long, BigDecimal> productAmountMap = new HashMap<>();
+        Map<Long, BigDecimal> categoryAmountMap = new HashMap<>();
+        for (CartPromotionItem item : cartItemList) {
+            BigDecimal realPrice = item.getPrice().subtract(item.getReduceAmount());
+            BigDecimal amount = realPrice.multiply(new BigDecimal(item.getQuantity()));
+            totalAmount = totalAmount.add(amount);
+            productAmountMap.merge(item.getProductId(), amount, BigDecimal::add);
+            categoryAmountMap.merge(item.getProductCategoryId(), amount, BigDecimal::add);
+        }
         //根据优惠券使用类型来判断优惠券是否可用
         List<SmsCouponHistoryDetail> enableList = new ArrayList<>();
         List<SmsCouponHistoryDetail> disableList = new ArrayList<>();
         for (SmsCouponHistoryDetail couponHistoryDetail : allList) {
+            if(couponHistoryDetail.getCoupon()==null){
+                continue;
+            }
             Integer useType = couponHistoryDetail.getCoupon().getUseType();
             BigDecimal minPoint = couponHistoryDetail.getCoupon().getMinPoint();
             Date endTime = couponHistoryDetail.getCoupon().getEndTime();
             if(useType.equals(0)){
                 //0->全场通用
                 //判断是否满足优惠起点
-                //计算购物车商品的总价
-                BigDecimal totalAmount = calcTotalAmount(cartItemList);
                 if(now.before(endTime)&&totalAmount.subtract(minPoint).intValue()>=0){
                     enableList.add(couponHistoryDetail);
                 }else{
@@ -137,12 +149,11 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
             }else if(useType.equals(1)){
                 //1->指定分类
                 //计算指定分类商品的总价
-                List<Long> productCategoryIds = new ArrayList<>();
+                BigDecimal categoryAmount = new BigDecimal("0");
                 for (SmsCouponProductCategoryRelation categoryRelation : couponHistoryDetail.getCategoryRelationList()) {
-                    productCategoryIds.add(categoryRelation.getProductCategoryId());
+                    categoryAmount = categoryAmount.add(categoryAmountMap.getOrDefault(categoryRelation.getProductCategoryId(), BigDecimal.ZERO));
                 }
-                BigDecimal totalAmount = calcTotalAmountByproductCategoryId(cartItemList,productCategoryIds);
-                if(now.before(endTime)&&totalAmount.intValue()>0&&totalAmount.subtract(minPoint).intValue()>=0){
+                if(now.before(endTime)&&categoryAmount.intValue()>0&&categoryAmount.subtract(minPoint).intValue()>=0){
                     enableList.add(couponHistoryDetail);
                 }else{
                     disableList.add(couponHistoryDetail);
@@ -150,12 +161,11 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
             }else if(useType.equals(2)){
                 //2->指定商品
                 //计算指定商品的总价
-                List<Long> productIds = new ArrayList<>();
+                BigDecimal productAmount = new BigDecimal("0");
                 for (SmsCouponProductRelation productRelation : couponHistoryDetail.getProductRelationList()) {
-                    productIds.add(productRelation.getProductId());
+                    productAmount = productAmount.add(productAmountMap.getOrDefault(productRelation.getProductId(), BigDecimal.ZERO));
                 }
-                BigDecimal totalAmount = calcTotalAmountByProductId(cartItemList,productIds);
-                if(now.before(endTime)&&totalAmount.intValue()>0&&totalAmount.subtract(minPoint).intValue()>=0){
+                if(now.before(endTime)&&productAmount.intValue()>0&&productAmount.subtract(minPoint).intValue()>=0){
                     enableList.add(couponHistoryDetail);
                 }else{
                     disableList.add(couponHistoryDetail);
@@ -171,38 +181,12 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
 
     @Override
     public List<SmsCoupon> listByProduct(Long productId) {
-        List<Long> allCouponIds = new ArrayList<>();
-        //获取指定商品优惠券
-        SmsCouponProductRelationExample cprExample = new SmsCouponProductRelationExample();
-        cprExample.createCriteria().andProductIdEqualTo(productId);
-        List<SmsCouponProductRelation> cprList = couponProductRelationMapper.selectByExample(cprExample);
-        if(CollUtil.isNotEmpty(cprList)){
-            List<Long> couponIds = cprList.stream().map(SmsCouponProductRelation::getCouponId).collect(Collectors.toList());
-            allCouponIds.addAll(couponIds);
-        }
-        //获取指定分类优惠券
+        //商品所属分类从数据库获取，适用的优惠券从内存索引中获取
         PmsProduct product = productMapper.selectByPrimaryKey(productId);
-        SmsCouponProductCategoryRelationExample cpcrExample = new SmsCouponProductCategoryRelationExample();
-        cpcrExample.createCriteria().andProductCategoryIdEqualTo(product.getProductCategoryId());
-        List<SmsCouponProductCategoryRelation> cpcrList = couponProductCategoryRelationMapper.selectByExample(cpcrExample);
-        if(CollUtil.isNotEmpty(cpcrList)){
-            List<Long> couponIds = cpcrList.stream().map(SmsCouponProductCategoryRelation::getCouponId).collect(Collectors.toList());
-            allCouponIds.addAll(couponIds);
-        }
-        if(CollUtil.isEmpty(allCouponIds)){
+        if(product==null){
             return new ArrayList<>();
         }
-        //所有优惠券
-        SmsCouponExample couponExample = new SmsCouponExample();
-        couponExample.createCriteria().andEndTimeGreaterThan(new Date())
-                .andStartTimeLessThan(new Date())
-                .andUseTypeEqualTo(0);
-        couponExample.or(couponExample.createCriteria()
-                .andEndTimeGreaterThan(new Date())
-                .andStartTimeLessThan(new Date())
-                .andUseTypeNotEqualTo(0)
-                .andIdIn(allCouponIds));
-        return couponMapper.selectByExample(couponExample);
+        return couponIndexService.listByProduct(productId, product.getProductCategoryId());
     }
 
     @Override
@@ -211,35 +195,4 @@ public class UmsMemberCouponServiceImpl implements UmsMemberCouponService {
         return couponHistoryDao.getCouponList(member.getId(),useStatus);
     }
 
-    private BigDecimal calcTotalAmount(List<CartPromotionItem> cartItemList) {
-        BigDecimal total = new BigDecimal("0");
-        for (CartPromotionItem item : cartItemList) {
-            BigDecimal realPrice = item.getPrice().subtract(item.getReduceAmount());
-            total=total.add(realPrice.multiply(new BigDecimal(item.getQuantity())));
-        }
-        return total;
-    }
-
-    private BigDecimal calcTotalAmountByproductCategoryId(List<CartPromotionItem> cartItemList,List<Long> productCategoryIds) {
-        BigDecimal total = new BigDecimal("0");
-        for (CartPromotionItem item : cartItemList) {
-            if(productCategoryIds.contains(item.getProductCategoryId())){
-                BigDecimal realPrice = item.getPrice().subtract(item.getReduceAmount());
-                total=total.add(realPrice.multiply(new BigDecimal(item.getQuantity())));
-            }
-        }
-        return total;
-    }
-
-    private BigDecimal calcTotalAmountByProductId(List<CartPromotionItem> cartItemList,List<Long> productIds) {
-        BigDecimal total = new BigDecimal("0");
-        for (CartPromotionItem item : cartItemList) {
-            if(productIds.contains(item.getProductId())){
-                BigDecimal realPrice = item.getPrice().subtract(item.getReduceAmount());
-                total=total.add(realPrice.multiply(new BigDecimal(item.getQuantity())));
-            }
-        }
-        return total;
-    }
-
 }
@@ -13,6 +13,7 @@ import com.macro.mall.model.UmsMember;
 import com.macro.mall.model.UmsMemberExample;
 import com.macro.mall.model.UmsMemberLevel;
 import com.macro.mall.model.UmsMemberLevelExample;
+import com.macro.mall.portal.dao.PortalMemberDao;
 import com.macro.mall.portal.service.UmsMemberCacheService;
 import com.macro.mall.portal.service.UmsMemberService;
 import com.macro.mall.portal.util.StpMemberUtil;
@@ -21,11 +22,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -35,12 +43,18 @@ import java.util.Random;
 @Service
 public class UmsMemberServiceImpl implements UmsMemberService {
     private static final Logger LOGGER = LoggerFactory.getLogger(UmsMemberServiceImpl.class);
+    /**
+     * 请求内缓存当前会员id的属性名
+     */
+    private static final String CURRENT_MEMBER_ID = UmsMemberServiceImpl.class.getName() + ".currentMemberId";
     @Autowired
     private UmsMemberMapper memberMapper;
     @Autowired
     private UmsMemberLevelMapper memberLevelMapper;
     @Autowired
     private UmsMemberCacheService memberCacheService;
+    @Autowired
+    private PortalMemberDao portalMemberDao;
     @Value("${redis.key.authCode}")
     private String REDIS_KEY_PREFIX_AUTH_CODE;
     @Value("${redis.expire.authCode}")
@@ -125,17 +139,35 @@ public class UmsMemberServiceImpl implements UmsMemberService {
 
     @Override
     public UmsMember getCurrentMember() {
-        UserDto userDto = (UserDto) StpMemberUtil.getSession().get(AuthConstant.STP_MEMBER_INFO);
-        UmsMember member = memberCacheService.getMember(userDto.getId());
+        Long memberId = getCurrentMemberId();
+        UmsMember member = memberCacheService.getMember(memberId);
         if(member!=null){
             return member;
         }else{
-            member = getById(userDto.getId());
+            member = getById(memberId);
             memberCacheService.setMember(member);
             return member;
         }
     }
 
+    /**
+     * 从登录会话中获取当前会员id，同一请求内只读取一次会话
+     */
+    private Long getCurrentMemberId() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            Long memberId = (Long) requestAttributes.getAttribute(CURRENT_MEMBER_ID, RequestAttributes.SCOPE_REQUEST);
+            if (memberId != null) {
+                return memberId;
+            }
+        }
+        UserDto userDto = (UserDto) StpMemberUtil.getSession().get(AuthConstant.STP_MEMBER_INFO);
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(CURRENT_MEMBER_ID, userDto.getId(), RequestAttributes.SCOPE_REQUEST);
+        }
+        return userDto.getId();
+    }
+
     @Override
     public void updateIntegration(Long id, Integer integration) {
         UmsMember record=new UmsMember();
@@ -145,6 +177,39 @@ public class UmsMemberServiceImpl implements UmsMemberService {
         memberCacheService.delMember(id);
     }
 
+    @Override
+    public boolean changeIntegration(Long id, Integer delta) {
+        if (portalMemberDao.updateIntegration(id, delta) == 0) {
+            return false;
+        }
+        delMemberCache(Collections.singletonList(id));
+        return true;
+    }
+
+    @Override
+    public void addIntegration(Map<Long, Integer> deltaMap) {
+        if (CollectionUtils.isEmpty(deltaMap)) {
+            return;
+        }
+        portalMemberDao.addIntegration(deltaMap);
+        delMemberCache(deltaMap.keySet());
+    }
+
+    /**
+     * 删除会员缓存，事务提交前其他请求可能重新缓存旧数据，提交后再删除一次
+     */
+    private void delMemberCache(Collection<Long> memberIds) {
+        memberIds.forEach(memberCacheService::delMember);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    memberIds.forEach(memberCacheService::delMember);
+                }
+            });
+        }
+    }
+
     @Override
     public SaTokenInfo login(String username, String password) {
         if(StrUtil.isEmpty(username)||StrUtil.isEmpty(password)){
@@ -0,0 +1,113 @@
+package com.macro.mall.portal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 第一层每格tickMs毫秒，超出本层范围的任务放入上一层（每格为下层一圈的时长），
+ * 上层格子到期时将任务重新放入下层，最终在第一层到期
+ * Created by macro on 2026/10/18.
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<List<Entry<T>>> buckets;
+    private long currentTime;
+    private TimingWheel<T> overflowWheel;
+    private int size;
+
+    /**
+     * @param tickMs    每格时长（毫秒）
+     * @param wheelSize 每层格数
+     * @param startMs   起始时间
+     */
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - (startMs % tickMs);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * 添加任务
+     * @param expiration 到期时间
+     * @return 已到期时返回false，任务不会被添加
+     */
+    public synchronized boolean add(long expiration, T value) {
+        if (!put(expiration, value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * 推进时间，将到期的任务交给consumer处理
+     */
+    public synchronized void advance(long now, Consumer<T> consumer) {
+        List<Entry<T>> flushed = new ArrayList<>();
+        collect(now, flushed);
+        for (Entry<T> entry : flushed) {
+            if (!put(entry.expiration, entry.value)) {
+                size--;
+                consumer.accept(entry.value);
+            }
+        }
+    }
+
+    /**
+     * 时间轮中未到期的任务数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean put(long expiration, T value) {
+        if (expiration < currentTime + tickMs) {
+            return false;
+        }
+        if (expiration < currentTime + interval) {
+            long virtualId = expiration / tickMs;
+            buckets.get((int) (virtualId % wheelSize)).add(new Entry<>(expiration, value));
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime);
+        }
+        return overflowWheel.put(expiration, value);
+    }
+
+    /**
+     * 逐格推进各层时间，取出到期格子中的任务
+     */
+    private void collect(long now, List<Entry<T>> flushed) {
+        while (currentTime + tickMs <= now) {
+            currentTime += tickMs;
+            List<Entry<T>> bucket = buckets.get((int) ((currentTime / tickMs) % wheelSize));
+            if (!bucket.isEmpty()) {
+                flushed.addAll(bucket);
+                bucket.clear();
+            }
+        }
+        if (overflowWheel != null) {
+            overflowWheel.collect(now, flushed);
+        }
+    }
+
+    private static class Entry<T> {
+        private final long expiration;
+        private final T value;
+
+        Entry(long expiration, T value) {
+            this.expiration = expiration;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.macro.mall.portal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * 依赖Redis的单元测试基类
+ * 通过Testcontainers启动Redis，所有测试共用一个容器，Docker不可用时测试直接失败；
+ * 子类通过@SpringBootTest(classes = ...)只加载被测类，其余依赖使用@MockBean
+ * Created by macro on 2026/10/18.
+ */
+@ImportAutoConfiguration(RedisAutoConfiguration.class)
+@TestPropertySource(properties = {
+        "spring.cloud.nacos.config.enabled=false",
+        "spring.cloud.nacos.discovery.enabled=false"})
+public abstract class RedisTestSupport {
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7.2"))
+            .withExposedPorts(6379);
+    /**
+     * 监听Redis频道的Service在测试中不接收消息，需要时直接调用onMessage
+     */
+    @MockBean
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    protected StringRedisTemplate stringRedisTemplate;
+
+    static {
+        REDIS.start();
+    }
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.redis.host", REDIS::getHost);
+        registry.add("spring.data.redis.port", () -> REDIS.getMappedPort(6379));
+    }
+
+    @BeforeEach
+    public void flushRedis() {
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,158 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.mapper.OmsCartItemMapper;
+import com.macro.mall.model.OmsCartItem;
+import com.macro.mall.portal.RedisTestSupport;
+import com.macro.mall.portal.dao.PortalCartItemDao;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Redis购物车存储单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = RedisCartStore.class, properties = "cart.store.type=redis")
+public class RedisCartStoreTests extends RedisTestSupport {
+    private static final Long MEMBER_ID = 1L;
+    @Autowired
+    private RedisCartStore cartStore;
+    @MockBean
+    private OmsCartItemMapper cartItemMapper;
+    @MockBean
+    private PortalCartItemDao portalCartItemDao;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.cart}")
+    private String REDIS_KEY_CART;
+
+    @Test
+    public void testAddMergesSameSkuAndAllocatesAfterMaxId() {
+        when(portalCartItemDao.getMaxId()).thenReturn(100L);
+        OmsCartItem first = cartItem(1L, 11L, 2);
+        assertEquals(1, cartStore.add(first));
+        assertEquals(101L, first.getId());
+        OmsCartItem same = cartItem(1L, 11L, 2);
+        cartStore.add(same);
+        assertEquals(101L, same.getId());
+        OmsCartItem other = cartItem(1L, 12L, 1);
+        cartStore.add(other);
+        assertEquals(102L, other.getId());
+
+        List<OmsCartItem> cartItemList = cartStore.list(MEMBER_ID);
+        assertEquals(Arrays.asList(101L, 102L), ids(cartItemList));
+        assertEquals(4, cartItemList.get(0).getQuantity());
+        assertEquals(12L, cartItemList.get(1).getProductSkuId());
+        //id序列只初始化一次
+        verify(portalCartItemDao, times(1)).getMaxId();
+    }
+
+    @Test
+    public void testLoadFromMysqlOnce() {
+        OmsCartItem stored = cartItem(1L, 11L, 3);
+        stored.setId(5L);
+        when(cartItemMapper.selectByExample(any())).thenReturn(Collections.singletonList(stored));
+        assertEquals(Collections.singletonList(5L), ids(cartStore.list(MEMBER_ID)));
+        assertEquals(3, cartStore.list(MEMBER_ID, Collections.singletonList(5L)).get(0).getQuantity());
+        //已加载的相同商品合并数量
+        OmsCartItem same = cartItem(1L, 11L, 2);
+        cartStore.add(same);
+        assertEquals(5L, same.getId());
+        assertEquals(5, cartStore.list(MEMBER_ID).get(0).getQuantity());
+        verify(cartItemMapper, times(1)).selectByExample(any());
+    }
+
+    @Test
+    public void testUpdateQuantityAndDelete() {
+        when(portalCartItemDao.getMaxId()).thenReturn(0L);
+        OmsCartItem cartItem = cartItem(1L, 11L, 1);
+        cartStore.add(cartItem);
+        assertEquals(1, cartStore.updateQuantity(MEMBER_ID, cartItem.getId(), 7));
+        assertEquals(0, cartStore.updateQuantity(MEMBER_ID, 99L, 7));
+        assertEquals(7, cartStore.list(MEMBER_ID).get(0).getQuantity());
+
+        assertEquals(1, cartStore.delete(MEMBER_ID, Arrays.asList(cartItem.getId(), 99L)));
+        assertTrue(cartStore.list(MEMBER_ID).isEmpty());
+        //删除后重新添加的相同商品使用新的id
+        OmsCartItem again = cartItem(1L, 11L, 1);
+        cartStore.add(again);
+        assertNotEquals(cartItem.getId(), again.getId());
+        assertEquals(1, cartStore.clear(MEMBER_ID));
+    }
+
+    @Test
+    public void testFlushWritesUpsertsAndDeletes() {
+        when(portalCartItemDao.getMaxId()).thenReturn(0L);
+        OmsCartItem kept = cartItem(1L, 11L, 2);
+        OmsCartItem deleted = cartItem(2L, 21L, 1);
+        cartStore.add(kept);
+        cartStore.add(deleted);
+        cartStore.delete(MEMBER_ID, Collections.singletonList(deleted.getId()));
+        cartStore.flush();
+
+        //已删除的商品只回写删除标识
+        verify(portalCartItemDao).upsertList(argThat(list -> list.size() == 1
+                && list.get(0).getId().equals(kept.getId())
+                && list.get(0).getQuantity() == 2
+                && MEMBER_ID.equals(list.get(0).getMemberId())));
+        verify(portalCartItemDao).deleteList(Collections.singletonList(deleted.getId()));
+        assertEquals(0L, stringRedisTemplate.opsForSet().size(getDirtyKey()));
+        assertFalse(stringRedisTemplate.hasKey(getDirtyKey() + ":lock"));
+    }
+
+    @Test
+    public void testFlushFailureKeepsDirtyEntries() {
+        when(portalCartItemDao.getMaxId()).thenReturn(0L);
+        OmsCartItem cartItem = cartItem(1L, 11L, 2);
+        cartStore.add(cartItem);
+        doThrow(new IllegalStateException("数据库不可用")).when(portalCartItemDao).upsertList(anyList());
+        cartStore.flush();
+        assertTrue(stringRedisTemplate.opsForSet().isMember(getDirtyKey(), MEMBER_ID + ":" + cartItem.getId()));
+
+        doReturn(1).when(portalCartItemDao).upsertList(anyList());
+        cartStore.flush();
+        assertEquals(0L, stringRedisTemplate.opsForSet().size(getDirtyKey()));
+    }
+
+    @Test
+    public void testFlushKeepsLockTakenByOtherNode() {
+        when(portalCartItemDao.getMaxId()).thenReturn(0L);
+        cartStore.add(cartItem(1L, 11L, 2));
+        doAnswer(invocation -> {
+            //回写超过锁的超时时间，其他节点已获取回写锁
+            stringRedisTemplate.opsForValue().set(getDirtyKey() + ":lock", "other");
+            return 1;
+        }).when(portalCartItemDao).upsertList(anyList());
+        cartStore.flush();
+        assertEquals("other", stringRedisTemplate.opsForValue().get(getDirtyKey() + ":lock"));
+    }
+
+    private OmsCartItem cartItem(Long productId, Long productSkuId, int quantity) {
+        OmsCartItem cartItem = new OmsCartItem();
+        cartItem.setMemberId(MEMBER_ID);
+        cartItem.setProductId(productId);
+        cartItem.setProductSkuId(productSkuId);
+        cartItem.setQuantity(quantity);
+        return cartItem;
+    }
+
+    private List<Long> ids(List<OmsCartItem> cartItemList) {
+        return cartItemList.stream().map(OmsCartItem::getId).collect(Collectors.toList());
+    }
+
+    private String getDirtyKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_CART + ":dirty";
+    }
+}
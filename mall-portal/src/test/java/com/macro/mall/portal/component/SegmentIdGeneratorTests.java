@@ -0,0 +1,84 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.common.exception.ApiException;
+import com.macro.mall.portal.RedisTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 号段ID生成器单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = {SegmentIdGenerator.class, OrderSnGenerator.class}, properties = {
+        "idGenerator.step=10",
+        "idGenerator.retryInterval=60000"})
+public class SegmentIdGeneratorTests extends RedisTestSupport {
+    @Autowired
+    private SegmentIdGenerator segmentIdGenerator;
+    @Autowired
+    private OrderSnGenerator orderSnGenerator;
+    @SpyBean
+    private StringRedisTemplate redisTemplateSpy;
+
+    @Test
+    public void testAllocateFromLeasedSegments() {
+        String key = "test:segment:lease";
+        for (long i = 1; i <= 10; i++) {
+            assertEquals(i, segmentIdGenerator.nextId(key, 0));
+        }
+        assertEquals("10", stringRedisTemplate.opsForValue().get(key));
+        //其他节点租用了下一段，本节点从再下一段开始
+        stringRedisTemplate.opsForValue().increment(key, 10);
+        assertEquals(21L, segmentIdGenerator.nextId(key, 0));
+        assertEquals("30", stringRedisTemplate.opsForValue().get(key));
+    }
+
+    @Test
+    public void testContinueAfterExistingCounter() {
+        String key = "test:segment:legacy";
+        stringRedisTemplate.opsForValue().set(key, "57");
+        assertEquals(58L, segmentIdGenerator.nextId(key, 0));
+        assertEquals(-1L, stringRedisTemplate.getExpire(key));
+    }
+
+    @Test
+    public void testExpireSetOnFirstLease() {
+        String key = "test:segment:daily";
+        segmentIdGenerator.nextId(key, 100);
+        long expire = stringRedisTemplate.getExpire(key);
+        assertTrue(expire > 0 && expire <= 100);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFailFastWithoutRedis() {
+        doThrow(new RedisConnectionFailureException("Redis不可用")).when(redisTemplateSpy).opsForValue();
+        //Redis不可用时不生成位数不同的id，直接失败
+        assertThrows(ApiException.class, () -> orderSnGenerator.generate(1, 2));
+        //重试间隔内不再访问Redis
+        assertThrows(ApiException.class, () -> segmentIdGenerator.nextId("test:segment:down", 0));
+        verify(redisTemplateSpy, times(1)).opsForValue();
+    }
+
+    @Test
+    public void testOrderSnFormat() {
+        String date = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        //8位日期+2位平台号码+2位支付方式+6位自增id
+        String first = orderSnGenerator.generate(1, 2);
+        String second = orderSnGenerator.generate(1, 2);
+        assertEquals(18, first.length());
+        assertTrue(first.startsWith(date + "0102"));
+        assertEquals(Long.parseLong(first) + 1, Long.parseLong(second));
+    }
+}
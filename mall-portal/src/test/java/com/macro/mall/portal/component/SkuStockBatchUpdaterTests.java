@@ -0,0 +1,92 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.model.OmsOrderItem;
+import com.macro.mall.portal.dao.PortalSkuStockDao;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * SKU库存批量更新单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = SkuStockBatchUpdater.class, properties = {
+        "stock.batch.chunkSize=2",
+        "spring.cloud.nacos.config.enabled=false",
+        "spring.cloud.nacos.discovery.enabled=false"})
+public class SkuStockBatchUpdaterTests {
+    @Autowired
+    private SkuStockBatchUpdater skuStockBatchUpdater;
+    @MockBean
+    private PortalSkuStockDao skuStockDao;
+
+    @Test
+    public void testMergeQuantity() {
+        Map<Long, Integer> skuQuantityMap = SkuStockBatchUpdater.mergeQuantity(Arrays.asList(
+                orderItem(3L, 1), orderItem(1L, 2), orderItem(3L, 4), orderItem(null, 1)));
+        assertEquals(Arrays.asList(1L, 3L), new ArrayList<>(skuQuantityMap.keySet()));
+        assertEquals(5, skuQuantityMap.get(3L));
+    }
+
+    @Test
+    public void testDeductStockInSkuOrder() {
+        when(skuStockDao.deductStock(anyLong(), anyInt())).thenReturn(1);
+        when(skuStockDao.deductStock(2L, 1)).thenReturn(0);
+        Map<Long, Integer> skuQuantityMap = new LinkedHashMap<>();
+        skuQuantityMap.put(3L, 1);
+        skuQuantityMap.put(1L, 2);
+        skuQuantityMap.put(2L, 1);
+        Map<Long, Integer> result = skuStockBatchUpdater.deductStock(skuQuantityMap);
+
+        //按skuId顺序逐个扣减，返回每个SKU修改的行数
+        InOrder inOrder = inOrder(skuStockDao);
+        inOrder.verify(skuStockDao).deductStock(1L, 2);
+        inOrder.verify(skuStockDao).deductStock(2L, 1);
+        inOrder.verify(skuStockDao).deductStock(3L, 1);
+        assertEquals(Arrays.asList(1L, 2L, 3L), new ArrayList<>(result.keySet()));
+        assertEquals(0, result.get(2L));
+        assertEquals(1, result.get(3L));
+        assertTrue(skuStockBatchUpdater.deductStock(Collections.emptyMap()).isEmpty());
+        verifyNoMoreInteractions(skuStockDao);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUpdateLockStockRecordsFlushLog() {
+        when(skuStockDao.updateLockStockByFlushLog(eq("f1"), anyString())).thenReturn(2);
+        Map<Long, Integer> deltaMap = new LinkedHashMap<>();
+        deltaMap.put(5L, -2);
+        deltaMap.put(3L, 1);
+        deltaMap.put(4L, 2);
+        assertEquals(2, skuStockBatchUpdater.updateLockStock("f1", deltaMap));
+
+        //按skuId排序后每2个SKU记录一批，同一次回写的记录使用同一个标识，只修改本次新记录的SKU
+        ArgumentCaptor<String> attemptCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map<Long, Integer>> chunkCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(skuStockDao, times(2)).insertFlushLog(eq("f1"), attemptCaptor.capture(), chunkCaptor.capture());
+        assertEquals(Arrays.asList(3L, 4L), new ArrayList<>(chunkCaptor.getAllValues().get(0).keySet()));
+        assertEquals(Collections.singletonMap(5L, -2), chunkCaptor.getAllValues().get(1));
+        String attempt = attemptCaptor.getAllValues().get(0);
+        assertEquals(attempt, attemptCaptor.getAllValues().get(1));
+        verify(skuStockDao).updateLockStockByFlushLog("f1", attempt);
+
+        assertEquals(0, skuStockBatchUpdater.updateLockStock("f2", Collections.emptyMap()));
+        verifyNoMoreInteractions(skuStockDao);
+    }
+
+    private OmsOrderItem orderItem(Long productSkuId, int quantity) {
+        OmsOrderItem orderItem = new OmsOrderItem();
+        orderItem.setProductSkuId(productSkuId);
+        orderItem.setProductQuantity(quantity);
+        return orderItem;
+    }
+}
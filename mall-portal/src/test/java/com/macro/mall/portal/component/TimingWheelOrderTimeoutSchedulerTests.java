@@ -0,0 +1,77 @@
+package com.macro.mall.portal.component;
+
+import com.macro.mall.portal.RedisTestSupport;
+import com.macro.mall.portal.service.OmsPortalOrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * 时间轮订单超时取消调度器单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = TimingWheelOrderTimeoutScheduler.class, properties = {
+        "order.timeout.scheduler=wheel",
+        "order.timeout.tickMs=100",
+        "order.timeout.sweepDelay=0"})
+public class TimingWheelOrderTimeoutSchedulerTests extends RedisTestSupport {
+    @Autowired
+    private TimingWheelOrderTimeoutScheduler orderTimeoutScheduler;
+    @MockBean
+    private OmsPortalOrderService portalOrderService;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.orderTimeout}")
+    private String REDIS_KEY_ORDER_TIMEOUT;
+
+    @Test
+    public void testScheduledOrderCancelledByWheel() {
+        orderTimeoutScheduler.schedule(1L, 300);
+        assertNotNull(stringRedisTemplate.opsForZSet().score(getKey(), "1"));
+        verify(portalOrderService, timeout(3000)).cancelOrderList(Collections.singletonList(1L));
+        assertEquals(0L, stringRedisTemplate.opsForZSet().size(getKey()));
+    }
+
+    @Test
+    public void testRecoverRestoresPendingOrders() {
+        //其他节点或重启前添加的订单只存在于有序集合中
+        stringRedisTemplate.opsForZSet().add(getKey(), "2", System.currentTimeMillis() + 300);
+        orderTimeoutScheduler.recover();
+        verify(portalOrderService, timeout(3000)).cancelOrderList(Collections.singletonList(2L));
+    }
+
+    @Test
+    public void testSweepCancelsOnlyOverdueOrders() {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(getKey(), "3", now - 60000);
+        stringRedisTemplate.opsForZSet().add(getKey(), "4", now + 600000);
+        orderTimeoutScheduler.sweep();
+        verify(portalOrderService).cancelOrderList(Collections.singletonList(3L));
+        assertNull(stringRedisTemplate.opsForZSet().score(getKey(), "3"));
+        assertNotNull(stringRedisTemplate.opsForZSet().score(getKey(), "4"));
+        //已认领的订单不会被再次取消
+        orderTimeoutScheduler.sweep();
+        verify(portalOrderService, times(1)).cancelOrderList(anyList());
+    }
+
+    @Test
+    public void testCancelFailurePutsOrdersBack() {
+        when(portalOrderService.cancelOrderList(anyList())).thenThrow(new IllegalStateException("数据库不可用"));
+        stringRedisTemplate.opsForZSet().add(getKey(), "5", System.currentTimeMillis() - 60000);
+        orderTimeoutScheduler.sweep();
+        verify(portalOrderService).cancelOrderList(Collections.singletonList(5L));
+        assertNotNull(stringRedisTemplate.opsForZSet().score(getKey(), "5"));
+    }
+
+    private String getKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_ORDER_TIMEOUT;
+    }
+}
@@ -0,0 +1,309 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.common.exception.ApiException;
+import com.macro.mall.common.service.RedisService;
+import com.macro.mall.mapper.*;
+import com.macro.mall.model.*;
+import com.macro.mall.portal.RedisTestSupport;
+import com.macro.mall.portal.component.OrderSnGenerator;
+import com.macro.mall.portal.component.OrderTimeoutScheduler;
+import com.macro.mall.portal.dao.PortalOrderDao;
+import com.macro.mall.portal.dao.PortalOrderItemDao;
+import com.macro.mall.portal.domain.FlashPromotionOrderParam;
+import com.macro.mall.portal.domain.FlashPromotionOrderResult;
+import com.macro.mall.portal.service.OmsSettingCacheService;
+import com.macro.mall.portal.service.OmsSkuStockReservationService;
+import com.macro.mall.portal.service.UmsMemberReceiveAddressService;
+import com.macro.mall.portal.service.UmsMemberService;
+import com.macro.mall.portal.util.DateUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 秒杀下单单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = {FlashPromotionOrderServiceImpl.class, FlashPromotionOrderServiceTests.TransactionConfig.class})
+public class FlashPromotionOrderServiceTests extends RedisTestSupport {
+    private static final Long RELATION_ID = 10L;
+    private static final Long SKU_ID = 1000L;
+    @Autowired
+    private FlashPromotionOrderServiceImpl flashPromotionOrderService;
+    @MockBean
+    private RedisService redisService;
+    @MockBean
+    private UmsMemberService memberService;
+    @MockBean
+    private UmsMemberReceiveAddressService memberReceiveAddressService;
+    @MockBean
+    private OmsSkuStockReservationService stockReservationService;
+    @MockBean
+    private SmsFlashPromotionMapper flashPromotionMapper;
+    @MockBean
+    private SmsFlashPromotionSessionMapper promotionSessionMapper;
+    @MockBean
+    private SmsFlashPromotionProductRelationMapper relationMapper;
+    @MockBean
+    private PmsProductMapper productMapper;
+    @MockBean
+    private PmsSkuStockMapper skuStockMapper;
+    @MockBean
+    private OmsSettingCacheService settingCacheService;
+    @MockBean
+    private OmsOrderMapper orderMapper;
+    @MockBean
+    private PortalOrderDao portalOrderDao;
+    @MockBean
+    private PortalOrderItemDao orderItemDao;
+    @MockBean
+    private OrderSnGenerator orderSnGenerator;
+    @MockBean
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.flashPromotion}")
+    private String REDIS_KEY_FLASH_PROMOTION;
+    private String dateKey;
+
+    @TestConfiguration
+    static class TransactionConfig {
+        @Bean
+        public TransactionTemplate transactionTemplate() {
+            return new TransactionTemplate(mock(PlatformTransactionManager.class));
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        dateKey = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        //活动名额3个，每人限购2个
+        preload(3, 2);
+        when(memberService.getCurrentMember()).thenReturn(member(1L));
+        when(memberReceiveAddressService.getItem(anyLong())).thenReturn(new UmsMemberReceiveAddress());
+        when(stockReservationService.reserve(anyMap())).thenReturn(true);
+        when(orderSnGenerator.generate(anyInt(), anyInt())).thenReturn("202610180100000001");
+        OmsOrderSetting orderSetting = new OmsOrderSetting();
+        orderSetting.setFlashOrderOvertime(15);
+        when(settingCacheService.getOrderSetting()).thenReturn(orderSetting);
+    }
+
+    @Test
+    public void testSubmitChecksLimitAndQuota() {
+        assertNotNull(flashPromotionOrderService.submit(param(2)));
+        assertEquals("1", getStock());
+        ApiException overLimit = assertThrows(ApiException.class, () -> flashPromotionOrderService.submit(param(1)));
+        assertEquals("超出每人限购数量", overLimit.getMessage());
+
+        when(memberService.getCurrentMember()).thenReturn(member(2L));
+        ApiException soldOut = assertThrows(ApiException.class, () -> flashPromotionOrderService.submit(param(2)));
+        assertEquals("商品已抢完", soldOut.getMessage());
+        assertEquals("1", getStock());
+        assertEquals("2", stringRedisTemplate.opsForHash().get(getBoughtKey(), "1"));
+        //下单成功不返还名额
+        verify(orderTimeoutScheduler, timeout(5000)).schedule(any(), anyLong());
+        assertEquals("1", getStock());
+    }
+
+    @Test
+    public void testReserveFailureReturnsQuota() {
+        when(stockReservationService.reserve(anyMap())).thenReturn(false);
+        ApiException exception = assertThrows(ApiException.class, () -> flashPromotionOrderService.submit(param(2)));
+        assertEquals("库存不足，无法下单", exception.getMessage());
+        assertEquals("3", getStock());
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(getBoughtKey(), "1"));
+    }
+
+    @Test
+    public void testQueuedTicketCreatesOrder() {
+        when(portalOrderDao.insertList(anyList())).thenAnswer(invocation -> {
+            List<OmsOrder> orderList = invocation.getArgument(0);
+            orderList.get(0).setId(1L);
+            return 1;
+        });
+        String ticketId = flashPromotionOrderService.submit(param(2));
+        verify(orderTimeoutScheduler, timeout(5000)).schedule(1L, 15 * 60 * 1000L);
+        //订单占用的名额在取消时返还
+        verify(redisService).set(eq(getOrderKey(1L)), eq(dateKey + ":" + RELATION_ID + ":1:2"), anyLong());
+        verify(redisService).set(eq(getTicketKey(ticketId)),
+                argThat(result -> isResult(result, 1)), anyLong());
+        verify(orderItemDao).insertList(argThat(itemList -> itemList.size() == 1
+                && itemList.get(0).getOrderId() == 1L && SKU_ID.equals(itemList.get(0).getProductSkuId())));
+        verify(portalOrderDao).insertList(argThat(orderList -> "202610180100000001".equals(orderList.get(0).getOrderSn())));
+        verify(stockReservationService, never()).release(anyMap());
+        //订单写入后从待处理有序集合中移除
+        assertEquals(0L, stringRedisTemplate.opsForZSet().zCard(getPendingKey()));
+    }
+
+    @Test
+    public void testFailedTicketReleasesStockAndQuota() {
+        when(portalOrderDao.insertList(anyList())).thenThrow(new IllegalStateException("数据库不可用"));
+        String ticketId = flashPromotionOrderService.submit(param(2));
+        verify(redisService, timeout(5000)).set(eq(getTicketKey(ticketId)),
+                argThat(result -> isResult(result, 2)), anyLong());
+        verify(stockReservationService).release(Collections.singletonMap(SKU_ID, 2));
+        assertEquals("3", getStock());
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(getBoughtKey(), "1"));
+        verify(orderTimeoutScheduler, never()).schedule(any(), anyLong());
+    }
+
+    @Test
+    public void testSettingFailureFailsTicket() {
+        when(settingCacheService.getOrderSetting()).thenThrow(new IllegalStateException("数据库不可用"));
+        String ticketId = flashPromotionOrderService.submit(param(2));
+        //生成订单前失败的请求也要返还库存和名额，不能一直停留在排队中
+        verify(redisService, timeout(5000)).set(eq(getTicketKey(ticketId)),
+                argThat(result -> isResult(result, 2)), anyLong());
+        verify(stockReservationService).release(Collections.singletonMap(SKU_ID, 2));
+        assertEquals("3", getStock());
+        verify(portalOrderDao, never()).insertList(anyList());
+        assertEquals(0L, stringRedisTemplate.opsForZSet().zCard(getPendingKey()));
+    }
+
+    @Test
+    public void testSweepFailsLostTicketWithoutOrder() {
+        //节点宕机前已扣减名额及预占库存，请求随内存队列丢失
+        stringRedisTemplate.opsForValue().set(getStockKey(), "1");
+        stringRedisTemplate.opsForHash().put(getBoughtKey(), "1", "2");
+        stringRedisTemplate.opsForZSet().add(getPendingKey(), pending("t1", "SN1"), 0);
+        when(orderMapper.selectByExample(any())).thenReturn(Collections.emptyList());
+        assertEquals(1, flashPromotionOrderService.sweepPendingTickets());
+        verify(stockReservationService).release(Collections.singletonMap(SKU_ID, 2));
+        assertEquals("3", getStock());
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(getBoughtKey(), "1"));
+        verify(redisService).set(eq(getTicketKey("t1")), argThat(result -> isResult(result, 2)), anyLong());
+        assertEquals(0L, stringRedisTemplate.opsForZSet().zCard(getPendingKey()));
+        assertEquals(0, flashPromotionOrderService.sweepPendingTickets());
+    }
+
+    @Test
+    public void testSweepCompletesLostTicketWithOrder() {
+        stringRedisTemplate.opsForZSet().add(getPendingKey(), pending("t1", "SN1"), 0);
+        OmsOrder order = new OmsOrder();
+        order.setId(7L);
+        order.setOrderSn("SN1");
+        when(orderMapper.selectByExample(any())).thenReturn(Collections.singletonList(order));
+        assertEquals(1, flashPromotionOrderService.sweepPendingTickets());
+        //订单已写入，补登超时取消及名额记录，不返还库存
+        verify(orderTimeoutScheduler).schedule(7L, 15 * 60 * 1000L);
+        verify(redisService).set(eq(getOrderKey(7L)), eq(dateKey + ":" + RELATION_ID + ":1:2"), anyLong());
+        verify(redisService).set(eq(getTicketKey("t1")), argThat(result -> isResult(result, 1)), anyLong());
+        verify(stockReservationService, never()).release(anyMap());
+    }
+
+    @Test
+    public void testSweepSkipsTicketWithinDeadline() {
+        stringRedisTemplate.opsForZSet().add(getPendingKey(), pending("t1", "SN1"), System.currentTimeMillis() + 60000);
+        assertEquals(0, flashPromotionOrderService.sweepPendingTickets());
+        verify(orderMapper, never()).selectByExample(any());
+        assertEquals(1L, stringRedisTemplate.opsForZSet().zCard(getPendingKey()));
+    }
+
+    @Test
+    public void testReleaseQuotaOnlyOnce() {
+        stringRedisTemplate.opsForValue().set(getStockKey(), "1");
+        stringRedisTemplate.opsForHash().put(getBoughtKey(), "1", "2");
+        when(redisService.get(getOrderKey(1L))).thenReturn(dateKey + ":" + RELATION_ID + ":1:2", (Object) null);
+        flashPromotionOrderService.releaseQuota(1L);
+        flashPromotionOrderService.releaseQuota(1L);
+        assertEquals("3", getStock());
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(getBoughtKey(), "1"));
+        verify(redisService).del(getOrderKey(1L));
+    }
+
+    private void preload(int count, int limit) {
+        SmsFlashPromotion promotion = new SmsFlashPromotion();
+        promotion.setId(1L);
+        when(flashPromotionMapper.selectByExample(any())).thenReturn(Collections.singletonList(promotion));
+        SmsFlashPromotionSession session = new SmsFlashPromotionSession();
+        session.setId(1L);
+        Date startTime = DateUtil.getTime(DateUtil.getDate(new Date()));
+        session.setStartTime(startTime);
+        session.setEndTime(new Date(startTime.getTime() + 24 * 3600 * 1000L - 1));
+        when(promotionSessionMapper.selectByExample(any())).thenReturn(Collections.singletonList(session));
+        SmsFlashPromotionProductRelation relation = new SmsFlashPromotionProductRelation();
+        relation.setId(RELATION_ID);
+        relation.setFlashPromotionId(1L);
+        relation.setFlashPromotionSessionId(1L);
+        relation.setProductId(100L);
+        relation.setFlashPromotionCount(count);
+        relation.setFlashPromotionLimit(limit);
+        relation.setFlashPromotionPrice(new BigDecimal("50"));
+        when(relationMapper.selectByExample(any())).thenReturn(Collections.singletonList(relation));
+        PmsProduct product = new PmsProduct();
+        product.setId(100L);
+        product.setName("秒杀商品");
+        when(productMapper.selectByExample(any())).thenReturn(Collections.singletonList(product));
+        PmsSkuStock skuStock = new PmsSkuStock();
+        skuStock.setId(SKU_ID);
+        skuStock.setProductId(100L);
+        skuStock.setPrice(new BigDecimal("100"));
+        when(skuStockMapper.selectByExample(any())).thenReturn(Collections.singletonList(skuStock));
+        assertEquals(1, flashPromotionOrderService.preload());
+    }
+
+    private boolean isResult(Object value, int status) {
+        return value instanceof FlashPromotionOrderResult && ((FlashPromotionOrderResult) value).getStatus() == status;
+    }
+
+    private FlashPromotionOrderParam param(int quantity) {
+        FlashPromotionOrderParam param = new FlashPromotionOrderParam();
+        param.setFlashPromotionRelationId(RELATION_ID);
+        param.setProductSkuId(SKU_ID);
+        param.setQuantity(quantity);
+        param.setMemberReceiveAddressId(1L);
+        return param;
+    }
+
+    private UmsMember member(Long id) {
+        UmsMember member = new UmsMember();
+        member.setId(id);
+        member.setUsername("member" + id);
+        return member;
+    }
+
+    private String getStock() {
+        return stringRedisTemplate.opsForValue().get(getStockKey());
+    }
+
+    private String getStockKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":" + dateKey + ":stock:" + RELATION_ID;
+    }
+
+    private String getBoughtKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":" + dateKey + ":bought:" + RELATION_ID;
+    }
+
+    private String getTicketKey(String ticketId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":ticket:" + ticketId;
+    }
+
+    private String getOrderKey(Long orderId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":order:" + orderId;
+    }
+
+    private String getPendingKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_FLASH_PROMOTION + ":pending";
+    }
+
+    private String pending(String ticketId, String orderSn) {
+        return ticketId + ":" + dateKey + ":" + RELATION_ID + ":1:" + SKU_ID + ":2:" + orderSn;
+    }
+}
@@ -0,0 +1,157 @@
+package com.macro.mall.portal.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.common.service.RedisService;
+import com.macro.mall.model.CmsSubject;
+import com.macro.mall.portal.RedisTestSupport;
+import com.macro.mall.portal.domain.HomeContentResult;
+import com.macro.mall.portal.domain.HomeContentSnapshot;
+import com.macro.mall.portal.service.HomeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 首页内容快照Service单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = {HomeContentSnapshotServiceImpl.class, HomeContentSnapshotServiceTests.JacksonConfig.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class HomeContentSnapshotServiceTests extends RedisTestSupport {
+    @Autowired
+    private HomeContentSnapshotServiceImpl snapshotService;
+    @MockBean
+    private HomeService homeService;
+    @MockBean
+    private RedisService redisService;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.homeContent}")
+    private String REDIS_KEY_HOME_CONTENT;
+
+    @TestConfiguration
+    static class JacksonConfig {
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        when(homeService.content()).thenReturn(content("first"));
+    }
+
+    @Test
+    public void testGetSnapshotBuildsOnceAndStoresInRedis() {
+        HomeContentSnapshot snapshot = snapshotService.getSnapshot();
+        String content = new String(snapshot.getContent(), StandardCharsets.UTF_8);
+        assertTrue(content.contains("\"code\":200"));
+        assertTrue(content.contains("first"));
+        assertEquals(etag(content), snapshot.getEtag());
+        assertEquals(content, stringRedisTemplate.opsForValue().get(getKey()));
+
+        assertSame(snapshot, snapshotService.getSnapshot());
+        verify(homeService, times(1)).content();
+    }
+
+    @Test
+    public void testGetSnapshotLoadsFromRedisFirst() {
+        String content = "{\"code\":200,\"data\":{}}";
+        stringRedisTemplate.opsForValue().set(getKey(), content);
+        HomeContentSnapshot snapshot = snapshotService.getSnapshot();
+        assertEquals(content, new String(snapshot.getContent(), StandardCharsets.UTF_8));
+        assertEquals(etag(content), snapshot.getEtag());
+        verify(homeService, never()).content();
+    }
+
+    @Test
+    public void testRefreshPublishesOnlyWhenChanged() {
+        String firstEtag = snapshotService.getSnapshot().getEtag();
+        snapshotService.refresh();
+        verify(redisService, never()).publish(anyString(), anyString());
+
+        when(homeService.content()).thenReturn(content("second"));
+        snapshotService.refresh();
+        HomeContentSnapshot snapshot = snapshotService.getSnapshot();
+        assertNotEquals(firstEtag, snapshot.getEtag());
+        verify(redisService).publish(RedisChannelConstant.HOME_CONTENT_CHANGE, snapshot.getEtag());
+        assertEquals(new String(snapshot.getContent(), StandardCharsets.UTF_8), stringRedisTemplate.opsForValue().get(getKey()));
+        //重建完成后释放锁
+        assertFalse(stringRedisTemplate.hasKey(getKey() + ":lock"));
+    }
+
+    @Test
+    public void testRefreshWhileLockedLoadsFromRedis() {
+        String content = "{\"code\":200,\"data\":{\"subjectList\":[]}}";
+        stringRedisTemplate.opsForValue().set(getKey(), content);
+        stringRedisTemplate.opsForValue().set(getKey() + ":lock", "other");
+        snapshotService.refresh();
+
+        assertEquals(etag(content), snapshotService.getSnapshot().getEtag());
+        verify(homeService, never()).content();
+        verify(redisService, never()).publish(anyString(), anyString());
+        //不能释放其他节点持有的锁
+        assertEquals("other", stringRedisTemplate.opsForValue().get(getKey() + ":lock"));
+    }
+
+    @Test
+    public void testOnMessageReloadsChangedSnapshot() {
+        String firstEtag = snapshotService.getSnapshot().getEtag();
+        snapshotService.onMessage(message(firstEtag), null);
+        assertEquals(firstEtag, snapshotService.getSnapshot().getEtag());
+
+        String content = "{\"code\":200,\"data\":{\"brandList\":[]}}";
+        stringRedisTemplate.opsForValue().set(getKey(), content);
+        snapshotService.onMessage(message(etag(content)), null);
+        assertEquals(etag(content), snapshotService.getSnapshot().getEtag());
+        verify(homeService, times(1)).content();
+    }
+
+    @Test
+    public void testOnRebuildMessageRefreshes() {
+        snapshotService.getSnapshot();
+        when(homeService.content()).thenReturn(content("second"));
+        snapshotService.onMessage(message(RedisChannelConstant.HOME_CONTENT_REBUILD), null);
+        HomeContentSnapshot snapshot = snapshotService.getSnapshot();
+        assertTrue(new String(snapshot.getContent(), StandardCharsets.UTF_8).contains("second"));
+        verify(redisService).publish(RedisChannelConstant.HOME_CONTENT_CHANGE, snapshot.getEtag());
+    }
+
+    private HomeContentResult content(String subjectTitle) {
+        CmsSubject subject = new CmsSubject();
+        subject.setTitle(subjectTitle);
+        HomeContentResult result = new HomeContentResult();
+        result.setSubjectList(Collections.singletonList(subject));
+        return result;
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(RedisChannelConstant.HOME_CONTENT_CHANGE.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String etag(String content) {
+        return "\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private String getKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_HOME_CONTENT;
+    }
+}
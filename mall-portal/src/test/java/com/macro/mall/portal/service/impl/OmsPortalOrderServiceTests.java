@@ -0,0 +1,158 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.mapper.OmsOrderItemMapper;
+import com.macro.mall.mapper.SmsCouponHistoryMapper;
+import com.macro.mall.model.OmsOrder;
+import com.macro.mall.model.OmsOrderItem;
+import com.macro.mall.model.OmsOrderSetting;
+import com.macro.mall.model.SmsCouponHistory;
+import com.macro.mall.portal.dao.PortalOrderDao;
+import com.macro.mall.portal.dao.SmsCouponHistoryDao;
+import com.macro.mall.portal.service.FlashPromotionOrderService;
+import com.macro.mall.portal.service.OmsSettingCacheService;
+import com.macro.mall.portal.service.OmsSkuStockReservationService;
+import com.macro.mall.portal.service.UmsMemberService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 超时订单批量取消单元测试
+ * Created by macro on 2026/10/18.
+ */
+@ExtendWith(MockitoExtension.class)
+public class OmsPortalOrderServiceTests {
+    private static final Long MEMBER_ID = 100L;
+    @InjectMocks
+    private OmsPortalOrderServiceImpl portalOrderService;
+    @Mock
+    private UmsMemberService memberService;
+    @Mock
+    private OmsSettingCacheService settingCacheService;
+    @Mock
+    private OmsSkuStockReservationService stockReservationService;
+    @Mock
+    private SmsCouponHistoryDao couponHistoryDao;
+    @Mock
+    private SmsCouponHistoryMapper couponHistoryMapper;
+    @Mock
+    private PortalOrderDao portalOrderDao;
+    @Mock
+    private OmsOrderItemMapper orderItemMapper;
+    @Mock
+    private FlashPromotionOrderService flashPromotionOrderService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate();
+
+    @BeforeEach
+    public void setUp() {
+        transactionTemplate.setTransactionManager(transactionManager);
+    }
+
+    @Test
+    public void testCancelTimeOutOrderPagesByIdInTransactions() {
+        OmsOrderSetting orderSetting = new OmsOrderSetting();
+        orderSetting.setNormalOrderOvertime(60);
+        when(settingCacheService.getOrderSetting()).thenReturn(orderSetting);
+        when(portalOrderDao.getTimeOutOrderIds(60, 0L, 200)).thenReturn(Arrays.asList(1L, 2L));
+        when(portalOrderDao.getTimeOutOrderIds(60, 2L, 200)).thenReturn(Collections.singletonList(3L));
+        when(portalOrderDao.getTimeOutOrderIds(60, 3L, 200)).thenReturn(Collections.emptyList());
+        OmsOrder couponOrder = order(1L, 5L, 10, 0);
+        OmsOrder flashOrder = order(2L, null, 20, 1);
+        OmsOrder legacyCouponOrder = order(3L, 6L, null, 0);
+        when(portalOrderDao.lockUnpaidOrderList(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(couponOrder, flashOrder));
+        when(portalOrderDao.lockUnpaidOrderList(Collections.singletonList(3L))).thenReturn(Collections.singletonList(legacyCouponOrder));
+        when(orderItemMapper.selectByExample(any())).thenReturn(
+                Arrays.asList(orderItem(1L, 11L, 1), orderItem(2L, 11L, 2), orderItem(2L, 12L, 1)),
+                Collections.emptyList());
+        when(couponHistoryDao.getUsedOrderIds(Collections.singletonList(1L))).thenReturn(Collections.singletonList(1L));
+        when(couponHistoryDao.getUsedOrderIds(Collections.singletonList(3L))).thenReturn(Collections.emptyList());
+        SmsCouponHistory couponHistory = new SmsCouponHistory();
+        couponHistory.setId(9L);
+        when(couponHistoryMapper.selectByExample(any())).thenReturn(Collections.singletonList(couponHistory));
+
+        assertEquals(3, portalOrderService.cancelTimeOutOrder());
+        //每页一个事务
+        verify(transactionManager, times(2)).commit(any());
+        verify(portalOrderDao).updateOrderStatus(Arrays.asList(1L, 2L), 4);
+        verify(portalOrderDao).updateOrderStatus(Collections.singletonList(3L), 4);
+        //同一SKU的库存合并后释放
+        Map<Long, Integer> skuQuantityMap = new HashMap<>();
+        skuQuantityMap.put(11L, 3);
+        skuQuantityMap.put(12L, 1);
+        verify(stockReservationService).release(skuQuantityMap);
+        verify(memberService).addIntegration(Collections.singletonMap(MEMBER_ID, 30));
+        verify(flashPromotionOrderService).releaseQuota(2L);
+        //关联了订单的优惠券按订单批量恢复，历史数据按会员和优惠券恢复
+        verify(couponHistoryDao).resetByOrderIds(Collections.singletonList(1L));
+        verify(couponHistoryMapper).updateByPrimaryKeySelective(argThat(history ->
+                history.getId() == 9L && history.getUseStatus() == 0));
+    }
+
+    @Test
+    public void testCancelOrderListSkipsPaidOrders() {
+        when(portalOrderDao.lockUnpaidOrderList(Arrays.asList(1L, 2L))).thenReturn(Collections.singletonList(order(1L, null, null, 0)));
+        assertEquals(1, portalOrderService.cancelOrderList(Arrays.asList(1L, 2L)));
+        verify(portalOrderDao).updateOrderStatus(Collections.singletonList(1L), 4);
+        verify(couponHistoryDao, never()).getUsedOrderIds(anyList());
+        verify(flashPromotionOrderService, never()).releaseQuota(anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCancelOrderListSplitsIntoBatches() {
+        List<Long> orderIds = LongStream.rangeClosed(1, 450).boxed().collect(Collectors.toList());
+        assertEquals(0, portalOrderService.cancelOrderList(orderIds));
+        ArgumentCaptor<List<Long>> captor = ArgumentCaptor.forClass(List.class);
+        verify(portalOrderDao, times(3)).lockUnpaidOrderList(captor.capture());
+        assertEquals(Arrays.asList(200, 200, 50), captor.getAllValues().stream().map(List::size).collect(Collectors.toList()));
+        verify(portalOrderDao, never()).updateOrderStatus(anyList(), anyInt());
+        //每批单独提交
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    public void testCancelOrderListKeepsCommittedBatchesOnFailure() {
+        List<Long> orderIds = LongStream.rangeClosed(1, 300).boxed().collect(Collectors.toList());
+        when(portalOrderDao.lockUnpaidOrderList(anyList())).thenReturn(Collections.emptyList())
+                .thenThrow(new IllegalStateException("数据库不可用"));
+        assertThrows(IllegalStateException.class, () -> portalOrderService.cancelOrderList(orderIds));
+        verify(transactionManager, times(1)).commit(any());
+        verify(transactionManager, times(1)).rollback(any());
+    }
+
+    private OmsOrder order(Long id, Long couponId, Integer useIntegration, Integer orderType) {
+        OmsOrder order = new OmsOrder();
+        order.setId(id);
+        order.setMemberId(MEMBER_ID);
+        order.setCouponId(couponId);
+        order.setUseIntegration(useIntegration);
+        order.setOrderType(orderType);
+        return order;
+    }
+
+    private OmsOrderItem orderItem(Long orderId, Long productSkuId, int quantity) {
+        OmsOrderItem orderItem = new OmsOrderItem();
+        orderItem.setOrderId(orderId);
+        orderItem.setProductSkuId(productSkuId);
+        orderItem.setProductQuantity(quantity);
+        return orderItem;
+    }
+}
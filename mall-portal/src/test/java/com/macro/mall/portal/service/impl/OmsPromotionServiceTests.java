@@ -0,0 +1,97 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.mapper.PmsProductFullReductionMapper;
+import com.macro.mall.mapper.PmsProductLadderMapper;
+import com.macro.mall.mapper.PmsSkuStockMapper;
+import com.macro.mall.model.OmsCartItem;
+import com.macro.mall.model.PmsProductFullReduction;
+import com.macro.mall.model.PmsSkuStock;
+import com.macro.mall.portal.dao.PortalProductDao;
+import com.macro.mall.portal.domain.CartPromotionItem;
+import com.macro.mall.portal.domain.PromotionProduct;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * 购物车促销计算单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = OmsPromotionServiceImpl.class, properties = {
+        "promotion.cache.expire=30",
+        "promotion.cache.maxSize=100",
+        "spring.cloud.nacos.config.enabled=false",
+        "spring.cloud.nacos.discovery.enabled=false"})
+public class OmsPromotionServiceTests {
+    @Autowired
+    private OmsPromotionServiceImpl promotionService;
+    @MockBean
+    private PortalProductDao portalProductDao;
+    @MockBean
+    private PmsSkuStockMapper skuStockMapper;
+    @MockBean
+    private PmsProductLadderMapper productLadderMapper;
+    @MockBean
+    private PmsProductFullReductionMapper productFullReductionMapper;
+
+    @BeforeEach
+    public void setUp() {
+        promotionService.init();
+        when(portalProductDao.getPromotionProductBaseList(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(this::promotionProduct).collect(Collectors.toList());
+        });
+        PmsProductFullReduction fullReduction = new PmsProductFullReduction();
+        fullReduction.setProductId(1L);
+        fullReduction.setFullPrice(new BigDecimal("100"));
+        fullReduction.setReducePrice(new BigDecimal("20"));
+        when(productFullReductionMapper.selectByExample(any())).thenReturn(Collections.singletonList(fullReduction));
+        when(skuStockMapper.selectByExample(any())).thenReturn(Collections.singletonList(skuStock(10L)));
+    }
+
+    @Test
+    public void testPromotionRulesServedFromCache() {
+        List<CartPromotionItem> itemList = promotionService.calcCartPromotion(Collections.singletonList(cartItem(1L, 10L)));
+        assertEquals("满减优惠：满100元，减20元", itemList.get(0).getPromotionMessage());
+        promotionService.calcCartPromotion(Collections.singletonList(cartItem(1L, 10L)));
+        //促销规则命中缓存，SKU价格及库存每次重新查询
+        verify(portalProductDao, times(1)).getPromotionProductBaseList(anyList());
+        verify(skuStockMapper, times(2)).selectByExample(any());
+    }
+
+    private PromotionProduct promotionProduct(Long id) {
+        PromotionProduct promotionProduct = new PromotionProduct();
+        promotionProduct.setId(id);
+        promotionProduct.setPromotionType(4);
+        return promotionProduct;
+    }
+
+    private PmsSkuStock skuStock(Long id) {
+        PmsSkuStock skuStock = new PmsSkuStock();
+        skuStock.setId(id);
+        skuStock.setPrice(new BigDecimal("100"));
+        skuStock.setStock(10);
+        skuStock.setLockStock(0);
+        return skuStock;
+    }
+
+    private OmsCartItem cartItem(Long productId, Long skuId) {
+        OmsCartItem cartItem = new OmsCartItem();
+        cartItem.setProductId(productId);
+        cartItem.setProductSkuId(skuId);
+        cartItem.setQuantity(1);
+        return cartItem;
+    }
+}
@@ -0,0 +1,261 @@
+package com.macro.mall.portal.service.impl;
+
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.mapper.PmsSkuStockMapper;
+import com.macro.mall.model.PmsSkuStock;
+import com.macro.mall.portal.RedisTestSupport;
+import com.macro.mall.portal.component.SkuStockBatchUpdater;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * SKU库存预占单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = OmsSkuStockReservationServiceImpl.class)
+public class OmsSkuStockReservationServiceTests extends RedisTestSupport {
+    @Autowired
+    private OmsSkuStockReservationServiceImpl reservationService;
+    @MockBean
+    private PmsSkuStockMapper skuStockMapper;
+    @MockBean
+    private SkuStockBatchUpdater skuStockBatchUpdater;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.skuStock}")
+    private String REDIS_KEY_SKU_STOCK;
+
+    @Test
+    public void testReserveAllOrNothing() {
+        setStock(1L, 5);
+        setStock(2L, 1);
+        assertFalse(reservationService.reserve(quantities(1L, 3, 2L, 2)));
+        //第二个SKU不足时第一个SKU也不扣减
+        assertEquals("5", getStock(1L));
+        assertEquals("1", getStock(2L));
+        assertNull(getDelta(1L));
+
+        assertTrue(reservationService.reserve(quantities(1L, 3, 2L, 1)));
+        assertEquals("2", getStock(1L));
+        assertEquals("0", getStock(2L));
+        assertEquals("3", getDelta(1L));
+        assertEquals("1", getDelta(2L));
+    }
+
+    @Test
+    public void testReleaseRestoresCounter() {
+        setStock(1L, 5);
+        assertTrue(reservationService.reserve(quantities(1L, 2)));
+        reservationService.release(quantities(1L, 2));
+        assertEquals("5", getStock(1L));
+        assertEquals("0", getDelta(1L));
+    }
+
+    @Test
+    public void testReserveLoadsMissingCounterMinusPending() {
+        //计数器被删除前已有2个预占尚未回写，MySQL中的锁定库存还不包含这部分
+        stringRedisTemplate.opsForHash().put(getDeltaKey(), "1", "2");
+        when(skuStockMapper.selectByExample(any())).thenReturn(Collections.singletonList(skuStock(1L, 10, 3)));
+        assertTrue(reservationService.reserve(quantities(1L, 4)));
+        assertEquals("1", getStock(1L));
+        assertEquals("6", getDelta(1L));
+    }
+
+    @Test
+    public void testRebuildOnlyOnceUnlessForced() {
+        when(skuStockMapper.selectByExample(any())).thenReturn(
+                Arrays.asList(skuStock(1L, 10, 3), skuStock(2L, 5, 0)), Collections.emptyList());
+        assertEquals(2, reservationService.rebuild(false));
+        assertEquals("7", getStock(1L));
+        assertEquals("5", getStock(2L));
+        //其他节点已初始化时不再重建
+        assertEquals(0, reservationService.rebuild(false));
+
+        assertTrue(reservationService.reserve(quantities(1L, 2)));
+        when(skuStockMapper.selectByExample(any())).thenReturn(
+                Collections.singletonList(skuStock(1L, 10, 3)), Collections.emptyList());
+        assertEquals(1, reservationService.rebuild(true));
+        //强制重建时扣除尚未回写的预占
+        assertEquals("5", getStock(1L));
+    }
+
+    @Test
+    public void testFlushCommitsDeltaAndBumpsEpoch() {
+        setStock(1L, 5);
+        setStock(2L, 5);
+        assertTrue(reservationService.reserve(quantities(1L, 2, 2L, 1)));
+        reservationService.release(quantities(2L, 1));
+        //变化量为0的SKU不回写
+        assertEquals(1, reservationService.flushLockStock());
+        verify(skuStockBatchUpdater).updateLockStock(anyString(), eq(quantities(1L, 2)));
+        assertFalse(stringRedisTemplate.hasKey(getDeltaKey()));
+        assertFalse(stringRedisTemplate.hasKey(getFlushingKey()));
+        assertFalse(stringRedisTemplate.hasKey(getFlushLockKey()));
+        assertFalse(stringRedisTemplate.hasKey(getFlushIdKey()));
+        assertEquals("2", stringRedisTemplate.opsForValue().get(getEpochKey()));
+        assertEquals(0, reservationService.flushLockStock());
+    }
+
+    @Test
+    public void testFlushFailureRetriesSameBatch() {
+        setStock(1L, 10);
+        assertTrue(reservationService.reserve(quantities(1L, 2)));
+        doAnswer(invocation -> {
+            //回写过程中产生的新预占写入新的变化量hash
+            assertTrue(reservationService.reserve(quantities(1L, 3)));
+            throw new IllegalStateException("数据库不可用");
+        }).doReturn(1).doReturn(1).when(skuStockBatchUpdater).updateLockStock(anyString(), anyMap());
+        assertThrows(IllegalStateException.class, () -> reservationService.flushLockStock());
+        //失败的批次保留在回写中hash，不与新的预占合并
+        assertEquals("2", stringRedisTemplate.opsForHash().get(getFlushingKey(), "1"));
+        assertEquals("3", getDelta(1L));
+        assertEquals("5", getStock(1L));
+        assertFalse(stringRedisTemplate.hasKey(getFlushLockKey()));
+        assertNull(stringRedisTemplate.opsForValue().get(getEpochKey()));
+
+        //重新回写时沿用原批次id，MySQL中已记录的批次不会重复修改
+        assertEquals(1, reservationService.flushLockStock());
+        assertEquals(1, reservationService.flushLockStock());
+        ArgumentCaptor<String> flushIdCaptor = ArgumentCaptor.forClass(String.class);
+        verify(skuStockBatchUpdater, times(3)).updateLockStock(flushIdCaptor.capture(), anyMap());
+        List<String> flushIds = flushIdCaptor.getAllValues();
+        assertEquals(flushIds.get(0), flushIds.get(1));
+        assertNotEquals(flushIds.get(1), flushIds.get(2));
+        verify(skuStockBatchUpdater, times(2)).updateLockStock(flushIds.get(0), quantities(1L, 2));
+        verify(skuStockBatchUpdater).updateLockStock(flushIds.get(2), quantities(1L, 3));
+        assertFalse(stringRedisTemplate.hasKey(getFlushingKey()));
+        assertFalse(stringRedisTemplate.hasKey(getDeltaKey()));
+    }
+
+    @Test
+    public void testStaleFlushKeepsNewBatch() {
+        setStock(1L, 10);
+        assertTrue(reservationService.reserve(quantities(1L, 2)));
+        doAnswer(invocation -> {
+            //回写锁超时，其他节点已完成本批次并开始回写新的批次
+            stringRedisTemplate.opsForHash().put(getFlushingKey(), "1", "3");
+            stringRedisTemplate.opsForValue().set(getFlushIdKey(), "other");
+            return 0;
+        }).when(skuStockBatchUpdater).updateLockStock(anyString(), anyMap());
+        reservationService.flushLockStock();
+        assertEquals("3", stringRedisTemplate.opsForHash().get(getFlushingKey(), "1"));
+        assertEquals("other", stringRedisTemplate.opsForValue().get(getFlushIdKey()));
+    }
+
+    @Test
+    public void testFlushSkippedWhileLockHeld() {
+        setStock(1L, 5);
+        assertTrue(reservationService.reserve(quantities(1L, 2)));
+        stringRedisTemplate.opsForValue().set(getFlushLockKey(), "other");
+        assertEquals(0, reservationService.flushLockStock());
+        verify(skuStockBatchUpdater, never()).updateLockStock(anyString(), anyMap());
+        assertEquals("2", getDelta(1L));
+        assertEquals("other", stringRedisTemplate.opsForValue().get(getFlushLockKey()));
+    }
+
+    @Test
+    public void testRefreshRetriesWhenFlushCommittedDuringQuery() {
+        setStock(1L, 5);
+        AtomicInteger queryCount = new AtomicInteger();
+        when(skuStockMapper.selectByExample(any())).thenAnswer(invocation -> {
+            if (queryCount.incrementAndGet() == 1) {
+                //模拟查询MySQL期间有一批变化量回写完成
+                stringRedisTemplate.opsForValue().increment(getEpochKey());
+            }
+            return Collections.singletonList(skuStock(1L, 20, 4));
+        });
+        reservationService.refresh(Collections.singletonList(1L));
+        assertEquals(2, queryCount.get());
+        assertEquals("16", getStock(1L));
+    }
+
+    @Test
+    public void testProductChangeReloadsCounters() {
+        setStock(1L, 9);
+        stringRedisTemplate.opsForHash().put(getDeltaKey(), "1", "2");
+        when(skuStockMapper.selectByExample(any())).thenReturn(Collections.singletonList(skuStock(1L, 20, 3)));
+        reservationService.onMessage(new DefaultMessage(RedisChannelConstant.PRODUCT_CHANGE.getBytes(StandardCharsets.UTF_8),
+                "5".getBytes(StandardCharsets.UTF_8)), null);
+        //后台修改库存后覆盖原计数器，同样扣除尚未回写的预占
+        assertEquals("15", getStock(1L));
+    }
+
+    @Test
+    public void testProductChangeDeletesCountersWhenFlushKeepsCommitting() {
+        setStock(1L, 9);
+        when(skuStockMapper.selectByExample(any())).thenAnswer(invocation -> {
+            stringRedisTemplate.opsForValue().increment(getEpochKey());
+            return Collections.singletonList(skuStock(1L, 20, 3));
+        });
+        reservationService.onMessage(new DefaultMessage(RedisChannelConstant.PRODUCT_CHANGE.getBytes(StandardCharsets.UTF_8),
+                "5".getBytes(StandardCharsets.UTF_8)), null);
+        //每次查询都与回写冲突时删除计数器，下次预占时重新补齐
+        verify(skuStockMapper, times(3)).selectByExample(any());
+        assertNull(getStock(1L));
+    }
+
+    private Map<Long, Integer> quantities(Object... skuIdAndQuantity) {
+        Map<Long, Integer> map = new LinkedHashMap<>();
+        for (int i = 0; i < skuIdAndQuantity.length; i += 2) {
+            map.put((Long) skuIdAndQuantity[i], (Integer) skuIdAndQuantity[i + 1]);
+        }
+        return map;
+    }
+
+    private PmsSkuStock skuStock(Long id, int stock, int lockStock) {
+        PmsSkuStock skuStock = new PmsSkuStock();
+        skuStock.setId(id);
+        skuStock.setStock(stock);
+        skuStock.setLockStock(lockStock);
+        return skuStock;
+    }
+
+    private void setStock(Long skuId, int stock) {
+        stringRedisTemplate.opsForValue().set(getStockKey(skuId), String.valueOf(stock));
+    }
+
+    private String getStock(Long skuId) {
+        return stringRedisTemplate.opsForValue().get(getStockKey(skuId));
+    }
+
+    private Object getDelta(Long skuId) {
+        return stringRedisTemplate.opsForHash().get(getDeltaKey(), skuId.toString());
+    }
+
+    private String getStockKey(Long skuId) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_SKU_STOCK + ":" + skuId;
+    }
+
+    private String getDeltaKey() {
+        return REDIS_DATABASE + ":" + REDIS_KEY_SKU_STOCK + ":lockDelta";
+    }
+
+    private String getFlushingKey() {
+        return getDeltaKey() + ":flushing";
+    }
+
+    private String getEpochKey() {
+        return getDeltaKey() + ":epoch";
+    }
+
+    private String getFlushLockKey() {
+        return getDeltaKey() + ":flushLock";
+    }
+
+    private String getFlushIdKey() {
+        return getDeltaKey() + ":flushId";
+    }
+}
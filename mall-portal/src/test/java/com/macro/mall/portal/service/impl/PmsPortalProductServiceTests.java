@@ -0,0 +1,128 @@
+package com.macro.mall.portal.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.macro.mall.mapper.*;
+import com.macro.mall.model.PmsProduct;
+import com.macro.mall.model.PmsSkuStock;
+import com.macro.mall.model.SmsCoupon;
+import com.macro.mall.portal.component.AsyncQueryComposer;
+import com.macro.mall.portal.domain.PmsPortalProductDetail;
+import com.macro.mall.portal.service.PmsProductCategoryTreeService;
+import com.macro.mall.portal.service.SmsCouponIndexService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 前台商品详情单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = {PmsPortalProductServiceImpl.class, PmsProductDetailCacheServiceImpl.class,
+        AsyncQueryComposer.class, PmsPortalProductServiceTests.DetailConfig.class}, properties = {
+        "spring.cloud.nacos.config.enabled=false",
+        "spring.cloud.nacos.discovery.enabled=false"})
+public class PmsPortalProductServiceTests {
+    @Autowired
+    private PmsPortalProductServiceImpl portalProductService;
+    @Autowired
+    private PmsProductDetailCacheServiceImpl detailCacheService;
+    @MockBean
+    private PmsProductMapper productMapper;
+    @MockBean
+    private PmsBrandMapper brandMapper;
+    @MockBean
+    private PmsProductAttributeMapper productAttributeMapper;
+    @MockBean
+    private PmsProductAttributeValueMapper productAttributeValueMapper;
+    @MockBean
+    private PmsSkuStockMapper skuStockMapper;
+    @MockBean
+    private PmsProductLadderMapper productLadderMapper;
+    @MockBean
+    private PmsProductFullReductionMapper productFullReductionMapper;
+    @MockBean
+    private SmsCouponIndexService couponIndexService;
+    @MockBean
+    private PmsProductCategoryTreeService productCategoryTreeService;
+    @MockBean
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @TestConfiguration
+    static class DetailConfig {
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        public ThreadPoolTaskExecutor queryExecutor() {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(4);
+            executor.initialize();
+            return executor;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        detailCacheService.clear();
+        PmsProduct product = new PmsProduct();
+        product.setId(1L);
+        product.setBrandId(2L);
+        product.setProductCategoryId(3L);
+        product.setProductAttributeCategoryId(4L);
+        product.setPromotionType(0);
+        when(productMapper.selectByPrimaryKey(1L)).thenReturn(product);
+        SmsCoupon coupon = new SmsCoupon();
+        coupon.setId(10L);
+        when(couponIndexService.listByProduct(1L, 3L)).thenReturn(Collections.singletonList(coupon));
+    }
+
+    @Test
+    public void testSkuStockQueriedOnEveryRequest() {
+        when(skuStockMapper.selectByExample(any())).thenReturn(Collections.singletonList(skuStock(10)));
+        assertEquals(10, portalProductService.detail(1L).getSkuStockList().get(0).getStock());
+
+        when(skuStockMapper.selectByExample(any())).thenReturn(Collections.singletonList(skuStock(9)));
+        PmsPortalProductDetail detail = portalProductService.detail(1L);
+        //商品信息命中缓存，库存为实时数据
+        assertEquals(9, detail.getSkuStockList().get(0).getStock());
+        verify(productMapper, times(1)).selectByPrimaryKey(1L);
+        verify(skuStockMapper, times(2)).selectByExample(any());
+    }
+
+    @Test
+    public void testCouponsLoadedFromIndex() {
+        PmsPortalProductDetail detail = portalProductService.detail(1L);
+        assertEquals(10L, detail.getCouponList().get(0).getId());
+        verify(couponIndexService).listByProduct(1L, 3L);
+    }
+
+    private PmsSkuStock skuStock(int stock) {
+        PmsSkuStock skuStock = new PmsSkuStock();
+        skuStock.setId(100L);
+        skuStock.setProductId(1L);
+        skuStock.setStock(stock);
+        skuStock.setLockStock(0);
+        return skuStock;
+    }
+}
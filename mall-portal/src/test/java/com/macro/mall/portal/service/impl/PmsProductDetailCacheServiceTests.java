@@ -0,0 +1,157 @@
+package com.macro.mall.portal.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.macro.mall.common.constant.RedisChannelConstant;
+import com.macro.mall.model.PmsProduct;
+import com.macro.mall.portal.domain.PmsPortalProductDetail;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商品详情缓存Service单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = {PmsProductDetailCacheServiceImpl.class, PmsProductDetailCacheServiceTests.CacheConfig.class}, properties = {
+        "spring.cloud.nacos.config.enabled=false",
+        "spring.cloud.nacos.discovery.enabled=false"})
+public class PmsProductDetailCacheServiceTests {
+    @Autowired
+    private PmsProductDetailCacheServiceImpl detailCacheService;
+    @MockBean
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @TestConfiguration
+    static class CacheConfig {
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        detailCacheService.clear();
+        loadCount.set(0);
+    }
+
+    @Test
+    public void testGetLoadsOnceAndReturnsCopies() {
+        PmsPortalProductDetail first = detailCacheService.get(1L, this::loadDetail);
+        assertEquals("product-1", first.getProduct().getName());
+        first.getProduct().setName("changed");
+
+        PmsPortalProductDetail second = detailCacheService.get(1L, this::loadDetail);
+        assertNotSame(first, second);
+        //调用方修改返回结果不影响缓存
+        assertEquals("product-1", second.getProduct().getName());
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void testProductChangeEvictsListedProducts() {
+        detailCacheService.get(1L, this::loadDetail);
+        detailCacheService.get(2L, this::loadDetail);
+        detailCacheService.get(3L, this::loadDetail);
+        detailCacheService.onMessage(message(RedisChannelConstant.PRODUCT_CHANGE, "1, 2"), null);
+
+        detailCacheService.get(1L, this::loadDetail);
+        detailCacheService.get(2L, this::loadDetail);
+        detailCacheService.get(3L, this::loadDetail);
+        assertEquals(5, loadCount.get());
+    }
+
+    @Test
+    public void testCouponChangeClearsAll() {
+        detailCacheService.get(1L, this::loadDetail);
+        detailCacheService.get(2L, this::loadDetail);
+        detailCacheService.onMessage(message(RedisChannelConstant.COUPON_CHANGE, "10"), null);
+
+        detailCacheService.get(1L, this::loadDetail);
+        detailCacheService.get(2L, this::loadDetail);
+        assertEquals(4, loadCount.get());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<Long, PmsPortalProductDetail> slowLoader = id -> {
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return loadDetail(id);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<PmsPortalProductDetail> first = executor.submit(() -> detailCacheService.get(1L, slowLoader));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<PmsPortalProductDetail> second = executor.submit(() -> detailCacheService.get(1L, slowLoader));
+            Thread.sleep(100);
+            release.countDown();
+            assertEquals("product-1", first.get(5, TimeUnit.SECONDS).getProduct().getName());
+            assertEquals("product-1", second.get(5, TimeUnit.SECONDS).getProduct().getName());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void testLoadOverlappingEvictionIsNotCached() {
+        detailCacheService.get(1L, id -> {
+            //加载期间商品被修改
+            detailCacheService.evict(Collections.singletonList(id));
+            return loadDetail(id);
+        });
+        detailCacheService.get(1L, this::loadDetail);
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void testLoadFailureIsNotCached() {
+        assertThrows(IllegalStateException.class, () -> detailCacheService.get(1L, id -> {
+            throw new IllegalStateException("数据库不可用");
+        }));
+        assertEquals("product-1", detailCacheService.get(1L, this::loadDetail).getProduct().getName());
+    }
+
+    private PmsPortalProductDetail loadDetail(Long id) {
+        loadCount.incrementAndGet();
+        PmsProduct product = new PmsProduct();
+        product.setId(id);
+        product.setName("product-" + id);
+        PmsPortalProductDetail detail = new PmsPortalProductDetail();
+        detail.setProduct(product);
+        return detail;
+    }
+
+    private DefaultMessage message(String channel, String body) {
+        return new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
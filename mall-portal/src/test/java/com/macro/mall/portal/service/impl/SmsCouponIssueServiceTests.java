@@ -0,0 +1,232 @@
+package com.macro.mall.portal.service.impl;
+
+import cn.hutool.json.JSONUtil;
+import com.macro.mall.common.exception.ApiException;
+import com.macro.mall.mapper.SmsCouponHistoryMapper;
+import com.macro.mall.mapper.SmsCouponMapper;
+import com.macro.mall.model.SmsCoupon;
+import com.macro.mall.model.SmsCouponHistory;
+import com.macro.mall.portal.RedisTestSupport;
+import com.macro.mall.portal.dao.SmsCouponHistoryDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 优惠券领取单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = SmsCouponIssueServiceImpl.class)
+public class SmsCouponIssueServiceTests extends RedisTestSupport {
+    @Autowired
+    private SmsCouponIssueServiceImpl couponIssueService;
+    @MockBean
+    private SmsCouponMapper couponMapper;
+    @MockBean
+    private SmsCouponHistoryMapper couponHistoryMapper;
+    @MockBean
+    private SmsCouponHistoryDao couponHistoryDao;
+    @Value("${redis.database}")
+    private String REDIS_DATABASE;
+    @Value("${redis.key.coupon}")
+    private String REDIS_KEY_COUPON;
+    private final Map<Long, SmsCoupon> couponMap = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        when(couponMapper.selectByPrimaryKey(anyLong())).thenAnswer(invocation -> couponMap.get(invocation.<Long>getArgument(0)));
+    }
+
+    @Test
+    public void testClaimLoadsCountersAndQueuesHistory() {
+        SmsCoupon coupon = coupon(1L, 2, 1);
+        couponIssueService.claim(coupon, history(1L, 100L));
+        assertEquals("1", stringRedisTemplate.opsForValue().get(getKey("1:stock")));
+        assertEquals("1", stringRedisTemplate.opsForHash().get(getKey("1:member"), "100"));
+        assertEquals(1L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+        assertEquals("1", stringRedisTemplate.opsForHash().get(getKey("receiveDelta"), "1"));
+    }
+
+    @Test
+    public void testClaimRejectsOverPerLimit() {
+        SmsCoupon coupon = coupon(1L, 10, 1);
+        //数据库中已有一条领取记录
+        when(couponHistoryMapper.countByExample(any())).thenReturn(1L);
+        ApiException exception = assertThrows(ApiException.class, () -> couponIssueService.claim(coupon, history(1L, 100L)));
+        assertEquals("您已经领取过该优惠券", exception.getMessage());
+        assertEquals("10", stringRedisTemplate.opsForValue().get(getKey("1:stock")));
+        assertEquals(0L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+    }
+
+    @Test
+    public void testClaimRejectsWhenSoldOut() {
+        SmsCoupon coupon = coupon(1L, 1, 1);
+        couponIssueService.claim(coupon, history(1L, 100L));
+        ApiException exception = assertThrows(ApiException.class, () -> couponIssueService.claim(coupon, history(1L, 101L)));
+        assertEquals("优惠券已经领完了", exception.getMessage());
+        assertEquals(1L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+    }
+
+    @Test
+    public void testEvictedStockReloadsMinusPending() {
+        SmsCoupon coupon = coupon(1L, 5, 2);
+        couponIssueService.claim(coupon, history(1L, 100L));
+        //数据库中的数量还没有回写，重新加载时扣除尚未回写的1张
+        couponIssueService.evict(1L);
+        couponIssueService.claim(coupon, history(1L, 101L));
+        assertEquals("3", stringRedisTemplate.opsForValue().get(getKey("1:stock")));
+    }
+
+    @Test
+    public void testLoadRereadsCount() {
+        SmsCoupon coupon = coupon(1L, 5, 1);
+        //调用方持有的优惠券是回写前读取的，MySQL中已扣减为3
+        coupon(1L, 3, 1);
+        couponIssueService.claim(coupon, history(1L, 100L));
+        assertEquals("2", stringRedisTemplate.opsForValue().get(getKey("1:stock")));
+    }
+
+    @Test
+    public void testLoadRefusedWhileFlushing() {
+        SmsCoupon coupon = coupon(1L, 5, 1);
+        //该优惠券的变化量正在回写，MySQL中的数量可能已包含也可能不包含这部分
+        stringRedisTemplate.opsForHash().put(getKey("receiveDelta:flushing"), "1", "2");
+        ApiException exception = assertThrows(ApiException.class, () -> couponIssueService.claim(coupon, history(1L, 100L)));
+        assertEquals("领取优惠券失败，请稍后重试", exception.getMessage());
+        assertFalse(stringRedisTemplate.hasKey(getKey("1:stock")));
+        assertEquals(0L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+    }
+
+    @Test
+    public void testLoadRetriesWhenFlushCommittedDuringQuery() {
+        SmsCoupon coupon = coupon(1L, 5, 1);
+        SmsCoupon latest = coupon(1L, 4, 1);
+        AtomicInteger queryCount = new AtomicInteger();
+        when(couponMapper.selectByPrimaryKey(1L)).thenAnswer(invocation -> {
+            if (queryCount.incrementAndGet() == 1) {
+                //模拟查询MySQL期间有一批变化量回写完成
+                stringRedisTemplate.opsForValue().increment(getKey("receiveDelta:epoch"));
+            }
+            return latest;
+        });
+        couponIssueService.claim(coupon, history(1L, 100L));
+        assertEquals(2, queryCount.get());
+        assertEquals("3", stringRedisTemplate.opsForValue().get(getKey("1:stock")));
+    }
+
+    @Test
+    public void testFlushReceiveCountCommitsDelta() {
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 100L));
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 101L));
+        doAnswer(invocation -> {
+            //回写期间变化量保留在回写中hash
+            assertEquals("2", stringRedisTemplate.opsForHash().get(getKey("receiveDelta:flushing"), "1"));
+            return 1;
+        }).when(couponHistoryDao).updateReceiveCount(anyMap());
+        assertEquals(1, couponIssueService.flushReceiveCount());
+        verify(couponHistoryDao).updateReceiveCount(Collections.singletonMap(1L, 2));
+        assertFalse(stringRedisTemplate.hasKey(getKey("receiveDelta")));
+        assertFalse(stringRedisTemplate.hasKey(getKey("receiveDelta:flushing")));
+        assertFalse(stringRedisTemplate.hasKey(getKey("receiveDelta:flushLock")));
+        assertEquals("1", stringRedisTemplate.opsForValue().get(getKey("receiveDelta:epoch")));
+        assertEquals(0, couponIssueService.flushReceiveCount());
+    }
+
+    @Test
+    public void testFlushReceiveCountMergesBackOnFailure() {
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 100L));
+        doAnswer(invocation -> {
+            //回写过程中的新领取写入新的变化量hash
+            couponIssueService.claim(coupon(1L, 5, 1), history(1L, 101L));
+            throw new IllegalStateException("数据库不可用");
+        }).when(couponHistoryDao).updateReceiveCount(anyMap());
+        assertThrows(IllegalStateException.class, () -> couponIssueService.flushReceiveCount());
+        assertEquals("2", stringRedisTemplate.opsForHash().get(getKey("receiveDelta"), "1"));
+        assertFalse(stringRedisTemplate.hasKey(getKey("receiveDelta:flushing")));
+        assertFalse(stringRedisTemplate.hasKey(getKey("receiveDelta:flushLock")));
+        assertNull(stringRedisTemplate.opsForValue().get(getKey("receiveDelta:epoch")));
+    }
+
+    @Test
+    public void testFlushReceiveCountSkippedWhileLockHeld() {
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 100L));
+        stringRedisTemplate.opsForValue().set(getKey("receiveDelta:flushLock"), "other");
+        assertEquals(0, couponIssueService.flushReceiveCount());
+        verify(couponHistoryDao, never()).updateReceiveCount(anyMap());
+        assertEquals("1", stringRedisTemplate.opsForHash().get(getKey("receiveDelta"), "1"));
+    }
+
+    @Test
+    public void testFlushHistoryKeepsProcessingListOnFailure() {
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 100L));
+        doThrow(new IllegalStateException("数据库不可用")).when(couponHistoryDao).insertList(anyList());
+        assertThrows(IllegalStateException.class, () -> couponIssueService.flushHistory());
+        //写入失败的领取历史保留在处理中列表
+        assertEquals(0L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+        assertEquals(1L, stringRedisTemplate.opsForList().size(getKey("historyQueue:processing")));
+        assertFalse(stringRedisTemplate.hasKey(getKey("historyQueue:flushLock")));
+        reset(couponHistoryDao);
+        assertEquals(1, couponIssueService.flushHistory());
+        verify(couponHistoryDao).insertList(argThat(list -> list.size() == 1 && list.get(0).getMemberId() == 100L));
+        assertFalse(stringRedisTemplate.hasKey(getKey("historyQueue:processing")));
+    }
+
+    @Test
+    public void testFlushHistoryReplaysWithoutDuplicates() {
+        //上次写入后在删除处理中列表前中断，code100已经写入
+        stringRedisTemplate.opsForList().rightPushAll(getKey("historyQueue:processing"),
+                JSONUtil.toJsonStr(history(1L, 100L)), JSONUtil.toJsonStr(history(1L, 101L)));
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 102L));
+        when(couponHistoryDao.getExistCouponCodes(anyList())).thenReturn(Collections.singletonList("code100"));
+        assertEquals(2, couponIssueService.flushHistory());
+        verify(couponHistoryDao).getExistCouponCodes(Arrays.asList("code100", "code101"));
+        verify(couponHistoryDao).insertList(argThat(list -> list.size() == 1 && "code101".equals(list.get(0).getCouponCode())));
+        verify(couponHistoryDao).insertList(argThat(list -> list.size() == 1 && "code102".equals(list.get(0).getCouponCode())));
+        assertFalse(stringRedisTemplate.hasKey(getKey("historyQueue:processing")));
+        assertEquals(0L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+    }
+
+    @Test
+    public void testFlushHistorySkippedWhileLockHeld() {
+        couponIssueService.claim(coupon(1L, 5, 1), history(1L, 100L));
+        stringRedisTemplate.opsForValue().set(getKey("historyQueue:flushLock"), "other");
+        assertEquals(0, couponIssueService.flushHistory());
+        verify(couponHistoryDao, never()).insertList(anyList());
+        assertEquals(1L, stringRedisTemplate.opsForList().size(getKey("historyQueue")));
+    }
+
+    private SmsCoupon coupon(Long id, int count, int perLimit) {
+        SmsCoupon coupon = new SmsCoupon();
+        coupon.setId(id);
+        coupon.setCount(count);
+        coupon.setPerLimit(perLimit);
+        //最后创建的优惠券作为MySQL中的最新数据
+        couponMap.put(id, coupon);
+        return coupon;
+    }
+
+    private SmsCouponHistory history(Long couponId, Long memberId) {
+        SmsCouponHistory couponHistory = new SmsCouponHistory();
+        couponHistory.setCouponId(couponId);
+        couponHistory.setMemberId(memberId);
+        couponHistory.setCouponCode("code" + memberId);
+        return couponHistory;
+    }
+
+    private String getKey(String suffix) {
+        return REDIS_DATABASE + ":" + REDIS_KEY_COUPON + ":" + suffix;
+    }
+}
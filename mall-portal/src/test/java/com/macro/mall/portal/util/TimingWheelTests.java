@@ -0,0 +1,70 @@
+package com.macro.mall.portal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分层时间轮单元测试
+ * Created by macro on 2026/10/18.
+ */
+public class TimingWheelTests {
+
+    @Test
+    public void testExpireAcrossLevels() {
+        //每格10毫秒，每层4格：第一层40毫秒，第二层160毫秒，第三层640毫秒
+        TimingWheel<String> timingWheel = new TimingWheel<>(10, 4, 0);
+        assertTrue(timingWheel.add(20, "a"));
+        assertTrue(timingWheel.add(30, "b"));
+        assertTrue(timingWheel.add(150, "c"));
+        assertTrue(timingWheel.add(700, "d"));
+        assertEquals(4, timingWheel.size());
+
+        assertEquals(Collections.emptyList(), advance(timingWheel, 19));
+        assertEquals(Collections.singletonList("a"), advance(timingWheel, 20));
+        assertEquals(Collections.singletonList("b"), advance(timingWheel, 30));
+        //上层格子到期后任务降到下层，到期前不会触发
+        assertEquals(Collections.emptyList(), advance(timingWheel, 149));
+        assertEquals(Collections.singletonList("c"), advance(timingWheel, 150));
+        assertEquals(1, timingWheel.size());
+        assertEquals(Collections.emptyList(), advance(timingWheel, 699));
+        assertEquals(Collections.singletonList("d"), advance(timingWheel, 700));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void testAddExpiredReturnsFalse() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10, 4, 100);
+        assertFalse(timingWheel.add(105, "expired"));
+        assertFalse(timingWheel.add(50, "expired"));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void testAdvanceFarAheadFiresAll() {
+        TimingWheel<Integer> timingWheel = new TimingWheel<>(10, 4, 0);
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(timingWheel.add(i * 37L, i));
+        }
+        List<Integer> expired = advance(timingWheel, 10000);
+        assertEquals(100, expired.size());
+        assertEquals(100, new HashSet<>(expired).size());
+        assertEquals(0, timingWheel.size());
+        //之后添加的任务按推进后的时间计算
+        assertFalse(timingWheel.add(10005, 0));
+        assertTrue(timingWheel.add(10010, 101));
+        assertEquals(Arrays.asList(101), advance(timingWheel, 10010));
+    }
+
+    private <T> List<T> advance(TimingWheel<T> timingWheel, long now) {
+        List<T> expired = new ArrayList<>();
+        timingWheel.advance(now, expired::add);
+        return expired;
+    }
+}
@@ -0,0 +1,230 @@
+package com.macro.mall.search.component;
+
+import com.macro.mall.search.dao.EsProductDao;
+import com.macro.mall.search.domain.EsProduct;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * 商品批量导入ES组件
+ * 按id分页读取商品，每页作为一个bulk请求并发写入ES，同时在途的请求数量有上限，读取速度受写入速度限制
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class EsProductBulkIndexer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EsProductBulkIndexer.class);
+    @Autowired
+    private EsProductDao productDao;
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private EsProductSearchCache productSearchCache;
+    @Value("${es.import.pageSize:500}")
+    private Integer PAGE_SIZE;
+    @Value("${es.import.concurrency:4}")
+    private Integer CONCURRENCY;
+    @Value("${es.import.maxRetries:3}")
+    private Integer MAX_RETRIES;
+    @Value("${es.import.retryInterval:1000}")
+    private Long RETRY_INTERVAL;
+    private final AtomicBoolean running = new AtomicBoolean();
+    /**
+     * 本次导入已写入的商品数量
+     */
+    private final AtomicLong progress = new AtomicLong();
+    private Counter documentCounter;
+    private Counter retryCounter;
+    private Timer bulkTimer;
+
+    @PostConstruct
+    public void init() {
+        documentCounter = meterRegistry.counter("mall.search.import.documents");
+        retryCounter = meterRegistry.counter("mall.search.import.retries");
+        bulkTimer = meterRegistry.timer("mall.search.import.bulk");
+        meterRegistry.gauge("mall.search.import.progress", progress);
+    }
+
+    /**
+     * 导入所有商品到当前索引
+     * @return 导入的商品数量
+     */
+    public int importAll() {
+        return runExclusively(() -> {
+            try {
+                return importInto(elasticsearchTemplate.getIndexCoordinatesFor(EsProduct.class));
+            } finally {
+                productSearchCache.nextGeneration();
+            }
+        });
+    }
+
+    /**
+     * 导入所有商品到新索引，完成后将别名原子地切换到新索引并删除旧索引
+     * @return 导入的商品数量
+     */
+    public int rebuild() {
+        return runExclusively(() -> {
+            IndexOperations entityOps = elasticsearchTemplate.indexOps(EsProduct.class);
+            String alias = entityOps.getIndexCoordinates().getIndexName();
+            String newIndex = alias + "_" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+            IndexOperations newOps = elasticsearchTemplate.indexOps(IndexCoordinates.of(newIndex));
+            newOps.create(entityOps.createSettings(), entityOps.createMapping());
+            int count;
+            try {
+                count = importInto(IndexCoordinates.of(newIndex));
+                newOps.refresh();
+            } catch (RuntimeException e) {
+                newOps.delete();
+                throw e;
+            }
+            List<String> oldIndices = switchAlias(entityOps, alias, newIndex);
+            productSearchCache.nextGeneration();
+            for (String oldIndex : oldIndices) {
+                elasticsearchTemplate.indexOps(IndexCoordinates.of(oldIndex)).delete();
+            }
+            LOGGER.info("重建商品索引完成，新索引：{}，删除旧索引：{}", newIndex, oldIndices);
+            return count;
+        });
+    }
+
+    /**
+     * 是否正在全量导入或重建索引
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private int runExclusively(IntSupplier task) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("商品正在导入中，请稍后再试");
+        }
+        try {
+            return task.getAsInt();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 分页读取商品并发写入指定索引，任意一页重试后仍失败时停止读取并抛出异常
+     */
+    private int importInto(IndexCoordinates index) {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY, new CustomizableThreadFactory("es-import-"));
+        Semaphore permits = new Semaphore(CONCURRENCY);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        long startTime = System.currentTimeMillis();
+        progress.set(0);
+        try {
+            Long afterId = 0L;
+            while (failure.get() == null) {
+                List<EsProduct> page = productDao.listEsProductPage(afterId, PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).getId();
+                //在途请求达到上限时等待，避免读取过快占用内存
+                permits.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        bulkIndex(page, index);
+                        long count = progress.addAndGet(page.size());
+                        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+                        LOGGER.info("导入商品到{}：已完成{}个，{}个/秒", index.getIndexName(), count, count * 1000 / elapsed);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            //等待所有在途请求完成
+            permits.acquireUninterruptibly(CONCURRENCY);
+        } finally {
+            executor.shutdown();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return (int) progress.get();
+    }
+
+    /**
+     * 写入一页商品，失败时按重试次数递增间隔后整页重试
+     */
+    private void bulkIndex(List<EsProduct> page, IndexCoordinates index) {
+        List<IndexQuery> queries = page.stream()
+                .map(product -> new IndexQueryBuilder().withId(product.getId().toString()).withObject(product).build())
+                .collect(Collectors.toList());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                bulkTimer.record(() -> elasticsearchTemplate.bulkIndex(queries, index));
+                documentCounter.increment(page.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt > MAX_RETRIES) {
+                    throw e;
+                }
+                retryCounter.increment();
+                LOGGER.warn("写入商品到ES失败，第{}次重试，起始商品id：{}", attempt, page.get(0).getId(), e);
+                try {
+                    Thread.sleep(RETRY_INTERVAL * attempt);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在一个请求中将别名指向新索引并移除旧索引上的别名；
+     * 别名同名的索引是直接创建的普通索引时，在同一请求中删除该索引
+     * @return 需要删除的旧索引
+     */
+    private List<String> switchAlias(IndexOperations entityOps, String alias, String newIndex) {
+        Map<String, Set<AliasData>> aliasMap = entityOps.exists() ? entityOps.getAliasesForIndex(alias) : Collections.emptyMap();
+        List<AliasAction> actions = new ArrayList<>();
+        List<String> oldIndices = new ArrayList<>();
+        if (aliasMap.containsKey(alias)) {
+            actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(alias).build()));
+        } else {
+            for (String oldIndex : aliasMap.keySet()) {
+                actions.add(new AliasAction.Remove(AliasActionParameters.builder().withIndices(oldIndex).withAliases(alias).build()));
+                oldIndices.add(oldIndex);
+            }
+        }
+        actions.add(new AliasAction.Add(AliasActionParameters.builder().withIndices(newIndex).withAliases(alias).build()));
+        entityOps.alias(new AliasActions(actions.toArray(new AliasAction[0])));
+        return oldIndices;
+    }
+}
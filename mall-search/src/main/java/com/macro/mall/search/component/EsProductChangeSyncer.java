@@ -0,0 +1,125 @@
+package com.macro.mall.search.component;
+
+import com.macro.mall.search.dao.EsProductChangeLogDao;
+import com.macro.mall.search.dao.EsProductDao;
+import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductChangeLog;
+import com.macro.mall.search.repository.EsProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 商品变更增量同步组件
+ * 定时读取后台写入的商品变更记录，同一商品的多次变更合并为一次，按数据库中的最新状态批量写入ES：
+ * 已上架且未删除的商品整体覆盖写入，其余商品从索引中删除；写入成功后删除对应的变更记录，失败时下次重试；
+ * 部署多个实例时通过数据库租约保证同一时刻只有一个实例同步，避免重复写入及旧状态覆盖新状态
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class EsProductChangeSyncer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EsProductChangeSyncer.class);
+    private static final String LEASE_NAME = "es_product";
+    @Autowired
+    private EsProductChangeLogDao productChangeLogDao;
+    @Autowired
+    private EsProductDao productDao;
+    @Autowired
+    private EsProductRepository productRepository;
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+    @Autowired
+    private EsProductBulkIndexer productBulkIndexer;
+    @Autowired
+    private EsProductSearchCache productSearchCache;
+    @Autowired
+    private EsProductRecommendBuilder productRecommendBuilder;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${es.sync.batchSize:1000}")
+    private Integer BATCH_SIZE;
+    @Value("${es.sync.leaseSeconds:30}")
+    private Integer LEASE_SECONDS;
+    /**
+     * 当前实例的租约持有者标识
+     */
+    private final String leaseOwner = UUID.randomUUID().toString();
+    private Counter indexCounter;
+    private Counter deleteCounter;
+
+    @PostConstruct
+    public void init() {
+        indexCounter = meterRegistry.counter("mall.search.sync.documents", "type", "index");
+        deleteCounter = meterRegistry.counter("mall.search.sync.documents", "type", "delete");
+        productChangeLogDao.insertLeaseIfAbsent(LEASE_NAME);
+    }
+
+    /**
+     * 两次同步之间的变更记录在下一次同步时合并处理
+     */
+    @Scheduled(fixedDelayString = "${es.sync.interval:1000}")
+    public void sync() {
+        try {
+            List<EsProductChangeLog> logList;
+            do {
+                //全量导入期间暂停同步，导入完成后再按最新状态补写，避免旧数据覆盖新数据或写入即将被替换的索引
+                if (productBulkIndexer.isRunning()) {
+                    return;
+                }
+                //每批写入前获取或续期租约，租约由其他实例持有时不同步
+                if (productChangeLogDao.acquireLease(LEASE_NAME, leaseOwner, LEASE_SECONDS) == 0) {
+                    return;
+                }
+                logList = productChangeLogDao.list(BATCH_SIZE);
+                if (logList.isEmpty()) {
+                    return;
+                }
+                Set<Long> productIds = logList.stream()
+                        .map(EsProductChangeLog::getProductId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+                if (!productIds.isEmpty()) {
+                    apply(productIds);
+                }
+                //按id删除已读取的记录，未提交事务中较早分配的id在提交后仍会被读取
+                productChangeLogDao.deleteByIds(logList.stream().map(EsProductChangeLog::getId).collect(Collectors.toList()));
+            } while (logList.size() == BATCH_SIZE);
+        } catch (Exception e) {
+            LOGGER.warn("同步商品变更到ES失败，下次同步时重试", e);
+        }
+    }
+
+    private void apply(Set<Long> productIds) {
+        List<EsProduct> productList = productDao.listEsProductByIds(productIds);
+        Set<Long> removedIds = new HashSet<>(productIds);
+        List<IndexQuery> queries = new ArrayList<>(productList.size());
+        for (EsProduct product : productList) {
+            removedIds.remove(product.getId());
+            queries.add(new IndexQueryBuilder().withId(product.getId().toString()).withObject(product).build());
+        }
+        if (!queries.isEmpty()) {
+            elasticsearchTemplate.bulkIndex(queries, EsProduct.class);
+            indexCounter.increment(queries.size());
+        }
+        if (!removedIds.isEmpty()) {
+            productRepository.deleteAllById(removedIds);
+            deleteCounter.increment(removedIds.size());
+        }
+        productSearchCache.nextGeneration();
+        //推荐结果在后台计算，避免拖慢索引同步或超出租约时间
+        productRecommendBuilder.refreshAsync(productList, removedIds);
+        LOGGER.info("同步商品变更到ES：写入{}个，删除{}个", queries.size(), removedIds.size());
+    }
+}
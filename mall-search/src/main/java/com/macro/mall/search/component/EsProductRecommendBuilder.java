@@ -0,0 +1,271 @@
+package com.macro.mall.search.component;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScore;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScoreQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders;
+import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductRecommend;
+import com.macro.mall.search.repository.EsProductRecommendRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 商品推荐预计算组件
+ * 按商品标题、品牌、分类计算每个商品最相关的商品，只保存商品id到单独的索引中，查看推荐时按商品id直接获取；
+ * 每天定时全量计算，商品变更时由增量同步重新计算变更的商品
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class EsProductRecommendBuilder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EsProductRecommendBuilder.class);
+    /**
+     * 计算推荐时需要的源商品字段
+     */
+    private static final String[] SOURCE_FIELDS = {"id", "name", "brandId", "productCategoryId"};
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+    @Autowired
+    private EsProductRecommendRepository productRecommendRepository;
+    @Value("${es.recommend.size:50}")
+    private Integer RECOMMEND_SIZE;
+    @Value("${es.recommend.concurrency:4}")
+    private Integer CONCURRENCY;
+    @Value("${es.recommend.batchSize:500}")
+    private Integer BATCH_SIZE;
+    @Value("${es.recommend.refreshQueueSize:1000}")
+    private Integer REFRESH_QUEUE_SIZE;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ExecutorService executor;
+    /**
+     * 执行后台全量计算的线程，和计算线程池分开，避免全量计算占用计算线程后等待自己提交的任务
+     */
+    private ExecutorService rebuildExecutor;
+    /**
+     * 执行增量计算的线程，单线程按提交顺序执行，保证同一商品后提交的计算结果覆盖先提交的
+     */
+    private ExecutorService refreshExecutor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(CONCURRENCY, new CustomizableThreadFactory("es-recommend-"));
+        rebuildExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("es-recommend-rebuild-"));
+        refreshExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), new CustomizableThreadFactory("es-recommend-refresh-"));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+        rebuildExecutor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 计算单个商品的推荐结果并保存
+     */
+    public EsProductRecommend build(EsProduct product) {
+        EsProductRecommend recommend = new EsProductRecommend(product.getId(), compute(product));
+        productRecommendRepository.save(recommend);
+        return recommend;
+    }
+
+    /**
+     * 重新计算变更商品的推荐结果，删除已下架或删除商品的推荐结果
+     */
+    public void refresh(List<EsProduct> productList, Collection<Long> removedIds) {
+        if (!productList.isEmpty()) {
+            buildBatch(productList);
+        }
+        if (!removedIds.isEmpty()) {
+            productRecommendRepository.deleteAllById(removedIds);
+        }
+    }
+
+    /**
+     * 在后台线程中重新计算变更商品的推荐结果，提交后立即返回；
+     * 计算失败或等待队列已满时只记录日志，由每天的全量计算补上
+     */
+    public void refreshAsync(List<EsProduct> productList, Collection<Long> removedIds) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresh(productList, removedIds);
+                } catch (Exception e) {
+                    LOGGER.warn("重新计算变更商品的推荐结果失败", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("推荐结果增量计算队列已满，跳过{}个变更商品", productList.size() + removedIds.size());
+        }
+    }
+
+    /**
+     * 计算所有商品的推荐结果
+     * @return 计算的商品数量
+     */
+    public int rebuildAll() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("商品推荐正在计算中，请稍后再试");
+        }
+        try {
+            return doRebuildAll();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 在后台线程中计算所有商品的推荐结果，提交后立即返回，计算结果只记录到日志中
+     */
+    public void rebuildAllAsync() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("商品推荐正在计算中，请稍后再试");
+        }
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    doRebuildAll();
+                } catch (Exception e) {
+                    LOGGER.error("后台计算商品推荐失败", e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            throw new IllegalStateException("商品推荐计算线程已关闭", e);
+        }
+    }
+
+    private int doRebuildAll() {
+        long startTime = System.currentTimeMillis();
+        NativeQuery query = new NativeQueryBuilder()
+                .withQuery(QueryBuilders.matchAll(builder -> builder))
+                .withSourceFilter(new FetchSourceFilter(SOURCE_FIELDS, null))
+                .withPageable(PageRequest.of(0, BATCH_SIZE))
+                .build();
+        int count = 0;
+        List<EsProduct> batch = new ArrayList<>(BATCH_SIZE);
+        try (SearchHitsIterator<EsProduct> iterator = elasticsearchTemplate.searchForStream(query, EsProduct.class)) {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next().getContent());
+                if (batch.size() >= BATCH_SIZE) {
+                    count += buildBatch(batch);
+                    batch.clear();
+                    LOGGER.info("计算商品推荐：已完成{}个", count);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            count += buildBatch(batch);
+        }
+        LOGGER.info("计算商品推荐完成，商品数量：{}，耗时{}ms", count, System.currentTimeMillis() - startTime);
+        return count;
+    }
+
+    /**
+     * 每天定时全量计算，补上增量计算时其他商品变化对推荐结果的影响
+     */
+    @Scheduled(cron = "${es.recommend.cron:0 0 3 * * ?}")
+    public void scheduledRebuild() {
+        try {
+            rebuildAll();
+        } catch (Exception e) {
+            LOGGER.error("定时计算商品推荐失败", e);
+        }
+    }
+
+    /**
+     * 在线程池中并发计算一批商品的推荐结果，全部完成后批量保存
+     */
+    private int buildBatch(List<EsProduct> productList) {
+        List<Callable<EsProductRecommend>> tasks = productList.stream()
+                .map(product -> (Callable<EsProductRecommend>) () -> new EsProductRecommend(product.getId(), compute(product)))
+                .collect(Collectors.toList());
+        List<EsProductRecommend> recommendList = new ArrayList<>(tasks.size());
+        try {
+            for (Future<EsProductRecommend> future : executor.invokeAll(tasks)) {
+                recommendList.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("计算商品推荐被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        productRecommendRepository.saveAll(recommendList);
+        return recommendList.size();
+    }
+
+    /**
+     * 根据商品标题、品牌、分类搜索相关商品，返回按相关度排列的商品id
+     */
+    private List<Long> compute(EsProduct product) {
+        Long id = product.getId();
+        String keyword = product.getName();
+        Long brandId = product.getBrandId();
+        Long productCategoryId = product.getProductCategoryId();
+        //构建查询条件
+        NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder();
+        //用于过滤掉相同的商品
+        nativeQueryBuilder.withFilter(QueryBuilders.bool(build -> build.mustNot(QueryBuilders.term(b->b.field("id").value(id)))));
+        //根据商品标题、品牌、分类进行搜索
+        List<FunctionScore> functionScoreList = new ArrayList<>();
+        functionScoreList.add(new FunctionScore.Builder()
+                .filter(QueryBuilders.match(builder -> builder.field("name").query(keyword)))
+                .weight(8.0)
+                .build());
+        functionScoreList.add(new FunctionScore.Builder()
+                .filter(QueryBuilders.match(builder -> builder.field("subTitle").query(keyword)))
+                .weight(2.0)
+                .build());
+        functionScoreList.add(new FunctionScore.Builder()
+                .filter(QueryBuilders.match(builder -> builder.field("keywords").query(keyword)))
+                .weight(2.0)
+                .build());
+        functionScoreList.add(new FunctionScore.Builder()
+                .filter(QueryBuilders.match(builder -> builder.field("brandId").query(brandId)))
+                .weight(5.0)
+                .build());
+        functionScoreList.add(new FunctionScore.Builder()
+                .filter(QueryBuilders.match(builder -> builder.field("productCategoryId").query(productCategoryId)))
+                .weight(3.0)
+                .build());
+        FunctionScoreQuery.Builder functionScoreQueryBuilder = QueryBuilders.functionScore()
+                .functions(functionScoreList)
+                .scoreMode(FunctionScoreMode.Sum)
+                .minScore(2.0);
+        nativeQueryBuilder.withQuery(builder -> builder.functionScore(functionScoreQueryBuilder.build()));
+        nativeQueryBuilder.withMaxResults(RECOMMEND_SIZE);
+        //只需要商品id
+        nativeQueryBuilder.withSourceFilter(new FetchSourceFilter(new String[]{"id"}, null));
+        nativeQueryBuilder.withTrackTotalHits(false);
+        SearchHits<EsProduct> searchHits = elasticsearchTemplate.search(nativeQueryBuilder.build(), EsProduct.class);
+        return searchHits.stream().map(hit -> Long.valueOf(hit.getId())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,93 @@
+package com.macro.mall.search.component;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductRelatedInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 商品搜索结果缓存
+ * 分页结果按(关键词,品牌,分类,排序,页码,每页数量)缓存，品牌、分类及属性聚合只按关键词缓存，翻页时不再重复聚合；
+ * 缓存key带有代数，本节点写入索引后代数加一，旧结果不再被读取并按过期时间淘汰，其他节点的结果最多在过期时间内不一致
+ * Created by macro on 2026/10/18.
+ */
+@Component
+public class EsProductSearchCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${es.search.cache.expireSeconds:30}")
+    private Long EXPIRE_SECONDS;
+    @Value("${es.search.cache.pageMaximumSize:2000}")
+    private Long PAGE_MAXIMUM_SIZE;
+    @Value("${es.search.cache.relatedInfoMaximumSize:1000}")
+    private Long RELATED_INFO_MAXIMUM_SIZE;
+    private final AtomicLong generation = new AtomicLong();
+    private Cache<String, Page<EsProduct>> pageCache;
+    private Cache<String, EsProductRelatedInfo> relatedInfoCache;
+
+    @PostConstruct
+    public void init() {
+        pageCache = Caffeine.newBuilder()
+                .maximumSize(PAGE_MAXIMUM_SIZE)
+                .expireAfterWrite(EXPIRE_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        relatedInfoCache = Caffeine.newBuilder()
+                .maximumSize(RELATED_INFO_MAXIMUM_SIZE)
+                .expireAfterWrite(EXPIRE_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pageCache, "esProductSearchPage");
+        CaffeineCacheMetrics.monitor(meterRegistry, relatedInfoCache, "esProductSearchRelatedInfo");
+    }
+
+    /**
+     * 规范化搜索关键词：去除首尾空白，连续空白合并为一个空格并转为小写，关键词为空时返回空字符串
+     */
+    public static String normalizeKeyword(String keyword) {
+        if (StrUtil.isBlank(keyword)) {
+            return "";
+        }
+        return WHITESPACE.matcher(keyword.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 获取分页搜索结果，未缓存时调用loader查询，同一key同时只查询一次
+     * @param keyword 已规范化的关键词
+     */
+    public Page<EsProduct> getPage(String keyword, Long brandId, Long productCategoryId, Integer sort,
+                                   Integer pageNum, Integer pageSize, Supplier<Page<EsProduct>> loader) {
+        String key = generation.get() + ":" + StrUtil.join("|", keyword, brandId, productCategoryId, sort, pageNum, pageSize);
+        return pageCache.get(key, k -> loader.get());
+    }
+
+    /**
+     * 获取关键词对应的品牌、分类及属性聚合结果，未缓存时调用loader查询
+     * @param keyword 已规范化的关键词
+     */
+    public EsProductRelatedInfo getRelatedInfo(String keyword, Supplier<EsProductRelatedInfo> loader) {
+        return relatedInfoCache.get(generation.get() + ":" + keyword, k -> loader.get());
+    }
+
+    /**
+     * 索引写入后调用，之前缓存的结果不再使用
+     */
+    public void nextGeneration() {
+        generation.incrementAndGet();
+    }
+}
@@ -3,8 +3,10 @@ package com.macro.mall.search.controller;
 import com.macro.mall.common.api.CommonPage;
 import com.macro.mall.common.api.CommonResult;
 import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductCursorPage;
 import com.macro.mall.search.domain.EsProductRelatedInfo;
 import com.macro.mall.search.service.EsProductService;
+import com.macro.mall.search.service.EsProductSuggestService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -25,15 +27,37 @@ import java.util.List;
 @Tag(name = "EsProductController", description = "搜索商品管理")
 @RequestMapping("/esProduct")
 public class EsProductController {
+    /**
+     * 游标分页每页最大数量
+     */
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
     @Autowired
     private EsProductService esProductService;
+    @Autowired
+    private EsProductSuggestService esProductSuggestService;
 
     @Operation(summary = "导入所有数据库中商品到ES")
     @RequestMapping(value = "/importAll", method = RequestMethod.POST)
     @ResponseBody
     public CommonResult<Integer> importAllList() {
-        int count = esProductService.importAll();
-        return CommonResult.success(count);
+        try {
+            int count = esProductService.importAll();
+            return CommonResult.success(count);
+        } catch (IllegalStateException e) {
+            return CommonResult.failed(e.getMessage());
+        }
+    }
+
+    @Operation(summary = "导入所有数据库中商品到新索引，完成后切换到新索引")
+    @RequestMapping(value = "/rebuildIndex", method = RequestMethod.POST)
+    @ResponseBody
+    public CommonResult<Integer> rebuildIndex() {
+        try {
+            int count = esProductService.rebuildIndex();
+            return CommonResult.success(count);
+        } catch (IllegalStateException e) {
+            return CommonResult.failed(e.getMessage());
+        }
     }
 
     @Operation(summary = "根据id删除商品")
@@ -88,6 +112,27 @@ public class EsProductController {
         return CommonResult.success(CommonPage.restPage(esProductPage));
     }
 
+    @Operation(summary = "按游标分页的综合搜索、筛选、排序，用于无限滚动及导出")
+    @Parameter(name = "sort", description = "排序字段:0->按相关度；1->按新品；2->按销量；3->价格从低到高；4->价格从高到低", in = ParameterIn.QUERY, schema = @Schema(type = "integer",defaultValue = "0",allowableValues = {"0","1","2","3","4"}))
+    @RequestMapping(value = "/search/cursor", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<EsProductCursorPage> searchByCursor(@RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) String keyword,
+                                                            @RequestParam(required = false) Long brandId,
+                                                            @RequestParam(required = false) Long productCategoryId,
+                                                            @RequestParam(required = false, defaultValue = "20") Integer pageSize,
+                                                            @RequestParam(required = false, defaultValue = "0") Integer sort) {
+        if (pageSize < 1 || pageSize > MAX_CURSOR_PAGE_SIZE) {
+            return CommonResult.validateFailed("每页数量必须在1到" + MAX_CURSOR_PAGE_SIZE + "之间");
+        }
+        try {
+            EsProductCursorPage cursorPage = esProductService.searchByCursor(cursor, keyword, brandId, productCategoryId, pageSize, sort);
+            return CommonResult.success(cursorPage);
+        } catch (IllegalArgumentException e) {
+            return CommonResult.validateFailed(e.getMessage());
+        }
+    }
+
     @Operation(summary = "根据商品id推荐商品")
     @RequestMapping(value = "/recommend/{id}", method = RequestMethod.GET)
     @ResponseBody
@@ -98,6 +143,18 @@ public class EsProductController {
         return CommonResult.success(CommonPage.restPage(esProductPage));
     }
 
+    @Operation(summary = "在后台重新计算所有商品的推荐结果")
+    @RequestMapping(value = "/recommend/rebuild", method = RequestMethod.POST)
+    @ResponseBody
+    public CommonResult<Object> rebuildRecommend() {
+        try {
+            esProductService.rebuildRecommend();
+            return CommonResult.success(null, "已开始重新计算，完成后可在日志中查看结果");
+        } catch (IllegalStateException e) {
+            return CommonResult.failed(e.getMessage());
+        }
+    }
+
     @Operation(summary = "获取搜索的相关品牌、分类及筛选属性")
     @RequestMapping(value = "/search/relate", method = RequestMethod.GET)
     @ResponseBody
@@ -105,4 +162,13 @@ public class EsProductController {
         EsProductRelatedInfo productRelatedInfo = esProductService.searchRelatedInfo(keyword);
         return CommonResult.success(productRelatedInfo);
     }
+
+    @Operation(summary = "根据输入前缀获取搜索联想词")
+    @RequestMapping(value = "/suggest", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<List<String>> suggest(@RequestParam(required = false) String keyword,
+                                              @RequestParam(required = false, defaultValue = "10") Integer size) {
+        List<String> suggestList = esProductSuggestService.suggest(keyword, size);
+        return CommonResult.success(suggestList);
+    }
 }
@@ -0,0 +1,33 @@
+package com.macro.mall.search.dao;
+
+import com.macro.mall.search.domain.EsProductChangeLog;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 商品变更记录管理自定义Dao
+ * Created by macro on 2026/10/18.
+ */
+public interface EsProductChangeLogDao {
+    /**
+     * 按id升序获取最早的limit条变更记录
+     */
+    List<EsProductChangeLog> list(@Param("limit") Integer limit);
+
+    /**
+     * 删除已同步的变更记录
+     */
+    int deleteByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 同步任务租约不存在时创建
+     */
+    int insertLeaseIfAbsent(@Param("name") String name);
+
+    /**
+     * 租约未被其他实例持有或已过期时获取租约，已持有时续期
+     * @return 1表示当前实例持有租约
+     */
+    int acquireLease(@Param("name") String name, @Param("owner") String owner, @Param("leaseSeconds") Integer leaseSeconds);
+}
@@ -3,6 +3,7 @@ package com.macro.mall.search.dao;
 import com.macro.mall.search.domain.EsProduct;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,4 +15,14 @@ public interface EsProductDao {
      * 获取指定ID的搜索商品
      */
     List<EsProduct> getAllEsProductList(@Param("id") Long id);
+
+    /**
+     * 按id升序分页获取搜索商品，获取id大于afterId的limit个商品及其属性
+     */
+    List<EsProduct> listEsProductPage(@Param("afterId") Long afterId, @Param("limit") Integer limit);
+
+    /**
+     * 批量获取搜索商品，未上架或已删除的商品不返回
+     */
+    List<EsProduct> listEsProductByIds(@Param("ids") Collection<Long> ids);
 }
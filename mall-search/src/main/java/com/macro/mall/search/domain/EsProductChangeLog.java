@@ -0,0 +1,29 @@
+package com.macro.mall.search.domain;
+
+import java.io.Serializable;
+
+/**
+ * 商品变更记录，由后台在修改商品的事务中写入
+ * Created by macro on 2026/10/18.
+ */
+public class EsProductChangeLog implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private Long id;
+    private Long productId;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+}
@@ -0,0 +1,29 @@
+package com.macro.mall.search.domain;
+
+import java.util.List;
+
+/**
+ * 按游标分页的搜索结果
+ * Created by macro on 2026/10/18.
+ */
+public class EsProductCursorPage {
+    private List<EsProduct> list;
+    //获取下一页时传入的游标，没有更多数据时为null
+    private String nextCursor;
+
+    public List<EsProduct> getList() {
+        return list;
+    }
+
+    public void setList(List<EsProduct> list) {
+        this.list = list;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,50 @@
+package com.macro.mall.search.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 预先计算的商品推荐结果，只保存推荐商品的id，按相关度从高到低排列
+ * Created by macro on 2026/10/18.
+ */
+@Document(indexName = "pms_recommend")
+@Setting(shards = 1,replicas = 0)
+public class EsProductRecommend implements Serializable {
+    private static final long serialVersionUID = 1L;
+    //商品id
+    @Id
+    private Long id;
+    //推荐商品id，不需要检索
+    @Field(type = FieldType.Long, index = false)
+    private List<Long> productIds;
+
+    public EsProductRecommend() {
+    }
+
+    public EsProductRecommend(Long id, List<Long> productIds) {
+        this.id = id;
+        this.productIds = productIds;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public List<Long> getProductIds() {
+        return productIds;
+    }
+
+    public void setProductIds(List<Long> productIds) {
+        this.productIds = productIds;
+    }
+}
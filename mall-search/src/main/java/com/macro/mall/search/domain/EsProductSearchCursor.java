@@ -0,0 +1,67 @@
+package com.macro.mall.search.domain;
+
+import java.util.List;
+
+/**
+ * 搜索游标的内容，编码后作为不透明的游标返回给调用方
+ * 包含首次搜索的查询条件，翻页时查询条件以游标为准
+ * Created by macro on 2026/10/18.
+ */
+public class EsProductSearchCursor {
+    //point in time的id
+    private String pitId;
+    //上一页最后一个商品的排序值
+    private List<Object> searchAfter;
+    private String keyword;
+    private Long brandId;
+    private Long productCategoryId;
+    private Integer sort;
+
+    public String getPitId() {
+        return pitId;
+    }
+
+    public void setPitId(String pitId) {
+        this.pitId = pitId;
+    }
+
+    public List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    public void setSearchAfter(List<Object> searchAfter) {
+        this.searchAfter = searchAfter;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public void setKeyword(String keyword) {
+        this.keyword = keyword;
+    }
+
+    public Long getBrandId() {
+        return brandId;
+    }
+
+    public void setBrandId(Long brandId) {
+        this.brandId = brandId;
+    }
+
+    public Long getProductCategoryId() {
+        return productCategoryId;
+    }
+
+    public void setProductCategoryId(Long productCategoryId) {
+        this.productCategoryId = productCategoryId;
+    }
+
+    public Integer getSort() {
+        return sort;
+    }
+
+    public void setSort(Integer sort) {
+        this.sort = sort;
+    }
+}
@@ -0,0 +1,134 @@
+package com.macro.mall.search.domain;
+
+import java.util.*;
+
+/**
+ * 搜索联想词前缀树
+ * 每个前缀节点预先保存权重最高的topK个联想词，查询时只需沿输入前缀向下查找，不访问ES；
+ * 构建完成后不再修改，商品数据变更时整体替换
+ * Created by macro on 2026/10/18.
+ */
+public class EsProductSuggestIndex {
+    /**
+     * 前缀树的最大深度，更长的输入在该深度的节点中按前缀过滤
+     */
+    private static final int MAX_DEPTH = 20;
+    private static final Comparator<Term> TERM_ORDER = Comparator
+            .comparingLong(Term::getWeight).reversed()
+            .thenComparingInt(term -> term.getKey().length())
+            .thenComparing(Term::getKey);
+    private final Node root = new Node();
+    private final int topK;
+    private final int size;
+
+    /**
+     * @param terms 所有联想词，key需已规范化
+     * @param topK  每个前缀保存的联想词数量
+     */
+    public EsProductSuggestIndex(Collection<Term> terms, int topK) {
+        this.topK = topK;
+        this.size = terms.size();
+        List<Term> sortedTerms = new ArrayList<>(terms);
+        //按权重从高到低插入，每个节点先放满的就是该前缀下权重最高的联想词
+        sortedTerms.sort(TERM_ORDER);
+        for (Term term : sortedTerms) {
+            String key = term.getKey();
+            //从每个词的开头插入，使"华为 huawei p20"也能通过"huawei"联想到
+            for (int start = 0; start < key.length(); start++) {
+                if (start == 0 || key.charAt(start - 1) == ' ') {
+                    insert(key, start, term);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取以指定前缀开头的联想词，按权重从高到低排列
+     * @param prefix 已规范化的输入前缀
+     * @param limit  返回数量上限，不超过topK
+     */
+    public List<String> suggest(String prefix, int limit) {
+        if (prefix == null || prefix.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Node node = root;
+        for (int i = 0; i < prefix.length() && i < MAX_DEPTH && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, node.terms.size()));
+        for (Term term : node.terms) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (prefix.length() <= MAX_DEPTH || containsWordPrefix(term.getKey(), prefix)) {
+                result.add(term.getText());
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(String key, int start, Term term) {
+        Node node = root;
+        for (int i = start; i < key.length() && i - start < MAX_DEPTH; i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), k -> new Node());
+            //同一个词的多个起始位置经过同一节点时只保存一次
+            List<Term> nodeTerms = node.terms;
+            if (nodeTerms.size() < topK && (nodeTerms.isEmpty() || nodeTerms.get(nodeTerms.size() - 1) != term)) {
+                nodeTerms.add(term);
+            }
+        }
+    }
+
+    private static boolean containsWordPrefix(String key, String prefix) {
+        return key.startsWith(prefix) || key.contains(" " + prefix);
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final List<Term> terms = new ArrayList<>(1);
+    }
+
+    /**
+     * 联想词
+     */
+    public static class Term {
+        private final String key;
+        private final String text;
+        private long weight;
+
+        /**
+         * @param key  规范化后的联想词，用于匹配
+         * @param text 返回给用户的联想词
+         */
+        public Term(String key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * 累加权重，同一个词对应多个商品时权重为各商品权重之和
+         */
+        public void addWeight(long weight) {
+            this.weight += weight;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.macro.mall.search.repository;
+
+import com.macro.mall.search.domain.EsProductRecommend;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+/**
+ * 商品推荐结果ES操作类
+ * Created by macro on 2026/10/18.
+ */
+public interface EsProductRecommendRepository extends ElasticsearchRepository<EsProductRecommend, Long> {
+}
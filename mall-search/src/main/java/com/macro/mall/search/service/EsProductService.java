@@ -1,6 +1,7 @@
 package com.macro.mall.search.service;
 
 import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductCursorPage;
 import com.macro.mall.search.domain.EsProductRelatedInfo;
 import org.springframework.data.domain.Page;
 
@@ -16,6 +17,11 @@ public interface EsProductService {
      */
     int importAll();
 
+    /**
+     * 从数据库中导入所有商品到新索引，完成后切换别名
+     */
+    int rebuildIndex();
+
     /**
      * 根据id删除商品
      */
@@ -42,10 +48,23 @@ public interface EsProductService {
     Page<EsProduct> search(String keyword, Long brandId, Long productCategoryId, Integer pageNum, Integer pageSize,Integer sort);
 
     /**
-     * 根据商品id推荐相关商品
+     * 按游标分页的复合查询，每页的开销与页码无关
+     * @param cursor 上一页返回的游标，为空时开始新的搜索；不为空时使用游标中的查询条件
+     * @throws IllegalArgumentException 游标无效或已过期
+     */
+    EsProductCursorPage searchByCursor(String cursor, String keyword, Long brandId, Long productCategoryId, Integer pageSize, Integer sort);
+
+    /**
+     * 根据商品id推荐相关商品，推荐结果中已从索引删除的商品不返回，并从保存的推荐结果中移除
      */
     Page<EsProduct> recommend(Long id, Integer pageNum, Integer pageSize);
 
+    /**
+     * 在后台重新计算所有商品的推荐结果，提交后立即返回
+     * @throws IllegalStateException 已有计算正在进行
+     */
+    void rebuildRecommend();
+
     /**
      * 获取搜索词相关品牌、分类、属性
      */
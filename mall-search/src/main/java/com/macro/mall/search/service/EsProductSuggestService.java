@@ -0,0 +1,20 @@
+package com.macro.mall.search.service;
+
+import java.util.List;
+
+/**
+ * 搜索联想词Service
+ * 在本地内存中维护商品名称、关键词、品牌及分类名称的前缀索引，定时整体重建
+ * Created by macro on 2026/10/18.
+ */
+public interface EsProductSuggestService {
+    /**
+     * 根据输入前缀获取联想词，按商品销量从高到低排列
+     */
+    List<String> suggest(String keyword, Integer size);
+
+    /**
+     * 从数据库重建联想词索引
+     */
+    void refresh();
+}
@@ -1,28 +1,43 @@
 package com.macro.mall.search.service.impl;
 
+import cn.hutool.core.codec.Base64;
 import cn.hutool.core.collection.ListUtil;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
 import co.elastic.clients.elasticsearch._types.aggregations.*;
 import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
 import co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders;
 import co.elastic.clients.util.ObjectBuilder;
+import com.macro.mall.search.component.EsProductBulkIndexer;
+import com.macro.mall.search.component.EsProductRecommendBuilder;
+import com.macro.mall.search.component.EsProductSearchCache;
 import com.macro.mall.search.dao.EsProductDao;
 import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductCursorPage;
+import com.macro.mall.search.domain.EsProductRecommend;
 import com.macro.mall.search.domain.EsProductRelatedInfo;
+import com.macro.mall.search.domain.EsProductSearchCursor;
+import com.macro.mall.search.repository.EsProductRecommendRepository;
 import com.macro.mall.search.repository.EsProductRepository;
 import com.macro.mall.search.service.EsProductService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
+import org.springframework.data.elasticsearch.UncategorizedElasticsearchException;
 import org.springframework.data.elasticsearch.client.elc.*;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.Query.PointInTime;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -41,22 +56,30 @@ public class EsProductServiceImpl implements EsProductService {
     private EsProductRepository productRepository;
     @Autowired
     private ElasticsearchTemplate elasticsearchTemplate;
+    @Autowired
+    private EsProductBulkIndexer productBulkIndexer;
+    @Autowired
+    private EsProductSearchCache productSearchCache;
+    @Autowired
+    private EsProductRecommendRepository productRecommendRepository;
+    @Autowired
+    private EsProductRecommendBuilder productRecommendBuilder;
+    @Value("${es.cursor.keepAlive:60}")
+    private Long CURSOR_KEEP_ALIVE;
     @Override
     public int importAll() {
-        List<EsProduct> esProductList = productDao.getAllEsProductList(null);
-        Iterable<EsProduct> esProductIterable = productRepository.saveAll(esProductList);
-        Iterator<EsProduct> iterator = esProductIterable.iterator();
-        int result = 0;
-        while (iterator.hasNext()) {
-            result++;
-            iterator.next();
-        }
-        return result;
+        return productBulkIndexer.importAll();
+    }
+
+    @Override
+    public int rebuildIndex() {
+        return productBulkIndexer.rebuild();
     }
 
     @Override
     public void delete(Long id) {
         productRepository.deleteById(id);
+        productSearchCache.nextGeneration();
     }
 
     @Override
@@ -66,6 +89,7 @@ public class EsProductServiceImpl implements EsProductService {
         if (esProductList.size() > 0) {
             EsProduct esProduct = esProductList.get(0);
             result = productRepository.save(esProduct);
+            productSearchCache.nextGeneration();
         }
         return result;
     }
@@ -80,6 +104,7 @@ public class EsProductServiceImpl implements EsProductService {
                 esProductList.add(esProduct);
             }
             productRepository.deleteAll(esProductList);
+            productSearchCache.nextGeneration();
         }
     }
 
@@ -91,10 +116,118 @@ public class EsProductServiceImpl implements EsProductService {
 
     @Override
     public Page<EsProduct> search(String keyword, Long brandId, Long productCategoryId, Integer pageNum, Integer pageSize,Integer sort) {
+        String normalizedKeyword = EsProductSearchCache.normalizeKeyword(keyword);
+        return productSearchCache.getPage(normalizedKeyword, brandId, productCategoryId, sort, pageNum, pageSize,
+                () -> doSearch(normalizedKeyword, brandId, productCategoryId, pageNum, pageSize, sort));
+    }
+
+    private Page<EsProduct> doSearch(String keyword, Long brandId, Long productCategoryId, Integer pageNum, Integer pageSize,Integer sort) {
         Pageable pageable = PageRequest.of(pageNum, pageSize);
-        NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder();
+        NativeQueryBuilder nativeQueryBuilder = buildSearchQuery(keyword, brandId, productCategoryId, sort);
         //分页
         nativeQueryBuilder.withPageable(pageable);
+        NativeQuery nativeQuery = nativeQueryBuilder.build();
+        LOGGER.debug("DSL:{}", nativeQuery.getQuery().toString());
+        SearchHits<EsProduct> searchHits = elasticsearchTemplate.search(nativeQuery, EsProduct.class);
+        if(searchHits.getTotalHits()<=0){
+            return new PageImpl<>(ListUtil.empty(),pageable,0);
+        }
+        List<EsProduct> searchProductList = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
+        return new PageImpl<>(searchProductList,pageable,searchHits.getTotalHits());
+    }
+
+    @Override
+    public EsProductCursorPage searchByCursor(String cursor, String keyword, Long brandId, Long productCategoryId, Integer pageSize, Integer sort) {
+        Duration keepAlive = Duration.ofSeconds(CURSOR_KEEP_ALIVE);
+        EsProductSearchCursor searchCursor;
+        if (StrUtil.isEmpty(cursor)) {
+            searchCursor = new EsProductSearchCursor();
+            searchCursor.setKeyword(EsProductSearchCache.normalizeKeyword(keyword));
+            searchCursor.setBrandId(brandId);
+            searchCursor.setProductCategoryId(productCategoryId);
+            searchCursor.setSort(sort);
+            searchCursor.setPitId(elasticsearchTemplate.openPointInTime(elasticsearchTemplate.getIndexCoordinatesFor(EsProduct.class), keepAlive));
+        } else {
+            searchCursor = decodeCursor(cursor);
+        }
+        NativeQueryBuilder nativeQueryBuilder = buildSearchQuery(searchCursor.getKeyword(), searchCursor.getBrandId(),
+                searchCursor.getProductCategoryId(), searchCursor.getSort());
+        //以商品id作为最后的排序条件，保证每个商品的排序值唯一，翻页时不重复也不遗漏
+        if (!Integer.valueOf(1).equals(searchCursor.getSort())) {
+            nativeQueryBuilder.withSort(Sort.by(Sort.Order.asc("id")));
+        }
+        //在同一个point in time上翻页，不受翻页期间索引写入的影响
+        nativeQueryBuilder.withPointInTime(new PointInTime(searchCursor.getPitId(), keepAlive));
+        if (searchCursor.getSearchAfter() != null) {
+            nativeQueryBuilder.withSearchAfter(searchCursor.getSearchAfter());
+        }
+        nativeQueryBuilder.withMaxResults(pageSize);
+        nativeQueryBuilder.withTrackTotalHits(false);
+        SearchHits<EsProduct> searchHits;
+        try {
+            searchHits = elasticsearchTemplate.search(nativeQueryBuilder.build(), EsProduct.class);
+        } catch (UncategorizedElasticsearchException e) {
+            //point in time超过保留时间未翻页会被ES回收，此时返回404
+            if (!StrUtil.isEmpty(cursor) && Integer.valueOf(404).equals(e.getStatusCode())) {
+                throw new IllegalArgumentException("游标已过期，请重新搜索");
+            }
+            throw e;
+        }
+        //每次搜索都可能返回新的point in time id
+        String pitId = searchHits.getPointInTimeId() != null ? searchHits.getPointInTimeId() : searchCursor.getPitId();
+        List<SearchHit<EsProduct>> hitList = searchHits.getSearchHits();
+        EsProductCursorPage result = new EsProductCursorPage();
+        result.setList(hitList.stream().map(SearchHit::getContent).collect(Collectors.toList()));
+        if (hitList.size() < pageSize) {
+            elasticsearchTemplate.closePointInTime(pitId);
+        } else {
+            searchCursor.setPitId(pitId);
+            searchCursor.setSearchAfter(hitList.get(hitList.size() - 1).getSortValues());
+            result.setNextCursor(encodeCursor(searchCursor));
+        }
+        return result;
+    }
+
+    /**
+     * 将游标内容编码为URL安全的字符串
+     */
+    static String encodeCursor(EsProductSearchCursor searchCursor) {
+        return Base64.encodeUrlSafe(JSONUtil.toJsonStr(searchCursor));
+    }
+
+    /**
+     * 解码游标，格式错误或缺少必要内容时抛出IllegalArgumentException
+     */
+    static EsProductSearchCursor decodeCursor(String cursor) {
+        EsProductSearchCursor searchCursor;
+        try {
+            searchCursor = JSONUtil.toBean(Base64.decodeStr(cursor), EsProductSearchCursor.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        if (searchCursor == null || StrUtil.isEmpty(searchCursor.getPitId()) || CollectionUtils.isEmpty(searchCursor.getSearchAfter())) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        //JSON中的数字解析后统一转为Long或Double，与ES返回的排序值类型一致
+        List<Object> searchAfter = new ArrayList<>(searchCursor.getSearchAfter().size());
+        for (Object value : searchCursor.getSearchAfter()) {
+            if (value instanceof BigDecimal) {
+                searchAfter.add(((BigDecimal) value).doubleValue());
+            } else if (value instanceof Integer || value instanceof BigInteger) {
+                searchAfter.add(((Number) value).longValue());
+            } else {
+                searchAfter.add(value);
+            }
+        }
+        searchCursor.setSearchAfter(searchAfter);
+        return searchCursor;
+    }
+
+    /**
+     * 构建综合搜索的过滤、搜索及排序条件，不包含分页
+     */
+    private NativeQueryBuilder buildSearchQuery(String keyword, Long brandId, Long productCategoryId, Integer sort) {
+        NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder();
         //过滤
         if (brandId != null || productCategoryId != null) {
             Query boolQuery = QueryBuilders.bool(builder -> {
@@ -147,73 +280,58 @@ public class EsProductServiceImpl implements EsProductService {
         }
         //按相关度
         nativeQueryBuilder.withSort(Sort.by(Sort.Order.desc("_score")));
-        NativeQuery nativeQuery = nativeQueryBuilder.build();
-        LOGGER.info("DSL:{}", nativeQuery.getQuery().toString());
-        SearchHits<EsProduct> searchHits = elasticsearchTemplate.search(nativeQuery, EsProduct.class);
-        if(searchHits.getTotalHits()<=0){
-            return new PageImpl<>(ListUtil.empty(),pageable,0);
-        }
-        List<EsProduct> searchProductList = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-        return new PageImpl<>(searchProductList,pageable,searchHits.getTotalHits());
+        return nativeQueryBuilder;
     }
 
     @Override
     public Page<EsProduct> recommend(Long id, Integer pageNum, Integer pageSize) {
         Pageable pageable = PageRequest.of(pageNum, pageSize);
-        List<EsProduct> esProductList = productDao.getAllEsProductList(id);
-        if (esProductList.size() > 0) {
-            EsProduct esProduct = esProductList.get(0);
-            String keyword = esProduct.getName();
-            Long brandId = esProduct.getBrandId();
-            Long productCategoryId = esProduct.getProductCategoryId();
-            //构建查询条件
-            NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder();
-            //分页
-            nativeQueryBuilder.withPageable(pageable);
-            //用于过滤掉相同的商品
-            nativeQueryBuilder.withFilter(QueryBuilders.bool(build -> build.mustNot(QueryBuilders.term(b->b.field("id").value(id)))));
-            //根据商品标题、品牌、分类进行搜索
-            List<FunctionScore> functionScoreList = new ArrayList<>();
-            functionScoreList.add(new FunctionScore.Builder()
-                    .filter(QueryBuilders.match(builder -> builder.field("name").query(keyword)))
-                    .weight(8.0)
-                    .build());
-            functionScoreList.add(new FunctionScore.Builder()
-                    .filter(QueryBuilders.match(builder -> builder.field("subTitle").query(keyword)))
-                    .weight(2.0)
-                    .build());
-            functionScoreList.add(new FunctionScore.Builder()
-                    .filter(QueryBuilders.match(builder -> builder.field("keywords").query(keyword)))
-                    .weight(2.0)
-                    .build());
-            functionScoreList.add(new FunctionScore.Builder()
-                    .filter(QueryBuilders.match(builder -> builder.field("brandId").query(brandId)))
-                    .weight(5.0)
-                    .build());
-            functionScoreList.add(new FunctionScore.Builder()
-                    .filter(QueryBuilders.match(builder -> builder.field("productCategoryId").query(productCategoryId)))
-                    .weight(3.0)
-                    .build());
-            FunctionScoreQuery.Builder functionScoreQueryBuilder = QueryBuilders.functionScore()
-                    .functions(functionScoreList)
-                    .scoreMode(FunctionScoreMode.Sum)
-                    .minScore(2.0);
-            nativeQueryBuilder.withQuery(builder -> builder.functionScore(functionScoreQueryBuilder.build()));
-            NativeQuery nativeQuery = nativeQueryBuilder.build();
-            LOGGER.info("DSL:{}", nativeQuery.getQuery().toString());
-            SearchHits<EsProduct> searchHits = elasticsearchTemplate.search(nativeQuery, EsProduct.class);
-            if(searchHits.getTotalHits()<=0){
-                return new PageImpl<>(ListUtil.empty(),pageable,0);
+        List<Long> productIds = productRecommendRepository.findById(id).map(EsProductRecommend::getProductIds).orElse(null);
+        if (productIds == null) {
+            //还没有计算过推荐结果的商品实时计算一次并保存
+            Optional<EsProduct> esProduct = productRepository.findById(id);
+            if (!esProduct.isPresent()) {
+                return new PageImpl<>(ListUtil.empty());
             }
-            List<EsProduct> searchProductList = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-            return new PageImpl<>(searchProductList,pageable,searchHits.getTotalHits());
+            productIds = productRecommendBuilder.build(esProduct.get()).getProductIds();
+        }
+        int fromIndex = (int) Math.min(pageable.getOffset(), productIds.size());
+        int toIndex = Math.min(fromIndex + pageSize, productIds.size());
+        if (fromIndex >= toIndex) {
+            return new PageImpl<>(ListUtil.empty(), pageable, productIds.size());
+        }
+        //按推荐顺序批量获取商品，已从索引中删除的商品不返回
+        List<EsProduct> searchProductList = new ArrayList<>(toIndex - fromIndex);
+        productRepository.findAllById(productIds.subList(fromIndex, toIndex)).forEach(searchProductList::add);
+        if (searchProductList.size() < toIndex - fromIndex) {
+            //移除已删除的商品并保存，避免总数包含不会返回的商品
+            Set<Long> foundIds = searchProductList.stream().map(EsProduct::getId).collect(Collectors.toSet());
+            List<Long> removedIds = productIds.subList(fromIndex, toIndex).stream()
+                    .filter(productId -> !foundIds.contains(productId))
+                    .collect(Collectors.toList());
+            List<Long> prunedIds = new ArrayList<>(productIds);
+            prunedIds.removeAll(removedIds);
+            productRecommendRepository.save(new EsProductRecommend(id, prunedIds));
+            productIds = prunedIds;
         }
-        return new PageImpl<>(ListUtil.empty());
+        return new PageImpl<>(searchProductList, pageable, productIds.size());
+    }
+
+    @Override
+    public void rebuildRecommend() {
+        productRecommendBuilder.rebuildAllAsync();
     }
 
     @Override
     public EsProductRelatedInfo searchRelatedInfo(String keyword) {
+        String normalizedKeyword = EsProductSearchCache.normalizeKeyword(keyword);
+        return productSearchCache.getRelatedInfo(normalizedKeyword, () -> doSearchRelatedInfo(normalizedKeyword));
+    }
+
+    private EsProductRelatedInfo doSearchRelatedInfo(String keyword) {
         NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder();
+        //只需要聚合结果，不返回商品
+        nativeQueryBuilder.withMaxResults(0);
         //搜索条件
         if(StrUtil.isEmpty(keyword)){
             nativeQueryBuilder.withQuery(QueryBuilders.matchAll(builder -> builder));
@@ -234,7 +352,7 @@ public class EsProductServiceImpl implements EsProductService {
                                 .build()).build()).build();
         nativeQueryBuilder.withAggregation("allAttrValues",aggregation);
         NativeQuery nativeQuery = nativeQueryBuilder.build();
-        LOGGER.info("DSL:{}", nativeQueryBuilder.getQuery().toString());
+        LOGGER.debug("DSL:{}", nativeQueryBuilder.getQuery().toString());
         SearchHits<EsProduct> searchHits = elasticsearchTemplate.search(nativeQuery, EsProduct.class);
         return convertProductRelatedInfo(searchHits);
     }
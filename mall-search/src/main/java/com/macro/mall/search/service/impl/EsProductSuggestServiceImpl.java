@@ -0,0 +1,95 @@
+package com.macro.mall.search.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.macro.mall.search.component.EsProductSearchCache;
+import com.macro.mall.search.dao.EsProductDao;
+import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductSuggestIndex;
+import com.macro.mall.search.service.EsProductSuggestService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 搜索联想词Service实现类
+ * Created by macro on 2026/10/18.
+ */
+@Service
+public class EsProductSuggestServiceImpl implements EsProductSuggestService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EsProductSuggestServiceImpl.class);
+    /**
+     * 商品关键词之间的分隔符
+     */
+    private static final Pattern KEYWORD_SEPARATOR = Pattern.compile("[,，;；、\\s]+");
+    @Autowired
+    private EsProductDao productDao;
+    @Value("${es.suggest.topK:10}")
+    private Integer TOP_K;
+    @Value("${es.import.pageSize:500}")
+    private Integer PAGE_SIZE;
+    /**
+     * 首次构建完成前返回空结果，不阻塞请求
+     */
+    private volatile EsProductSuggestIndex suggestIndex = new EsProductSuggestIndex(Collections.emptyList(), 0);
+
+    @Override
+    public List<String> suggest(String keyword, Integer size) {
+        int limit = size == null ? TOP_K : Math.min(size, TOP_K);
+        return suggestIndex.suggest(EsProductSearchCache.normalizeKeyword(keyword), limit);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${es.suggest.refreshInterval:600000}")
+    public void refresh() {
+        try {
+            long startTime = System.currentTimeMillis();
+            EsProductSuggestIndex current = new EsProductSuggestIndex(loadTerms(), TOP_K);
+            suggestIndex = current;
+            LOGGER.info("重建搜索联想词索引，联想词数量：{}，耗时{}ms", current.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            //重建失败时继续使用旧索引
+            LOGGER.error("重建搜索联想词索引失败", e);
+        }
+    }
+
+    /**
+     * 分页读取上架商品，合并相同的联想词，权重为对应商品的销量之和加商品数量
+     */
+    private Collection<EsProductSuggestIndex.Term> loadTerms() {
+        Map<String, EsProductSuggestIndex.Term> termMap = new HashMap<>();
+        Long afterId = 0L;
+        while (true) {
+            List<EsProduct> page = productDao.listEsProductPage(afterId, PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).getId();
+            for (EsProduct product : page) {
+                long weight = (product.getSale() == null ? 0 : product.getSale()) + 1;
+                addTerm(termMap, product.getName(), weight);
+                addTerm(termMap, product.getBrandName(), weight);
+                addTerm(termMap, product.getProductCategoryName(), weight);
+                if (StrUtil.isNotBlank(product.getKeywords())) {
+                    for (String keyword : KEYWORD_SEPARATOR.split(product.getKeywords())) {
+                        addTerm(termMap, keyword, weight);
+                    }
+                }
+            }
+        }
+        return termMap.values();
+    }
+
+    private void addTerm(Map<String, EsProductSuggestIndex.Term> termMap, String text, long weight) {
+        String key = EsProductSearchCache.normalizeKeyword(text);
+        if (key.isEmpty()) {
+            return;
+        }
+        termMap.computeIfAbsent(key, k -> new EsProductSuggestIndex.Term(k, text.trim())).addWeight(weight);
+    }
+}
@@ -0,0 +1,129 @@
+package com.macro.mall.search.component;
+
+import com.macro.mall.search.dao.EsProductChangeLogDao;
+import com.macro.mall.search.dao.EsProductDao;
+import com.macro.mall.search.domain.EsProduct;
+import com.macro.mall.search.domain.EsProductChangeLog;
+import com.macro.mall.search.repository.EsProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 商品变更增量同步单元测试
+ * Created by macro on 2026/10/18.
+ */
+@SpringBootTest(classes = {EsProductChangeSyncer.class, EsProductChangeSyncerTests.MetricsConfig.class}, properties = {
+        "es.sync.batchSize=2",
+        "spring.cloud.nacos.config.enabled=false",
+        "spring.cloud.nacos.discovery.enabled=false"})
+public class EsProductChangeSyncerTests {
+    @Autowired
+    private EsProductChangeSyncer productChangeSyncer;
+    @MockBean
+    private EsProductChangeLogDao productChangeLogDao;
+    @MockBean
+    private EsProductDao productDao;
+    @MockBean
+    private EsProductRepository productRepository;
+    @MockBean
+    private ElasticsearchTemplate elasticsearchTemplate;
+    @MockBean
+    private EsProductBulkIndexer productBulkIndexer;
+    @MockBean
+    private EsProductSearchCache productSearchCache;
+    @MockBean
+    private EsProductRecommendBuilder productRecommendBuilder;
+
+    @TestConfiguration
+    static class MetricsConfig {
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        when(productChangeLogDao.acquireLease(anyString(), anyString(), anyInt())).thenReturn(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMergesChangesAndAppliesLatestState() {
+        when(productChangeLogDao.list(2)).thenReturn(
+                Arrays.asList(changeLog(1L, 5L), changeLog(2L, 5L)),
+                Collections.singletonList(changeLog(3L, 6L)));
+        when(productDao.listEsProductByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            //商品6已下架，查询不到
+            return ids.contains(5L) ? Collections.singletonList(product(5L)) : Collections.emptyList();
+        });
+        productChangeSyncer.sync();
+
+        //同一商品的多次变更合并为一次查询
+        verify(productDao).listEsProductByIds(new LinkedHashSet<>(Collections.singletonList(5L)));
+        ArgumentCaptor<List<IndexQuery>> queryCaptor = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchTemplate).bulkIndex(queryCaptor.capture(), eq(EsProduct.class));
+        assertEquals(1, queryCaptor.getValue().size());
+        assertEquals("5", queryCaptor.getValue().get(0).getId());
+        verify(productRepository).deleteAllById(new HashSet<>(Collections.singletonList(6L)));
+        verify(productChangeLogDao).deleteByIds(Arrays.asList(1L, 2L));
+        verify(productChangeLogDao).deleteByIds(Collections.singletonList(3L));
+        //推荐结果交给后台线程计算
+        verify(productRecommendBuilder, times(2)).refreshAsync(anyList(), anyCollection());
+        verify(productRecommendBuilder, never()).refresh(anyList(), anyCollection());
+    }
+
+    @Test
+    public void testFailureKeepsChangeLogs() {
+        when(productChangeLogDao.list(2)).thenReturn(Collections.singletonList(changeLog(1L, 5L)));
+        when(productDao.listEsProductByIds(anyCollection())).thenReturn(Collections.singletonList(product(5L)));
+        when(elasticsearchTemplate.bulkIndex(anyList(), eq(EsProduct.class))).thenThrow(new IllegalStateException("ES不可用"));
+        productChangeSyncer.sync();
+        verify(productChangeLogDao, never()).deleteByIds(anyList());
+    }
+
+    @Test
+    public void testPausedWhileImporting() {
+        when(productBulkIndexer.isRunning()).thenReturn(true);
+        productChangeSyncer.sync();
+        verify(productChangeLogDao, never()).list(anyInt());
+    }
+
+    @Test
+    public void testSkippedWithoutLease() {
+        //租约由其他实例持有
+        when(productChangeLogDao.acquireLease(anyString(), anyString(), anyInt())).thenReturn(0);
+        productChangeSyncer.sync();
+        verify(productChangeLogDao, never()).list(anyInt());
+    }
+
+    private EsProductChangeLog changeLog(Long id, Long productId) {
+        EsProductChangeLog changeLog = new EsProductChangeLog();
+        changeLog.setId(id);
+        changeLog.setProductId(productId);
+        return changeLog;
+    }
+
+    private EsProduct product(Long id) {
+        EsProduct product = new EsProduct();
+        product.setId(id);
+        return product;
+    }
+}
@@ -0,0 +1,77 @@
+package com.macro.mall.search.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索联想词前缀树单元测试
+ * Created by macro on 2026/10/18.
+ */
+public class EsProductSuggestIndexTests {
+
+    @Test
+    public void testTopKByWeight() {
+        EsProductSuggestIndex suggestIndex = new EsProductSuggestIndex(Arrays.asList(
+                term("huawei p20", 5),
+                term("huawei mate", 20),
+                term("huawei nova", 10),
+                term("honor 9", 30)), 2);
+        //每个前缀只保存权重最高的2个
+        assertEquals(Arrays.asList("huawei mate", "huawei nova"), suggestIndex.suggest("hua", 10));
+        assertEquals(Arrays.asList("honor 9", "huawei mate"), suggestIndex.suggest("h", 10));
+        assertEquals(Collections.singletonList("huawei p20"), suggestIndex.suggest("huawei p", 10));
+        assertEquals(Collections.singletonList("huawei mate"), suggestIndex.suggest("hua", 1));
+        assertEquals(4, suggestIndex.size());
+    }
+
+    @Test
+    public void testEqualWeightPrefersShorterThenKey() {
+        EsProductSuggestIndex suggestIndex = new EsProductSuggestIndex(Arrays.asList(
+                term("apple watch", 1),
+                term("apple", 1),
+                term("apple ipad", 1),
+                term("apple iphone", 3)), 10);
+        assertEquals(Arrays.asList("apple iphone", "apple", "apple ipad", "apple watch"), suggestIndex.suggest("app", 10));
+    }
+
+    @Test
+    public void testMatchesFromWordStart() {
+        EsProductSuggestIndex suggestIndex = new EsProductSuggestIndex(Arrays.asList(
+                term("华为 huawei p20", 1),
+                term("a a", 1)), 10);
+        assertEquals(Collections.singletonList("华为 huawei p20"), suggestIndex.suggest("huawei", 10));
+        assertEquals(Collections.singletonList("华为 huawei p20"), suggestIndex.suggest("华为", 10));
+        assertTrue(suggestIndex.suggest("uawei", 10).isEmpty());
+        //同一个词从多个位置经过同一节点时只返回一次
+        assertEquals(Collections.singletonList("a a"), suggestIndex.suggest("a", 10));
+    }
+
+    @Test
+    public void testPrefixLongerThanMaxDepth() {
+        EsProductSuggestIndex suggestIndex = new EsProductSuggestIndex(Arrays.asList(
+                term("abcdefghijklmnopqrstuvwxy", 2),
+                term("abcdefghijklmnopqrstzzz", 1)), 10);
+        assertEquals(2, suggestIndex.suggest("abcdefghijklmnopqrst", 10).size());
+        assertEquals(Collections.singletonList("abcdefghijklmnopqrstuvwxy"), suggestIndex.suggest("abcdefghijklmnopqrstuv", 10));
+        assertTrue(suggestIndex.suggest("abcdefghijklmnopqrstx", 10).isEmpty());
+    }
+
+    @Test
+    public void testEmptyInput() {
+        EsProductSuggestIndex suggestIndex = new EsProductSuggestIndex(Collections.singletonList(term("huawei", 1)), 10);
+        assertTrue(suggestIndex.suggest(null, 10).isEmpty());
+        assertTrue(suggestIndex.suggest("", 10).isEmpty());
+        assertTrue(suggestIndex.suggest("huawei", 0).isEmpty());
+        assertTrue(suggestIndex.suggest("xiaomi", 10).isEmpty());
+    }
+
+    private EsProductSuggestIndex.Term term(String key, long weight) {
+        EsProductSuggestIndex.Term term = new EsProductSuggestIndex.Term(key, key);
+        term.addWeight(weight);
+        return term;
+    }
+}
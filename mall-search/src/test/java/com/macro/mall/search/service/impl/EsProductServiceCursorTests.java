@@ -0,0 +1,55 @@
+package com.macro.mall.search.service.impl;
+
+import cn.hutool.core.codec.Base64;
+import com.macro.mall.search.domain.EsProductSearchCursor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索游标编码解码单元测试
+ * Created by macro on 2026/10/18.
+ */
+public class EsProductServiceCursorTests {
+
+    @Test
+    public void testRoundTrip() {
+        EsProductSearchCursor searchCursor = new EsProductSearchCursor();
+        searchCursor.setPitId("46ToAwMDaWR5BXV1aWQy+/==");
+        searchCursor.setKeyword("华为 手机");
+        searchCursor.setBrandId(6L);
+        searchCursor.setProductCategoryId(19L);
+        searchCursor.setSort(3);
+        searchCursor.setSearchAfter(Arrays.asList(3999.5, 3L, 1700000000000L, "huawei"));
+        String cursor = EsProductServiceImpl.encodeCursor(searchCursor);
+        //游标作为请求参数传递，需要URL安全
+        assertFalse(cursor.contains("+") || cursor.contains("/"));
+
+        EsProductSearchCursor decoded = EsProductServiceImpl.decodeCursor(cursor);
+        assertEquals(searchCursor.getPitId(), decoded.getPitId());
+        assertEquals(searchCursor.getKeyword(), decoded.getKeyword());
+        assertEquals(searchCursor.getBrandId(), decoded.getBrandId());
+        assertEquals(searchCursor.getProductCategoryId(), decoded.getProductCategoryId());
+        assertEquals(searchCursor.getSort(), decoded.getSort());
+        //排序值的类型与ES返回的一致：小数为Double，整数为Long
+        assertEquals(Arrays.asList(3999.5, 3L, 1700000000000L, "huawei"), decoded.getSearchAfter());
+    }
+
+    @Test
+    public void testDecodeInvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> EsProductServiceImpl.decodeCursor("%%%"));
+        assertThrows(IllegalArgumentException.class, () -> EsProductServiceImpl.decodeCursor(Base64.encodeUrlSafe("abc")));
+        //缺少point in time或排序值的游标无法继续翻页
+        EsProductSearchCursor searchCursor = new EsProductSearchCursor();
+        searchCursor.setSearchAfter(Collections.singletonList(1L));
+        String withoutPit = EsProductServiceImpl.encodeCursor(searchCursor);
+        assertThrows(IllegalArgumentException.class, () -> EsProductServiceImpl.decodeCursor(withoutPit));
+        searchCursor.setPitId("pit");
+        searchCursor.setSearchAfter(Collections.emptyList());
+        String withoutSearchAfter = EsProductServiceImpl.encodeCursor(searchCursor);
+        assertThrows(IllegalArgumentException.class, () -> EsProductServiceImpl.decodeCursor(withoutSearchAfter));
+    }
+}